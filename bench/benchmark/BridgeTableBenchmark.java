@@ -0,0 +1,111 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import graph.MappedGraph;
+import poet.BridgeTable;
+import poet.GraphPoet;
+
+/**
+ * Benchmark of the computation of the bridge table of a synthetic corpus's
+ * affinity graph, on pools of growing parallelism, to measure how it scales
+ * across cores.
+ *
+ * <p>Usage: {@code java benchmark.BridgeTableBenchmark [--option value ...]},
+ * with options (lists are comma-separated):
+ * <ul><li> {@code --size}: corpus size, with an optional KB, MB or GB suffix (default 256KB);
+ *         the table grows with the square of the vocabulary
+ *     <li> {@code --parallelism}: pool sizes (default 1, 2, 4, ... up to the number of processors)
+ *     <li> {@code --k}: bridges per pair (default 1)
+ *     <li> {@code --score}: first_edge or product (default first_edge)
+ *     <li> {@code --iterations}: measured computations per pool size, after one warmup (default 3)
+ *     <li> {@code --seed}: random seed (default 42)
+ *     <li> {@code --format}: csv or json (default csv)
+ *     <li> {@code --out}: output file (default standard output) </ul>
+ */
+public class BridgeTableBenchmark {
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args options, as described above
+     * @throws IOException if the corpus, graph or output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args, "size", "parallelism", "k", "score",
+                "iterations", "seed", "format", "out");
+        long bytes = SyntheticCorpus.parseSize(options.getOrDefault("size", "256KB"));
+        StringBuilder defaultParallelism = new StringBuilder("1");
+        for (int p = 2; p <= Runtime.getRuntime().availableProcessors(); p *= 2) {
+            defaultParallelism.append(',').append(p);
+        }
+        List<String> parallelisms = Options.list(options, "parallelism", defaultParallelism.toString());
+        int k = Integer.parseInt(options.getOrDefault("k", "1"));
+        BridgeTable.Score score = BridgeTable.Score.valueOf(options.getOrDefault("score", "first_edge").toUpperCase());
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        File corpus = File.createTempFile("corpus", ".txt");
+        File graphFile = File.createTempFile("poet", ".graph");
+        corpus.deleteOnExit();
+        graphFile.deleteOnExit();
+        new SyntheticCorpus(SyntheticCorpus.heapsVocabulary(bytes), 1, seed).write(corpus, bytes);
+        new GraphPoet(corpus, 0).save(graphFile);
+        MappedGraph graph = MappedGraph.open(graphFile);
+
+        List<Result> results = new ArrayList<>();
+        double baseline = Double.NaN;
+        for (String parallelism : parallelisms) {
+            ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(parallelism));
+            try {
+                BridgeTable table = BridgeTable.compute(graph, k, score, pool);
+                double total = 0;
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    table = BridgeTable.compute(graph, k, score, pool);
+                    total += System.nanoTime() - start;
+                }
+                double millis = total / iterations / 1e6;
+                if (Double.isNaN(baseline)) {
+                    baseline = millis * Integer.parseInt(parallelism);
+                }
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("vertices", Integer.toString(graph.size()));
+                params.put("pairs", Long.toString(table.pairs()));
+                params.put("k", Integer.toString(k));
+                params.put("score", score.name().toLowerCase());
+                params.put("parallelism", parallelism);
+                Map<String, Double> metrics = new LinkedHashMap<>();
+                metrics.put("ms", millis);
+                metrics.put("ns/pair", millis * 1e6 / Math.max(1, table.pairs()));
+                metrics.put("speedup", baseline / millis);
+                Result result = new Result("bridges.compute", params, metrics);
+                System.err.println(result);
+                results.add(result);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        String out = options.get("out");
+        try (Writer writer = out == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new FileWriter(out)) {
+            if ("json".equals(options.getOrDefault("format", "csv"))) {
+                Harness.writeJson(results, writer);
+            } else {
+                Harness.writeCsv(results, writer);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import graph.AdaptiveGraph;
+import graph.CachingGraph;
+import graph.ConcreteEdgesGraph;
+import graph.ConcreteVerticesGraph;
+import graph.ConcurrentGraph;
+import graph.Graph;
+import graph.InstrumentedGraph;
+import graph.IntGraph;
+import graph.MatrixGraph;
+import graph.OffHeapGraph;
+
+/**
+ * Benchmarks of the Graph operations of each implementation, on synthetic
+ * graphs of several sizes and degree distributions.
+ *
+ * <p>Usage: {@code java benchmark.GraphBenchmark [--option value ...]}, with options
+ * (lists are comma-separated):
+ * <ul><li> {@code --impls}: implementations, by class name (default
+ *          ConcreteVerticesGraph,ConcreteEdgesGraph,IntGraph,AdaptiveGraph)
+ *     <li> {@code --distributions}: uniform, zipf, dense (default all)
+ *     <li> {@code --vertices}: graph sizes (default 1000,10000)
+ *     <li> {@code --degree}: average out-degree of uniform and zipf graphs (default 8)
+ *     <li> {@code --ops}: add, set, remove, sources, targets, vertices (default all)
+ *     <li> {@code --warmup}, {@code --iterations}: iteration counts (default 3 and 5)
+ *     <li> {@code --seed}: random seed (default 42)
+ *     <li> {@code --format}: csv or json (default csv)
+ *     <li> {@code --out}: output file (default standard output) </ul>
+ *
+ * <p>Run without -ea, so that representation invariants are not checked.
+ */
+public class GraphBenchmark {
+
+    private static final Map<String, Supplier<Graph<String>>> IMPLEMENTATIONS = new LinkedHashMap<>();
+    static {
+        IMPLEMENTATIONS.put("ConcreteVerticesGraph", ConcreteVerticesGraph::new);
+        IMPLEMENTATIONS.put("ConcreteEdgesGraph", ConcreteEdgesGraph::new);
+        IMPLEMENTATIONS.put("IntGraph", IntGraph::new);
+        IMPLEMENTATIONS.put("AdaptiveGraph", AdaptiveGraph::new);
+        IMPLEMENTATIONS.put("MatrixGraph", MatrixGraph::new);
+        IMPLEMENTATIONS.put("ConcurrentGraph", ConcurrentGraph::new);
+        IMPLEMENTATIONS.put("OffHeapGraph", OffHeapGraph::new);
+        IMPLEMENTATIONS.put("InstrumentedGraph", () -> new InstrumentedGraph<>(new IntGraph<>()));
+        IMPLEMENTATIONS.put("CachingGraph", () -> new CachingGraph<>(new ConcreteVerticesGraph()));
+    }
+
+    private static final int OPERATIONS = 10_000;
+    private static final int VERTICES_OPERATIONS = 20;
+    private static final int MAX_REMOVE_OPERATIONS = 1_000;
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args options, as described above
+     * @throws IOException if the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args, "impls", "distributions", "vertices", "degree",
+                "ops", "warmup", "iterations", "seed", "format", "out");
+        List<String> impls = Options.list(options, "impls", "ConcreteVerticesGraph,ConcreteEdgesGraph,IntGraph,AdaptiveGraph");
+        List<String> distributions = Options.list(options, "distributions", "uniform,zipf,dense");
+        List<String> sizes = Options.list(options, "vertices", "1000,10000");
+        int degree = Integer.parseInt(options.getOrDefault("degree", "8"));
+        List<String> ops = Options.list(options, "ops", "add,set,remove,sources,targets,vertices");
+        Harness harness = new Harness(Integer.parseInt(options.getOrDefault("warmup", "3")),
+                Integer.parseInt(options.getOrDefault("iterations", "5")));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        List<Result> results = new ArrayList<>();
+        for (String distributionName : distributions) {
+            SyntheticGraph.Distribution distribution =
+                    SyntheticGraph.Distribution.valueOf(distributionName.toUpperCase(Locale.ROOT));
+            for (String size : sizes) {
+                SyntheticGraph synthetic = new SyntheticGraph(distribution, Integer.parseInt(size),
+                        degree, 2 * OPERATIONS, seed);
+                for (String impl : impls) {
+                    Supplier<Graph<String>> factory = IMPLEMENTATIONS.get(impl);
+                    if (factory == null) {
+                        throw new IllegalArgumentException("Unknown implementation " + impl
+                                + "; expected one of " + IMPLEMENTATIONS.keySet());
+                    }
+                    for (String op : ops) {
+                        Result result = run(harness, synthetic, impl, factory, op);
+                        System.err.println(result);
+                        results.add(result);
+                    }
+                }
+            }
+        }
+
+        String out = options.get("out");
+        try (Writer writer = out == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new FileWriter(out)) {
+            if ("json".equals(options.getOrDefault("format", "csv"))) {
+                Harness.writeJson(results, writer);
+            } else {
+                Harness.writeCsv(results, writer);
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark of one operation on one implementation.
+     *
+     * @param harness the harness to run it with
+     * @param synthetic the graph to set up
+     * @param impl name of the implementation
+     * @param factory makes empty graphs of the implementation
+     * @param op name of the operation
+     * @return the result
+     */
+    private static Result run(Harness harness, SyntheticGraph synthetic, String impl,
+            Supplier<Graph<String>> factory, String op) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("impl", impl);
+        params.put("distribution", synthetic.distribution().name().toLowerCase(Locale.ROOT));
+        params.put("vertices", Integer.toString(synthetic.vertexCount()));
+        params.put("edges", Integer.toString(synthetic.edgeCount()));
+        params.put("op", op);
+        String name = "graph." + op;
+        Supplier<Graph<String>> fresh = () -> synthetic.fill(factory.get());
+        Map<String, Graph<String>> shared = new HashMap<>();
+        // read-only operations reuse one graph; mutations get a fresh one every iteration
+        Supplier<Graph<String>> reused = () -> shared.computeIfAbsent(op, key -> fresh.get());
+        switch (op) {
+        case "add":
+            String[] labels = new String[OPERATIONS];
+            Arrays.setAll(labels, i -> "new" + i);
+            return harness.run(name, params, OPERATIONS, fresh,
+                    (graph, i) -> graph.add(labels[i]) ? 1 : 0);
+        case "set":
+            return harness.run(name, params, OPERATIONS, fresh,
+                    (graph, i) -> graph.set(synthetic.pick(2 * i), synthetic.pick(2 * i + 1), i % 100 + 1));
+        case "remove":
+            int operations = Math.max(1, Math.min(MAX_REMOVE_OPERATIONS, synthetic.vertexCount() / 4));
+            int step = synthetic.vertexCount() / operations;
+            return harness.run(name, params, operations, fresh,
+                    (graph, i) -> graph.remove(synthetic.label(i * step)) ? 1 : 0);
+        case "sources":
+            return harness.run(name, params, OPERATIONS, reused,
+                    (graph, i) -> graph.sources(synthetic.pick(i)).size());
+        case "targets":
+            return harness.run(name, params, OPERATIONS, reused,
+                    (graph, i) -> graph.targets(synthetic.pick(i)).size());
+        case "vertices":
+            return harness.run(name, params, VERTICES_OPERATIONS, reused,
+                    (graph, i) -> graph.vertices().size());
+        default:
+            throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package benchmark;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark harness in the style of JMH: each benchmark is run for a
+ * number of warmup iterations, whose results are discarded, and then for a
+ * number of measured iterations. An iteration sets up fresh state, untimed,
+ * and then times a batch of operations on it.
+ *
+ * <p>Besides the time per operation (mean and standard deviation over the
+ * measured iterations), the harness records, like JMH's GC profiler, the
+ * bytes allocated per operation by the benchmark thread and the number and
+ * total time of garbage collections during the measured iterations.
+ * Allocation is read from HotSpot's {@code com.sun.management.ThreadMXBean},
+ * and reported as NaN on JVMs without it.
+ *
+ * <p>Results can be written as CSV or JSON, for comparing runs and catching
+ * regressions.
+ */
+public class Harness {
+
+    /**
+     * The operation a benchmark times.
+     *
+     * @param <S> type of the state the operation runs on
+     */
+    public interface Operation<S> {
+
+        /**
+         * Runs one operation.
+         *
+         * @param state the state of the current iteration
+         * @param index index of the operation within the iteration
+         * @return any value depending on the result of the operation, so that
+         *         it cannot be optimized away
+         */
+        long run(S state, int index);
+    }
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private volatile long sink;
+
+    // Abstraction function:
+    //   Represents a harness running warmupIterations + measuredIterations
+    //   iterations of each benchmark; sink absorbs the values benchmarks return
+    // Representation invariant:
+    //   warmupIterations >= 0, measuredIterations >= 1
+    // Safety from rep exposure:
+    //   All fields are private
+
+    /**
+     * Constructs a harness.
+     *
+     * @param warmupIterations number of discarded iterations, nonnegative
+     * @param measuredIterations number of measured iterations, positive
+     */
+    public Harness(int warmupIterations, int measuredIterations) {
+        if (warmupIterations < 0 || measuredIterations < 1) {
+            throw new IllegalArgumentException("Bad iteration counts: " + warmupIterations
+                    + " warmup, " + measuredIterations + " measured");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+    }
+
+    /**
+     * Runs a benchmark.
+     *
+     * @param <S> type of the state operations run on
+     * @param name name of the benchmark
+     * @param params parameters the benchmark was set up with, for the result
+     * @param operations number of operations per iteration, positive
+     * @param setup sets up fresh state for each iteration; not timed
+     * @param operation the operation to time
+     * @return the measurements: ns/op, ns/op standard deviation, B/op,
+     *         GC count and GC time in ms
+     */
+    public <S> Result run(String name, Map<String, String> params, int operations,
+            Supplier<S> setup, Operation<S> operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(operations, setup, operation, new long[1]);
+        }
+        double[] nanosPerOp = new double[measuredIterations];
+        long allocated = 0;
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        for (int i = 0; i < measuredIterations; i++) {
+            long[] bytes = new long[1];
+            nanosPerOp[i] = (double) iterate(operations, setup, operation, bytes) / operations;
+            allocated += bytes[0];
+        }
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / measuredIterations;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / Math.max(1, measuredIterations - 1);
+        }
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("ns/op", mean);
+        metrics.put("ns/op.sd", Math.sqrt(variance));
+        metrics.put("B/op", allocated < 0 ? Double.NaN : (double) allocated / measuredIterations / operations);
+        metrics.put("gc.count", (double) (gcCount() - gcCountBefore));
+        metrics.put("gc.ms", (double) (gcMillis() - gcMillisBefore));
+        return new Result(name, params, metrics);
+    }
+
+    /**
+     * Runs one iteration of a benchmark.
+     *
+     * @param <S> type of the state operations run on
+     * @param operations number of operations to time
+     * @param setup sets up the state
+     * @param operation the operation to time
+     * @param allocated set to the bytes allocated by the timed operations, or -1
+     * @return the time taken by the operations in nanoseconds
+     */
+    private <S> long iterate(int operations, Supplier<S> setup, Operation<S> operation, long[] allocated) {
+        S state = setup.get();
+        long result = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            result += operation.run(state, i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = allocatedBytes();
+        allocated[0] = bytesBefore < 0 ? -1 : bytesAfter - bytesBefore;
+        sink += result;
+        return elapsed;
+    }
+
+    /**
+     * Gets the bytes allocated so far by the current thread.
+     *
+     * @return the allocated bytes, or -1 if the JVM cannot tell
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the total number of garbage collections so far
+     */
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * @return the total time spent in garbage collection so far, in milliseconds
+     */
+    static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Writes results as CSV: a header row, then one row per result, with a
+     * column for each parameter and measurement name used by any result.
+     *
+     * @param results the results to write
+     * @param out where to write them
+     * @throws IOException if out cannot be written
+     */
+    public static void writeCsv(List<Result> results, Appendable out) throws IOException {
+        Set<String> params = new LinkedHashSet<>();
+        Set<String> metrics = new LinkedHashSet<>();
+        for (Result result : results) {
+            params.addAll(result.params().keySet());
+            metrics.addAll(result.metrics().keySet());
+        }
+        List<String> row = new ArrayList<>();
+        row.add("benchmark");
+        row.addAll(params);
+        row.addAll(metrics);
+        out.append(String.join(",", row)).append('\n');
+        for (Result result : results) {
+            row.clear();
+            row.add(result.benchmark());
+            for (String param : params) {
+                row.add(result.params().getOrDefault(param, ""));
+            }
+            for (String metric : metrics) {
+                Double value = result.metrics().get(metric);
+                row.add(value == null ? "" : format(value));
+            }
+            out.append(String.join(",", row)).append('\n');
+        }
+    }
+
+    /**
+     * Writes results as a JSON array with one object per result, of the form
+     * {@code {"benchmark": ..., "params": {...}, "metrics": {...}}}.
+     *
+     * @param results the results to write
+     * @param out where to write them
+     * @throws IOException if out cannot be written
+     */
+    public static void writeJson(List<Result> results, Appendable out) throws IOException {
+        out.append("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            out.append("  {\"benchmark\": ").append(quote(result.benchmark())).append(", \"params\": {");
+            String separator = "";
+            for (Map.Entry<String, String> param : result.params().entrySet()) {
+                out.append(separator).append(quote(param.getKey())).append(": ").append(quote(param.getValue()));
+                separator = ", ";
+            }
+            out.append("}, \"metrics\": {");
+            separator = "";
+            for (Map.Entry<String, Double> metric : result.metrics().entrySet()) {
+                double value = metric.getValue();
+                out.append(separator).append(quote(metric.getKey())).append(": ")
+                        .append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : format(value));
+                separator = ", ";
+            }
+            out.append(i + 1 < results.size() ? "}},\n" : "}}\n");
+        }
+        out.append("]\n");
+    }
+
+    /**
+     * Formats a measurement with enough precision for comparisons.
+     *
+     * @param value the measurement
+     * @return value with three decimal places
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Quotes a string as a JSON string literal.
+     *
+     * @param text the string
+     * @return text in double quotes, with quotes, backslashes and control characters escaped
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,48 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the {@code --name value} command-line options of the benchmarks.
+ */
+class Options {
+
+    /**
+     * Parses options.
+     *
+     * @param args command-line arguments, pairs of {@code --name} and value
+     * @param names the allowed option names
+     * @return map from option name (without dashes) to value
+     * @throws IllegalArgumentException if an option is unknown or has no value
+     */
+    static Map<String, String> parse(String[] args, String... names) {
+        Set<String> allowed = new HashSet<>(Arrays.asList(names));
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if (!allowed.contains(name) || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Bad option " + args[i] + "; options are --"
+                        + String.join(", --", names) + ", each followed by a value");
+            }
+            options.put(name, args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Gets a comma-separated list option.
+     *
+     * @param options parsed options
+     * @param name name of the option
+     * @param defaultValue value if the option is absent
+     * @return the elements of the list
+     */
+    static List<String> list(Map<String, String> options, String name, String defaultValue) {
+        return Arrays.asList(options.getOrDefault(name, defaultValue).split(","));
+    }
+}
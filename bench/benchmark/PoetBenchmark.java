@@ -0,0 +1,297 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import poet.GraphPoet;
+
+/**
+ * End-to-end benchmark of GraphPoet on synthetic corpora of growing size,
+ * measuring how corpus reading and poem generation scale.
+ *
+ * <p>For each corpus size, a {@link SyntheticCorpus} is generated (or reused
+ * from the corpus directory), then the benchmark measures the time to
+ * construct a GraphPoet from it, the peak and retained heap during and after
+ * construction, and the latency percentiles of {@code poem()} on inputs drawn
+ * from the corpus's word distribution.
+ *
+ * <p>To make super-linear behaviour obvious, every size after the first also
+ * reports scaling exponents against the previous size: the k such that the
+ * measurement grew as (words ratio)^k. An exponent near 1 for build time, or
+ * near 0 for poem latency, is the expected linear (constant) scaling; clearly
+ * larger exponents mean the cost per word grows with the corpus.
+ *
+ * <p>Usage: {@code java benchmark.PoetBenchmark [--option value ...]}, with options
+ * (lists are comma-separated):
+ * <ul><li> {@code --sizes}: corpus sizes, with optional KB, MB or GB suffixes
+ *          (default 1MB,2MB,4MB,8MB,16MB)
+ *     <li> {@code --vocabulary}: distinct words (default from Heaps' law, per size)
+ *     <li> {@code --exponent}: Zipf exponent of word frequencies (default 1)
+ *     <li> {@code --poems}: measured poems per size (default 10000)
+ *     <li> {@code --poem-words}: words per poem input (default 20)
+ *     <li> {@code --parallelism}: workers reading the corpus, or 0 to read
+ *          it on the calling thread (default 0)
+ *     <li> {@code --max-build-seconds}: skip larger sizes once a build takes
+ *          longer than this (default 600)
+ *     <li> {@code --dir}: directory in which corpora are kept and reused
+ *          (default a temporary directory, deleted on exit)
+ *     <li> {@code --seed}: random seed (default 42)
+ *     <li> {@code --format}: csv or json (default csv)
+ *     <li> {@code --out}: output file (default standard output) </ul>
+ *
+ * <p>Run without -ea, so that representation invariants are not checked, and
+ * with a heap large enough for the largest corpus (-Xmx).
+ */
+public class PoetBenchmark {
+
+    private static final double MEGABYTE = 1 << 20;
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /** Absorbs poem lengths, so that poems cannot be optimized away. */
+    private static volatile long sink;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args options, as described above
+     * @throws IOException if a corpus or the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args, "sizes", "vocabulary", "exponent", "poems",
+                "poem-words", "parallelism", "max-build-seconds", "dir", "seed", "format", "out");
+        List<String> sizes = Options.list(options, "sizes", "1MB,2MB,4MB,8MB,16MB");
+        double exponent = Double.parseDouble(options.getOrDefault("exponent", "1"));
+        int poems = Integer.parseInt(options.getOrDefault("poems", "10000"));
+        int poemWords = Integer.parseInt(options.getOrDefault("poem-words", "20"));
+        int parallelism = Integer.parseInt(options.getOrDefault("parallelism", "0"));
+        ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : null;
+        double maxBuildSeconds = Double.parseDouble(options.getOrDefault("max-build-seconds", "600"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        File dir;
+        if (options.containsKey("dir")) {
+            dir = new File(options.get("dir"));
+            dir.mkdirs();
+        } else {
+            dir = Files.createTempDirectory("poet-benchmark").toFile();
+            dir.deleteOnExit();
+        }
+
+        List<Result> results = new ArrayList<>();
+        Result previous = null;
+        for (String size : sizes) {
+            long bytes = SyntheticCorpus.parseSize(size);
+            int vocabulary = options.containsKey("vocabulary")
+                    ? Integer.parseInt(options.get("vocabulary")) : SyntheticCorpus.heapsVocabulary(bytes);
+            SyntheticCorpus corpus = new SyntheticCorpus(vocabulary, exponent, seed);
+            File file = new File(dir, String.format(Locale.ROOT, "corpus-%d-v%d-e%s-s%d.txt",
+                    bytes, vocabulary, exponent, seed));
+            if (!file.exists()) {
+                corpus.write(file, bytes);
+            }
+            if (!options.containsKey("dir")) {
+                file.deleteOnExit();
+            }
+            if (previous == null) {
+                // a first, discarded run compiles the corpus reader, so that
+                // the first measurement is not inflated by the interpreter
+                run(corpus, file, pool, poems, poemWords, seed, null);
+            }
+            Result result = run(corpus, file, pool, poems, poemWords, seed, previous);
+            System.err.println(result);
+            results.add(result);
+            previous = result;
+            if (result.metrics().get("build.ms") > maxBuildSeconds * 1000) {
+                System.err.println("Build took longer than " + maxBuildSeconds + " s; skipping larger sizes");
+                break;
+            }
+        }
+
+        String out = options.get("out");
+        try (Writer writer = out == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new FileWriter(out)) {
+            if ("json".equals(options.getOrDefault("format", "csv"))) {
+                Harness.writeJson(results, writer);
+            } else {
+                Harness.writeCsv(results, writer);
+            }
+        }
+    }
+
+    /**
+     * Measures one corpus.
+     *
+     * @param corpus generator of the corpus
+     * @param file the corpus file, written by corpus
+     * @param pool the pool to read the corpus on, or null to read it on the calling thread
+     * @param poems number of poems to time
+     * @param poemWords words per poem input
+     * @param seed random seed of the poem inputs
+     * @param previous result of the previous, smaller corpus, or null if none
+     * @return the measurements
+     * @throws IOException if the corpus cannot be read
+     */
+    private static Result run(SyntheticCorpus corpus, File file, ForkJoinPool pool, int poems, int poemWords,
+            long seed, Result previous) throws IOException {
+        String[] inputs = corpus.inputs(poems, poemWords, seed + 1);
+        String[] warmupInputs = corpus.inputs(Math.max(1, poems / 10), poemWords, seed + 2);
+
+        long baseline = settledHeap();
+        resetPeakHeap();
+        long gcCount = Harness.gcCount();
+        long gcMillis = Harness.gcMillis();
+        long start = System.nanoTime();
+        GraphPoet poet = new GraphPoet(file, GraphPoet.DEFAULT_INDEX_BYTES, pool);
+        long buildNanos = System.nanoTime() - start;
+        long peak = peakHeap();
+        gcCount = Harness.gcCount() - gcCount;
+        gcMillis = Harness.gcMillis() - gcMillis;
+        long retained = settledHeap() - baseline;
+
+        long lengths = 0;
+        for (String input : warmupInputs) {
+            lengths += poet.poem(input).length();
+        }
+        long[] latencies = new long[poems];
+        for (int i = 0; i < poems; i++) {
+            long poemStart = System.nanoTime();
+            lengths += poet.poem(inputs[i]).length();
+            latencies[i] = System.nanoTime() - poemStart;
+        }
+        Arrays.sort(latencies);
+        sink += lengths;
+
+        long words = countWords(file);
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("bytes", Long.toString(file.length()));
+        params.put("words", Long.toString(words));
+        params.put("vocabulary", Integer.toString(corpus.vocabulary()));
+        params.put("parallelism", Integer.toString(pool == null ? 0 : pool.getParallelism()));
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("build.ms", buildNanos / 1e6);
+        metrics.put("build.ns/word", (double) buildNanos / words);
+        metrics.put("build.gc.count", (double) gcCount);
+        metrics.put("build.gc.ms", (double) gcMillis);
+        metrics.put("heap.peak.MB", peak / MEGABYTE);
+        metrics.put("heap.retained.MB", retained / MEGABYTE);
+        for (double percentile : PERCENTILES) {
+            metrics.put("poem.p" + format(percentile) + ".us", percentile(latencies, percentile) / 1e3);
+        }
+        metrics.put("poem.max.us", latencies[latencies.length - 1] / 1e3);
+        if (previous != null) {
+            double wordsRatio = Math.log((double) words / Long.parseLong(previous.params().get("words")));
+            metrics.put("build.exponent", Math.log(metrics.get("build.ms") / previous.metrics().get("build.ms")) / wordsRatio);
+            metrics.put("heap.exponent", Math.log(metrics.get("heap.retained.MB") / previous.metrics().get("heap.retained.MB")) / wordsRatio);
+            metrics.put("poem.p50.exponent", Math.log(metrics.get("poem.p50.us") / previous.metrics().get("poem.p50.us")) / wordsRatio);
+        } else {
+            metrics.put("build.exponent", Double.NaN);
+            metrics.put("heap.exponent", Double.NaN);
+            metrics.put("poem.p50.exponent", Double.NaN);
+        }
+        return new Result("poet", params, metrics);
+    }
+
+    /**
+     * Counts the words of a corpus file, as GraphPoet splits them.
+     *
+     * @param file the corpus
+     * @return the number of maximal runs of non-whitespace bytes in file
+     * @throws IOException if the file cannot be read
+     */
+    private static long countWords(File file) throws IOException {
+        long words = 0;
+        boolean inWord = false;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n; (n = in.read(buffer)) > 0;) {
+                for (int i = 0; i < n; i++) {
+                    boolean space = buffer[i] == ' ' || buffer[i] == '\n' || buffer[i] == '\t' || buffer[i] == '\r';
+                    if (!space && !inWord) {
+                        words++;
+                    }
+                    inWord = !space;
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Gets a percentile of sorted values, by the nearest-rank method.
+     *
+     * @param sorted values in ascending order, non-empty
+     * @param percentile the percentile, in (0, 100]
+     * @return the smallest value that is at least percentile percent of the values
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Formats a percentile for a metric name.
+     *
+     * @param percentile the percentile
+     * @return percentile without a trailing ".0", and with its decimal point removed
+     */
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? Long.toString((long) percentile) : Double.toString(percentile).replace(".", "");
+    }
+
+    /**
+     * Collects garbage, then measures the heap in use.
+     *
+     * @return bytes of heap in use after collection
+     */
+    private static long settledHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Gets the peak heap usage since the last reset. The pools peak at
+     * different times, so their sum slightly overestimates the true peak.
+     *
+     * @return the sum of the peak usages of the heap memory pools, in bytes
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The measurements of one benchmark with one set of parameters.
+ */
+public class Result {
+
+    private final String benchmark;
+    private final Map<String, String> params;
+    private final Map<String, Double> metrics;
+
+    // Abstraction function:
+    //   Represents the measurements metrics (name to value) of benchmark run with params
+    // Representation invariant:
+    //   benchmark is non-empty; params and metrics are unmodifiable and keep insertion order
+    // Safety from rep exposure:
+    //   All fields are private and final; the maps are unmodifiable copies
+
+    /**
+     * Constructs a result.
+     *
+     * @param benchmark name of the benchmark
+     * @param params parameter names and values, in display order
+     * @param metrics measurement names and values, in display order
+     */
+    public Result(String benchmark, Map<String, String> params, Map<String, Double> metrics) {
+        this.benchmark = benchmark;
+        this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+        this.metrics = Collections.unmodifiableMap(new LinkedHashMap<>(metrics));
+    }
+
+    /**
+     * @return the name of the benchmark
+     */
+    public String benchmark() {
+        return benchmark;
+    }
+
+    /**
+     * @return an unmodifiable map of parameter names to values, in display order
+     */
+    public Map<String, String> params() {
+        return params;
+    }
+
+    /**
+     * @return an unmodifiable map of measurement names to values, in display order
+     */
+    public Map<String, Double> metrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return benchmark + params + metrics;
+    }
+}
@@ -0,0 +1,210 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A generator of synthetic corpora for GraphPoet, of any size from a few
+ * bytes to many gigabytes.
+ *
+ * <p>Words are drawn independently from a Zipf distribution over a vocabulary
+ * whose size follows Heaps' law, V = K * N^beta for a corpus of N words, as in
+ * natural-language text; unless given, the vocabulary is sized with K = 40 and
+ * beta = 1/2, close to measurements on English. The word of rank r is the
+ * bijective base-26 numeral of r + 1 ("a", "b", ..., "z", "aa", ...), so
+ * frequent words are short. Lines hold 8 to 16 words, and the first word of
+ * every line is capitalized, as GraphPoet must fold case.
+ *
+ * <p>Usage: {@code java benchmark.SyntheticCorpus --out file [--option value ...]},
+ * with options {@code --size} (bytes, with an optional KB, MB or GB suffix;
+ * default 1MB), {@code --vocabulary} (default from Heaps' law),
+ * {@code --exponent} (Zipf exponent, default 1) and {@code --seed} (default 42).
+ */
+public class SyntheticCorpus {
+
+    /** Average bytes per word of a corpus, used to estimate its number of words. */
+    static final int BYTES_PER_WORD = 5;
+
+    private static final double HEAPS_K = 40;
+    private static final double HEAPS_BETA = 0.5;
+    private static final int MIN_LINE_WORDS = 8;
+    private static final int MAX_LINE_WORDS = 16;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int vocabulary;
+    private final double exponent;
+    private final long seed;
+    private final String[] words;
+
+    // Abstraction function:
+    //   Represents the corpora of words drawn with probability proportional to
+    //   1 / (rank+1)^exponent from words[0 .. vocabulary-1], seeded with seed
+    // Representation invariant:
+    //   vocabulary > 0, exponent >= 0, words.length == vocabulary
+    //   words[r] is the bijective base-26 numeral of r + 1
+    // Safety from rep exposure:
+    //   All fields are private and final; words is never returned
+
+    /**
+     * Constructs a generator.
+     *
+     * @param vocabulary number of distinct words, positive
+     * @param exponent exponent of the Zipf distribution of words, nonnegative
+     * @param seed random seed; generators with equal parameters and seeds
+     *        write identical corpora
+     */
+    public SyntheticCorpus(int vocabulary, double exponent, long seed) {
+        if (vocabulary <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Bad corpus parameters: vocabulary=" + vocabulary
+                    + ", exponent=" + exponent);
+        }
+        this.vocabulary = vocabulary;
+        this.exponent = exponent;
+        this.seed = seed;
+        words = new String[vocabulary];
+        for (int rank = 0; rank < vocabulary; rank++) {
+            words[rank] = word(rank);
+        }
+    }
+
+    /**
+     * Gets the vocabulary size Heaps' law predicts for a corpus of a given size.
+     *
+     * @param bytes size of the corpus in bytes, nonnegative
+     * @return the expected number of distinct words, at least 1
+     */
+    public static int heapsVocabulary(long bytes) {
+        double words = (double) bytes / BYTES_PER_WORD;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, HEAPS_K * Math.pow(words, HEAPS_BETA)));
+    }
+
+    /**
+     * Gets the word of a rank.
+     *
+     * @param rank a rank, nonnegative
+     * @return the bijective base-26 numeral of rank + 1, in lowercase letters
+     */
+    static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        for (long n = rank + 1L; n > 0; n = (n - 1) / 26) {
+            word.append((char) ('a' + (n - 1) % 26));
+        }
+        return word.reverse().toString();
+    }
+
+    /**
+     * @return the number of distinct words
+     */
+    public int vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Writes a corpus.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param bytes size of the corpus: the corpus ends with the first line that
+     *        brings it to at least this many bytes
+     * @return the number of words written
+     * @throws IOException if the file cannot be written
+     */
+    public long write(File file, long bytes) throws IOException {
+        Random random = new Random(seed);
+        Zipf zipf = new Zipf(vocabulary, exponent, random);
+        long written = 0;
+        long wordCount = 0;
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII), BUFFER_SIZE)) {
+            while (written < bytes) {
+                int lineWords = MIN_LINE_WORDS + random.nextInt(MAX_LINE_WORDS - MIN_LINE_WORDS + 1);
+                for (int i = 0; i < lineWords; i++) {
+                    String word = words[zipf.next()];
+                    if (i == 0) {
+                        writer.write(Character.toUpperCase(word.charAt(0)));
+                        writer.write(word, 1, word.length() - 1);
+                    } else {
+                        writer.write(' ');
+                        writer.write(word);
+                    }
+                    written += word.length() + 1;
+                }
+                writer.write('\n');
+                wordCount += lineWords;
+            }
+        }
+        return wordCount;
+    }
+
+    /**
+     * Generates poem inputs drawn from the same distribution as the corpus, so
+     * that most adjacent pairs of input words have bridges, as in real use.
+     *
+     * @param count number of inputs
+     * @param length words per input, positive
+     * @param inputSeed random seed of the inputs
+     * @return count inputs of length words each, separated by single spaces
+     */
+    public String[] inputs(int count, int length, long inputSeed) {
+        Zipf zipf = new Zipf(vocabulary, exponent, new Random(inputSeed));
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder input = new StringBuilder(words[zipf.next()]);
+            for (int j = 1; j < length; j++) {
+                input.append(' ').append(words[zipf.next()]);
+            }
+            inputs[i] = input.toString();
+        }
+        return inputs;
+    }
+
+    /**
+     * Parses a size in bytes.
+     *
+     * @param size a number of bytes, optionally followed by KB, MB or GB
+     *        (powers of 1024), case-insensitive
+     * @return the number of bytes
+     * @throws NumberFormatException if size is not a size
+     */
+    static long parseSize(String size) {
+        String upper = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1L << 10;
+        } else if (upper.endsWith("MB")) {
+            unit = 1L << 20;
+        } else if (upper.endsWith("GB")) {
+            unit = 1L << 30;
+        }
+        String number = unit == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Math.round(Double.parseDouble(number) * unit);
+    }
+
+    /**
+     * Writes a corpus.
+     *
+     * @param args options, as described above
+     * @throws IOException if the corpus cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args, "out", "size", "vocabulary", "exponent", "seed");
+        if (!options.containsKey("out")) {
+            throw new IllegalArgumentException("Missing option --out");
+        }
+        long bytes = parseSize(options.getOrDefault("size", "1MB"));
+        int vocabulary = options.containsKey("vocabulary")
+                ? Integer.parseInt(options.get("vocabulary")) : heapsVocabulary(bytes);
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabulary,
+                Double.parseDouble(options.getOrDefault("exponent", "1")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        long words = corpus.write(new File(options.get("out")), bytes);
+        System.err.println("Wrote " + words + " words over a vocabulary of " + vocabulary);
+    }
+}
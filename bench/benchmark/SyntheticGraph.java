@@ -0,0 +1,136 @@
+package benchmark;
+
+import java.util.Random;
+
+import graph.Graph;
+
+/**
+ * A randomly generated edge list over vertices labelled "v0", "v1", ...,
+ * together with a stream of vertex picks from the same distribution, used to
+ * choose the vertices that benchmarked operations touch.
+ */
+public class SyntheticGraph {
+
+    /**
+     * How the endpoints of edges, and the picked vertices, are distributed.
+     */
+    public enum Distribution {
+        /** Every vertex equally likely. */
+        UNIFORM,
+        /** Vertex ranks drawn from a Zipf distribution with exponent 1, like word frequencies. */
+        ZIPF,
+        /** Every vertex equally likely, with a quarter of all ordered pairs being edges. */
+        DENSE
+    }
+
+    /** Largest number of vertices of a DENSE graph, so that it has at most 250 000 edges. */
+    public static final int MAX_DENSE_VERTICES = 1000;
+
+    private final Distribution distribution;
+    private final String[] labels;
+    private final int[] sources;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] picks;
+
+    // Abstraction function:
+    //   Represents the graph on vertices labels[0 .. labels.length-1] with an edge
+    //   from labels[sources[i]] to labels[targets[i]] of weight weights[i] for each i
+    //   (a later edge between the same vertices replacing an earlier one), and the
+    //   sequence of vertex ids picks
+    // Representation invariant:
+    //   sources, targets and weights have the same length; all ids are in range,
+    //   and all weights are positive
+    // Safety from rep exposure:
+    //   All fields are private and final; arrays are only read through accessors
+
+    /**
+     * Generates a graph.
+     *
+     * @param distribution how edge endpoints are distributed
+     * @param vertices number of vertices, positive; capped at MAX_DENSE_VERTICES if DENSE
+     * @param averageDegree average number of edges per vertex, ignored if DENSE
+     * @param pickCount number of vertex picks to generate
+     * @param seed seed of the random generator, so runs can be repeated
+     */
+    public SyntheticGraph(Distribution distribution, int vertices, int averageDegree, int pickCount, long seed) {
+        this.distribution = distribution;
+        Random random = new Random(seed);
+        int n = distribution == Distribution.DENSE ? Math.min(vertices, MAX_DENSE_VERTICES) : vertices;
+        int edges = distribution == Distribution.DENSE ? n * n / 4 : n * averageDegree;
+        Zipf zipf = distribution == Distribution.ZIPF ? new Zipf(n, 1.0, random) : null;
+        labels = new String[n];
+        for (int id = 0; id < n; id++) {
+            labels[id] = "v" + id;
+        }
+        sources = new int[edges];
+        targets = new int[edges];
+        weights = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            sources[i] = zipf != null ? zipf.next() : random.nextInt(n);
+            targets[i] = zipf != null ? zipf.next() : random.nextInt(n);
+            weights[i] = 1 + random.nextInt(100);
+        }
+        picks = new int[pickCount];
+        for (int i = 0; i < pickCount; i++) {
+            picks[i] = zipf != null ? zipf.next() : random.nextInt(n);
+        }
+    }
+
+    /**
+     * Adds the vertices and edges of this graph to a graph.
+     *
+     * @param graph the graph to fill, usually empty
+     * @return graph
+     */
+    public Graph<String> fill(Graph<String> graph) {
+        for (String label : labels) {
+            graph.add(label);
+        }
+        for (int i = 0; i < sources.length; i++) {
+            graph.set(labels[sources[i]], labels[targets[i]], weights[i]);
+        }
+        return graph;
+    }
+
+    /**
+     * @return the distribution of this graph
+     */
+    public Distribution distribution() {
+        return distribution;
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int vertexCount() {
+        return labels.length;
+    }
+
+    /**
+     * @return the number of generated edges, counting repeated pairs once each
+     */
+    public int edgeCount() {
+        return sources.length;
+    }
+
+    /**
+     * Gets the label of a vertex.
+     *
+     * @param id an id in 0 .. vertexCount()-1
+     * @return its label
+     */
+    public String label(int id) {
+        return labels[id];
+    }
+
+    /**
+     * Gets a picked vertex, cycling through the generated picks.
+     *
+     * @param i any nonnegative index
+     * @return the label of the (i mod pickCount)-th picked vertex
+     */
+    public String pick(int i) {
+        return labels[picks[i % picks.length]];
+    }
+}
@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A sampler of Zipf-distributed ranks: rank k in 1 .. n is drawn with
+ * probability proportional to 1 / k^exponent.
+ */
+public class Zipf {
+
+    private final double[] cumulative;
+    private final Random random;
+
+    // Abstraction function:
+    //   Represents the distribution over 0 .. cumulative.length-1 in which i has
+    //   probability cumulative[i] - cumulative[i-1] (cumulative[-1] = 0), sampled
+    //   with random
+    // Representation invariant:
+    //   cumulative is strictly increasing, and its last element is 1
+    // Safety from rep exposure:
+    //   All fields are private and final; cumulative is never returned
+
+    /**
+     * Constructs a sampler.
+     *
+     * @param n number of ranks, positive
+     * @param exponent exponent of the distribution, nonnegative; 0 is uniform,
+     *        and natural-language word frequencies are close to 1
+     * @param random source of randomness
+     */
+    public Zipf(int n, double exponent, Random random) {
+        if (n <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Bad Zipf parameters: n=" + n + ", exponent=" + exponent);
+        }
+        this.random = random;
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        cumulative[n - 1] = 1;
+    }
+
+    /**
+     * Draws a rank.
+     *
+     * @return a rank in 0 .. n-1, 0 being the most frequent
+     */
+    public int next() {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return i >= 0 ? i : -i - 1;
+    }
+}
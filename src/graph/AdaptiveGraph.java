@@ -0,0 +1,253 @@
+package graph;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A Graph that picks its representation from the size and density of the
+ * graph, and changes it as the graph grows. This is the graph returned by
+ * {@link Graph#empty()}.
+ *
+ * <p>A sparse graph, such as a word affinity graph, is kept in an
+ * {@link IntGraph}. Once a graph of at least {@value #MIN_MATRIX_VERTICES}
+ * and at most {@value #MAX_MATRIX_VERTICES} vertices has an edge between at
+ * least a quarter of all ordered pairs of vertices, it moves to a
+ * {@link MatrixGraph}; it moves back when that falls below a sixteenth, or
+ * when it has fewer than half the least or more than twice the most vertices
+ * of the matrix range. The gaps between the bounds for moving in and out
+ * mean each move is paid for by many mutations.
+ *
+ * <p>Reads are counted too: once there have been as many reads since the last
+ * mutation as there are vertices, enough to pay for copying the graph, reads
+ * are answered from a {@link FrozenGraph} snapshot, which returns views
+ * instead of building a fresh map for every call, until the next mutation.
+ * Collections returned while a snapshot is in use are unmodifiable.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class AdaptiveGraph<L> implements MergeableGraph<L> {
+
+    /** Fewest vertices for which the matrix representation is used. */
+    public static final int MIN_MATRIX_VERTICES = 32;
+    /** Most vertices for which the matrix representation is used. */
+    public static final int MAX_MATRIX_VERTICES = 2048;
+
+    private MergeableGraph<L> graph;
+    private final boolean snapshots;
+    private FrozenGraph<L> snapshot = null;
+    private int vertexCount = 0;
+    private long edgeCount = 0;
+    private int readsSinceWrite = 0;
+
+    // Abstraction function:
+    //   Represents the graph graph; snapshot, if non-null, is a snapshot of it
+    // Representation invariant:
+    //   vertexCount and edgeCount are the numbers of vertices and edges of graph
+    //   graph is a MatrixGraph or an IntGraph; after every mutation, graph is a
+    //     MatrixGraph only if isDense(vertexCount, edgeCount, 16, 2), and an IntGraph
+    //     only if !isDense(vertexCount, edgeCount, 4, 1)
+    //   snapshot is null unless snapshots, and has the same vertices and edges as graph
+    //   readsSinceWrite counts the reads since the last mutation, or since the snapshot
+    //     was taken
+    // Safety from rep exposure:
+    //   All fields are private; graph returns fresh collections, and snapshot
+    //   returns unmodifiable views of an immutable snapshot
+
+    /**
+     * Constructs an empty AdaptiveGraph, with no expectations about the graph
+     * or its workload.
+     */
+    public AdaptiveGraph() {
+        this(0, 0, 0.5);
+    }
+
+    /**
+     * Constructs an empty AdaptiveGraph, picking its initial representation from
+     * hints about the graph. Hints only affect performance: any graph can be
+     * built whatever the hints.
+     *
+     * @param expectedVertices expected number of vertices, nonnegative
+     * @param expectedEdges expected number of edges, nonnegative
+     * @param readFraction expected fraction of calls that are reads (vertices,
+     *        sources, targets) rather than mutations, in [0, 1]; below 1/2,
+     *        reads are never answered from a snapshot
+     */
+    public AdaptiveGraph(int expectedVertices, long expectedEdges, double readFraction) {
+        if (expectedVertices < 0 || expectedEdges < 0 || !(readFraction >= 0 && readFraction <= 1)) {
+            throw new IllegalArgumentException("Bad hints: " + expectedVertices + " vertices, "
+                    + expectedEdges + " edges, read fraction " + readFraction);
+        }
+        snapshots = readFraction >= 0.5;
+        graph = isDense(expectedVertices, expectedEdges, 4, 1)
+                ? new MatrixGraph<>(expectedVertices) : new IntGraph<>(Math.max(expectedVertices, 1));
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the AdaptiveGraph.
+     */
+    private void checkRep() {
+        assert vertexCount >= 0 && edgeCount >= 0;
+        assert snapshot == null || snapshots;
+    }
+
+    /**
+     * Tests whether a graph is in the size range of the matrix representation
+     * and dense enough for it.
+     *
+     * @param vertices number of vertices
+     * @param edges number of edges
+     * @param inverseDensity 1 / the least fraction of ordered pairs of vertices
+     *        that must be edges
+     * @param sizeSlack factor by which the size range is widened:
+     *        MIN_MATRIX_VERTICES / sizeSlack to MAX_MATRIX_VERTICES * sizeSlack
+     * @return true iff the graph should be kept in a matrix
+     */
+    private static boolean isDense(int vertices, long edges, int inverseDensity, int sizeSlack) {
+        return vertices >= MIN_MATRIX_VERTICES / sizeSlack && vertices <= (long) MAX_MATRIX_VERTICES * sizeSlack
+                && edges * inverseDensity >= (long) vertices * vertices;
+    }
+
+    /**
+     * Records a mutation: drops the snapshot, and moves to the other
+     * representation if the graph has crossed its density or size threshold.
+     */
+    private void mutated() {
+        snapshot = null;
+        readsSinceWrite = 0;
+        if (graph instanceof MatrixGraph) {
+            if (!isDense(vertexCount, edgeCount, 16, 2)) {
+                migrate(new IntGraph<>(Math.max(vertexCount, 1)));
+            }
+        } else if (isDense(vertexCount, edgeCount, 4, 1)) {
+            migrate(new MatrixGraph<>(vertexCount));
+        }
+        checkRep();
+    }
+
+    /**
+     * Copies the graph into a new representation and switches to it.
+     *
+     * @param empty the new, empty representation
+     */
+    private void migrate(MergeableGraph<L> empty) {
+        Set<L> vertices = graph.vertices();
+        for (L vertex : vertices) {
+            empty.add(vertex);
+        }
+        for (L source : vertices) {
+            for (Map.Entry<L, Integer> edge : graph.targets(source).entrySet()) {
+                empty.set(source, edge.getKey(), edge.getValue());
+            }
+        }
+        graph = empty;
+    }
+
+    /**
+     * Gets the graph to answer a read from, taking a snapshot once reads have
+     * paid for it.
+     *
+     * @return snapshot if there is one, otherwise graph
+     */
+    private Graph<L> reader() {
+        if (snapshot == null && snapshots && ++readsSinceWrite > vertexCount) {
+            snapshot = new FrozenGraph<>(graph);
+        }
+        return snapshot != null ? snapshot : graph;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        boolean added = graph.add(vertex);
+        if (added) {
+            vertexCount++;
+            mutated();
+        }
+        return added;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight > 0) {
+            addVertices(source, target);
+        }
+        int previous = graph.set(source, target, weight);
+        edgeChanged(previous != 0, weight != 0);
+        return previous;
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator function) {
+        if (value > 0) {
+            // the new weight is positive unless the edge exists, in which case so do the vertices
+            addVertices(source, target);
+        }
+        boolean[] existed = { false };
+        int weight = graph.merge(source, target, value, (current, v) -> {
+            existed[0] = true;
+            return function.applyAsInt(current, v);
+        });
+        edgeChanged(existed[0], weight != 0);
+        return weight;
+    }
+
+    /**
+     * Adds the endpoints of an edge to graph, if they are not there yet.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     */
+    private void addVertices(L source, L target) {
+        if (graph.add(source)) {
+            vertexCount++;
+        }
+        if (graph.add(target)) {
+            vertexCount++;
+        }
+    }
+
+    /**
+     * Records a change to an edge, then records a mutation.
+     *
+     * @param before whether the edge existed before the change
+     * @param after whether the edge exists after the change
+     */
+    private void edgeChanged(boolean before, boolean after) {
+        edgeCount += (after ? 1 : 0) - (before ? 1 : 0);
+        mutated();
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        Map<L, Integer> targets = graph.targets(vertex);
+        Map<L, Integer> sources = graph.sources(vertex);
+        if (!graph.remove(vertex)) {
+            return false;
+        }
+        vertexCount--;
+        edgeCount -= targets.size() + sources.size() - (targets.containsKey(vertex) ? 1 : 0);
+        mutated();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return reader().vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return reader().sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return reader().targets(source);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveGraph{" + graph + (snapshot != null ? ", snapshot" : "") + '}';
+    }
+}
@@ -0,0 +1,47 @@
+package graph;
+
+/**
+ * A graph whose representation invariant checks can be deferred while it is
+ * bulk loaded, so that loading E edges costs O(E) rather than
+ * O(E * size of graph).
+ */
+interface BulkLoadable {
+
+    /**
+     * Stop checking the representation invariant after each mutation.
+     */
+    void deferChecks();
+
+    /**
+     * Check the representation invariant once, and resume checking it after
+     * each mutation.
+     *
+     * @throws RuntimeException or AssertionError if the invariant does not hold
+     */
+    void resumeChecks();
+
+    /**
+     * Make room for the given numbers of vertices and edges beyond those the
+     * graph already has, so that adding them does not grow its internal
+     * structures step by step. A graph whose observers return live views may
+     * keep its structures, so that the views it returned stay live.
+     *
+     * @param vertices expected number of vertices to be added, nonnegative
+     * @param edges expected number of edges to be added, nonnegative
+     */
+    void reserve(int vertices, int edges);
+
+    /**
+     * Compute the initial capacity of a hash-based collection that must hold
+     * the given number of elements without rehashing.
+     *
+     * @param expectedSize expected number of elements, nonnegative
+     * @return an initial capacity for HashMap, HashSet and their linked variants
+     */
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be nonnegative: " + expectedSize);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(expectedSize / 0.75) + 1);
+    }
+}
@@ -0,0 +1,514 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A Graph wrapper that caches the maps returned by {@link #sources(Object)}
+ * and {@link #targets(Object)}, for graphs whose neighbour maps are costly to
+ * build and read far more often than they change.
+ *
+ * <p>The cache holds the neighbour maps of at most {@code capacity} vertices,
+ * evicted by a W-TinyLFU policy: a vertex first enters a small LRU window;
+ * when it leaves the window, it is admitted to the main LRU region only if it
+ * has been read more often than the main region's least recently used vertex,
+ * by an approximate frequency count that halves periodically so that old
+ * popularity fades. A burst of reads of many vertices therefore cannot flush
+ * the popular ones.
+ *
+ * <p>A cached map is an unmodifiable snapshot, returned as is by every read
+ * until a mutation invalidates it: reading it again allocates nothing and does
+ * not scan the graph. {@link #set(Object, Object, int)} and
+ * {@link #merge(Object, Object, int, IntBinaryOperator)} invalidate only the
+ * targets of their source and the sources of their target;
+ * {@link #remove(Object)} invalidates the maps of the vertex and of its
+ * neighbours. The graph must only be modified through this wrapper.
+ *
+ * <p>This wrapper is thread-safe if the wrapped graph is: every operation
+ * holds the wrapper's lock.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class CachingGraph<L> implements MergeableGraph<L> {
+
+    /** Percentage of the capacity given to the LRU window. */
+    private static final int WINDOW_PERCENT = 1;
+
+    private final Graph<L> graph;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final Map<L, Entry<L>> entries = new HashMap<>();
+    private final Entry<L> window = new Entry<>(null);
+    private final Entry<L> main = new Entry<>(null);
+    private final FrequencySketch sketch;
+    private int windowSize = 0;
+    private int mainSize = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    // Abstraction function:
+    //   Represents the graph graph, with the cached neighbour maps of each vertex
+    //   v in entries: entries.get(v).targets and .sources, when not null, are
+    //   copies of graph.targets(v) and graph.sources(v); window and main are the
+    //   sentinels of the circular lists of the entries in each region, from most
+    //   to least recently read
+    // Representation invariant:
+    //   windowCapacity >= 1, mainCapacity >= 0
+    //   every entry of entries is in exactly one of the lists, with inWindow set
+    //     iff it is in window's list
+    //   windowSize and mainSize are the lengths of the lists;
+    //     windowSize <= windowCapacity, mainSize <= mainCapacity
+    //   every cached map is unmodifiable and equal to the graph's current map
+    //   hits, misses, evictions, invalidations >= 0
+    // Safety from rep exposure:
+    //   All fields are private; graph is shared with the caller by design, and
+    //   the maps returned are unmodifiable snapshots, which are never modified.
+    // Thread safety argument:
+    //   Every method that reads or writes the rep is synchronized on this.
+
+    /**
+     * A cached vertex, a node of a region's list.
+     */
+    private static final class Entry<L> {
+
+        private final L vertex;
+        private Map<L, Integer> targets;
+        private Map<L, Integer> sources;
+        private boolean inWindow;
+        private Entry<L> previous = this;
+        private Entry<L> next = this;
+
+        /**
+         * Makes an entry with no cached map, linked to itself, as a list
+         * sentinel is.
+         *
+         * @param vertex the vertex, or null for a sentinel
+         */
+        Entry(L vertex) {
+            this.vertex = vertex;
+        }
+
+        /**
+         * Unlinks this entry from its list.
+         */
+        void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+        }
+
+        /**
+         * Links this unlinked entry at the head of a list.
+         *
+         * @param sentinel sentinel of the list
+         */
+        void linkAfter(Entry<L> sentinel) {
+            previous = sentinel;
+            next = sentinel.next;
+            sentinel.next.previous = this;
+            sentinel.next = this;
+        }
+    }
+
+    /**
+     * An approximate count of how often each vertex was read: a count-min
+     * sketch of 4-bit counters, all halved each time the sketch has been
+     * incremented 10 times per vertex the cache can hold.
+     */
+    private static final class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+        private static final int HASHES = 4;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int resetAt;
+        private int additions = 0;
+
+        // Abstraction function:
+        //   Represents the estimated recent frequency of each key, the least of
+        //   the HASHES counters its hash selects
+        // Representation invariant:
+        //   counters.length == mask + 1, a power of two; each counter in 0 .. MAX_COUNT
+        //   0 <= additions < resetAt
+
+        /**
+         * Makes an empty sketch.
+         *
+         * @param capacity number of vertices the cache can hold
+         */
+        FrequencySketch(int capacity) {
+            int length = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(64L, 8L * capacity) * 2 - 1));
+            counters = new byte[length];
+            mask = length - 1;
+            resetAt = (int) Math.min(Integer.MAX_VALUE, 10L * capacity);
+        }
+
+        /**
+         * Gets the index of one of the counters of a key.
+         *
+         * @param hash spread hash code of the key
+         * @param i which counter, in 0 .. HASHES-1
+         * @return index of the counter
+         */
+        private int index(int hash, int i) {
+            int h = (hash + i * ((hash >>> 16) | 1)) * 0x9E3779B9;
+            return (h ^ h >>> 15) & mask;
+        }
+
+        /**
+         * Spreads the hash code of a key.
+         *
+         * @param key a key, not null
+         * @return a well mixed hash of key
+         */
+        private static int spread(Object key) {
+            int h = key.hashCode() * 0x85EBCA6B;
+            return h ^ h >>> 13;
+        }
+
+        /**
+         * Counts one read of a key.
+         *
+         * @param key the key
+         */
+        void increment(Object key) {
+            int hash = spread(key);
+            for (int i = 0; i < HASHES; i++) {
+                int index = index(hash, i);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                }
+            }
+            if (++additions == resetAt) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions = 0;
+            }
+        }
+
+        /**
+         * Estimates how often a key was read recently.
+         *
+         * @param key the key
+         * @return the estimated count, in 0 .. MAX_COUNT
+         */
+        int frequency(Object key) {
+            int hash = spread(key);
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < HASHES; i++) {
+                frequency = Math.min(frequency, counters[index(hash, i)]);
+            }
+            return frequency;
+        }
+    }
+
+    /**
+     * The hit and miss counts of a cache, as of a snapshot.
+     */
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+
+        // Abstraction function:
+        //   Represents hits reads answered from the cache and misses that were
+        //   not, evictions vertices evicted, invalidations maps invalidated, and
+        //   size vertices cached
+        // Representation invariant:
+        //   all fields >= 0
+        // Safety from rep exposure:
+        //   All fields are private, final and immutable
+
+        /**
+         * Makes a snapshot of counts.
+         *
+         * @param hits reads answered from the cache
+         * @param misses reads that were not
+         * @param evictions vertices evicted or refused by the cache
+         * @param invalidations cached maps dropped by mutations
+         * @param size vertices cached
+         */
+        private Stats(long hits, long misses, long evictions, long invalidations, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+        }
+
+        /**
+         * @return the number of reads of sources() and targets() answered from the cache
+         */
+        public long hits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of reads of sources() and targets() answered from the graph
+         */
+        public long misses() {
+            return misses;
+        }
+
+        /**
+         * @return the fraction of reads answered from the cache, or 0 if there was no read
+         */
+        public double hitRate() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+
+        /**
+         * @return the number of vertices evicted from the cache, or refused
+         *         admission to it, to respect its capacity
+         */
+        public long evictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of cached maps dropped because a mutation changed them
+         */
+        public long invalidations() {
+            return invalidations;
+        }
+
+        /**
+         * @return the number of vertices with cached maps
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                    + ", invalidations=" + invalidations + ", size=" + size + '}';
+        }
+    }
+
+    /**
+     * Wraps a graph, caching the neighbour maps of up to 1024 vertices.
+     *
+     * @param graph the graph to cache; it must only be modified through this wrapper
+     */
+    public CachingGraph(Graph<L> graph) {
+        this(graph, 1024);
+    }
+
+    /**
+     * Wraps a graph.
+     *
+     * @param graph the graph to cache; it must only be modified through this wrapper
+     * @param capacity the largest number of vertices whose neighbour maps are
+     *        cached, positive
+     */
+    public CachingGraph(Graph<L> graph, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.graph = graph;
+        this.windowCapacity = Math.max(1, (int) ((long) capacity * WINDOW_PERCENT / 100));
+        this.mainCapacity = capacity - windowCapacity;
+        this.sketch = new FrequencySketch(capacity);
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the CachingGraph.
+     */
+    private void checkRep() {
+        assert graph != null;
+        assert windowCapacity >= 1 && mainCapacity >= 0;
+        assert windowSize <= windowCapacity && mainSize <= mainCapacity;
+        assert entries.size() == windowSize + mainSize;
+    }
+
+    /**
+     * Takes a snapshot of the cache's counts.
+     *
+     * @return the counts of hits, misses, evictions and invalidations so far
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size());
+    }
+
+    /**
+     * Reads the targets or sources of a vertex, from the cache if they are
+     * there, otherwise from the graph, caching them.
+     *
+     * @param vertex a label
+     * @param isTargets true to read the targets of vertex, false its sources
+     * @return an unmodifiable map equal to graph.targets(vertex), or
+     *         graph.sources(vertex)
+     */
+    private synchronized Map<L, Integer> read(L vertex, boolean isTargets) {
+        sketch.increment(vertex);
+        Entry<L> entry = entries.get(vertex);
+        if (entry != null) {
+            entry.unlink();
+            entry.linkAfter(entry.inWindow ? window : main);
+            Map<L, Integer> cached = isTargets ? entry.targets : entry.sources;
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+        }
+        misses++;
+        Map<L, Integer> map = Collections.unmodifiableMap(
+                new HashMap<>(isTargets ? graph.targets(vertex) : graph.sources(vertex)));
+        if (entry == null) {
+            entry = new Entry<>(vertex);
+            admit(entry);
+        }
+        if (isTargets) {
+            entry.targets = map;
+        } else {
+            entry.sources = map;
+        }
+        checkRep();
+        return map;
+    }
+
+    /**
+     * Adds a new entry to the window, and moves the window's least recently
+     * read entry to the main region if that overflows it, evicting whichever
+     * of that entry and the main region's least recently read one was read
+     * less often.
+     *
+     * @param entry an entry not in the cache
+     */
+    private void admit(Entry<L> entry) {
+        entries.put(entry.vertex, entry);
+        entry.inWindow = true;
+        entry.linkAfter(window);
+        if (++windowSize <= windowCapacity) {
+            return;
+        }
+        Entry<L> candidate = window.previous;
+        candidate.unlink();
+        windowSize--;
+        if (mainSize < mainCapacity) {
+            candidate.inWindow = false;
+            candidate.linkAfter(main);
+            mainSize++;
+            return;
+        }
+        evictions++;
+        Entry<L> victim = main.previous;
+        if (victim != main && sketch.frequency(candidate.vertex) > sketch.frequency(victim.vertex)) {
+            victim.unlink();
+            entries.remove(victim.vertex);
+            candidate.inWindow = false;
+            candidate.linkAfter(main);
+        } else {
+            entries.remove(candidate.vertex);
+        }
+    }
+
+    /**
+     * Drops the cached targets or sources of a vertex, if any.
+     *
+     * @param vertex a label
+     * @param isTargets true to drop the targets of vertex, false its sources
+     */
+    private void invalidate(L vertex, boolean isTargets) {
+        Entry<L> entry = entries.get(vertex);
+        if (entry == null) {
+            return;
+        }
+        if (isTargets && entry.targets != null) {
+            entry.targets = null;
+            invalidations++;
+        } else if (!isTargets && entry.sources != null) {
+            entry.sources = null;
+            invalidations++;
+        }
+    }
+
+    @Override
+    public synchronized boolean add(L vertex) {
+        // a new vertex has no edges, as its cached maps, if any, already say
+        return graph.add(vertex);
+    }
+
+    @Override
+    public synchronized int set(L source, L target, int weight) {
+        int previous = graph.set(source, target, weight);
+        if (previous != weight) {
+            invalidate(source, true);
+            invalidate(target, false);
+        }
+        return previous;
+    }
+
+    @Override
+    public synchronized int merge(L source, L target, int value, IntBinaryOperator function) {
+        int weight;
+        if (graph instanceof MergeableGraph) {
+            weight = ((MergeableGraph<L>) graph).merge(source, target, value, function);
+        } else {
+            Integer previous = graph.targets(source).get(target);
+            weight = previous == null ? value : function.applyAsInt(previous, value);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+            }
+            graph.set(source, target, weight);
+        }
+        invalidate(source, true);
+        invalidate(target, false);
+        return weight;
+    }
+
+    @Override
+    public synchronized boolean remove(L vertex) {
+        // copy the neighbours first, as the graph may return live views
+        List<L> sources = new ArrayList<>(graph.sources(vertex).keySet());
+        List<L> targets = new ArrayList<>(graph.targets(vertex).keySet());
+        if (!graph.remove(vertex)) {
+            return false;
+        }
+        for (L source : sources) {
+            invalidate(source, true);
+        }
+        for (L target : targets) {
+            invalidate(target, false);
+        }
+        invalidate(vertex, true);
+        invalidate(vertex, false);
+        return true;
+    }
+
+    @Override
+    public synchronized Set<L> vertices() {
+        return graph.vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return read(target, false);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return read(source, true);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CachingGraph{" + graph + ", " + stats() + '}';
+    }
+}
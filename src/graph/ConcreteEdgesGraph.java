@@ -3,12 +3,13 @@
  */
 package graph;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.IntBinaryOperator;
 
 /**
  * An implementation of Graph.
@@ -16,61 +17,234 @@ import java.util.Set;
  * <p>
  * PS2 instructions: you MUST use the provided rep.
  */
-public class ConcreteEdgesGraph implements Graph<String> {
+public class ConcreteEdgesGraph implements MergeableGraph<String>, BulkLoadable {
 
-    private final Set<String> vertices = new HashSet<>();
-    private final List<Edge> edges = new ArrayList<>();
+    private Set<String> vertices;
+    private Set<Edge> edges;
+    private Map<String, Map<String, Edge>> edgesBySource;
+    private Map<String, Map<String, Edge>> edgesByTarget;
+    private int vertexCapacity;
+    private int edgeCapacity;
+    private final boolean liveViews;
+    private boolean checksDeferred = false;
+    // Number of vertices and edges the checks below have examined, so that
+    // tests can tell how much a mutation checks
+    long checkedElements = 0;
 
 //     Abstraction function:
 //     Represents a directed graph with labeled vertices and weighted edges.
+//     edgesBySource and edgesByTarget index the same edges by (source, target)
+//     and by (target, source) respectively.
 //     Representation invariant:
 //     - vertices is a set of non-null strings representing unique vertex labels.
-//     - edges is a list of non-null Edge objects.
+//     - edges is an insertion-ordered set of non-null Edge objects.
 //     - The source and target vertices of each edge are in the vertices set.
+//     - edgesBySource.get(s).get(t) is the edge from s to t if it is in edges,
+//       and edgesByTarget.get(t).get(s) is the same Edge object.
+//     - No bucket in edgesBySource or edgesByTarget is empty.
+//     - vertexCapacity >= 0, edgeCapacity >= 0
 //     Safety from rep exposure:
-//     - All fields are private and final.
-//     - Return defensive copies of mutable collections.
+//     - All rep fields are private; checkedElements only counts checks.
+//     - The sets and indexes are only replaced by reserve() when observers
+//       return copies.
+//     - Return defensive copies of mutable collections, or unmodifiable views
+//       if liveViews.
+//     Each mutation checks only the vertex or edge it touched, with
+//     checkVertex() or checkEdge(), so that it costs O(1); checkRep() checks
+//     every edge once when checks resume. All are skipped while checksDeferred.
 
     /**
-     * Checks the representation invariant of the ConcreteEdgesGraph.
+     * Constructs an empty ConcreteEdgesGraph whose observers return copies.
+     */
+    public ConcreteEdgesGraph() {
+        this(false);
+    }
+
+    /**
+     * Constructs an empty ConcreteEdgesGraph.
+     *
+     * @param liveViews if true, vertices(), sources() and targets() return
+     *        unmodifiable views that reflect later changes to the graph,
+     *        instead of copies
+     */
+    public ConcreteEdgesGraph(boolean liveViews) {
+        this(0, 0, liveViews);
+    }
+
+    /**
+     * Constructs an empty ConcreteEdgesGraph with room for the given numbers
+     * of vertices and edges before its sets and indexes have to grow.
+     *
+     * @param expectedVertices the expected number of vertices, nonnegative
+     * @param expectedEdges the expected number of edges, nonnegative
+     * @param liveViews if true, vertices(), sources() and targets() return
+     *        unmodifiable views that reflect later changes to the graph,
+     *        instead of copies
+     */
+    public ConcreteEdgesGraph(int expectedVertices, int expectedEdges, boolean liveViews) {
+        this.vertices = new HashSet<>(BulkLoadable.capacityFor(expectedVertices));
+        this.edges = new LinkedHashSet<>(BulkLoadable.capacityFor(expectedEdges));
+        this.edgesBySource = new HashMap<>(BulkLoadable.capacityFor(expectedVertices));
+        this.edgesByTarget = new HashMap<>(BulkLoadable.capacityFor(expectedVertices));
+        this.vertexCapacity = expectedVertices;
+        this.edgeCapacity = expectedEdges;
+        this.liveViews = liveViews;
+    }
+
+    /**
+     * Makes room for the given numbers of vertices and edges beyond those the
+     * graph already has, unless observers return live views of the vertex set.
+     *
+     * @param vertices the expected number of vertices to be added, nonnegative
+     * @param edges the expected number of edges to be added, nonnegative
+     */
+    @Override
+    public void reserve(int vertices, int edges) {
+        if (vertices < 0 || edges < 0) {
+            throw new IllegalArgumentException("Expected numbers must be nonnegative: " + vertices + ", " + edges);
+        }
+        if (liveViews) {
+            return;
+        }
+        // at least double, as the collections themselves would, so that
+        // repeated reserves cost amortized O(1)
+        long neededVertices = (long) this.vertices.size() + vertices;
+        if (neededVertices > vertexCapacity) {
+            vertexCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(neededVertices, 2L * vertexCapacity));
+            int capacity = BulkLoadable.capacityFor(vertexCapacity);
+            Set<String> grownVertices = new HashSet<>(capacity);
+            grownVertices.addAll(this.vertices);
+            this.vertices = grownVertices;
+            Map<String, Map<String, Edge>> grownBySource = new HashMap<>(capacity);
+            grownBySource.putAll(edgesBySource);
+            edgesBySource = grownBySource;
+            Map<String, Map<String, Edge>> grownByTarget = new HashMap<>(capacity);
+            grownByTarget.putAll(edgesByTarget);
+            edgesByTarget = grownByTarget;
+        }
+        long neededEdges = (long) this.edges.size() + edges;
+        if (neededEdges > edgeCapacity) {
+            edgeCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(neededEdges, 2L * edgeCapacity));
+            Set<Edge> grownEdges = new LinkedHashSet<>(BulkLoadable.capacityFor(edgeCapacity));
+            grownEdges.addAll(this.edges);
+            this.edges = grownEdges;
+        }
+    }
+
+    @Override
+    public void deferChecks() {
+        checksDeferred = true;
+    }
+
+    @Override
+    public void resumeChecks() {
+        checksDeferred = false;
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the ConcreteEdgesGraph, unless
+     * checks are deferred.
      */
     private void checkRep() {
+        boolean assertionsEnabled = false;
+        assert assertionsEnabled = true;
+        if (checksDeferred || !assertionsEnabled) {
+            return;
+        }
         for (Edge edge : edges) {
+            checkedElements++;
             assert vertices.contains(edge.getSource());
             assert vertices.contains(edge.getTarget());
+            assert edgesBySource.get(edge.getSource()).get(edge.getTarget()) == edge;
+            assert edgesByTarget.get(edge.getTarget()).get(edge.getSource()) == edge;
         }
     }
 
+    /**
+     * Checks the part of the representation invariant about one vertex, unless
+     * checks are deferred.
+     *
+     * @param vertex label of a vertex touched by a mutation
+     * @param present whether the mutation left vertex in the graph
+     */
+    private void checkVertex(String vertex, boolean present) {
+        if (checksDeferred) {
+            return;
+        }
+        checkedElements++;
+        assert vertices.contains(vertex) == present;
+        assert present || !edgesBySource.containsKey(vertex) && !edgesByTarget.containsKey(vertex);
+    }
+
+    /**
+     * Checks the part of the representation invariant about one pair of
+     * vertices, unless checks are deferred: their edge, if any, is in edges,
+     * between vertices of the graph, and indexed the same way both ways.
+     *
+     * @param source label of the source of an edge touched by a mutation
+     * @param target label of its target
+     */
+    private void checkEdge(String source, String target) {
+        if (checksDeferred) {
+            return;
+        }
+        checkedElements++;
+        Edge edge = findEdge(source, target);
+        assert bucket(edgesByTarget, target).get(source) == edge;
+        assert edge == null || edges.contains(edge) && vertices.contains(source) && vertices.contains(target);
+    }
+
     @Override
     public boolean add(String vertex) {
         if (vertices.contains(vertex)) {
             return false; // Vertex already exists
         }
         vertices.add(vertex);
-        checkRep();
+        checkVertex(vertex, true);
         return true;
     }
 
     @Override
     public int set(String source, String target, int weight) {
-        Edge newEdge = new Edge(source, target, weight);
-        for (Edge edge : edges) {
-            if (edge.getSource().equals(source) && edge.getTarget().equals(target)) {
-                int previousWeight = edge.getWeight();
-                if (weight != 0) {
-                    edge.setWeight(weight);
-                } else {
-                    edges.remove(edge);
-                }
-                checkRep();
-                return previousWeight;
+        Edge edge = findEdge(source, target);
+        if (edge != null) {
+            int previousWeight = edge.getWeight();
+            if (weight != 0) {
+                edge.setWeight(weight);
+            } else {
+                removeEdge(edge);
             }
+            checkEdge(source, target);
+            return previousWeight;
         }
-        edges.add(newEdge);
-        checkRep();
+        if (weight != 0) {
+            addEdge(new Edge(source, target, weight));
+        }
+        checkEdge(source, target);
         return 0; // No previous edge existed
     }
 
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator function) {
+        Edge edge = findEdge(source, target);
+        int newWeight = edge == null ? value : function.applyAsInt(edge.getWeight(), value);
+        if (newWeight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + newWeight);
+        }
+        if (edge != null && newWeight != 0) {
+            edge.setWeight(newWeight);
+        } else if (edge != null) {
+            removeEdge(edge);
+        } else if (newWeight != 0) {
+            vertices.add(source);
+            vertices.add(target);
+            addEdge(new Edge(source, target, newWeight));
+        }
+        checkEdge(source, target);
+        return newWeight;
+    }
+
     @Override
     public boolean remove(String vertex) {
         if (!vertices.contains(vertex)) {
@@ -78,43 +252,112 @@ public class ConcreteEdgesGraph implements Graph<String> {
         }
 
         // Remove edges pointing to the vertex
-        edges.removeIf(edge -> edge.getTarget().equals(vertex));
+        for (Edge edge : bucket(edgesByTarget, vertex).values().toArray(new Edge[0])) {
+            removeEdge(edge);
+        }
 
         // Remove edges going out from the vertex
-        edges.removeIf(edge -> edge.getSource().equals(vertex));
+        for (Edge edge : bucket(edgesBySource, vertex).values().toArray(new Edge[0])) {
+            removeEdge(edge);
+        }
 
         vertices.remove(vertex);
-        checkRep();
+        checkVertex(vertex, false);
         return true;
     }
 
     @Override
     public Set<String> vertices() {
+        if (liveViews) {
+            return Collections.unmodifiableSet(vertices);
+        }
         return new HashSet<>(vertices);
     }
 
     @Override
     public Map<String, Integer> sources(String target) {
+        if (liveViews) {
+            return new WeightsView<>(() -> bucket(edgesByTarget, target), Edge::getWeight);
+        }
         Map<String, Integer> sourcesMap = new HashMap<>();
-        for (Edge edge : edges) {
-            if (edge.getTarget().equals(target)) {
-                sourcesMap.put(edge.getSource(), edge.getWeight());
-            }
+        for (Edge edge : bucket(edgesByTarget, target).values()) {
+            sourcesMap.put(edge.getSource(), edge.getWeight());
         }
         return sourcesMap;
     }
 
     @Override
     public Map<String, Integer> targets(String source) {
+        if (liveViews) {
+            return new WeightsView<>(() -> bucket(edgesBySource, source), Edge::getWeight);
+        }
         Map<String, Integer> targetsMap = new HashMap<>();
-        for (Edge edge : edges) {
-            if (edge.getSource().equals(source)) {
-                targetsMap.put(edge.getTarget(), edge.getWeight());
-            }
+        for (Edge edge : bucket(edgesBySource, source).values()) {
+            targetsMap.put(edge.getTarget(), edge.getWeight());
         }
         return targetsMap;
     }
 
+    /**
+     * Finds the edge from source to target.
+     *
+     * @param source the source vertex label
+     * @param target the target vertex label
+     * @return the edge from source to target, or null if there is no such edge
+     */
+    private Edge findEdge(String source, String target) {
+        return bucket(edgesBySource, source).get(target);
+    }
+
+    /**
+     * Adds an edge to the edge set and to both indexes.
+     *
+     * @param edge an edge whose (source, target) pair is not yet in the graph
+     */
+    private void addEdge(Edge edge) {
+        edges.add(edge);
+        edgesBySource.computeIfAbsent(edge.getSource(), s -> new HashMap<>()).put(edge.getTarget(), edge);
+        edgesByTarget.computeIfAbsent(edge.getTarget(), t -> new HashMap<>()).put(edge.getSource(), edge);
+    }
+
+    /**
+     * Removes an edge from the edge set and from both indexes, dropping
+     * buckets that become empty.
+     *
+     * @param edge an edge in the graph
+     */
+    private void removeEdge(Edge edge) {
+        edges.remove(edge);
+        unindex(edgesBySource, edge.getSource(), edge.getTarget());
+        unindex(edgesByTarget, edge.getTarget(), edge.getSource());
+    }
+
+    /**
+     * Gets the bucket of edges indexed under a vertex.
+     *
+     * @param index edgesBySource or edgesByTarget
+     * @param vertex the vertex label
+     * @return the bucket for vertex, or an empty map if it has no edges in index
+     */
+    private static Map<String, Edge> bucket(Map<String, Map<String, Edge>> index, String vertex) {
+        return index.getOrDefault(vertex, Collections.emptyMap());
+    }
+
+    /**
+     * Removes an entry from an index, dropping its bucket if it becomes empty.
+     *
+     * @param index edgesBySource or edgesByTarget
+     * @param key the vertex label the bucket is indexed under
+     * @param other the vertex label at the other end of the edge
+     */
+    private static void unindex(Map<String, Map<String, Edge>> index, String key, String other) {
+        Map<String, Edge> bucket = index.get(key);
+        bucket.remove(other);
+        if (bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
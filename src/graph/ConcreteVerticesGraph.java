@@ -4,41 +4,188 @@
 package graph;
 
 import java.util.*;
+import java.util.function.IntBinaryOperator;
 
 /**
  * An implementation of Graph using ConcreteVerticesGraph.
  * @param <String> The type of the graph elements.
  */
-public class ConcreteVerticesGraph implements Graph<String> {
+public class ConcreteVerticesGraph implements MergeableGraph<String>, BulkLoadable {
 
-    private final List<Vertex> vertices = new ArrayList<>();
+    private Map<String, Vertex> vertices;
+    private int vertexCapacity;
+    private final boolean liveViews;
+    private boolean checksDeferred = false;
+    // Number of vertices and edges the checks below have examined, so that
+    // tests can tell how much a mutation checks
+    long checkedElements = 0;
 
     // Abstraction function:
-    //   Represents a graph with a list of vertices and their connections
+    //   Represents a graph with the vertices in vertices.values() (in insertion order)
+    //   and their connections
     // Representation invariant:
     //   No two vertices have the same label
+    //   Each key of vertices is the label of the vertex it maps to
+    //   vertexCapacity >= 0
+    //   u has an outgoing edge to v with weight w iff v has an incoming edge from u with weight w
     // Safety from rep exposure:
-    //   Vertices list is private and final, no direct exposure
+    //   Vertices map is private, no direct exposure; it is only replaced by
+    //   reserve() when observers return copies
+    //   Observers return copies, or unmodifiable views if liveViews
+    // Each mutation checks only the vertex or edge it touched, with checkVertex()
+    // or checkEdge(), so that it costs O(1), and remove() checks the former
+    // neighbours of the vertex with checkRemoved(), in time proportional to the
+    // removal itself; checkRep() checks the whole graph once when checks resume.
+    // All throw RuntimeException on a violation, and are skipped while checksDeferred.
 
     /**
-     * Constructs an empty ConcreteVerticesGraph.
+     * Constructs an empty ConcreteVerticesGraph whose observers return copies.
      */
     public ConcreteVerticesGraph() {
-        // Empty constructor, as the graph starts with no vertices initially
+        this(false);
+    }
+
+    /**
+     * Constructs an empty ConcreteVerticesGraph.
+     * @param liveViews If true, vertices(), sources() and targets() return unmodifiable
+     *        views that reflect later changes to the graph, instead of copies.
+     */
+    public ConcreteVerticesGraph(boolean liveViews) {
+        this(0, liveViews);
     }
 
     /**
-     * Checks the representation invariant of the graph.
-     * Verifies that no two vertices have the same label.
-     * @throws RuntimeException if a duplicate vertex label is found.
+     * Constructs an empty ConcreteVerticesGraph with room for the given number of
+     * vertices before its vertex index has to grow.
+     * @param expectedVertices The expected number of vertices, nonnegative.
+     * @param liveViews If true, vertices(), sources() and targets() return unmodifiable
+     *        views that reflect later changes to the graph, instead of copies.
+     */
+    public ConcreteVerticesGraph(int expectedVertices, boolean liveViews) {
+        this.vertices = new LinkedHashMap<>(BulkLoadable.capacityFor(expectedVertices));
+        this.vertexCapacity = expectedVertices;
+        this.liveViews = liveViews;
+    }
+
+    /**
+     * Makes room for the given number of vertices beyond those the graph
+     * already has, unless observers return live views of the vertex index.
+     * Edges are kept by their source and target vertices, which size their
+     * own maps as they grow.
+     * @param vertices The expected number of vertices to be added, nonnegative.
+     * @param edges The expected number of edges to be added, nonnegative.
+     */
+    @Override
+    public void reserve(int vertices, int edges) {
+        if (vertices < 0 || edges < 0) {
+            throw new IllegalArgumentException("Expected numbers must be nonnegative: " + vertices + ", " + edges);
+        }
+        long needed = (long) this.vertices.size() + vertices;
+        if (liveViews || needed <= vertexCapacity) {
+            return;
+        }
+        // at least double, as the map itself would, so that repeated reserves cost amortized O(1)
+        vertexCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * vertexCapacity));
+        Map<String, Vertex> grown = new LinkedHashMap<>(BulkLoadable.capacityFor(vertexCapacity));
+        grown.putAll(this.vertices);
+        this.vertices = grown;
+    }
+
+    @Override
+    public void deferChecks() {
+        checksDeferred = true;
+    }
+
+    @Override
+    public void resumeChecks() {
+        checksDeferred = false;
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the graph, unless checks are deferred.
+     * Verifies that no two vertices have the same label, i.e. that every vertex
+     * is indexed under its own label.
+     * @throws RuntimeException if a vertex is indexed under a different label.
      */
     private void checkRep() {
-        Set<String> labels = new HashSet<>();
-        for (Vertex vertex : vertices) {
-            if (labels.contains(vertex.getLabel())) {
-                throw new RuntimeException("Duplicate vertex label found: " + vertex.getLabel());
+        if (checksDeferred) {
+            return;
+        }
+        for (Map.Entry<String, Vertex> entry : vertices.entrySet()) {
+            checkedElements++;
+            if (!entry.getKey().equals(entry.getValue().getLabel())) {
+                throw new RuntimeException("Vertex " + entry.getValue().getLabel()
+                        + " indexed under label " + entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Checks the part of the representation invariant about one vertex, unless
+     * checks are deferred: that it is indexed under its own label.
+     * @param label The label of a vertex touched by a mutation.
+     * @throws RuntimeException if the vertex is indexed under a different label.
+     */
+    private void checkVertex(String label) {
+        if (checksDeferred) {
+            return;
+        }
+        checkedElements++;
+        Vertex vertex = vertices.get(label);
+        if (vertex != null && !label.equals(vertex.getLabel())) {
+            throw new RuntimeException("Vertex " + vertex.getLabel() + " indexed under label " + label);
+        }
+    }
+
+    /**
+     * Checks the part of the representation invariant about one edge, unless
+     * checks are deferred: that its endpoints are indexed under their labels,
+     * and that the source's outgoing weight and the target's incoming weight agree.
+     * @param source The source vertex of an edge touched by a mutation.
+     * @param target The target vertex of the edge.
+     * @throws RuntimeException if an endpoint is indexed under a different label,
+     *         or the weights at the ends of the edge differ.
+     */
+    private void checkEdge(String source, String target) {
+        if (checksDeferred) {
+            return;
+        }
+        checkVertex(source);
+        checkVertex(target);
+        checkedElements++;
+        Vertex sourceVertex = vertices.get(source);
+        Vertex targetVertex = vertices.get(target);
+        if (sourceVertex != null && targetVertex != null
+                && sourceVertex.getWeight(target) != targetVertex.sourcesView().getOrDefault(source, 0)) {
+            throw new RuntimeException("Edge " + source + " -> " + target + " has different weights at its ends");
+        }
+    }
+
+    /**
+     * Checks the part of the representation invariant about a removed vertex,
+     * unless checks are deferred: that it is no longer indexed, and that none of
+     * its former neighbours still has an edge from or to it.
+     * @param label The label of the vertex removed by a mutation.
+     * @param neighbours The labels of the vertices it had an edge from or to.
+     * @throws RuntimeException if the vertex is still indexed, a neighbour still
+     *         refers to it, or a neighbour is indexed under a different label.
+     */
+    private void checkRemoved(String label, Set<String> neighbours) {
+        if (checksDeferred) {
+            return;
+        }
+        checkedElements++;
+        if (vertices.containsKey(label)) {
+            throw new RuntimeException("Removed vertex " + label + " is still indexed");
+        }
+        for (String neighbour : neighbours) {
+            checkVertex(neighbour);
+            checkedElements++;
+            Vertex vertex = vertices.get(neighbour);
+            if (vertex != null && (vertex.getWeight(label) != 0 || vertex.sourcesView().containsKey(label))) {
+                throw new RuntimeException("Vertex " + neighbour + " still has an edge with removed vertex " + label);
             }
-            labels.add(vertex.getLabel());
         }
     }
 
@@ -50,8 +197,8 @@ public class ConcreteVerticesGraph implements Graph<String> {
     @Override
     public boolean add(String vertex) {
         if (!containsVertex(vertex)) {
-            vertices.add(new Vertex(vertex));
-            checkRep();
+            vertices.put(vertex, new Vertex(vertex));
+            checkVertex(vertex);
             return true;
         }
         return false;
@@ -73,16 +220,53 @@ public class ConcreteVerticesGraph implements Graph<String> {
             throw new IllegalArgumentException("Source or target vertex not found");
         }
 
-        int previousWeight = sourceVertex.getEdges().getOrDefault(target, 0);
+        int previousWeight = sourceVertex.getWeight(target);
         if (weight != 0) {
             sourceVertex.addEdge(target, weight);
+            targetVertex.addSource(source, weight);
         } else {
             sourceVertex.removeEdge(target);
+            targetVertex.removeSource(source);
         }
-        checkRep();
+        checkEdge(source, target);
         return previousWeight;
     }
 
+    /**
+     * Combines a value into the weight of an edge between source and target vertices,
+     * adding the vertices if they do not exist.
+     * @param source The source vertex.
+     * @param target The target vertex.
+     * @param value The value to combine into the weight of the edge.
+     * @param function The function combining the current weight and value.
+     * @return the new weight of the edge, or zero if there is no longer such an edge.
+     */
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator function) {
+        Vertex sourceVertex = findVertex(source);
+        if (sourceVertex == null) {
+            // No edge from source yet, so the new weight is value
+            if (value <= 0) {
+                return Vertex.checkWeight(value);
+            }
+            add(source);
+            sourceVertex = findVertex(source);
+        }
+        int newWeight = sourceVertex.mergeEdge(target, value, function);
+        Vertex targetVertex = findVertex(target);
+        if (newWeight != 0) {
+            if (targetVertex == null) {
+                add(target);
+                targetVertex = findVertex(target);
+            }
+            targetVertex.addSource(source, newWeight);
+        } else if (targetVertex != null) {
+            targetVertex.removeSource(source);
+        }
+        checkEdge(source, target);
+        return newWeight;
+    }
+
     /**
      * Removes a vertex from the graph.
      * @param vertex The vertex to be removed.
@@ -90,13 +274,23 @@ public class ConcreteVerticesGraph implements Graph<String> {
      */
     @Override
     public boolean remove(String vertex) {
-        Vertex toRemove = findVertex(vertex);
+        Vertex toRemove = vertices.remove(vertex);
         if (toRemove != null) {
-            vertices.remove(toRemove);
-            for (Vertex v : vertices) {
-                v.removeEdge(vertex);
+            // Only neighbours can refer to the removed vertex; a self-loop needs no cleanup
+            Set<String> neighbours = new HashSet<>();
+            for (String source : toRemove.getSourceLabels()) {
+                if (!source.equals(vertex)) {
+                    vertices.get(source).removeEdge(vertex);
+                    neighbours.add(source);
+                }
+            }
+            for (String target : toRemove.getTargetLabels()) {
+                if (!target.equals(vertex)) {
+                    vertices.get(target).removeSource(vertex);
+                    neighbours.add(target);
+                }
             }
-            checkRep();
+            checkRemoved(vertex, neighbours);
             return true;
         }
         return false;
@@ -108,11 +302,10 @@ public class ConcreteVerticesGraph implements Graph<String> {
      */
     @Override
     public Set<String> vertices() {
-        Set<String> labels = new HashSet<>();
-        for (Vertex vertex : vertices) {
-            labels.add(vertex.getLabel());
+        if (liveViews) {
+            return Collections.unmodifiableSet(vertices.keySet());
         }
-        return labels;
+        return new HashSet<>(vertices.keySet());
     }
 
     /**
@@ -122,13 +315,17 @@ public class ConcreteVerticesGraph implements Graph<String> {
      */
     @Override
     public Map<String, Integer> sources(String target) {
-        Map<String, Integer> sources = new HashMap<>();
-        for (Vertex vertex : vertices) {
-            if (vertex.getEdges().containsKey(target)) {
-                sources.put(vertex.getLabel(), vertex.getEdges().get(target));
-            }
+        if (liveViews) {
+            return new WeightsView<>(() -> {
+                Vertex targetVertex = findVertex(target);
+                return targetVertex == null ? Collections.emptyMap() : targetVertex.sourcesView();
+            }, Integer::intValue);
+        }
+        Vertex targetVertex = findVertex(target);
+        if (targetVertex != null) {
+            return targetVertex.getSources();
         }
-        return sources;
+        return Collections.emptyMap();
     }
 
     /**
@@ -138,6 +335,12 @@ public class ConcreteVerticesGraph implements Graph<String> {
      */
     @Override
     public Map<String, Integer> targets(String source) {
+        if (liveViews) {
+            return new WeightsView<>(() -> {
+                Vertex sourceVertex = findVertex(source);
+                return sourceVertex == null ? Collections.emptyMap() : sourceVertex.edgesView();
+            }, Integer::intValue);
+        }
         Vertex sourceVertex = findVertex(source);
         if (sourceVertex != null) {
             return sourceVertex.getEdges();
@@ -160,12 +363,7 @@ public class ConcreteVerticesGraph implements Graph<String> {
      * @return the found vertex or null if not found.
      */
     private Vertex findVertex(String label) {
-        for (Vertex vertex : vertices) {
-            if (vertex.getLabel().equals(label)) {
-                return vertex;
-            }
-        }
-        return null;
+        return vertices.get(label);
     }
 
     /**
@@ -175,7 +373,7 @@ public class ConcreteVerticesGraph implements Graph<String> {
     @Override
     public String toString() {
         return "ConcreteVerticesGraph{" +
-                "vertices=" + vertices +
+                "vertices=" + vertices.values() +
                 '}';
     }
 }
@@ -189,11 +387,13 @@ public class ConcreteVerticesGraph implements Graph<String> {
 class Vertex {
     private final String label;
     private final Map<String, Integer> edges; // Mapping from target vertex label to edge weight
+    private final Map<String, Integer> sources; // Mapping from source vertex label to edge weight
 
     // Abstraction function:
-    //   Represents a vertex with a unique label and outgoing edges to other vertices with their weights
+    //   Represents a vertex with a unique label, outgoing edges to other vertices with their weights
+    //   and incoming edges from other vertices with their weights
     // Representation invariant:
-    //   label != null, edges != null
+    //   label != null, edges != null, sources != null
     // Safety from rep exposure:
     //   Fields are private and immutable
     
@@ -204,6 +404,7 @@ class Vertex {
     public Vertex(String label) {
         this.label = label;
         this.edges = new HashMap<>();
+        this.sources = new HashMap<>();
     }
     
     /**
@@ -214,6 +415,7 @@ class Vertex {
     private void checkRep() {
         assert label != null : "Vertex label cannot be null";
         assert edges != null : "Edges map cannot be null";
+        assert sources != null : "Sources map cannot be null";
     }
 
     /**
@@ -235,6 +437,66 @@ class Vertex {
         checkRep();
     }
 
+    /**
+     * Records an incoming edge to this vertex from another with a specified weight.
+     * @param source The source vertex.
+     * @param weight The weight of the edge.
+     */
+    public void addSource(String source, int weight) {
+        sources.put(source, weight);
+        checkRep();
+    }
+
+    /**
+     * Removes the record of an incoming edge to this vertex from another.
+     * @param source The source vertex.
+     */
+    public void removeSource(String source) {
+        sources.remove(source);
+        checkRep();
+    }
+
+    /**
+     * Combines a value into the weight of the outgoing edge from this vertex to another,
+     * removing the edge if the new weight is zero.
+     * @param target The target vertex.
+     * @param value The new weight if there is no such edge, otherwise combined with the
+     *        current weight by function.
+     * @param function The function combining the current weight and value.
+     * @return the new weight of the edge.
+     * @throws IllegalArgumentException if the new weight would be negative.
+     */
+    public int mergeEdge(String target, int value, IntBinaryOperator function) {
+        Integer newWeight = edges.compute(target, (t, weight) -> {
+            int result = checkWeight(weight == null ? value : function.applyAsInt(weight, value));
+            return result == 0 ? null : result;
+        });
+        checkRep();
+        return newWeight == null ? 0 : newWeight;
+    }
+
+    /**
+     * Checks that a weight is nonnegative.
+     * @param weight The weight to check.
+     * @return weight.
+     * @throws IllegalArgumentException if weight is negative.
+     */
+    static int checkWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Retrieves the weight of the outgoing edge from this vertex to another.
+     * @param target The target vertex.
+     * @return the weight of the edge, or zero if there is no such edge.
+     */
+    public int getWeight(String target) {
+        return edges.getOrDefault(target, 0);
+    }
+
     /**
      * Retrieves all outgoing edges from this vertex.
      * @return a map of target vertices and their edge weights.
@@ -243,6 +505,46 @@ class Vertex {
         return new HashMap<>(edges); // Return a copy to avoid exposing internal representation
     }
 
+    /**
+     * Retrieves all incoming edges to this vertex.
+     * @return a map of source vertices and their edge weights.
+     */
+    public Map<String, Integer> getSources() {
+        return new HashMap<>(sources); // Return a copy to avoid exposing internal representation
+    }
+
+    /**
+     * Retrieves all outgoing edges from this vertex without copying them.
+     * @return an unmodifiable view of the map of target vertices and their edge weights.
+     */
+    public Map<String, Integer> edgesView() {
+        return Collections.unmodifiableMap(edges);
+    }
+
+    /**
+     * Retrieves all incoming edges to this vertex without copying them.
+     * @return an unmodifiable view of the map of source vertices and their edge weights.
+     */
+    public Map<String, Integer> sourcesView() {
+        return Collections.unmodifiableMap(sources);
+    }
+
+    /**
+     * Retrieves the labels of the targets of outgoing edges from this vertex.
+     * @return a snapshot of the target labels, safe to iterate while the graph is modified.
+     */
+    List<String> getTargetLabels() {
+        return new ArrayList<>(edges.keySet());
+    }
+
+    /**
+     * Retrieves the labels of the sources of incoming edges to this vertex.
+     * @return a snapshot of the source labels, safe to iterate while the graph is modified.
+     */
+    List<String> getSourceLabels() {
+        return new ArrayList<>(sources.keySet());
+    }
+
     /**
      * Retrieves the label of this vertex.
      * @return the label of the vertex.
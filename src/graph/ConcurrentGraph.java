@@ -0,0 +1,424 @@
+package graph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A thread-safe implementation of Graph.
+ *
+ * <p>Vertices live in a concurrent map, and each vertex keeps concurrent maps
+ * of its outgoing and incoming edges. Both maps of an edge share one atomic
+ * weight cell, so a weight change is a single compare-and-set that is seen
+ * from both ends.
+ *
+ * <p>Writers lock a stripe chosen by the source vertex, so {@code set} calls
+ * on sources in different stripes never contend, and changing the weight of
+ * an existing edge, with {@code set} or {@code merge}, takes no lock at all.
+ * {@code remove} locks every stripe.
+ * Mutations are linearizable. Readers never block; {@link #vertices()},
+ * {@link #sources(String)} and {@link #targets(String)} return copies that are
+ * weakly consistent with mutations running at the same time.
+ */
+public class ConcurrentGraph implements MergeableGraph<String> {
+
+    private final ConcurrentMap<String, ConcurrentVertex> vertices = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+
+    // Abstraction function:
+    //   Represents the graph whose vertices are the keys of vertices, with an edge from
+    //   s to t with weight w iff vertices.get(s).targets maps t to a cell holding w.
+    //   vertices.get(t).sources maps s to the same cell.
+    // Representation invariant:
+    //   each key of vertices is the label of the vertex it maps to
+    //   a cell is in the maps iff it holds a positive weight; a cell is only ever set
+    //     to zero while it is being removed from the maps, and then never reused
+    //   edges only join vertices in vertices
+    //   stripes.length is a power of two
+    // Thread safety argument:
+    //   vertices and the edge maps are concurrent maps, and weights are atomic cells.
+    //   Edges are created or removed only while holding the stripe of their source,
+    //     and vertices are removed only while holding every stripe, so no two writers
+    //     ever update the same edge maps entry at once.
+    //   A weight is changed without a lock only by compare-and-set from a positive
+    //     weight, which fails once a remover has zeroed the cell.
+    // Safety from rep exposure:
+    //   All fields are private and final; observers return fresh collections.
+
+    /**
+     * Constructs an empty ConcurrentGraph with a number of lock stripes suited
+     * to the number of available processors.
+     */
+    public ConcurrentGraph() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty ConcurrentGraph.
+     *
+     * @param concurrencyLevel expected number of concurrently writing threads,
+     *        positive; rounded up to a power of two to give the number of stripes
+     */
+    public ConcurrentGraph(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+        }
+        int count = Integer.highestOneBit(concurrencyLevel * 2 - 1);
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Checks the representation invariant of the ConcurrentGraph.
+     * Only the parts that cannot be observed mid-update by concurrent readers
+     * are checked.
+     */
+    private void checkRep() {
+        assert Integer.bitCount(stripes.length) == 1;
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return vertices.putIfAbsent(vertex, new ConcurrentVertex(vertex)) == null;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        if (checkWeight(weight) != 0) {
+            // Fast path: replace the weight of a live edge without locking
+            ConcurrentVertex sourceVertex = vertices.get(source);
+            AtomicInteger cell = sourceVertex == null ? null : sourceVertex.getTarget(target);
+            if (cell != null) {
+                for (int previous = cell.get(); previous != 0; previous = cell.get()) {
+                    if (cell.compareAndSet(previous, weight)) {
+                        return previous;
+                    }
+                }
+            }
+        }
+
+        ReentrantLock lock = stripeOf(source);
+        lock.lock();
+        try {
+            int previous = weight == 0 ? removeEdge(source, target) : putEdge(source, target, weight);
+            checkRep();
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Merging into an existing edge without removing it is lock-free.
+     */
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator function) {
+        ConcurrentVertex sourceVertex = vertices.get(source);
+        AtomicInteger cell = sourceVertex == null ? null : sourceVertex.getTarget(target);
+        if (cell != null) {
+            for (int previous = cell.get(); previous != 0; previous = cell.get()) {
+                int weight = checkWeight(function.applyAsInt(previous, value));
+                if (weight == 0) {
+                    break; // removing the edge needs the lock
+                }
+                if (cell.compareAndSet(previous, weight)) {
+                    return weight;
+                }
+            }
+        }
+
+        ReentrantLock lock = stripeOf(source);
+        lock.lock();
+        try {
+            int weight = mergeLocked(source, target, value, function);
+            checkRep();
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Merges a value into the weight of an edge, as merge.
+     * Requires the stripe of source to be held.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param value value to combine into the weight of the edge
+     * @param function function from the current weight and value to the new weight
+     * @return the new weight of the edge
+     */
+    private int mergeLocked(String source, String target, int value, IntBinaryOperator function) {
+        while (true) {
+            ConcurrentVertex sourceVertex = vertices.get(source);
+            AtomicInteger cell = sourceVertex == null ? null : sourceVertex.getTarget(target);
+            if (cell == null) {
+                int weight = checkWeight(value);
+                if (weight != 0) {
+                    putEdge(source, target, weight);
+                }
+                return weight;
+            }
+            // the cell is live while the stripe is held, but lock-free merges may still change it
+            int previous = cell.get();
+            int weight = checkWeight(function.applyAsInt(previous, value));
+            if (cell.compareAndSet(previous, weight)) {
+                if (weight == 0) {
+                    sourceVertex.removeTarget(target);
+                    vertices.get(target).removeSource(source);
+                }
+                return weight;
+            }
+        }
+    }
+
+    /**
+     * Checks that a weight is nonnegative.
+     *
+     * @param weight the weight to check
+     * @return weight
+     * @throws IllegalArgumentException if weight is negative
+     */
+    private static int checkWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Adds or updates an edge, adding its endpoints if needed.
+     * Requires the stripe of source to be held.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param weight positive weight of the edge
+     * @return the previous weight of the edge, or zero if there was no such edge
+     */
+    private int putEdge(String source, String target, int weight) {
+        ConcurrentVertex sourceVertex = vertices.computeIfAbsent(source, ConcurrentVertex::new);
+        ConcurrentVertex targetVertex = vertices.computeIfAbsent(target, ConcurrentVertex::new);
+        AtomicInteger cell = sourceVertex.getTarget(target);
+        if (cell != null) {
+            // cells in the maps are live while the stripe is held
+            return cell.getAndSet(weight);
+        }
+        cell = new AtomicInteger(weight);
+        targetVertex.putSource(source, cell);
+        sourceVertex.putTarget(target, cell);
+        return 0;
+    }
+
+    /**
+     * Removes an edge if it exists. Requires the stripe of source to be held.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @return the previous weight of the edge, or zero if there was no such edge
+     */
+    private int removeEdge(String source, String target) {
+        ConcurrentVertex sourceVertex = vertices.get(source);
+        AtomicInteger cell = sourceVertex == null ? null : sourceVertex.removeTarget(target);
+        if (cell == null) {
+            return 0;
+        }
+        vertices.get(target).removeSource(source);
+        return cell.getAndSet(0);
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            ConcurrentVertex removed = vertices.remove(vertex);
+            if (removed == null) {
+                return false;
+            }
+            for (Map.Entry<String, AtomicInteger> edge : removed.targetCells().entrySet()) {
+                edge.getValue().set(0);
+                if (!edge.getKey().equals(vertex)) {
+                    vertices.get(edge.getKey()).removeSource(vertex);
+                }
+            }
+            for (Map.Entry<String, AtomicInteger> edge : removed.sourceCells().entrySet()) {
+                edge.getValue().set(0);
+                if (!edge.getKey().equals(vertex)) {
+                    vertices.get(edge.getKey()).removeTarget(vertex);
+                }
+            }
+            checkRep();
+            return true;
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return new HashSet<>(vertices.keySet());
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        ConcurrentVertex vertex = vertices.get(target);
+        return vertex == null ? new HashMap<>() : weights(vertex.sourceCells());
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        ConcurrentVertex vertex = vertices.get(source);
+        return vertex == null ? new HashMap<>() : weights(vertex.targetCells());
+    }
+
+    /**
+     * Copies the live weights out of a map of cells.
+     *
+     * @param cells an edge map of some vertex
+     * @return a new map from each label whose cell holds a positive weight to that weight
+     */
+    private static Map<String, Integer> weights(Map<String, AtomicInteger> cells) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> edge : cells.entrySet()) {
+            int weight = edge.getValue().get();
+            if (weight != 0) {
+                weights.put(edge.getKey(), weight);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Gets the lock stripe guarding the edges from a vertex.
+     *
+     * @param source a label
+     * @return the stripe for source
+     */
+    private ReentrantLock stripeOf(String source) {
+        int h = source.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentGraph{vertices=" + vertices.keySet() + '}';
+    }
+}
+
+/**
+ * A vertex of a ConcurrentGraph with its incoming and outgoing edges.
+ * This class is internal to the rep of ConcurrentGraph.
+ */
+class ConcurrentVertex {
+
+    private final String label;
+    private final ConcurrentMap<String, AtomicInteger> targets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> sources = new ConcurrentHashMap<>();
+
+    // Abstraction function:
+    //   Represents the vertex label with an outgoing edge to each key of targets and
+    //   an incoming edge from each key of sources, weighted by the value of its cell
+    // Representation invariant:
+    //   label != null
+    // Thread safety argument:
+    //   label is immutable, and the edge maps are concurrent maps
+    // Safety from rep exposure:
+    //   The edge maps are only exposed to ConcurrentGraph, which shares their cells
+
+    /**
+     * Constructs a vertex with no edges.
+     *
+     * @param label the label of the vertex
+     */
+    ConcurrentVertex(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the cell of an outgoing edge.
+     *
+     * @param target label of the target vertex
+     * @return the cell of the edge to target, or null if there is none
+     */
+    AtomicInteger getTarget(String target) {
+        return targets.get(target);
+    }
+
+    /**
+     * Records an outgoing edge.
+     *
+     * @param target label of the target vertex
+     * @param cell the weight cell of the edge
+     */
+    void putTarget(String target, AtomicInteger cell) {
+        targets.put(target, cell);
+    }
+
+    /**
+     * Removes an outgoing edge.
+     *
+     * @param target label of the target vertex
+     * @return the cell of the removed edge, or null if there was none
+     */
+    AtomicInteger removeTarget(String target) {
+        return targets.remove(target);
+    }
+
+    /**
+     * Records an incoming edge.
+     *
+     * @param source label of the source vertex
+     * @param cell the weight cell of the edge
+     */
+    void putSource(String source, AtomicInteger cell) {
+        sources.put(source, cell);
+    }
+
+    /**
+     * Removes an incoming edge.
+     *
+     * @param source label of the source vertex
+     */
+    void removeSource(String source) {
+        sources.remove(source);
+    }
+
+    /**
+     * Gets the outgoing edges of this vertex.
+     *
+     * @return the live map from target labels to weight cells
+     */
+    Map<String, AtomicInteger> targetCells() {
+        return targets;
+    }
+
+    /**
+     * Gets the incoming edges of this vertex.
+     *
+     * @return the live map from source labels to weight cells
+     */
+    Map<String, AtomicInteger> sourceCells() {
+        return sources;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentVertex{label='" + label + "', targets=" + targets.keySet() + '}';
+    }
+}
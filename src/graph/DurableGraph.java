@@ -0,0 +1,478 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntBinaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * A Graph wrapper that makes the mutations of a graph durable, with a
+ * write-ahead log and checkpoints kept in a directory.
+ *
+ * <p>Each mutation that changes the graph is applied to the wrapped graph and
+ * appended to the log, {@code wal.log}. Records are collected in a buffer and
+ * written to the log in batches, and the log is forced to disk once per
+ * group of records: when the group reaches a number of records, when a
+ * mutation comes in after the group's time limit has passed, and on
+ * {@link #sync()} and {@link #close()}. A mutation is therefore durable once
+ * its group has been synced; a crash loses at most the last unsynced group.
+ *
+ * <p>When the log grows past a size limit, and on {@link #checkpoint()}, the
+ * whole graph is written to {@code checkpoint.graph} in the MappedGraph
+ * format and the log is truncated. Opening a DurableGraph on a directory
+ * recovers the graph from the checkpoint plus the log written after it, and
+ * drops a torn record at the end of the log. Every logged mutation sets an
+ * absolute state ({@code merge} is logged as a {@code set} of the merged
+ * weight), so replaying log records that a checkpoint already contains, after
+ * a crash between writing the checkpoint and truncating the log, gives the
+ * same graph.
+ *
+ * <p>Methods throw UncheckedIOException if the log or checkpoint cannot be
+ * written; the wrapped graph may then hold a mutation that is not logged.
+ * A DurableGraph is not thread-safe.
+ */
+public class DurableGraph implements MergeableGraph<String>, Closeable {
+
+    /** Name of the log file in the directory. */
+    public static final String LOG_FILE = "wal.log";
+    /** Name of the checkpoint file in the directory. */
+    public static final String CHECKPOINT_FILE = "checkpoint.graph";
+
+    private static final byte ADD = 1;
+    private static final byte SET = 2;
+    private static final byte REMOVE = 3;
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int BATCH_BYTES = 1 << 16;
+
+    private static final int DEFAULT_GROUP_RECORDS = 1024;
+    private static final long DEFAULT_GROUP_MILLIS = 10;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private final Graph<String> graph;
+    private final File directory;
+    private final int groupRecords;
+    private final long groupNanos;
+    private final long checkpointBytes;
+    private final FileChannel log;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long logBytes;
+    private int unsyncedRecords;
+    private long groupStart;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   Represents the graph graph. Its durable state is the checkpoint in directory,
+    //   if any, followed by the records of log (the first logBytes - batch.position()
+    //   bytes of it on disk, then the records in batch) that have been forced to disk.
+    // Representation invariant:
+    //   replaying the checkpoint and then every record in log and batch gives graph
+    //   logBytes is the size of the log including the records in batch
+    //   unsyncedRecords is the number of records appended since the log was last forced,
+    //     and groupStart is the System.nanoTime() of the first of them
+    //   groupRecords > 0, groupNanos >= 0, checkpointBytes > 0
+    // Safety from rep exposure:
+    //   All fields are private; graph is owned by this wrapper once it is constructed,
+    //   and observers return what graph returns, which its spec makes safe to return
+
+    /**
+     * Opens a durable graph with default group commit and checkpoint limits:
+     * groups of up to 1024 records or 10 ms, and checkpoints when the log
+     * reaches 64 MiB.
+     *
+     * @param graph an empty graph to hold the vertices and edges; the caller
+     *        must not use it directly afterwards
+     * @param directory an existing directory for the log and checkpoint; if it
+     *        holds them already, the graph is recovered from them
+     * @throws IOException if the log or checkpoint cannot be read or created
+     */
+    public DurableGraph(Graph<String> graph, File directory) throws IOException {
+        this(graph, directory, DEFAULT_GROUP_RECORDS, DEFAULT_GROUP_MILLIS, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Opens a durable graph.
+     *
+     * @param graph an empty graph to hold the vertices and edges; the caller
+     *        must not use it directly afterwards
+     * @param directory an existing directory for the log and checkpoint; if it
+     *        holds them already, the graph is recovered from them
+     * @param groupRecords maximum number of records per forced group, positive;
+     *        1 forces the log after every mutation
+     * @param groupMillis maximum age in milliseconds of the first record of a
+     *        group before the group is forced, nonnegative
+     * @param checkpointBytes log size in bytes at which a checkpoint is taken, positive
+     * @throws IOException if the log or checkpoint cannot be read or created
+     */
+    public DurableGraph(Graph<String> graph, File directory, int groupRecords, long groupMillis,
+            long checkpointBytes) throws IOException {
+        if (groupRecords <= 0 || groupMillis < 0 || checkpointBytes <= 0) {
+            throw new IllegalArgumentException("Group and checkpoint limits must be positive");
+        }
+        if (!graph.vertices().isEmpty()) {
+            throw new IllegalArgumentException("Graph to recover into must be empty");
+        }
+        this.graph = graph;
+        this.directory = directory;
+        this.groupRecords = groupRecords;
+        this.groupNanos = TimeUnit.MILLISECONDS.toNanos(groupMillis);
+        this.checkpointBytes = checkpointBytes;
+
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if (checkpoint.exists()) {
+            MappedGraph.open(checkpoint).copyInto(graph);
+        }
+        log = FileChannel.open(new File(directory, LOG_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logBytes = replay();
+        // drop a torn or corrupt tail, so new records follow the last good one
+        log.truncate(logBytes);
+        log.position(logBytes);
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the DurableGraph, except for the
+     * replay equivalence, which would mean reading back the whole log.
+     */
+    private void checkRep() {
+        assert logBytes >= batch.position();
+        assert unsyncedRecords >= 0;
+    }
+
+    /**
+     * Applies the records of the log to graph, up to the first one that is
+     * incomplete or fails its checksum.
+     *
+     * @return the length of the log up to the end of the last good record
+     * @throws IOException if the log cannot be read
+     */
+    private long replay() throws IOException {
+        long size = log.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        long position = 0;
+        while (position + RECORD_HEADER <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + RECORD_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + RECORD_HEADER);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            payload.flip();
+            apply(payload);
+            position += RECORD_HEADER + length;
+        }
+        return position;
+    }
+
+    /**
+     * Reads bytes of the log until a buffer is full.
+     *
+     * @param buffer buffer to fill
+     * @param position position in the log of the first byte to read
+     * @throws IOException if the log cannot be read or ends first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Applies one log record to graph.
+     *
+     * @param payload the payload of a record with a valid checksum
+     */
+    private void apply(ByteBuffer payload) {
+        byte op = payload.get();
+        String first = readLabel(payload);
+        switch (op) {
+        case ADD:
+            graph.add(first);
+            break;
+        case SET:
+            String second = readLabel(payload);
+            int weight = payload.getInt();
+            if (weight != 0) {
+                // as Graph.set specifies, though some graphs only set edges between
+                // existing vertices, and merge() logs the vertices it adds as part of the edge
+                graph.add(first);
+                graph.add(second);
+                graph.set(first, second, weight);
+            } else if (graph.targets(first).containsKey(second)) {
+                graph.set(first, second, 0);
+            }
+            break;
+        case REMOVE:
+            graph.remove(first);
+            break;
+        default:
+            throw new IllegalStateException("Unknown log record type " + op);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 label from a record payload.
+     *
+     * @param payload payload positioned at the label
+     * @return the label
+     */
+    private static String readLabel(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        checkOpen();
+        boolean added = graph.add(vertex);
+        if (added) {
+            append(ADD, vertex, null, 0);
+        }
+        return added;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        checkOpen();
+        int previous = graph.set(source, target, weight);
+        if (previous != weight) {
+            append(SET, source, target, weight);
+        }
+        return previous;
+    }
+
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator function) {
+        checkOpen();
+        int weight;
+        if (graph instanceof MergeableGraph) {
+            weight = ((MergeableGraph<String>) graph).merge(source, target, value, function);
+        } else {
+            Integer previous = graph.targets(source).get(target);
+            weight = previous == null ? value : function.applyAsInt(previous, value);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+            }
+            graph.set(source, target, weight);
+        }
+        append(SET, source, target, weight);
+        return weight;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        checkOpen();
+        boolean removed = graph.remove(vertex);
+        if (removed) {
+            append(REMOVE, vertex, null, 0);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return graph.vertices();
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        return graph.sources(target);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        return graph.targets(source);
+    }
+
+    /**
+     * Checks that this graph is open.
+     *
+     * @throws IllegalStateException if close() has been called
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("DurableGraph is closed");
+        }
+    }
+
+    /**
+     * Appends a record to the log, then forces the group or takes a checkpoint
+     * if a limit has been reached.
+     *
+     * @param op ADD, SET or REMOVE
+     * @param first the vertex, or the source of the edge
+     * @param second the target of the edge, or null
+     * @param weight the weight of the edge, if op is SET
+     */
+    private void append(byte op, String first, String second, int weight) {
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + firstBytes.length
+                + (secondBytes == null ? 0 : 2 * Integer.BYTES + secondBytes.length);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(op).putInt(firstBytes.length).put(firstBytes);
+        if (secondBytes != null) {
+            payload.putInt(secondBytes.length).put(secondBytes).putInt(weight);
+        }
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        payload.flip();
+        try {
+            if (batch.remaining() < RECORD_HEADER + length) {
+                flush();
+            }
+            if (batch.remaining() < RECORD_HEADER + length) {
+                // larger than a whole batch: write it directly
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+                header.putInt(length).putInt((int) crc.getValue()).flip();
+                writeFully(header);
+                writeFully(payload);
+            } else {
+                batch.putInt(length).putInt((int) crc.getValue()).put(payload);
+            }
+            logBytes += RECORD_HEADER + length;
+            if (unsyncedRecords++ == 0) {
+                groupStart = System.nanoTime();
+            }
+            if (logBytes >= checkpointBytes) {
+                checkpoint();
+            } else if (unsyncedRecords >= groupRecords || System.nanoTime() - groupStart >= groupNanos) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to log in " + directory, e);
+        }
+        checkRep();
+    }
+
+    /**
+     * Writes the records in the batch buffer to the log, without forcing it.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    private void flush() throws IOException {
+        batch.flip();
+        writeFully(batch);
+        batch.clear();
+    }
+
+    /**
+     * Writes all remaining bytes of a buffer to the end of the log.
+     *
+     * @param buffer bytes to write
+     * @throws IOException if the log cannot be written
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+    }
+
+    /**
+     * Makes every mutation so far durable, by writing out buffered log records
+     * and forcing the log to disk.
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public void sync() {
+        checkOpen();
+        try {
+            flush();
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot sync log in " + directory, e);
+        }
+        unsyncedRecords = 0;
+    }
+
+    /**
+     * Writes the whole graph to the checkpoint file and truncates the log, so
+     * that recovery only needs the checkpoint.
+     *
+     * @throws UncheckedIOException if the checkpoint or log cannot be written
+     */
+    public void checkpoint() {
+        sync();
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        File temporary = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try {
+            MappedGraph.write(graph, temporary);
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary.toPath(), checkpoint.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            // a crash before this point replays the log over the new checkpoint, which is harmless
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write checkpoint in " + directory, e);
+        }
+        logBytes = 0;
+        checkRep();
+    }
+
+    /**
+     * Forces the directory entry of a renamed checkpoint to disk, on platforms
+     * that allow opening a directory.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform; the rename is still atomic
+        }
+    }
+
+    /**
+     * Makes every mutation durable and closes the log. This graph cannot be
+     * mutated afterwards.
+     *
+     * @throws IOException if the log cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            sync();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            closed = true;
+            log.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DurableGraph{" + graph + ", log=" + logBytes + " bytes}";
+    }
+}
@@ -0,0 +1,437 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of a Graph in compressed sparse row (CSR) form.
+ *
+ * <p>Freezing numbers the vertices 0 .. size()-1 and stores the edges of each
+ * vertex in contiguous slices of flat int arrays: a forward slice of its
+ * targets and a reverse slice of its sources, both ordered by vertex id so
+ * that edge weights can be found by binary search. Each forward slice also
+ * records the order of its targets by descending weight (ties by ascending
+ * id), so the heaviest targets can be visited first.
+ *
+ * <p>The int-id operations answer queries without allocating. The Graph
+ * operations return unmodifiable views backed by the snapshot; the mutators
+ * throw UnsupportedOperationException.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class FrozenGraph<L> implements IndexedGraph<L> {
+
+    private static final int NO_VERTEX = -1;
+
+    private final Object[] labels;
+    private final Map<L, Integer> ids;
+    private final Set<L> vertices;
+    private final int[] targetOffsets;
+    private final int[] targetIds;
+    private final int[] targetWeights;
+    private final int[] targetsByWeight;
+    private final int[] sourceOffsets;
+    private final int[] sourceIds;
+    private final int[] sourceWeights;
+
+    // Abstraction function:
+    //   Represents the graph with vertices labels[0 .. labels.length-1] and an edge
+    //   from labels[s] to targetIds[i] with weight targetWeights[i] for every
+    //   targetOffsets[s] <= i < targetOffsets[s+1]. The sourceOffsets/sourceIds/
+    //   sourceWeights arrays describe the same edges indexed by target, and
+    //   targetsByWeight[i] for i in the same range is the position, relative to
+    //   targetOffsets[s], of the i-th heaviest target of labels[s].
+    // Representation invariant:
+    //   ids maps labels[id] to id for every id, and vertices is its key set
+    //   targetOffsets and sourceOffsets have labels.length + 1 nondecreasing entries,
+    //     starting at 0 and ending at the number of edges
+    //   within each slice, targetIds and sourceIds are strictly increasing ids
+    //   all weights are positive
+    //   the reverse arrays hold exactly the edges of the forward arrays
+    //   targetsByWeight orders each slice by descending weight, then ascending id
+    // Safety from rep exposure:
+    //   All fields are private and final, and no array is ever returned;
+    //   vertices and the maps returned by sources and targets are unmodifiable
+
+    /**
+     * Freezes a snapshot of a graph. Later changes to graph are not reflected
+     * in the snapshot.
+     *
+     * @param graph the graph to freeze
+     */
+    public FrozenGraph(Graph<L> graph) {
+        Set<L> original = graph.vertices();
+        labels = original.toArray();
+        Map<L, Integer> index = new HashMap<>(labels.length * 2);
+        for (int id = 0; id < labels.length; id++) {
+            index.put(label(id), id);
+        }
+        ids = Collections.unmodifiableMap(index);
+        vertices = Collections.unmodifiableSet(ids.keySet());
+
+        // Gather each vertex's out-edges once, then derive the reverse arrays from them
+        targetOffsets = new int[labels.length + 1];
+        int[][] outIds = new int[labels.length][];
+        int[][] outWeights = new int[labels.length][];
+        int[] inDegrees = new int[labels.length];
+        for (int source = 0; source < labels.length; source++) {
+            Map<L, Integer> targets = graph.targets(label(source));
+            int[] slice = new int[targets.size()];
+            int i = 0;
+            for (L target : targets.keySet()) {
+                slice[i++] = ids.get(target);
+            }
+            Arrays.sort(slice);
+            outIds[source] = slice;
+            outWeights[source] = new int[slice.length];
+            for (i = 0; i < slice.length; i++) {
+                outWeights[source][i] = targets.get(label(slice[i]));
+                inDegrees[slice[i]]++;
+            }
+            targetOffsets[source + 1] = targetOffsets[source] + slice.length;
+        }
+
+        int edgeCount = targetOffsets[labels.length];
+        targetIds = new int[edgeCount];
+        targetWeights = new int[edgeCount];
+        targetsByWeight = new int[edgeCount];
+        sourceOffsets = new int[labels.length + 1];
+        for (int target = 0; target < labels.length; target++) {
+            sourceOffsets[target + 1] = sourceOffsets[target] + inDegrees[target];
+        }
+        sourceIds = new int[edgeCount];
+        sourceWeights = new int[edgeCount];
+        int[] fill = Arrays.copyOf(sourceOffsets, labels.length);
+        for (int source = 0; source < labels.length; source++) {
+            int start = targetOffsets[source];
+            System.arraycopy(outIds[source], 0, targetIds, start, outIds[source].length);
+            System.arraycopy(outWeights[source], 0, targetWeights, start, outWeights[source].length);
+            for (int i = 0; i < outIds[source].length; i++) {
+                // sources are visited in increasing order, so each reverse slice ends up sorted
+                int target = outIds[source][i];
+                sourceIds[fill[target]] = source;
+                sourceWeights[fill[target]] = outWeights[source][i];
+                fill[target]++;
+            }
+            sortByWeight(start, outIds[source].length);
+        }
+        checkRep();
+    }
+
+    /**
+     * Fills in targetsByWeight for one forward slice.
+     *
+     * @param start offset of the slice
+     * @param length length of the slice
+     */
+    private void sortByWeight(int start, int length) {
+        Integer[] order = new Integer[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        // stable sort keeps ascending ids among equal weights
+        Arrays.sort(order, (i, j) -> Integer.compare(targetWeights[start + j], targetWeights[start + i]));
+        for (int i = 0; i < length; i++) {
+            targetsByWeight[start + i] = order[i];
+        }
+    }
+
+    /**
+     * Checks the representation invariant of the FrozenGraph.
+     */
+    private void checkRep() {
+        assert ids.size() == labels.length;
+        assert targetOffsets[labels.length] == targetIds.length;
+        assert sourceOffsets[labels.length] == sourceIds.length;
+        assert targetIds.length == sourceIds.length;
+        for (int id = 0; id < labels.length; id++) {
+            for (int i = targetOffsets[id] + 1; i < targetOffsets[id + 1]; i++) {
+                assert targetIds[i - 1] < targetIds[i];
+            }
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a FrozenGraph is immutable
+     */
+    @Override
+    public boolean add(L vertex) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a FrozenGraph is immutable
+     */
+    @Override
+    public int set(L source, L target, int weight) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a FrozenGraph is immutable
+     */
+    @Override
+    public boolean remove(L vertex) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return an unmodifiable set of the labels of vertices in this graph
+     */
+    @Override
+    public Set<L> vertices() {
+        return vertices;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return an unmodifiable map view, iterated in ascending id order
+     */
+    @Override
+    public Map<L, Integer> sources(L target) {
+        int id = id(target);
+        return id == NO_VERTEX ? Collections.<L, Integer>emptyMap()
+                : new SliceMap(sourceOffsets[id], sourceOffsets[id + 1], sourceIds, sourceWeights);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return an unmodifiable map view, iterated in ascending id order
+     */
+    @Override
+    public Map<L, Integer> targets(L source) {
+        int id = id(source);
+        return id == NO_VERTEX ? Collections.<L, Integer>emptyMap()
+                : new SliceMap(targetOffsets[id], targetOffsets[id + 1], targetIds, targetWeights);
+    }
+
+    /**
+     * Get the number of vertices in this graph.
+     *
+     * @return the number of vertices, which is also the exclusive upper bound of ids
+     */
+    @Override
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Gets the id of a vertex.
+     *
+     * @param label a label
+     * @return the id of the vertex with that label, or -1 if there is no such vertex
+     */
+    @Override
+    public int id(L label) {
+        Integer id = ids.get(label);
+        return id == null ? NO_VERTEX : id;
+    }
+
+    /**
+     * Gets the label of a vertex id.
+     *
+     * @param id an id in 0 .. size()-1
+     * @return the label of that vertex
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public L label(int id) {
+        return (L) labels[id];
+    }
+
+    /**
+     * Get the weight of the edge between two vertex ids.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param target an id in 0 .. size()-1
+     * @return the weight of the edge from source to target, or zero if there is
+     *         no such edge
+     */
+    @Override
+    public int weight(int source, int target) {
+        int i = Arrays.binarySearch(targetIds, targetOffsets[source], targetOffsets[source + 1], target);
+        return i < 0 ? 0 : targetWeights[i];
+    }
+
+    /**
+     * Get the number of edges from a vertex.
+     *
+     * @param source an id in 0 .. size()-1
+     * @return the number of edges from source
+     */
+    @Override
+    public int outDegree(int source) {
+        return targetOffsets[source + 1] - targetOffsets[source];
+    }
+
+    /**
+     * Get the number of edges to a vertex.
+     *
+     * @param target an id in 0 .. size()-1
+     * @return the number of edges to target
+     */
+    @Override
+    public int inDegree(int target) {
+        return sourceOffsets[target + 1] - sourceOffsets[target];
+    }
+
+    /**
+     * Get a target of a vertex, by descending weight of the edges to them.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param rank an int in 0 .. outDegree(source)-1
+     * @return the id of the target of the rank-th heaviest edge from source;
+     *         edges of equal weight are ranked by ascending target id
+     */
+    @Override
+    public int heaviestTarget(int source, int rank) {
+        int start = targetOffsets[source];
+        return targetIds[start + targetsByWeight[start + rank]];
+    }
+
+    /**
+     * Get the weight of an edge from a vertex, by descending weight.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param rank an int in 0 .. outDegree(source)-1
+     * @return the weight of the rank-th heaviest edge from source
+     */
+    @Override
+    public int heaviestWeight(int source, int rank) {
+        int start = targetOffsets[source];
+        return targetWeights[start + targetsByWeight[start + rank]];
+    }
+
+    /**
+     * Get a target of a vertex, by ascending id.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param index an int in 0 .. outDegree(source)-1
+     * @return the index-th smallest id among the targets of source
+     */
+    @Override
+    public int target(int source, int index) {
+        return targetIds[targetOffsets[source] + index];
+    }
+
+    /**
+     * Get a source of a vertex, by ascending id.
+     *
+     * @param target an id in 0 .. size()-1
+     * @param index an int in 0 .. inDegree(target)-1
+     * @return the index-th smallest id among the sources of target
+     */
+    @Override
+    public int source(int target, int index) {
+        return sourceIds[sourceOffsets[target] + index];
+    }
+
+    @Override
+    public String toString() {
+        return "FrozenGraph{vertices=" + labels.length + ", edges=" + targetIds.length + '}';
+    }
+
+    /**
+     * An unmodifiable map view of one slice of the forward or reverse arrays.
+     */
+    private class SliceMap extends AbstractMap<L, Integer> {
+
+        private final int start;
+        private final int end;
+        private final int[] neighbours;
+        private final int[] weights;
+
+        // Abstraction function:
+        //   Represents the map from label(neighbours[i]) to weights[i], start <= i < end
+        // Representation invariant:
+        //   0 <= start <= end <= neighbours.length == weights.length
+        // Safety from rep exposure:
+        //   All fields are private and final; the arrays are never modified
+
+        /**
+         * Constructs a view of a slice.
+         *
+         * @param start first offset of the slice
+         * @param end offset after the slice
+         * @param neighbours targetIds or sourceIds
+         * @param weights the matching weights array
+         */
+        SliceMap(int start, int end, int[] neighbours, int[] weights) {
+            this.start = start;
+            this.end = end;
+            this.neighbours = neighbours;
+            this.weights = weights;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int i = find(key);
+            return i < 0 ? null : weights[i];
+        }
+
+        /**
+         * Finds the offset of a key in the slice.
+         *
+         * @param key a label
+         * @return the offset of key, or a negative number if it is not in the slice
+         */
+        private int find(Object key) {
+            Integer id = ids.get(key);
+            return id == null ? -1 : Arrays.binarySearch(neighbours, start, end, id);
+        }
+
+        @Override
+        public Set<Map.Entry<L, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<L, Integer>>() {
+                @Override
+                public int size() {
+                    return end - start;
+                }
+
+                @Override
+                public Iterator<Map.Entry<L, Integer>> iterator() {
+                    return new Iterator<Map.Entry<L, Integer>>() {
+                        private int next = start;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < end;
+                        }
+
+                        @Override
+                        public Map.Entry<L, Integer> next() {
+                            if (next >= end) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<L, Integer> entry =
+                                    new AbstractMap.SimpleImmutableEntry<>(label(neighbours[next]), weights[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package graph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads batches of weighted edges into a graph.
+ *
+ * <p>While a loader is open, a graph that supports it (ConcreteVerticesGraph
+ * and ConcreteEdgesGraph) skips its per-mutation representation invariant
+ * checks; {@link #finish()} checks the invariant once, over the whole graph.
+ * A small load into a large graph can keep the per-mutation checks instead,
+ * which check only what each mutation touches, so that finishing it does not
+ * cost time proportional to the graph.
+ * Given the expected numbers of vertices and edges, the loader makes room for
+ * them in a graph that supports it before loading, and each batch makes room
+ * for its edges, so that the graph's sets and indexes do not grow step by step
+ * during the load.
+ *
+ * <p>Each edge is loaded as {@link Graph#set(Object, Object, int) set} would,
+ * so a later weight for the same pair of vertices replaces an earlier one,
+ * except that the endpoints of every edge are added to the graph first.
+ * Counts can instead be accumulated with {@link #increment(String, String, int)}.
+ *
+ * <p>Edge-list files are plain text, one edge per line: a source label, a
+ * target label and an optional weight (1 if absent), separated by spaces or
+ * tabs. Blank lines and lines starting with {@code #} are ignored. Labels
+ * cannot contain whitespace.
+ */
+public class GraphLoader {
+
+    private final Graph<String> graph;
+    private final boolean deferred;
+    private boolean finished = false;
+
+    // Abstraction function:
+    //   Represents a load in progress into graph, which is complete iff finished
+    // Representation invariant:
+    //   graph != null
+    //   if graph is BulkLoadable, its checks are deferred iff deferred && !finished
+    // Safety from rep exposure:
+    //   graph is shared with the caller by design: the loader only mutates it
+    //   while the load is in progress, and hands it back from finish()
+
+    /**
+     * Starts loading edges into a graph. Until {@link #finish()} is called, the
+     * graph must only be mutated through this loader.
+     *
+     * @param graph the graph to load edges into
+     */
+    public GraphLoader(Graph<String> graph) {
+        this(graph, true);
+    }
+
+    /**
+     * Starts loading edges into a graph. Until {@link #finish()} is called, the
+     * graph must only be mutated through this loader.
+     *
+     * @param graph the graph to load edges into
+     * @param deferChecks whether the graph, if it supports it, skips its
+     *        per-mutation checks until finish() checks the whole graph; false
+     *        for a load much smaller than the graph
+     */
+    public GraphLoader(Graph<String> graph, boolean deferChecks) {
+        this.graph = graph;
+        this.deferred = deferChecks;
+        if (deferChecks && graph instanceof BulkLoadable) {
+            ((BulkLoadable) graph).deferChecks();
+        }
+    }
+
+    /**
+     * Starts loading edges into a graph, making room in the graph, if it
+     * supports it, for the expected numbers of vertices and edges beyond those
+     * it already has. Until {@link #finish()} is called, the graph must only be
+     * mutated through this loader.
+     *
+     * @param graph the graph to load edges into
+     * @param expectedVertices expected number of vertices the load adds, nonnegative
+     * @param expectedEdges expected number of edges the load adds, nonnegative
+     * @throws IllegalArgumentException if an expected number is negative
+     */
+    public GraphLoader(Graph<String> graph, int expectedVertices, int expectedEdges) {
+        this(graph, true);
+        if (expectedVertices < 0 || expectedEdges < 0) {
+            throw new IllegalArgumentException("Expected numbers must be nonnegative: "
+                    + expectedVertices + ", " + expectedEdges);
+        }
+        if (graph instanceof BulkLoadable) {
+            ((BulkLoadable) graph).reserve(expectedVertices, expectedEdges);
+        }
+    }
+
+    /**
+     * Checks that the load has not finished.
+     *
+     * @throws IllegalStateException if finish() has been called
+     */
+    private void checkOpen() {
+        if (finished) {
+            throw new IllegalStateException("Load already finished");
+        }
+    }
+
+    /**
+     * Loads one vertex.
+     *
+     * @param vertex label of the vertex
+     */
+    public void addVertex(String vertex) {
+        checkOpen();
+        graph.add(vertex);
+    }
+
+    /**
+     * Loads one edge.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param weight nonnegative weight of the edge; zero only adds the vertices
+     */
+    public void add(String source, String target, int weight) {
+        checkOpen();
+        graph.add(source);
+        graph.add(target);
+        if (weight != 0) {
+            graph.set(source, target, weight);
+        }
+    }
+
+    /**
+     * Adds to the weight of one edge, as
+     * {@link MergeableGraph#increment(Object, Object, int) increment}: the
+     * endpoints of an edge with a nonzero new weight are added to the graph.
+     * A graph that is not a MergeableGraph has the weight read and then set.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param delta amount to add to the weight of the edge
+     * @throws IllegalArgumentException if the new weight would be negative;
+     *         the graph is then not modified
+     */
+    public void increment(String source, String target, int delta) {
+        checkOpen();
+        if (graph instanceof MergeableGraph) {
+            ((MergeableGraph<String>) graph).increment(source, target, delta);
+            return;
+        }
+        Integer previous = graph.targets(source).get(target);
+        int weight = previous == null ? delta : previous + delta;
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        if (weight != 0) {
+            graph.add(source);
+            graph.add(target);
+            graph.set(source, target, weight);
+        } else if (previous != null) {
+            graph.set(source, target, 0);
+        }
+    }
+
+    /**
+     * Loads a batch of edges: the i-th edge is from sources[i] to targets[i],
+     * with weight weights[i].
+     *
+     * @param sources labels of the source vertices
+     * @param targets labels of the target vertices
+     * @param weights nonnegative weights of the edges
+     * @throws IllegalArgumentException if the arrays have different lengths
+     */
+    public void addAll(String[] sources, String[] targets, int[] weights) {
+        if (sources.length != targets.length || sources.length != weights.length) {
+            throw new IllegalArgumentException("Batch arrays must have the same length");
+        }
+        checkOpen();
+        if (graph instanceof BulkLoadable) {
+            // the vertices of a batch may all be in the graph already
+            ((BulkLoadable) graph).reserve(0, sources.length);
+        }
+        for (int i = 0; i < sources.length; i++) {
+            add(sources[i], targets[i], weights[i]);
+        }
+    }
+
+    /**
+     * Loads the edges of a UTF-8 edge-list file.
+     *
+     * @param edgeList the edge-list file
+     * @throws IOException if the file cannot be found or read, or is malformed
+     */
+    public void read(File edgeList) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(edgeList), StandardCharsets.UTF_8)) {
+            read(reader);
+        }
+    }
+
+    /**
+     * Loads the edges of an edge list. Does not close the reader.
+     *
+     * @param edgeList the edge list
+     * @throws IOException if the edge list cannot be read, or is malformed
+     */
+    public void read(Reader edgeList) throws IOException {
+        checkOpen();
+        BufferedReader reader = new BufferedReader(edgeList);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split("\\s+");
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IOException("Line " + lineNumber + ": expected source, target and weight: " + line);
+            }
+            int weight = 1;
+            if (fields.length == 3) {
+                try {
+                    weight = Integer.parseInt(fields[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + ": bad weight: " + fields[2], e);
+                }
+                if (weight < 0) {
+                    throw new IOException("Line " + lineNumber + ": negative weight: " + weight);
+                }
+            }
+            add(fields[0], fields[1], weight);
+        }
+    }
+
+    /**
+     * Finishes the load: if checks were deferred, checks the graph's
+     * representation invariant once and resumes checking it after each mutation.
+     *
+     * @return the loaded graph
+     * @throws IllegalStateException if finish() has already been called
+     */
+    public Graph<String> finish() {
+        checkOpen();
+        finished = true;
+        if (deferred && graph instanceof BulkLoadable) {
+            ((BulkLoadable) graph).resumeChecks();
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,100 @@
+package graph;
+
+/**
+ * A read-only Graph whose vertices are numbered 0 .. size()-1, and which
+ * answers queries by vertex id without allocating.
+ *
+ * <p>The edges of each vertex are kept ordered both by neighbour id and by
+ * descending weight, so the heaviest targets of a vertex can be visited first.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface IndexedGraph<L> extends Graph<L> {
+
+    /**
+     * Get the number of vertices in this graph.
+     *
+     * @return the number of vertices, which is also the exclusive upper bound of ids
+     */
+    public int size();
+
+    /**
+     * Gets the id of a vertex.
+     *
+     * @param label a label
+     * @return the id of the vertex with that label, or -1 if there is no such vertex
+     */
+    public int id(L label);
+
+    /**
+     * Gets the label of a vertex id.
+     *
+     * @param id an id in 0 .. size()-1
+     * @return the label of that vertex
+     */
+    public L label(int id);
+
+    /**
+     * Get the weight of the edge between two vertex ids.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param target an id in 0 .. size()-1
+     * @return the weight of the edge from source to target, or zero if there is
+     *         no such edge
+     */
+    public int weight(int source, int target);
+
+    /**
+     * Get the number of edges from a vertex.
+     *
+     * @param source an id in 0 .. size()-1
+     * @return the number of edges from source
+     */
+    public int outDegree(int source);
+
+    /**
+     * Get the number of edges to a vertex.
+     *
+     * @param target an id in 0 .. size()-1
+     * @return the number of edges to target
+     */
+    public int inDegree(int target);
+
+    /**
+     * Get a target of a vertex, by descending weight of the edges to them.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param rank an int in 0 .. outDegree(source)-1
+     * @return the id of the target of the rank-th heaviest edge from source;
+     *         edges of equal weight are ranked by ascending target id
+     */
+    public int heaviestTarget(int source, int rank);
+
+    /**
+     * Get the weight of an edge from a vertex, by descending weight.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param rank an int in 0 .. outDegree(source)-1
+     * @return the weight of the rank-th heaviest edge from source
+     */
+    public int heaviestWeight(int source, int rank);
+
+    /**
+     * Get a target of a vertex, by ascending id.
+     *
+     * @param source an id in 0 .. size()-1
+     * @param index an int in 0 .. outDegree(source)-1
+     * @return the index-th smallest id among the targets of source
+     */
+    public int target(int source, int index);
+
+    /**
+     * Get a source of a vertex, by ascending id.
+     *
+     * @param target an id in 0 .. size()-1
+     * @param index an int in 0 .. inDegree(target)-1
+     * @return the index-th smallest id among the sources of target
+     */
+    public int source(int target, int index);
+
+}
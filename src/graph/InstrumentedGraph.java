@@ -0,0 +1,544 @@
+package graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A Graph wrapper that records metrics of every operation on the graph it
+ * wraps: the number of calls, a latency histogram, the total size of the
+ * collections returned, and an estimate of the bytes those collections take.
+ *
+ * <p>Recording is cheap enough to leave on in production. Each thread records
+ * into its own counters and histograms, with ordered writes rather than
+ * atomic read-modify-writes, and nothing is allocated after a thread's first
+ * call. When a thread registers or a snapshot is taken, the counters and
+ * histograms of threads that have terminated are folded into one aggregate,
+ * so the memory of the metrics grows with the number of live threads rather
+ * than every thread that ever called. Timing a call costs two {@link System#nanoTime()} reads, the largest
+ * part of the overhead for fast operations, so only one call in
+ * {@code latencySampleInterval} is timed; counts, sizes and bytes cover every
+ * call. Calls that throw are not recorded.
+ *
+ * <p>{@link #snapshot()} merges the threads' metrics into immutable
+ * {@link Stats}, and {@link #export(Appendable)} writes them in the
+ * Prometheus text format, to be scraped or logged. Metrics only grow; to
+ * measure an interval, subtract an earlier snapshot.
+ *
+ * <p>This wrapper is thread-safe if the wrapped graph is.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class InstrumentedGraph<L> implements MergeableGraph<L> {
+
+    /** The instrumented operations of a graph. */
+    public enum Operation {
+        ADD, SET, MERGE, REMOVE, VERTICES, SOURCES, TARGETS;
+
+        /**
+         * @return the name of the operation's method
+         */
+        public String methodName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    // estimated sizes, in bytes, with compressed references
+    private static final int HASH_MAP_BYTES = 48;
+    private static final int HASH_SET_BYTES = 16;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int NODE_BYTES = 32;
+    private static final int INTEGER_BYTES = 16;
+    private static final int VIEW_BYTES = 16;
+    private static final int MIN_TABLE_LENGTH = 16;
+
+    private final Graph<L> graph;
+    private final int sampleMask;
+    private final List<Recorder> recorders = new ArrayList<>();
+    private final Recorder retired;
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(this::newRecorder);
+
+    // Abstraction function:
+    //   Represents the graph graph, and the metrics of the calls made on it
+    //   through this wrapper: the sum of the metrics of retired, which holds those
+    //   of terminated threads, and of all recorders
+    // Representation invariant:
+    //   sampleMask + 1 is a power of two
+    //   the recorder of every live thread that has called is in recorders
+    //   retired has no owner, and every recorder in recorders has one
+    // Safety from rep exposure:
+    //   All fields are private and final; graph is shared with the caller by
+    //   design, and snapshots are immutable copies of the metrics.
+    // Thread safety argument:
+    //   Each recorder in recorders is written only by its own thread (see
+    //   Recorder). recorders and retired are only read and written while holding
+    //   the lock of this, which is the writer of retired. A recorder is folded
+    //   into retired only once its thread has terminated, which happens-before
+    //   isAlive() returns false, so none of its calls are lost. Metrics read from
+    //   live threads may lag the latest calls, but are never torn.
+
+    /**
+     * Per-thread metrics. Only the owning thread writes them, or, for metrics
+     * without an owner, the holder of the lock of the InstrumentedGraph.
+     */
+    private static final class Recorder {
+
+        private static final int CALLS = 0;
+        private static final int RESULTS = 1;
+        private static final int BYTES = 2;
+        private static final int FIELDS = 3;
+
+        private final AtomicLongArray counters = new AtomicLongArray(OPERATIONS.length * FIELDS);
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+        private final int sampleMask;
+        private final Thread owner;
+        private int calls = 0;
+
+        // Abstraction function:
+        //   Represents, for each operation op, the metrics of the owning thread's
+        //   calls of op: counters[op * FIELDS + CALLS], RESULTS and BYTES, and the
+        //   latencies of the calls that were timed, in latencies[op]
+        // Representation invariant:
+        //   counters and latencies are indexed by Operation ordinal
+        // Thread safety argument:
+        //   Only the owning thread writes counters, with lazySet of a value
+        //   computed from its own last write; calls is only read and written by
+        //   the owning thread.
+
+        /**
+         * Constructs empty metrics.
+         *
+         * @param sampleMask one less than the latency sampling interval
+         * @param owner the thread recording its calls, or null for an aggregate
+         */
+        Recorder(int sampleMask, Thread owner) {
+            this.sampleMask = sampleMask;
+            this.owner = owner;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        /**
+         * Starts a call, timing it if it is sampled.
+         *
+         * @return the start time of the call if it is timed, otherwise NOT_TIMED
+         */
+        long start() {
+            return (calls++ & sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+        }
+
+        /**
+         * Records a call that has returned.
+         *
+         * @param operation the operation called
+         * @param start the value start() returned for the call
+         * @param results size of the collection returned, 0 if none
+         * @param bytes estimated bytes of the collection returned, 0 if none
+         */
+        void record(Operation operation, long start, int results, long bytes) {
+            if (start != NOT_TIMED) {
+                latencies[operation.ordinal()].record(System.nanoTime() - start);
+            }
+            int base = operation.ordinal() * FIELDS;
+            counters.lazySet(base + CALLS, counters.get(base + CALLS) + 1);
+            if (bytes != 0) {
+                counters.lazySet(base + RESULTS, counters.get(base + RESULTS) + results);
+                counters.lazySet(base + BYTES, counters.get(base + BYTES) + bytes);
+            }
+        }
+
+        /**
+         * @return true iff these metrics belong to a thread that has terminated
+         */
+        boolean ownerTerminated() {
+            return owner != null && !owner.isAlive();
+        }
+
+        /**
+         * Adds the metrics of another recorder to these. Must only be called by
+         * the writer of these metrics.
+         *
+         * @param other metrics no longer written
+         */
+        void add(Recorder other) {
+            for (int i = 0; i < counters.length(); i++) {
+                counters.lazySet(i, counters.get(i) + other.counters.get(i));
+            }
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i].add(other.latencies[i]);
+            }
+        }
+    }
+
+    /**
+     * The metrics of one operation, as of a snapshot.
+     */
+    public static final class Stats {
+
+        private final Operation operation;
+        private final long calls;
+        private final long results;
+        private final long bytes;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        // Abstraction function:
+        //   Represents calls calls of operation, returning results elements in all,
+        //   estimated at bytes bytes, and the latencies of the timed calls
+        // Representation invariant:
+        //   calls, results, bytes >= 0; latencies.count() <= calls
+        // Safety from rep exposure:
+        //   All fields are private and final; latencies is a private copy that is
+        //   never written after construction, and never returned
+
+        /**
+         * Merges the metrics of an operation over recorders.
+         *
+         * @param operation the operation
+         * @param recorders the recorders to merge
+         */
+        private Stats(Operation operation, Iterable<Recorder> recorders) {
+            this.operation = operation;
+            int base = operation.ordinal() * Recorder.FIELDS;
+            long calls = 0;
+            long results = 0;
+            long bytes = 0;
+            for (Recorder recorder : recorders) {
+                calls += recorder.counters.get(base + Recorder.CALLS);
+                results += recorder.counters.get(base + Recorder.RESULTS);
+                bytes += recorder.counters.get(base + Recorder.BYTES);
+                latencies.add(recorder.latencies[operation.ordinal()]);
+            }
+            this.calls = calls;
+            this.results = results;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the operation these metrics are about
+         */
+        public Operation operation() {
+            return operation;
+        }
+
+        /**
+         * @return the number of calls of the operation
+         */
+        public long calls() {
+            return calls;
+        }
+
+        /**
+         * @return the total number of elements in the collections returned by
+         *         the operation, or 0 for mutators
+         */
+        public long results() {
+            return results;
+        }
+
+        /**
+         * @return the estimated total bytes of the collections returned by the
+         *         operation, or 0 for mutators; collections that are views of
+         *         the graph rather than copies count only their wrapper object
+         */
+        public long estimatedBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of calls that were timed
+         */
+        public long timedCalls() {
+            return latencies.count();
+        }
+
+        /**
+         * Gets a latency percentile of the timed calls.
+         *
+         * @param percentile the percentile, in [0, 100]
+         * @return the latency in nanoseconds, within about 3%, or 0 if no call was timed
+         */
+        public long latencyNanos(double percentile) {
+            return latencies.valueAtPercentile(percentile);
+        }
+
+        /**
+         * @return the mean latency of the timed calls in nanoseconds, or 0 if none
+         */
+        public double meanLatencyNanos() {
+            return latencies.mean();
+        }
+
+        /**
+         * @return the largest latency of the timed calls in nanoseconds, or 0 if none
+         */
+        public long maxLatencyNanos() {
+            return latencies.max();
+        }
+
+        @Override
+        public String toString() {
+            return operation.methodName() + "{calls=" + calls + ", results=" + results
+                    + ", bytes=" + bytes + ", p50=" + latencyNanos(50) + "ns, p99="
+                    + latencyNanos(99) + "ns, max=" + maxLatencyNanos() + "ns}";
+        }
+    }
+
+    /**
+     * Wraps a graph, timing one call in 16.
+     *
+     * @param graph the graph to instrument; it must only be used through this
+     *        wrapper for the metrics to be complete
+     */
+    public InstrumentedGraph(Graph<L> graph) {
+        this(graph, 16);
+    }
+
+    /**
+     * Wraps a graph.
+     *
+     * @param graph the graph to instrument; it must only be used through this
+     *        wrapper for the metrics to be complete
+     * @param latencySampleInterval each thread times one of every this many of
+     *        its calls; a power of two, 1 to time every call
+     */
+    public InstrumentedGraph(Graph<L> graph, int latencySampleInterval) {
+        if (latencySampleInterval <= 0 || Integer.bitCount(latencySampleInterval) != 1) {
+            throw new IllegalArgumentException("Sample interval must be a power of two: " + latencySampleInterval);
+        }
+        this.graph = graph;
+        this.sampleMask = latencySampleInterval - 1;
+        this.retired = new Recorder(sampleMask, null);
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the InstrumentedGraph.
+     */
+    private void checkRep() {
+        assert graph != null;
+        assert Integer.bitCount(sampleMask + 1) == 1;
+    }
+
+    /**
+     * Creates and registers the recorder of the calling thread, and retires
+     * the recorders of terminated threads.
+     *
+     * @return a new recorder, in recorders
+     */
+    private synchronized Recorder newRecorder() {
+        retireTerminated();
+        Recorder created = new Recorder(sampleMask, Thread.currentThread());
+        recorders.add(created);
+        return created;
+    }
+
+    /**
+     * Folds the recorders of terminated threads into retired, and removes them
+     * from recorders. Must be called holding the lock of this.
+     */
+    private void retireTerminated() {
+        assert Thread.holdsLock(this);
+        Set<Recorder> terminated = new HashSet<>();
+        for (Recorder threadRecorder : recorders) {
+            if (threadRecorder.ownerTerminated()) {
+                retired.add(threadRecorder);
+                terminated.add(threadRecorder);
+            }
+        }
+        if (!terminated.isEmpty()) {
+            recorders.removeIf(terminated::contains);
+        }
+    }
+
+    /**
+     * @return the number of threads whose metrics are kept apart, which have
+     *         not terminated as of the last registration or snapshot
+     */
+    synchronized int threadRecorders() {
+        return recorders.size();
+    }
+
+    /**
+     * Takes a snapshot of the metrics of every operation.
+     *
+     * @return an unmodifiable map from every operation to its metrics
+     */
+    public synchronized Map<Operation, Stats> snapshot() {
+        retireTerminated();
+        List<Recorder> all = new ArrayList<>(recorders);
+        all.add(retired);
+        Map<Operation, Stats> snapshot = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            snapshot.put(operation, new Stats(operation, all));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Writes a snapshot of the metrics in the Prometheus text exposition
+     * format: for each operation, counters of calls, returned elements and
+     * estimated bytes, and a summary of latencies in seconds.
+     *
+     * @param out where to write the metrics
+     * @throws IOException if out cannot be written
+     */
+    public void export(Appendable out) throws IOException {
+        Map<Operation, Stats> snapshot = snapshot();
+        out.append("# TYPE graph_calls_total counter\n");
+        for (Stats stats : snapshot.values()) {
+            sample(out, "graph_calls_total", stats, "", stats.calls());
+        }
+        out.append("# TYPE graph_results_total counter\n");
+        for (Stats stats : snapshot.values()) {
+            sample(out, "graph_results_total", stats, "", stats.results());
+        }
+        out.append("# TYPE graph_result_bytes_total counter\n");
+        for (Stats stats : snapshot.values()) {
+            sample(out, "graph_result_bytes_total", stats, "", stats.estimatedBytes());
+        }
+        out.append("# TYPE graph_latency_seconds summary\n");
+        for (Stats stats : snapshot.values()) {
+            for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                sample(out, "graph_latency_seconds", stats, ",quantile=\"" + quantile + "\"",
+                        stats.latencyNanos(quantile * 100) / 1e9);
+            }
+            sample(out, "graph_latency_seconds_sum", stats, "", stats.meanLatencyNanos() * stats.timedCalls() / 1e9);
+            sample(out, "graph_latency_seconds_count", stats, "", stats.timedCalls());
+        }
+    }
+
+    /**
+     * Writes one Prometheus sample.
+     *
+     * @param out where to write it
+     * @param metric name of the metric
+     * @param stats the operation's metrics
+     * @param labels more labels, each preceded by a comma
+     * @param value the value of the sample
+     * @throws IOException if out cannot be written
+     */
+    private static void sample(Appendable out, String metric, Stats stats, String labels, double value)
+            throws IOException {
+        out.append(metric).append("{operation=\"").append(stats.operation().methodName()).append('"')
+                .append(labels).append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append(Long.toString((long) value));
+        } else {
+            out.append(Double.toString(value));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Estimates the bytes of a collection returned by the graph.
+     *
+     * @param size number of elements of the collection
+     * @param isCopy whether the collection is a fresh HashMap or HashSet
+     * @param hasValues whether the elements are map entries with Integer values
+     * @return estimated bytes of the collection: a hash table with its nodes
+     *         and boxed values if it is a copy, otherwise only a view object
+     */
+    private static long estimateBytes(int size, boolean isCopy, boolean hasValues) {
+        if (!isCopy) {
+            return VIEW_BYTES;
+        }
+        int table = Math.max(MIN_TABLE_LENGTH, Integer.highestOneBit(Math.max(1, size * 4 / 3) * 2 - 1));
+        long bytes = HASH_MAP_BYTES + ARRAY_HEADER_BYTES + (long) table * REFERENCE_BYTES + (long) size * NODE_BYTES;
+        return hasValues ? bytes + (long) size * INTEGER_BYTES : bytes + HASH_SET_BYTES;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        boolean added = graph.add(vertex);
+        calls.record(Operation.ADD, start, 0, 0);
+        return added;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        int previous = graph.set(source, target, weight);
+        calls.record(Operation.SET, start, 0, 0);
+        return previous;
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator function) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        int weight;
+        if (graph instanceof MergeableGraph) {
+            weight = ((MergeableGraph<L>) graph).merge(source, target, value, function);
+        } else {
+            Integer previous = graph.targets(source).get(target);
+            weight = previous == null ? value : function.applyAsInt(previous, value);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+            }
+            graph.set(source, target, weight);
+        }
+        calls.record(Operation.MERGE, start, 0, 0);
+        return weight;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        boolean removed = graph.remove(vertex);
+        calls.record(Operation.REMOVE, start, 0, 0);
+        return removed;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        Set<L> vertices = graph.vertices();
+        int size = vertices.size();
+        calls.record(Operation.VERTICES, start, size, estimateBytes(size, vertices instanceof HashSet, false));
+        return vertices;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        Map<L, Integer> sources = graph.sources(target);
+        int size = sources.size();
+        calls.record(Operation.SOURCES, start, size, estimateBytes(size, sources instanceof HashMap, true));
+        return sources;
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        Recorder calls = recorder.get();
+        long start = calls.start();
+        Map<L, Integer> targets = graph.targets(source);
+        int size = targets.size();
+        calls.record(Operation.TARGETS, start, size, estimateBytes(size, targets instanceof HashMap, true));
+        return targets;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedGraph{" + graph + '}';
+    }
+}
@@ -0,0 +1,581 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An implementation of Graph that stores edges between dense int vertex ids.
+ *
+ * <p>Each label is mapped to an int id once, through a label dictionary, and
+ * adjacency is kept in primitive int arrays: every vertex has an
+ * open-addressing table of its outgoing edges (target id to weight) and one of
+ * its incoming edges (source id to weight). No per-edge objects or boxed
+ * weights are allocated, so an edge costs a few ints instead of an Edge or a
+ * HashMap entry.
+ *
+ * <p>Besides the Graph operations, callers that can work in ids (such as
+ * GraphPoet) may use {@link #id(Object)}, {@link #label(int)} and the int-id
+ * variants of set, targets and sources. An id stays valid while its vertex is
+ * in the graph. Removing a vertex frees its id and its tables, and the next
+ * vertex added, with the same label or another, takes the most recently freed
+ * id. So the arrays indexed by id only grow with the largest number of
+ * vertices the graph has held at once, however many distinct labels come and go.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class IntGraph<L> implements MergeableGraph<L> {
+
+    private static final int NO_VERTEX = -1;
+    private static final int INITIAL_VERTICES = 16;
+    private static final int INITIAL_EDGES = 4;
+
+    private final LabelDictionary<L> dictionary;
+    private boolean[] present;
+    private int vertexCount;
+    private int[][] outKeys;
+    private int[][] outWeights;
+    private int[] outSizes;
+    private int[][] inKeys;
+    private int[][] inWeights;
+    private int[] inSizes;
+
+    // Abstraction function:
+    //   Represents the graph whose vertices are the labels dictionary.label(id) of the
+    //   ids with present[id], and which has an edge from label(s) to label(t) with
+    //   weight w iff t is a key of the table (outKeys[s], outWeights[s]) with value w.
+    //   (inKeys[t], inWeights[t]) is the same edge set indexed by target.
+    // Representation invariant:
+    //   ids 0 .. dictionary.size()-1 are the only ids, and every array indexed by id
+    //     is at least dictionary.size() long
+    //   present[id] iff the dictionary has a label for id; the tables of an id
+    //     without one are null and its sizes zero
+    //   vertexCount is the number of ids with present[id]
+    //   every table is null or has a power-of-two length, holds NO_VERTEX in free slots,
+    //     and is at most 3/4 full; outSizes[id] and inSizes[id] count its used slots
+    //   all weights are positive, and edges only join present vertices
+    //   t maps to w in the out-table of s iff s maps to w in the in-table of t
+    // Safety from rep exposure:
+    //   All fields are private; the Graph operations return fresh collections, and
+    //   the int-id operations return fresh arrays.
+
+    /**
+     * Constructs an empty IntGraph.
+     */
+    public IntGraph() {
+        this(INITIAL_VERTICES);
+    }
+
+    /**
+     * Constructs an empty IntGraph with room for the given number of vertices
+     * before any internal array has to grow.
+     *
+     * @param expectedVertices expected number of vertices, nonnegative
+     */
+    public IntGraph(int expectedVertices) {
+        int capacity = Math.max(expectedVertices, 1);
+        dictionary = new LabelDictionary<>(capacity);
+        present = new boolean[capacity];
+        outKeys = new int[capacity][];
+        outWeights = new int[capacity][];
+        outSizes = new int[capacity];
+        inKeys = new int[capacity][];
+        inWeights = new int[capacity][];
+        inSizes = new int[capacity];
+    }
+
+    /**
+     * Checks the representation invariant of the IntGraph.
+     */
+    private void checkRep() {
+        assert present.length >= dictionary.size();
+        assert vertexCount >= 0 && vertexCount <= dictionary.size();
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        int id = dictionary.intern(vertex);
+        ensureCapacity(id + 1);
+        if (present[id]) {
+            return false;
+        }
+        present[id] = true;
+        vertexCount++;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        if (weight == 0) {
+            int sourceId = id(source);
+            int targetId = id(target);
+            return sourceId == NO_VERTEX || targetId == NO_VERTEX ? 0 : set(sourceId, targetId, 0);
+        }
+        add(source);
+        add(target);
+        return set(id(source), id(target), weight);
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator function) {
+        int sourceId = id(source);
+        int targetId = id(target);
+        if (sourceId == NO_VERTEX || targetId == NO_VERTEX) {
+            // No such edge yet, so the new weight is value
+            if (value <= 0) {
+                return checkWeight(value);
+            }
+            add(source);
+            add(target);
+            sourceId = id(source);
+            targetId = id(target);
+        }
+        return merge(sourceId, targetId, value, function);
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        int id = id(vertex);
+        if (id == NO_VERTEX) {
+            return false;
+        }
+        for (int target : targets(id)) {
+            set(id, target, 0);
+        }
+        for (int source : sources(id)) {
+            set(source, id, 0);
+        }
+        outKeys[id] = null;
+        outWeights[id] = null;
+        inKeys[id] = null;
+        inWeights[id] = null;
+        present[id] = false;
+        dictionary.release(id);
+        vertexCount--;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        Set<L> labels = new HashSet<>(vertexCount * 2);
+        for (int id = 0; id < dictionary.size(); id++) {
+            if (present[id]) {
+                labels.add(dictionary.label(id));
+            }
+        }
+        return labels;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        int id = id(target);
+        return id == NO_VERTEX ? new HashMap<>() : toMap(inKeys[id], inWeights[id], inSizes[id]);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        int id = id(source);
+        return id == NO_VERTEX ? new HashMap<>() : toMap(outKeys[id], outWeights[id], outSizes[id]);
+    }
+
+    /**
+     * Gets the id of a vertex.
+     *
+     * @param label a label
+     * @return the id of the vertex with that label, or -1 if there is no such vertex
+     */
+    public int id(L label) {
+        int id = dictionary.find(label);
+        return id != NO_VERTEX && present[id] ? id : NO_VERTEX;
+    }
+
+    /**
+     * Gets the label of a vertex id.
+     *
+     * @param id the id of a vertex in this graph
+     * @return the label of that vertex
+     * @throws IllegalArgumentException if id is not the id of a vertex in this graph
+     */
+    public L label(int id) {
+        checkVertex(id);
+        return dictionary.label(id);
+    }
+
+    /**
+     * Gets an exclusive upper bound on the vertex ids of this graph, suitable
+     * for sizing arrays indexed by id.
+     *
+     * @return an int greater than the id of every vertex in this graph
+     */
+    public int idBound() {
+        return dictionary.size();
+    }
+
+    /**
+     * Add, change, or remove a weighted directed edge between two vertex ids,
+     * as {@link #set(Object, Object, int)}.
+     *
+     * @param source id of the source vertex
+     * @param target id of the target vertex
+     * @param weight nonnegative weight of the edge
+     * @return the previous weight of the edge, or zero if there was no such edge
+     * @throws IllegalArgumentException if source or target is not the id of a
+     *         vertex in this graph, or weight is negative
+     */
+    public int set(int source, int target, int weight) {
+        checkVertex(source);
+        checkVertex(target);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        int previous;
+        if (weight == 0) {
+            previous = removeKey(outKeys[source], outWeights[source], target);
+            if (previous != 0) {
+                outSizes[source]--;
+                removeKey(inKeys[target], inWeights[target], source);
+                inSizes[target]--;
+            }
+        } else {
+            previous = putOut(source, target, weight);
+            putIn(target, source, weight);
+        }
+        checkRep();
+        return previous;
+    }
+
+    /**
+     * Combine a value into the weight of the edge between two vertex ids,
+     * as {@link #merge(Object, Object, int, IntBinaryOperator)}.
+     *
+     * @param source id of the source vertex
+     * @param target id of the target vertex
+     * @param value value to combine into the weight of the edge
+     * @param function function from the current weight and value to the new weight
+     * @return the new weight of the edge, or zero if there is no longer such an edge
+     * @throws IllegalArgumentException if source or target is not the id of a
+     *         vertex in this graph, or the new weight would be negative
+     */
+    public int merge(int source, int target, int value, IntBinaryOperator function) {
+        checkVertex(source);
+        checkVertex(target);
+        int[] keys = outKeys[source];
+        int slot = keys == null ? NO_VERTEX : findSlot(keys, target);
+        int previous = slot == NO_VERTEX || keys[slot] == NO_VERTEX ? 0 : outWeights[source][slot];
+        int weight = checkWeight(previous == 0 ? value : function.applyAsInt(previous, value));
+        if (previous != 0 && weight != 0) {
+            // update in place; the in-table already holds the edge, so it needs no room
+            outWeights[source][slot] = weight;
+            put(inKeys[target], inWeights[target], source, weight);
+        } else if (weight != previous) {
+            set(source, target, weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Get the weight of the edge between two vertex ids.
+     *
+     * @param source id of the source vertex
+     * @param target id of the target vertex
+     * @return the weight of the edge from source to target, or zero if there is
+     *         no such edge
+     */
+    public int weight(int source, int target) {
+        if (source < 0 || source >= dictionary.size() || outKeys[source] == null) {
+            return 0;
+        }
+        int slot = findSlot(outKeys[source], target);
+        return outKeys[source][slot] == NO_VERTEX ? 0 : outWeights[source][slot];
+    }
+
+    /**
+     * Get the ids of the target vertices with directed edges from a source vertex.
+     *
+     * @param source id of a vertex in this graph
+     * @return a new array of the ids of vertices that this graph has an edge to
+     *         from source, in no particular order
+     */
+    public int[] targets(int source) {
+        checkVertex(source);
+        return keys(outKeys[source], outSizes[source]);
+    }
+
+    /**
+     * Get the ids of the source vertices with directed edges to a target vertex.
+     *
+     * @param target id of a vertex in this graph
+     * @return a new array of the ids of vertices that this graph has an edge from
+     *         to target, in no particular order
+     */
+    public int[] sources(int target) {
+        checkVertex(target);
+        return keys(inKeys[target], inSizes[target]);
+    }
+
+    /**
+     * Get the number of edges from a vertex.
+     *
+     * @param source id of a vertex in this graph
+     * @return the number of edges from source
+     */
+    public int outDegree(int source) {
+        checkVertex(source);
+        return outSizes[source];
+    }
+
+    /**
+     * Get the number of edges to a vertex.
+     *
+     * @param target id of a vertex in this graph
+     * @return the number of edges to target
+     */
+    public int inDegree(int target) {
+        checkVertex(target);
+        return inSizes[target];
+    }
+
+    /**
+     * Checks that an int is the id of a vertex in this graph.
+     *
+     * @param id the id to check
+     * @throws IllegalArgumentException if id is not the id of a vertex in this graph
+     */
+    private void checkVertex(int id) {
+        if (id < 0 || id >= dictionary.size() || !present[id]) {
+            throw new IllegalArgumentException("No vertex with id " + id);
+        }
+    }
+
+    /**
+     * Checks that a weight is nonnegative.
+     *
+     * @param weight the weight to check
+     * @return weight
+     * @throws IllegalArgumentException if weight is negative
+     */
+    private static int checkWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Grows the arrays indexed by vertex id to hold at least the given number of ids.
+     *
+     * @param ids the number of ids the arrays must hold
+     */
+    private void ensureCapacity(int ids) {
+        if (ids <= present.length) {
+            return;
+        }
+        int capacity = Math.max(ids, present.length * 2);
+        present = Arrays.copyOf(present, capacity);
+        outKeys = Arrays.copyOf(outKeys, capacity);
+        outWeights = Arrays.copyOf(outWeights, capacity);
+        outSizes = Arrays.copyOf(outSizes, capacity);
+        inKeys = Arrays.copyOf(inKeys, capacity);
+        inWeights = Arrays.copyOf(inWeights, capacity);
+        inSizes = Arrays.copyOf(inSizes, capacity);
+    }
+
+    /**
+     * Puts an entry into the out-table of a vertex, growing it if needed.
+     *
+     * @param source id of the vertex owning the table
+     * @param target key to put
+     * @param weight positive value to put
+     * @return the previous value for target, or zero if there was none
+     */
+    private int putOut(int source, int target, int weight) {
+        if (outKeys[source] == null || (outSizes[source] + 1) * 4 > outKeys[source].length * 3) {
+            int[][] grown = grow(outKeys[source], outWeights[source]);
+            outKeys[source] = grown[0];
+            outWeights[source] = grown[1];
+        }
+        int previous = put(outKeys[source], outWeights[source], target, weight);
+        if (previous == 0) {
+            outSizes[source]++;
+        }
+        return previous;
+    }
+
+    /**
+     * Puts an entry into the in-table of a vertex, growing it if needed.
+     *
+     * @param target id of the vertex owning the table
+     * @param source key to put
+     * @param weight positive value to put
+     */
+    private void putIn(int target, int source, int weight) {
+        if (inKeys[target] == null || (inSizes[target] + 1) * 4 > inKeys[target].length * 3) {
+            int[][] grown = grow(inKeys[target], inWeights[target]);
+            inKeys[target] = grown[0];
+            inWeights[target] = grown[1];
+        }
+        if (put(inKeys[target], inWeights[target], source, weight) == 0) {
+            inSizes[target]++;
+        }
+    }
+
+    /**
+     * Allocates a table twice the size of an existing one and rehashes its entries.
+     *
+     * @param keys keys of the existing table, or null
+     * @param weights values of the existing table, or null
+     * @return the new keys and values arrays
+     */
+    private static int[][] grow(int[] keys, int[] weights) {
+        int capacity = keys == null ? INITIAL_EDGES : keys.length * 2;
+        int[] newKeys = new int[capacity];
+        int[] newWeights = new int[capacity];
+        Arrays.fill(newKeys, NO_VERTEX);
+        if (keys != null) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != NO_VERTEX) {
+                    put(newKeys, newWeights, keys[slot], weights[slot]);
+                }
+            }
+        }
+        return new int[][] { newKeys, newWeights };
+    }
+
+    /**
+     * Finds the slot of a key in an open-addressing table, or the free slot
+     * where it would be inserted.
+     *
+     * @param keys keys of a table with at least one free slot
+     * @param key the key to find
+     * @return the slot holding key, or the first free slot in its probe sequence
+     */
+    private static int findSlot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != NO_VERTEX && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Puts an entry into an open-addressing table with a free slot.
+     *
+     * @param keys keys of the table
+     * @param weights values of the table
+     * @param key the key to put
+     * @param weight the positive value to put
+     * @return the previous value for key, or zero if there was none
+     */
+    private static int put(int[] keys, int[] weights, int key, int weight) {
+        int slot = findSlot(keys, key);
+        int previous = keys[slot] == NO_VERTEX ? 0 : weights[slot];
+        keys[slot] = key;
+        weights[slot] = weight;
+        return previous;
+    }
+
+    /**
+     * Removes an entry from an open-addressing table, shifting later entries
+     * of the probe sequence back so that no tombstones are needed.
+     *
+     * @param keys keys of the table, or null
+     * @param weights values of the table, or null
+     * @param key the key to remove
+     * @return the removed value, or zero if key was not in the table
+     */
+    private static int removeKey(int[] keys, int[] weights, int key) {
+        if (keys == null) {
+            return 0;
+        }
+        int mask = keys.length - 1;
+        int slot = findSlot(keys, key);
+        if (keys[slot] == NO_VERTEX) {
+            return 0;
+        }
+        int previous = weights[slot];
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != NO_VERTEX) {
+            int home = mix(keys[next]) & mask;
+            // move the entry into the hole unless its home slot lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                weights[hole] = weights[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = NO_VERTEX;
+        weights[hole] = 0;
+        return previous;
+    }
+
+    /**
+     * Scrambles an id so that consecutive ids spread over a table.
+     *
+     * @param key a vertex id
+     * @return a hash of key
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Collects the keys of a table.
+     *
+     * @param keys keys of the table, or null
+     * @param size number of used slots of the table
+     * @return a new array of the keys
+     */
+    private static int[] keys(int[] keys, int size) {
+        int[] result = new int[size];
+        if (keys != null) {
+            int i = 0;
+            for (int key : keys) {
+                if (key != NO_VERTEX) {
+                    result[i++] = key;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a table to a map from labels to weights.
+     *
+     * @param keys keys of the table, or null
+     * @param weights values of the table, or null
+     * @param size number of used slots of the table
+     * @return a new map from the label of each key to its value
+     */
+    private Map<L, Integer> toMap(int[] keys, int[] weights, int size) {
+        Map<L, Integer> map = new HashMap<>(size * 2);
+        if (keys != null) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != NO_VERTEX) {
+                    map.put(dictionary.label(keys[slot]), weights[slot]);
+                }
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        int edgeCount = 0;
+        for (int id = 0; id < dictionary.size(); id++) {
+            edgeCount += outSizes[id];
+        }
+        return "IntGraph{vertices=" + vertexCount + ", edges=" + edgeCount + '}';
+    }
+}
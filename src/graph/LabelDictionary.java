@@ -0,0 +1,200 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary assigning dense int ids to labels. A label keeps its id until
+ * it is released; released ids are assigned again, most recently released
+ * first, before any new id, so that ids stay below the largest number of
+ * labels ever held at once.
+ * This class is internal to the reps of IntGraph and MatrixGraph.
+ *
+ * @param <L> type of labels, must be immutable
+ */
+class LabelDictionary<L> {
+
+    private static final int EMPTY = -1;
+
+    private Object[] labels;
+    private int[] slots;
+    private int size;
+    private int[] released;
+    private int releasedCount;
+
+    // Abstraction function:
+    //   Represents the mapping from labels[id] to id for 0 <= id < size with
+    //   labels[id] != null; released[0..releasedCount-1] are the ids to assign
+    //   again, the last one first
+    // Representation invariant:
+    //   the non-null labels[0..size-1] are distinct
+    //   released[0..releasedCount-1] are distinct, and are exactly the ids
+    //     below size whose label is null
+    //   slots is an open-addressing table of the ids with non-null labels, with a
+    //     power-of-two length that is at most half full: every such id is in the
+    //     probe sequence of labels[id].hashCode(), and free slots hold EMPTY
+    // Safety from rep exposure:
+    //   All fields are private; labels are immutable
+
+    /**
+     * Constructs an empty dictionary.
+     *
+     * @param expectedSize expected number of labels, positive
+     */
+    LabelDictionary(int expectedSize) {
+        labels = new Object[expectedSize];
+        slots = new int[Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) * 2];
+        Arrays.fill(slots, EMPTY);
+        released = new int[0];
+    }
+
+    /**
+     * Checks the representation invariant of the LabelDictionary.
+     */
+    private void checkRep() {
+        assert size <= labels.length;
+        assert size * 2 <= slots.length;
+        assert releasedCount <= size;
+    }
+
+    /**
+     * Gets the id of a label, assigning it {@link #nextId()} if it has none yet.
+     *
+     * @param label a non-null label
+     * @return the id of label
+     */
+    int intern(L label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Label cannot be null");
+        }
+        int slot = findSlot(label);
+        if (slots[slot] != EMPTY) {
+            return slots[slot];
+        }
+        int id;
+        if (releasedCount > 0) {
+            id = released[--releasedCount];
+        } else {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            id = size++;
+        }
+        labels[id] = label;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        checkRep();
+        return id;
+    }
+
+    /**
+     * Gets the id that the next label without an id will be assigned.
+     *
+     * @return the most recently released id not assigned again, if any, or else size()
+     */
+    int nextId() {
+        return releasedCount > 0 ? released[releasedCount - 1] : size;
+    }
+
+    /**
+     * Removes the label of an id, so that the id can be assigned again.
+     *
+     * @param id an id in 0 .. size()-1 that has a label
+     */
+    void release(int id) {
+        Object label = labels[id];
+        int mask = slots.length - 1;
+        int hole = findSlot(label);
+        // shift later ids of the probe sequence back, so that no tombstones are needed
+        int next = (hole + 1) & mask;
+        while (slots[next] != EMPTY) {
+            int home = home(labels[slots[next]], mask);
+            // move the id into the hole unless its home slot lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = EMPTY;
+        labels[id] = null;
+        if (releasedCount == released.length) {
+            released = Arrays.copyOf(released, Math.max(4, released.length * 2));
+        }
+        released[releasedCount++] = id;
+        checkRep();
+    }
+
+    /**
+     * Gets the id of a label.
+     *
+     * @param label a label
+     * @return the id of label, or -1 if it has not been interned
+     */
+    int find(L label) {
+        return label == null ? EMPTY : slots[findSlot(label)];
+    }
+
+    /**
+     * Gets the label of an id.
+     *
+     * @param id an id in 0 .. size()-1 that has not been released
+     * @return the label with that id
+     */
+    @SuppressWarnings("unchecked")
+    L label(int id) {
+        return (L) labels[id];
+    }
+
+    /**
+     * Gets the bound on the ids assigned so far.
+     *
+     * @return an int greater than every id that has a label, which is also the
+     *         next new id to be assigned once no released id is left
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot holding the id of a label, or the free slot where it
+     * would be inserted.
+     *
+     * @param label a non-null label
+     * @return the slot for label
+     */
+    private int findSlot(Object label) {
+        int mask = slots.length - 1;
+        int slot = home(label, mask);
+        while (slots[slot] != EMPTY && !labels[slots[slot]].equals(label)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the first slot of the probe sequence of a label.
+     *
+     * @param label a non-null label
+     * @param mask the length of the table of ids, minus one
+     * @return the home slot of label
+     */
+    private static int home(Object label, int mask) {
+        int h = label.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Doubles the table of ids and reinserts every label.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        for (int id = 0; id < size; id++) {
+            if (labels[id] != null) {
+                slots[findSlot(labels[id])] = id;
+            }
+        }
+    }
+}
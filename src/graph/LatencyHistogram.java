@@ -0,0 +1,163 @@
+package graph;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of nonnegative long values, such as latencies in nanoseconds,
+ * with bounded relative error, in the style of HdrHistogram.
+ *
+ * <p>Values below {@value #SUB_BUCKETS} have a bucket each; above that, each
+ * power-of-two range [2^e, 2^(e+1)) is split into {@value #SUB_BUCKETS} equal
+ * buckets, so a value is known to within 1/{@value #SUB_BUCKETS} (about 3%) of
+ * itself. Values of {@value #MAX_EXPONENT} or more bits are counted in the
+ * last bucket. Buckets live in one preallocated array, so recording a value
+ * never allocates.
+ *
+ * <p>A histogram has a single writer: {@link #record(long)} and
+ * {@link #add(LatencyHistogram)} must only be called by one thread at a time.
+ * Other threads may read it at any time; they see each counter as of some
+ * recent write, so what they read is approximate while the writer is active.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    /** Number of buckets each power-of-two range of values is split into. */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values are bucketed by their first MAX_EXPONENT bits. */
+    static final int MAX_EXPONENT = 48;
+
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final AtomicLongArray counters = new AtomicLongArray(BUCKETS + 3);
+
+    // Abstraction function:
+    //   Represents the multiset of recorded values in which counters[i], for
+    //   i < BUCKETS, values fall in bucket i; counters[COUNT], counters[SUM] and
+    //   counters[MAX] are the number, sum and maximum of the values
+    // Representation invariant:
+    //   all counters are nonnegative; counters[COUNT] is the sum of the buckets
+    // Safety from rep exposure:
+    //   counters is private and final, and never returned
+    // Thread safety argument:
+    //   Only the single writer updates counters, each with an ordered write
+    //   (lazySet) of a value it computed from its own previous write, so no
+    //   update is lost; readers see each counter's latest ordered write.
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value a nonnegative value
+     * @return the index of the bucket holding value
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the largest value in a bucket.
+     *
+     * @param bucket index of a bucket
+     * @return the largest value that falls in bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a value. Must only be called by this histogram's writer.
+     *
+     * @param value the value, nonnegative; negative values are recorded as 0
+     */
+    void record(long value) {
+        long v = Math.max(0, value);
+        int bucket = bucket(v);
+        counters.lazySet(bucket, counters.get(bucket) + 1);
+        counters.lazySet(COUNT, counters.get(COUNT) + 1);
+        counters.lazySet(SUM, counters.get(SUM) + v);
+        if (v > counters.get(MAX)) {
+            counters.lazySet(MAX, v);
+        }
+    }
+
+    /**
+     * Adds all the values of another histogram to this one. Must only be
+     * called by this histogram's writer.
+     *
+     * @param other the histogram to add; it may be concurrently written
+     */
+    void add(LatencyHistogram other) {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long n = other.counters.get(bucket);
+            if (n != 0) {
+                counters.lazySet(bucket, counters.get(bucket) + n);
+                count += n;
+            }
+        }
+        counters.lazySet(COUNT, counters.get(COUNT) + count);
+        counters.lazySet(SUM, counters.get(SUM) + other.counters.get(SUM));
+        counters.lazySet(MAX, Math.max(counters.get(MAX), other.counters.get(MAX)));
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    long count() {
+        return counters.get(COUNT);
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    long max() {
+        return counters.get(MAX);
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) counters.get(SUM) / count;
+    }
+
+    /**
+     * Gets a percentile of the values recorded, by the nearest-rank method.
+     *
+     * @param percentile the percentile, in [0, 100]
+     * @return a value v, within 1/SUB_BUCKETS of the percentile value, such
+     *         that at least percentile percent of the values are at most v;
+     *         0 if there are no values
+     */
+    long valueAtPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be in [0, 100]: " + percentile);
+        }
+        long count = count();
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counters.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max());
+            }
+        }
+        return max();
+    }
+}
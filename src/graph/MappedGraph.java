@@ -0,0 +1,540 @@
+package graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A read-only Graph served straight from a memory-mapped graph file.
+ *
+ * <p>Opening a graph file only maps it and checks its header, so it takes
+ * about as long as opening the file, whatever the size of the graph; the
+ * operating system pages in the parts that queries touch. The int-id
+ * operations answer queries without allocating, and the graph is safe for
+ * use by concurrent readers. The Graph mutators throw
+ * UnsupportedOperationException; {@link #copyInto(Graph)} rebuilds the graph
+ * into a mutable one.
+ *
+ * <p>A graph file holds the CSR arrays of a {@link FrozenGraph}, big-endian,
+ * preceded by a header of six ints:
+ * <pre>
+ *     magic ("GRPH"), version, vertex count n, edge count m,
+ *     label index slots k, label bytes b
+ * </pre>
+ * <p>and followed, in order, by:
+ * <pre>
+ *     int[k]   label index: id + 1 of the label hashing to each slot, 0 if free
+ *     int[n+1] label offsets into the label bytes
+ *     int[n+1] target offsets, int[m] target ids, int[m] target weights,
+ *     int[m]   positions of the targets of each slice by descending weight
+ *     int[n+1] source offsets, int[m] source ids, int[m] source weights
+ *     byte[b]  labels, UTF-8
+ * </pre>
+ * <p>Vertex ids are those of the FrozenGraph written, so ties broken by id
+ * are broken the same way after reloading. Labels are hashed with
+ * {@link String#hashCode()}, whose value is specified by the language, and
+ * the label index is probed linearly. Files are limited to 2 GiB.
+ */
+public class MappedGraph implements IndexedGraph<String> {
+
+    /** "GRPH" in ASCII. */
+    private static final int MAGIC = 0x47525048;
+    /** Version of the format written by {@link #write(Graph, File)}. */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int NO_VERTEX = -1;
+
+    private final ByteBuffer buffer;
+    private final int vertexCount;
+    private final int edgeCount;
+    private final int indexSlots;
+    private final int index;
+    private final int labelOffsets;
+    private final int targetOffsets;
+    private final int targetIds;
+    private final int targetWeights;
+    private final int targetsByWeight;
+    private final int sourceOffsets;
+    private final int sourceIds;
+    private final int sourceWeights;
+    private final int labelBytes;
+
+    // Abstraction function:
+    //   Represents the graph with vertices label(0) .. label(vertexCount-1), where
+    //   label(id) is the UTF-8 string in buffer from labelBytes + labelOffsets[id]
+    //   to labelBytes + labelOffsets[id+1], and with an edge from id s to targetIds[i]
+    //   with weight targetWeights[i] for every targetOffsets[s] <= i < targetOffsets[s+1].
+    //   Each int field other than the counts is the byte position in buffer of the
+    //   section of that name, and X[i] denotes the i-th int of section X.
+    // Representation invariant:
+    //   buffer is read-only and holds a well-formed graph file of version VERSION:
+    //   the sections follow each other in the order of the format, and satisfy
+    //   the representation invariant of FrozenGraph for the same arrays
+    //   indexSlots is a power of two greater than vertexCount
+    // Safety from rep exposure:
+    //   All fields are private and final; buffer is read-only and never returned,
+    //   and observers return fresh collections
+
+    /**
+     * Writes a graph file.
+     *
+     * @param graph the graph to write; its ids are kept if it is an IndexedGraph,
+     *        otherwise it is frozen first
+     * @param file the file to write, replaced if it exists; it is written to a
+     *        temporary file in the same directory, forced to disk, and then
+     *        atomically moved over file, so that a graph opened from file,
+     *        even the one being written, keeps reading the old contents
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the graph is too large for the format
+     */
+    public static void write(Graph<String> graph, File file) throws IOException {
+        IndexedGraph<String> indexed = graph instanceof IndexedGraph
+                ? (IndexedGraph<String>) graph : new FrozenGraph<>(graph);
+        int n = indexed.size();
+        byte[][] labels = new byte[n][];
+        long labelLength = 0;
+        long m = 0;
+        for (int id = 0; id < n; id++) {
+            labels[id] = indexed.label(id).getBytes(StandardCharsets.UTF_8);
+            labelLength += labels[id].length;
+            m += indexed.outDegree(id);
+        }
+        // at most half full, so probes stay short
+        long slotCount = Long.highestOneBit(Math.max(1, n) * 2L) * 2;
+        long length = HEADER_BYTES + Integer.BYTES * (slotCount + 3L * (n + 1) + 5L * m) + labelLength;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Graph too large for a graph file: " + length + " bytes");
+        }
+        int slots = (int) slotCount;
+
+        int[] index = new int[slots];
+        for (int id = 0; id < n; id++) {
+            int slot = home(indexed.label(id).hashCode(), slots);
+            while (index[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            index[slot] = id + 1;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile("." + file.getName() + "-", ".tmp", directory);
+        try {
+            writeFile(indexed, temporary, index, labels, labelLength, m);
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Writes the sections of a graph file.
+     *
+     * @param indexed the graph to write
+     * @param file the file to write, truncated if it exists
+     * @param index the label index of the file
+     * @param labels the UTF-8 bytes of each label, by id
+     * @param labelLength total length of labels
+     * @param m number of edges of indexed
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeFile(IndexedGraph<String> indexed, File file, int[] index,
+            byte[][] labels, long labelLength, long m) throws IOException {
+        int n = indexed.size();
+        int slots = index.length;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt((int) m);
+            out.writeInt(slots);
+            out.writeInt((int) labelLength);
+            for (int slot : index) {
+                out.writeInt(slot);
+            }
+            int offset = 0;
+            for (int id = 0; id <= n; id++) {
+                out.writeInt(offset);
+                offset += id < n ? labels[id].length : 0;
+            }
+            writeOffsets(out, n, indexed::outDegree);
+            for (int source = 0; source < n; source++) {
+                for (int i = 0; i < indexed.outDegree(source); i++) {
+                    out.writeInt(indexed.target(source, i));
+                }
+            }
+            for (int source = 0; source < n; source++) {
+                for (int i = 0; i < indexed.outDegree(source); i++) {
+                    out.writeInt(indexed.weight(source, indexed.target(source, i)));
+                }
+            }
+            for (int source = 0; source < n; source++) {
+                int degree = indexed.outDegree(source);
+                for (int rank = 0; rank < degree; rank++) {
+                    out.writeInt(position(indexed, source, indexed.heaviestTarget(source, rank)));
+                }
+            }
+            writeOffsets(out, n, indexed::inDegree);
+            for (int target = 0; target < n; target++) {
+                for (int i = 0; i < indexed.inDegree(target); i++) {
+                    out.writeInt(indexed.source(target, i));
+                }
+            }
+            for (int target = 0; target < n; target++) {
+                for (int i = 0; i < indexed.inDegree(target); i++) {
+                    out.writeInt(indexed.weight(indexed.source(target, i), target));
+                }
+            }
+            for (byte[] label : labels) {
+                out.write(label);
+            }
+        }
+    }
+
+    /**
+     * Writes the offsets of the slices of a CSR section.
+     *
+     * @param out stream to write to
+     * @param n number of vertices
+     * @param degree length of the slice of each vertex
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeOffsets(DataOutputStream out, int n,
+            IntUnaryOperator degree) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (int id = 0; id < n; id++) {
+            offset += degree.applyAsInt(id);
+            out.writeInt(offset);
+        }
+    }
+
+    /**
+     * Finds the position of a target in the id-ordered slice of a source.
+     *
+     * @param graph an indexed graph
+     * @param source an id of graph
+     * @param target the id of a target of source
+     * @return i such that graph.target(source, i) == target
+     */
+    private static int position(IndexedGraph<String> graph, int source, int target) {
+        int low = 0;
+        int high = graph.outDegree(source) - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (graph.target(source, middle) < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the first slot a label hash probes in the label index.
+     *
+     * @param hash hash code of a label
+     * @param slots number of slots, a power of two
+     * @return the home slot of the hash
+     */
+    private static int home(int hash, int slots) {
+        return (hash ^ (hash >>> 16)) & (slots - 1);
+    }
+
+    /**
+     * Opens a graph file by mapping it into memory.
+     *
+     * @param file a graph file written by {@link #write(Graph, File)}
+     * @return a graph backed by the file; the file must not be modified while
+     *         the graph is in use
+     * @throws IOException if the file cannot be read, is not a graph file, has an
+     *         unsupported version or is truncated
+     */
+    public static MappedGraph open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a graph file: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedGraph(buffer, file);
+        }
+    }
+
+    /**
+     * Constructs a graph from a mapped graph file.
+     *
+     * @param buffer the whole file, read-only
+     * @param file the file, for error messages
+     * @throws IOException if the file is not a well-formed graph file of version VERSION
+     */
+    private MappedGraph(ByteBuffer buffer, File file) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a graph file: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported graph file version " + buffer.getInt(4) + ": " + file);
+        }
+        vertexCount = buffer.getInt(8);
+        edgeCount = buffer.getInt(12);
+        indexSlots = buffer.getInt(16);
+        int labelLength = buffer.getInt(20);
+        if (vertexCount < 0 || edgeCount < 0 || labelLength < 0
+                || Integer.bitCount(indexSlots) != 1 || indexSlots <= vertexCount) {
+            throw new IOException("Corrupt graph file header: " + file);
+        }
+        long expected = HEADER_BYTES + Integer.BYTES * (indexSlots + 3L * (vertexCount + 1) + 5L * edgeCount)
+                + labelLength;
+        if (buffer.capacity() != expected) {
+            throw new IOException("Graph file is " + buffer.capacity() + " bytes, expected " + expected + ": " + file);
+        }
+        int ints = Integer.BYTES;
+        index = HEADER_BYTES;
+        labelOffsets = index + ints * indexSlots;
+        targetOffsets = labelOffsets + ints * (vertexCount + 1);
+        targetIds = targetOffsets + ints * (vertexCount + 1);
+        targetWeights = targetIds + ints * edgeCount;
+        targetsByWeight = targetWeights + ints * edgeCount;
+        sourceOffsets = targetsByWeight + ints * edgeCount;
+        sourceIds = sourceOffsets + ints * (vertexCount + 1);
+        sourceWeights = sourceIds + ints * edgeCount;
+        labelBytes = sourceWeights + ints * edgeCount;
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the MappedGraph, as far as it can
+     * be checked without reading the whole file.
+     */
+    private void checkRep() {
+        assert buffer.isReadOnly();
+        assert labelBytes + intAt(labelOffsets, vertexCount) == buffer.capacity();
+        assert intAt(targetOffsets, vertexCount) == edgeCount;
+        assert intAt(sourceOffsets, vertexCount) == edgeCount;
+    }
+
+    /**
+     * Reads an int of a section.
+     *
+     * @param section byte position of the section
+     * @param i index of the int within the section
+     * @return the int
+     */
+    private int intAt(int section, int i) {
+        return buffer.getInt(section + i * Integer.BYTES);
+    }
+
+    /**
+     * Rebuilds this graph into a graph, for example an empty ConcreteVerticesGraph
+     * or ConcreteEdgesGraph, by adding its vertices in id order and then its edges.
+     *
+     * @param <G> type of the graph
+     * @param graph graph to add the vertices and edges of this graph to
+     * @return graph
+     */
+    public <G extends Graph<String>> G copyInto(G graph) {
+        String[] labels = new String[vertexCount];
+        GraphLoader loader = new GraphLoader(graph);
+        for (int id = 0; id < vertexCount; id++) {
+            labels[id] = label(id);
+            loader.addVertex(labels[id]);
+        }
+        for (int source = 0; source < vertexCount; source++) {
+            int end = intAt(targetOffsets, source + 1);
+            for (int i = intAt(targetOffsets, source); i < end; i++) {
+                loader.add(labels[source], labels[intAt(targetIds, i)], intAt(targetWeights, i));
+            }
+        }
+        loader.finish();
+        return graph;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a MappedGraph is read-only
+     */
+    @Override
+    public boolean add(String vertex) {
+        throw new UnsupportedOperationException("MappedGraph is read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a MappedGraph is read-only
+     */
+    @Override
+    public int set(String source, String target, int weight) {
+        throw new UnsupportedOperationException("MappedGraph is read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; a MappedGraph is read-only
+     */
+    @Override
+    public boolean remove(String vertex) {
+        throw new UnsupportedOperationException("MappedGraph is read-only");
+    }
+
+    @Override
+    public Set<String> vertices() {
+        Set<String> vertices = new HashSet<>(BulkLoadable.capacityFor(vertexCount));
+        for (int id = 0; id < vertexCount; id++) {
+            vertices.add(label(id));
+        }
+        return vertices;
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        int id = id(target);
+        return id == NO_VERTEX ? new HashMap<>() : toMap(sourceOffsets, sourceIds, sourceWeights, id);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        int id = id(source);
+        return id == NO_VERTEX ? new HashMap<>() : toMap(targetOffsets, targetIds, targetWeights, id);
+    }
+
+    /**
+     * Converts one slice of the forward or reverse sections to a map.
+     *
+     * @param offsets targetOffsets or sourceOffsets
+     * @param neighbours the matching ids section
+     * @param weights the matching weights section
+     * @param id id of the vertex owning the slice
+     * @return a new map from the label of each neighbour to its weight
+     */
+    private Map<String, Integer> toMap(int offsets, int neighbours, int weights, int id) {
+        int start = intAt(offsets, id);
+        int end = intAt(offsets, id + 1);
+        Map<String, Integer> map = new HashMap<>(BulkLoadable.capacityFor(end - start));
+        for (int i = start; i < end; i++) {
+            map.put(label(intAt(neighbours, i)), intAt(weights, i));
+        }
+        return map;
+    }
+
+    @Override
+    public int size() {
+        return vertexCount;
+    }
+
+    @Override
+    public int id(String label) {
+        if (label == null) {
+            return NO_VERTEX;
+        }
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        for (int slot = home(label.hashCode(), indexSlots); ; slot = (slot + 1) & (indexSlots - 1)) {
+            int id = intAt(index, slot) - 1;
+            if (id == NO_VERTEX || labelEquals(id, bytes)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Tests whether the label of an id has the given UTF-8 bytes.
+     *
+     * @param id an id in 0 .. size()-1
+     * @param bytes UTF-8 bytes of a label
+     * @return true iff label(id) is encoded by bytes
+     */
+    private boolean labelEquals(int id, byte[] bytes) {
+        int start = labelBytes + intAt(labelOffsets, id);
+        if (labelBytes + intAt(labelOffsets, id + 1) - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String label(int id) {
+        int start = labelBytes + intAt(labelOffsets, id);
+        byte[] bytes = new byte[labelBytes + intAt(labelOffsets, id + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int weight(int source, int target) {
+        int low = intAt(targetOffsets, source);
+        int high = intAt(targetOffsets, source + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = intAt(targetIds, middle);
+            if (id < target) {
+                low = middle + 1;
+            } else if (id > target) {
+                high = middle - 1;
+            } else {
+                return intAt(targetWeights, middle);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int outDegree(int source) {
+        return intAt(targetOffsets, source + 1) - intAt(targetOffsets, source);
+    }
+
+    @Override
+    public int inDegree(int target) {
+        return intAt(sourceOffsets, target + 1) - intAt(sourceOffsets, target);
+    }
+
+    @Override
+    public int heaviestTarget(int source, int rank) {
+        int start = intAt(targetOffsets, source);
+        return intAt(targetIds, start + intAt(targetsByWeight, start + rank));
+    }
+
+    @Override
+    public int heaviestWeight(int source, int rank) {
+        int start = intAt(targetOffsets, source);
+        return intAt(targetWeights, start + intAt(targetsByWeight, start + rank));
+    }
+
+    @Override
+    public int target(int source, int index) {
+        return intAt(targetIds, intAt(targetOffsets, source) + index);
+    }
+
+    @Override
+    public int source(int target, int index) {
+        return intAt(sourceIds, intAt(sourceOffsets, target) + index);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedGraph{vertices=" + vertexCount + ", edges=" + edgeCount + '}';
+    }
+}
@@ -0,0 +1,278 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An implementation of Graph that stores edge weights in an adjacency matrix.
+ *
+ * <p>Labels are mapped to dense int ids as in IntGraph, and the weight of the
+ * edge from id s to id t is cell (s, t) of a square int matrix, zero if there
+ * is no such edge. Setting and reading a weight is a single array access, and
+ * an edge costs no memory beyond its cell, so the matrix suits small dense
+ * graphs; since every vertex costs a row and a column, it wastes memory on
+ * large sparse ones. {@link #sources(Object)} and {@link #targets(Object)}
+ * scan a whole column or row.
+ *
+ * <p>Removing a vertex frees its id and clears its row and column, and the
+ * next vertex added takes the most recently freed id, so the matrix grows only
+ * with the largest number of vertices the graph has held at once, however
+ * many distinct labels come and go. The matrix holds at most
+ * {@link #MAX_VERTICES} ids.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class MatrixGraph<L> implements MergeableGraph<L> {
+
+    /** Maximum number of vertex ids, so that the matrix fits in one array. */
+    public static final int MAX_VERTICES = 46_340;
+
+    private static final int NO_VERTEX = -1;
+    private static final int INITIAL_VERTICES = 16;
+
+    private final LabelDictionary<L> dictionary;
+    private boolean[] present;
+    private int vertexCount;
+    private int capacity;
+    private int[] weights;
+    private int[] outDegrees;
+    private int[] inDegrees;
+
+    // Abstraction function:
+    //   Represents the graph whose vertices are the labels dictionary.label(id) of the
+    //   ids with present[id], and which has an edge from label(s) to label(t) with
+    //   weight w iff w = weights[s * capacity + t] is positive.
+    // Representation invariant:
+    //   dictionary.size() <= capacity <= MAX_VERTICES
+    //   present[id] iff the dictionary has a label for id
+    //   present, outDegrees and inDegrees have length capacity, and weights capacity^2
+    //   vertexCount is the number of ids with present[id]
+    //   all weights are nonnegative, and nonzero only between present vertices
+    //   outDegrees[s] and inDegrees[t] count the nonzero cells of row s and column t
+    // Safety from rep exposure:
+    //   All fields are private; observers return fresh collections.
+
+    /**
+     * Constructs an empty MatrixGraph.
+     */
+    public MatrixGraph() {
+        this(INITIAL_VERTICES);
+    }
+
+    /**
+     * Constructs an empty MatrixGraph with room for the given number of vertices
+     * before the matrix has to grow.
+     *
+     * @param expectedVertices expected number of vertices, in 0 .. MAX_VERTICES
+     */
+    public MatrixGraph(int expectedVertices) {
+        if (expectedVertices < 0 || expectedVertices > MAX_VERTICES) {
+            throw new IllegalArgumentException("Expected vertices must be in 0 .. " + MAX_VERTICES
+                    + ": " + expectedVertices);
+        }
+        capacity = Math.max(expectedVertices, 1);
+        dictionary = new LabelDictionary<>(capacity);
+        present = new boolean[capacity];
+        weights = new int[capacity * capacity];
+        outDegrees = new int[capacity];
+        inDegrees = new int[capacity];
+    }
+
+    /**
+     * Checks the representation invariant of the MatrixGraph.
+     */
+    private void checkRep() {
+        assert dictionary.size() <= capacity && capacity <= MAX_VERTICES;
+        assert weights.length == capacity * capacity;
+        assert vertexCount >= 0 && vertexCount <= dictionary.size();
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        int found = dictionary.find(vertex);
+        if (found != NO_VERTEX && present[found]) {
+            return false;
+        }
+        if (found == NO_VERTEX) {
+            ensureCapacity(dictionary.nextId() + 1);
+            found = dictionary.intern(vertex);
+        }
+        present[found] = true;
+        vertexCount++;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        checkWeight(weight);
+        if (weight != 0) {
+            add(source);
+            add(target);
+        }
+        int s = id(source);
+        int t = id(target);
+        if (s == NO_VERTEX || t == NO_VERTEX) {
+            return 0;
+        }
+        int previous = put(s, t, weight);
+        checkRep();
+        return previous;
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator function) {
+        int s = id(source);
+        int t = id(target);
+        int previous = s == NO_VERTEX || t == NO_VERTEX ? 0 : weights[s * capacity + t];
+        int weight = checkWeight(previous == 0 ? value : function.applyAsInt(previous, value));
+        if (weight != previous) {
+            set(source, target, weight);
+        }
+        return weight;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        int id = id(vertex);
+        if (id == NO_VERTEX) {
+            return false;
+        }
+        for (int other = 0; other < dictionary.size(); other++) {
+            put(id, other, 0);
+            put(other, id, 0);
+        }
+        present[id] = false;
+        dictionary.release(id);
+        vertexCount--;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        Set<L> labels = new HashSet<>(BulkLoadable.capacityFor(vertexCount));
+        for (int id = 0; id < dictionary.size(); id++) {
+            if (present[id]) {
+                labels.add(dictionary.label(id));
+            }
+        }
+        return labels;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        int t = id(target);
+        if (t == NO_VERTEX) {
+            return new HashMap<>();
+        }
+        Map<L, Integer> map = new HashMap<>(BulkLoadable.capacityFor(inDegrees[t]));
+        for (int s = 0; s < dictionary.size(); s++) {
+            if (weights[s * capacity + t] != 0) {
+                map.put(dictionary.label(s), weights[s * capacity + t]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        int s = id(source);
+        if (s == NO_VERTEX) {
+            return new HashMap<>();
+        }
+        Map<L, Integer> map = new HashMap<>(BulkLoadable.capacityFor(outDegrees[s]));
+        int row = s * capacity;
+        for (int t = 0; t < dictionary.size(); t++) {
+            if (weights[row + t] != 0) {
+                map.put(dictionary.label(t), weights[row + t]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the id of a present vertex.
+     *
+     * @param label a label
+     * @return the id of the vertex with that label, or -1 if there is no such vertex
+     */
+    private int id(L label) {
+        int id = dictionary.find(label);
+        return id != NO_VERTEX && present[id] ? id : NO_VERTEX;
+    }
+
+    /**
+     * Sets one cell of the matrix, keeping the degree counts.
+     *
+     * @param source id of a present vertex
+     * @param target id of a present vertex
+     * @param weight nonnegative weight
+     * @return the previous weight in the cell
+     */
+    private int put(int source, int target, int weight) {
+        int cell = source * capacity + target;
+        int previous = weights[cell];
+        weights[cell] = weight;
+        int change = (weight != 0 ? 1 : 0) - (previous != 0 ? 1 : 0);
+        outDegrees[source] += change;
+        inDegrees[target] += change;
+        return previous;
+    }
+
+    /**
+     * Checks that a weight is nonnegative.
+     *
+     * @param weight the weight to check
+     * @return weight
+     * @throws IllegalArgumentException if weight is negative
+     */
+    private static int checkWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Grows the matrix and the arrays indexed by id to hold at least the given
+     * number of ids.
+     *
+     * @param ids the number of ids the matrix must hold
+     * @throws IllegalStateException if ids is more than MAX_VERTICES
+     */
+    private void ensureCapacity(int ids) {
+        if (ids <= capacity) {
+            return;
+        }
+        if (ids > MAX_VERTICES) {
+            throw new IllegalStateException("MatrixGraph holds at most " + MAX_VERTICES + " vertex ids");
+        }
+        int grown = (int) Math.min(MAX_VERTICES, Math.max(ids, 2L * capacity));
+        int[] matrix = new int[grown * grown];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(weights, row * capacity, matrix, row * grown, capacity);
+        }
+        weights = matrix;
+        capacity = grown;
+        present = Arrays.copyOf(present, grown);
+        outDegrees = Arrays.copyOf(outDegrees, grown);
+        inDegrees = Arrays.copyOf(inDegrees, grown);
+    }
+
+    @Override
+    public String toString() {
+        int edgeCount = 0;
+        for (int id = 0; id < dictionary.size(); id++) {
+            edgeCount += outDegrees[id];
+        }
+        return "MatrixGraph{vertices=" + vertexCount + ", edges=" + edgeCount + '}';
+    }
+}
@@ -0,0 +1,52 @@
+package graph;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A Graph that can combine a value into the weight of an edge in a single
+ * operation, without reading the edge's weight through
+ * {@link Graph#targets(Object) targets} first.
+ *
+ * <p>Implementations perform each merge with one lookup of the edge and
+ * without copying any part of the graph; thread-safe implementations perform
+ * it atomically.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface MergeableGraph<L> extends Graph<L> {
+
+    /**
+     * Combine a value into the weight of a directed edge in this graph.
+     * If there is no edge from source to target, the new weight is value;
+     * otherwise it is function applied to the current weight and value.
+     * As in {@link Graph#set(Object, Object, int) set}, a nonzero new weight
+     * adds or updates the edge, adding vertices with the given labels if they
+     * do not already exist, and a zero new weight removes the edge.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param value value to combine into the weight of the edge
+     * @param function function from the current (positive) weight and value
+     *        to the new weight
+     * @return the new weight of the edge, or zero if there is no longer such an edge
+     * @throws IllegalArgumentException if the new weight would be negative;
+     *         this graph is then not modified
+     */
+    public int merge(L source, L target, int value, IntBinaryOperator function);
+
+    /**
+     * Add to the weight of a directed edge in this graph, as
+     * {@code merge(source, target, delta, Integer::sum)}.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param delta amount to add to the weight of the edge
+     * @return the new weight of the edge, or zero if there is no longer such an edge
+     * @throws IllegalArgumentException if the new weight would be negative;
+     *         this graph is then not modified
+     */
+    public default int increment(L source, L target, int delta) {
+        return merge(source, target, delta, Integer::sum);
+    }
+
+}
@@ -0,0 +1,837 @@
+package graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An implementation of Graph that keeps its vertices, edges and labels
+ * outside the Java heap, in direct or memory-mapped ByteBuffers.
+ *
+ * <p>Storage is split into segments that are allocated as the graph grows,
+ * each twice the size of the previous one up to 1 GiB. There are three
+ * segmented stores:
+ * <ul><li> labels: each label's UTF-8 bytes, prefixed by their length;
+ *     <li> vertices: a fixed-size record per vertex id, pointing at its label
+ *          and at its outgoing and incoming edge tables;
+ *     <li> blocks: per-vertex open-addressing tables of (neighbour id, weight)
+ *          pairs, recycled through per-size free lists when they grow. </ul>
+ * The hash index from labels to ids is a single off-heap table as well, so
+ * the heap holds only a few fixed-size fields and the lists of segments,
+ * however large the graph gets.
+ *
+ * <p>With a directory, segments are files mapped into memory, so the
+ * operating system pages them in and out and the graph may exceed physical
+ * memory. The files are scratch storage for this graph only, not a
+ * persistent format.
+ *
+ * <p>Ids are dense, and removing a vertex keeps its id and label reserved
+ * for when it is added again.
+ */
+public class OffHeapGraph implements MergeableGraph<String> {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+    private static final int RECORD_SIZE = 32;
+    private static final int LABEL_FIELD = 0;
+    private static final int OUT_FIELD = 8;
+    private static final int IN_FIELD = 16;
+    private static final int OUT_SIZE_FIELD = 24;
+    private static final int IN_SIZE_FIELD = 28;
+    private static final long ABSENT = -1;
+    private static final long NO_BLOCK = 0;
+
+    private static final int BLOCK_HEADER = 8;
+    private static final int ENTRY_SIZE = 8;
+    private static final int INITIAL_BLOCK_CAPACITY = 4;
+
+    private static final int INDEX_SLOT = 8;
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+
+    private final File directory;
+    private final SegmentedBuffer labels;
+    private final SegmentedBuffer records;
+    private final SegmentedBuffer blocks;
+    private final long[] freeBlocks = new long[32];
+    private ByteBuffer index;
+    private int indexSlots;
+    private int idCount;
+    private int vertexCount;
+
+    // Abstraction function:
+    //   Represents the graph whose vertices are the labels of the ids 0 .. idCount-1
+    //   whose records have an out-table field other than ABSENT, with an edge from id s
+    //   to id t with weight w iff the out-table of s holds the entry (t + 1, w).
+    //   The label of id is the UTF-8 string stored at the label field of its record,
+    //   which is at address id * RECORD_SIZE of records.
+    //   The in-table of t holds the same edges keyed by source.
+    // Representation invariant:
+    //   idCount <= indexSlots / 2, and index holds exactly the ids 0 .. idCount-1,
+    //     as (id + 1, hash of label) pairs at the slots their label hashes probe to;
+    //     free slots hold (0, 0)
+    //   labels of distinct ids are distinct
+    //   vertexCount is the number of present ids
+    //   an absent id has ABSENT in both table fields and zero sizes
+    //   a table field is NO_BLOCK or the address of a block of power-of-two capacity,
+    //     at most 3/4 full, whose size is the size field of the record;
+    //     free entries hold (0, 0); all weights are positive
+    //   edges only join present vertices, and (t + 1, w) is in the out-table of s
+    //     iff (s + 1, w) is in the in-table of t
+    //   freeBlocks[c] is NO_BLOCK or the first of a list of unused blocks of
+    //     capacity 2^c, linked through the first 8 bytes of their entries
+    // Safety from rep exposure:
+    //   All fields are private; buffers and addresses are never returned, and
+    //   observers return fresh collections.
+
+    /**
+     * Constructs an empty OffHeapGraph in direct (off-heap, not file-backed) buffers.
+     */
+    public OffHeapGraph() {
+        this(null, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs an empty OffHeapGraph in memory-mapped files.
+     *
+     * @param directory an existing directory in which to create the segment files;
+     *        files of the same names are overwritten
+     */
+    public OffHeapGraph(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs an empty OffHeapGraph.
+     *
+     * @param directory an existing directory in which to create memory-mapped
+     *        segment files, or null to use direct buffers
+     * @param segmentSize size in bytes of the first segment of each store, a
+     *        power of two at least 64 and at most 2^30
+     * @throws UncheckedIOException if a segment file cannot be created
+     */
+    public OffHeapGraph(File directory, int segmentSize) {
+        if (segmentSize < 64 || segmentSize > SegmentedBuffer.MAX_SEGMENT_SIZE
+                || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("Segment size must be a power of two in [64, 2^30]: " + segmentSize);
+        }
+        this.directory = directory;
+        labels = new SegmentedBuffer(directory, "labels", segmentSize);
+        records = new SegmentedBuffer(directory, "vertices", segmentSize);
+        blocks = new SegmentedBuffer(directory, "blocks", segmentSize);
+        blocks.allocate(BLOCK_HEADER); // address 0 is NO_BLOCK, so never hand it out
+        indexSlots = INITIAL_INDEX_SLOTS;
+        index = allocateIndex(indexSlots, 0);
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the OffHeapGraph.
+     */
+    private void checkRep() {
+        assert idCount * 2 <= indexSlots;
+        assert vertexCount >= 0 && vertexCount <= idCount;
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        int id = intern(vertex);
+        long record = recordOf(id);
+        if (records.getLong(record + OUT_FIELD) != ABSENT) {
+            return false;
+        }
+        records.putLong(record + OUT_FIELD, NO_BLOCK);
+        records.putLong(record + IN_FIELD, NO_BLOCK);
+        vertexCount++;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        if (weight == 0) {
+            int sourceId = id(source);
+            int targetId = id(target);
+            return sourceId < 0 || targetId < 0 ? 0 : removeEdge(sourceId, targetId);
+        }
+        add(source);
+        add(target);
+        int sourceId = id(source);
+        int targetId = id(target);
+        int previous = put(sourceId, OUT_FIELD, OUT_SIZE_FIELD, targetId, weight);
+        put(targetId, IN_FIELD, IN_SIZE_FIELD, sourceId, weight);
+        checkRep();
+        return previous;
+    }
+
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator function) {
+        int sourceId = id(source);
+        int targetId = id(target);
+        int previous = sourceId < 0 || targetId < 0 ? 0 : weight(sourceId, targetId);
+        int weight = previous == 0 ? value : function.applyAsInt(previous, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be nonnegative: " + weight);
+        }
+        if (weight != previous) {
+            set(source, target, weight);
+        }
+        return weight;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        int id = id(vertex);
+        if (id < 0) {
+            return false;
+        }
+        for (int target : neighbours(id, OUT_FIELD, OUT_SIZE_FIELD)) {
+            removeEdge(id, target);
+        }
+        for (int source : neighbours(id, IN_FIELD, IN_SIZE_FIELD)) {
+            removeEdge(source, id);
+        }
+        long record = recordOf(id);
+        freeBlock(records.getLong(record + OUT_FIELD));
+        freeBlock(records.getLong(record + IN_FIELD));
+        records.putLong(record + OUT_FIELD, ABSENT);
+        records.putLong(record + IN_FIELD, ABSENT);
+        vertexCount--;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        Set<String> result = new HashSet<>();
+        for (int id = 0; id < idCount; id++) {
+            if (records.getLong(recordOf(id) + OUT_FIELD) != ABSENT) {
+                result.add(label(id));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        int id = id(target);
+        return id < 0 ? new HashMap<>() : toMap(id, IN_FIELD);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        int id = id(source);
+        return id < 0 ? new HashMap<>() : toMap(id, OUT_FIELD);
+    }
+
+    /**
+     * Gets the weight of an edge between two present vertices.
+     *
+     * @param source id of the source vertex
+     * @param target id of the target vertex
+     * @return the weight of the edge, or zero if there is no such edge
+     */
+    private int weight(int source, int target) {
+        long block = records.getLong(recordOf(source) + OUT_FIELD);
+        if (block == NO_BLOCK) {
+            return 0;
+        }
+        long entry = findEntry(block, target);
+        return blocks.getInt(entry) == 0 ? 0 : blocks.getInt(entry + 4);
+    }
+
+    /**
+     * Removes an edge between two present vertices if it exists.
+     *
+     * @param source id of the source vertex
+     * @param target id of the target vertex
+     * @return the previous weight of the edge, or zero if there was no such edge
+     */
+    private int removeEdge(int source, int target) {
+        int previous = removeEntry(source, OUT_FIELD, OUT_SIZE_FIELD, target);
+        if (previous != 0) {
+            removeEntry(target, IN_FIELD, IN_SIZE_FIELD, source);
+        }
+        return previous;
+    }
+
+    /**
+     * Gets the id of a present vertex.
+     *
+     * @param label a label
+     * @return the id of the vertex with that label, or -1 if there is no such vertex
+     */
+    private int id(String label) {
+        if (label == null) {
+            return -1;
+        }
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(bytes, label.hashCode());
+        int id = index.getInt(slot * INDEX_SLOT) - 1;
+        return id >= 0 && records.getLong(recordOf(id) + OUT_FIELD) != ABSENT ? id : -1;
+    }
+
+    /**
+     * Gets the id of a label, assigning the next id (to an absent vertex) if it
+     * has none yet.
+     *
+     * @param label a non-null label
+     * @return the id of label
+     */
+    private int intern(String label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        int hash = label.hashCode();
+        int slot = findSlot(bytes, hash);
+        int existing = index.getInt(slot * INDEX_SLOT) - 1;
+        if (existing >= 0) {
+            return existing;
+        }
+        int id = idCount++;
+        long labelAddress = labels.allocate(4 + bytes.length);
+        labels.putInt(labelAddress, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            labels.putByte(labelAddress + 4 + i, bytes[i]);
+        }
+        long record = records.allocate(RECORD_SIZE);
+        assert record == recordOf(id);
+        records.putLong(record + LABEL_FIELD, labelAddress);
+        records.putLong(record + OUT_FIELD, ABSENT);
+        records.putLong(record + IN_FIELD, ABSENT);
+        index.putInt(slot * INDEX_SLOT, id + 1);
+        index.putInt(slot * INDEX_SLOT + 4, hash);
+        if (idCount * 2 > indexSlots) {
+            growIndex();
+        }
+        return id;
+    }
+
+    /**
+     * Finds the index slot of a label, or the free slot where it would be inserted.
+     *
+     * @param bytes UTF-8 bytes of the label
+     * @param hash hash code of the label
+     * @return the slot for the label
+     */
+    private int findSlot(byte[] bytes, int hash) {
+        int mask = indexSlots - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            int id = index.getInt(slot * INDEX_SLOT) - 1;
+            if (id < 0 || (index.getInt(slot * INDEX_SLOT + 4) == hash && labelEquals(id, bytes))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Doubles the label index and reinserts every id by its stored hash.
+     */
+    private void growIndex() {
+        ByteBuffer old = index;
+        int oldSlots = indexSlots;
+        indexSlots *= 2;
+        index = allocateIndex(indexSlots, old.capacity());
+        int mask = indexSlots - 1;
+        for (int i = 0; i < oldSlots; i++) {
+            int entry = old.getInt(i * INDEX_SLOT);
+            if (entry != 0) {
+                int hash = old.getInt(i * INDEX_SLOT + 4);
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (index.getInt(slot * INDEX_SLOT) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index.putInt(slot * INDEX_SLOT, entry);
+                index.putInt(slot * INDEX_SLOT + 4, hash);
+            }
+        }
+    }
+
+    /**
+     * Allocates a zeroed label index.
+     *
+     * @param slots number of slots, a power of two
+     * @param generation distinguishes the file of each index size in a directory
+     * @return a direct or mapped buffer of slots * INDEX_SLOT bytes
+     */
+    private ByteBuffer allocateIndex(int slots, int generation) {
+        if ((long) slots * INDEX_SLOT > SegmentedBuffer.MAX_SEGMENT_SIZE) {
+            throw new IllegalStateException("Too many vertices for the label index: " + idCount);
+        }
+        return SegmentedBuffer.newSegment(directory, "index-" + slots, slots * INDEX_SLOT);
+    }
+
+    /**
+     * Tests whether an id's label has the given UTF-8 bytes.
+     *
+     * @param id an id in 0 .. idCount-1
+     * @param bytes UTF-8 bytes of a label
+     * @return true iff the label of id is encoded by bytes
+     */
+    private boolean labelEquals(int id, byte[] bytes) {
+        long address = records.getLong(recordOf(id) + LABEL_FIELD);
+        if (labels.getInt(address) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (labels.getByte(address + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the label of an id.
+     *
+     * @param id an id in 0 .. idCount-1
+     * @return a new String holding the label of id
+     */
+    private String label(int id) {
+        long address = records.getLong(recordOf(id) + LABEL_FIELD);
+        byte[] bytes = new byte[labels.getInt(address)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = labels.getByte(address + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the address of the record of an id.
+     *
+     * @param id an id in 0 .. idCount-1
+     * @return the address of its record in records
+     */
+    private static long recordOf(int id) {
+        return (long) id * RECORD_SIZE;
+    }
+
+    /**
+     * Puts an entry into one of the tables of a vertex, growing it if needed.
+     *
+     * @param id id of the vertex owning the table
+     * @param tableField OUT_FIELD or IN_FIELD
+     * @param sizeField the matching size field
+     * @param key the neighbour id to put
+     * @param weight the positive weight to put
+     * @return the previous weight for key, or zero if there was none
+     */
+    private int put(int id, int tableField, int sizeField, int key, int weight) {
+        long record = recordOf(id);
+        long block = records.getLong(record + tableField);
+        int size = records.getInt(record + sizeField);
+        if (block == NO_BLOCK || (size + 1) * 4 > capacity(block) * 3) {
+            block = grow(block);
+            records.putLong(record + tableField, block);
+        }
+        long entry = findEntry(block, key);
+        int previous = blocks.getInt(entry) == 0 ? 0 : blocks.getInt(entry + 4);
+        blocks.putInt(entry, key + 1);
+        blocks.putInt(entry + 4, weight);
+        if (previous == 0) {
+            records.putInt(record + sizeField, size + 1);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes an entry from one of the tables of a vertex, shifting later
+     * entries of the probe sequence back so that no tombstones are needed.
+     *
+     * @param id id of the vertex owning the table
+     * @param tableField OUT_FIELD or IN_FIELD
+     * @param sizeField the matching size field
+     * @param key the neighbour id to remove
+     * @return the removed weight, or zero if key was not in the table
+     */
+    private int removeEntry(int id, int tableField, int sizeField, int key) {
+        long record = recordOf(id);
+        long block = records.getLong(record + tableField);
+        if (block == NO_BLOCK) {
+            return 0;
+        }
+        long entry = findEntry(block, key);
+        if (blocks.getInt(entry) == 0) {
+            return 0;
+        }
+        int previous = blocks.getInt(entry + 4);
+        int mask = capacity(block) - 1;
+        int hole = (int) ((entry - block - BLOCK_HEADER) / ENTRY_SIZE);
+        int next = (hole + 1) & mask;
+        while (blocks.getInt(entryOf(block, next)) != 0) {
+            int home = mix(blocks.getInt(entryOf(block, next)) - 1) & mask;
+            // move the entry into the hole unless its home slot lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                blocks.putInt(entryOf(block, hole), blocks.getInt(entryOf(block, next)));
+                blocks.putInt(entryOf(block, hole) + 4, blocks.getInt(entryOf(block, next) + 4));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        blocks.putInt(entryOf(block, hole), 0);
+        blocks.putInt(entryOf(block, hole) + 4, 0);
+        records.putInt(record + sizeField, records.getInt(record + sizeField) - 1);
+        return previous;
+    }
+
+    /**
+     * Finds the entry of a key in a block, or the free entry where it would
+     * be inserted.
+     *
+     * @param block address of a block with at least one free entry
+     * @param key the neighbour id to find
+     * @return the address of the entry
+     */
+    private long findEntry(long block, int key) {
+        int mask = capacity(block) - 1;
+        int slot = mix(key) & mask;
+        while (true) {
+            long entry = entryOf(block, slot);
+            int stored = blocks.getInt(entry);
+            if (stored == 0 || stored == key + 1) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Replaces a block by one of twice its capacity holding the same entries,
+     * and frees the old block.
+     *
+     * @param block address of a block, or NO_BLOCK
+     * @return address of the new block
+     */
+    private long grow(long block) {
+        int capacity = block == NO_BLOCK ? INITIAL_BLOCK_CAPACITY : capacity(block) * 2;
+        long grown = allocateBlock(capacity);
+        if (block != NO_BLOCK) {
+            for (int slot = 0; slot < capacity(block); slot++) {
+                long entry = entryOf(block, slot);
+                int key = blocks.getInt(entry);
+                if (key != 0) {
+                    long target = findEntry(grown, key - 1);
+                    blocks.putInt(target, key);
+                    blocks.putInt(target + 4, blocks.getInt(entry + 4));
+                }
+            }
+            freeBlock(block);
+        }
+        return grown;
+    }
+
+    /**
+     * Allocates an empty block, reusing a freed block of the same capacity if
+     * there is one.
+     *
+     * @param capacity number of entries, a power of two
+     * @return address of the block
+     */
+    private long allocateBlock(int capacity) {
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        long block = freeBlocks[sizeClass];
+        if (block != NO_BLOCK) {
+            freeBlocks[sizeClass] = blocks.getLong(entryOf(block, 0));
+            for (int slot = 0; slot < capacity; slot++) {
+                blocks.putLong(entryOf(block, slot), 0);
+            }
+        } else {
+            if ((long) capacity * ENTRY_SIZE + BLOCK_HEADER > SegmentedBuffer.MAX_SEGMENT_SIZE) {
+                throw new IllegalStateException("Too many edges at one vertex: " + capacity);
+            }
+            block = blocks.allocate(BLOCK_HEADER + capacity * ENTRY_SIZE);
+        }
+        blocks.putInt(block, capacity);
+        return block;
+    }
+
+    /**
+     * Puts a block on the free list of its capacity.
+     *
+     * @param block address of a block no longer in use, or NO_BLOCK
+     */
+    private void freeBlock(long block) {
+        if (block == NO_BLOCK) {
+            return;
+        }
+        int sizeClass = Integer.numberOfTrailingZeros(capacity(block));
+        blocks.putLong(entryOf(block, 0), freeBlocks[sizeClass]);
+        freeBlocks[sizeClass] = block;
+    }
+
+    /**
+     * Gets the capacity of a block.
+     *
+     * @param block address of a block
+     * @return its number of entries
+     */
+    private int capacity(long block) {
+        return blocks.getInt(block);
+    }
+
+    /**
+     * Gets the address of an entry of a block.
+     *
+     * @param block address of a block
+     * @param slot an index in 0 .. capacity(block)-1
+     * @return the address of the slot-th entry
+     */
+    private static long entryOf(long block, int slot) {
+        return block + BLOCK_HEADER + (long) slot * ENTRY_SIZE;
+    }
+
+    /**
+     * Scrambles an id so that consecutive ids spread over a block.
+     *
+     * @param key a vertex id
+     * @return a hash of key
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Collects the neighbour ids in one of the tables of a vertex.
+     *
+     * @param id id of a present vertex
+     * @param tableField OUT_FIELD or IN_FIELD
+     * @param sizeField the matching size field
+     * @return a new array of the neighbour ids
+     */
+    private int[] neighbours(int id, int tableField, int sizeField) {
+        long record = recordOf(id);
+        long block = records.getLong(record + tableField);
+        int[] result = new int[records.getInt(record + sizeField)];
+        if (block != NO_BLOCK) {
+            int i = 0;
+            for (int slot = 0; slot < capacity(block); slot++) {
+                int key = blocks.getInt(entryOf(block, slot));
+                if (key != 0) {
+                    result[i++] = key - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts one of the tables of a vertex to a map from labels to weights.
+     *
+     * @param id id of a present vertex
+     * @param tableField OUT_FIELD or IN_FIELD
+     * @return a new map from the label of each neighbour to its weight
+     */
+    private Map<String, Integer> toMap(int id, int tableField) {
+        Map<String, Integer> map = new HashMap<>();
+        long block = records.getLong(recordOf(id) + tableField);
+        if (block != NO_BLOCK) {
+            for (int slot = 0; slot < capacity(block); slot++) {
+                long entry = entryOf(block, slot);
+                int key = blocks.getInt(entry);
+                if (key != 0) {
+                    map.put(label(key - 1), blocks.getInt(entry + 4));
+                }
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapGraph{vertices=" + vertexCount + ", offHeapBytes="
+                + (labels.allocatedBytes() + records.allocatedBytes() + blocks.allocatedBytes()
+                        + index.capacity()) + '}';
+    }
+}
+
+/**
+ * A growable store of bytes addressed by long offsets, split into direct or
+ * memory-mapped ByteBuffer segments. Segment k has size B for k = 0 and
+ * B * 2^(k-1) for k > 0, up to 2^30, after which every segment is 2^30 bytes.
+ * Records are allocated with a bump pointer and never straddle segments.
+ * This class is internal to the rep of OffHeapGraph.
+ */
+class SegmentedBuffer {
+
+    static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private final File directory;
+    private final String name;
+    private final int firstShift;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private long top = 0;
+
+    // Abstraction function:
+    //   Represents the bytes at addresses 0 .. top-1, where address a is byte
+    //   offsetOf(a) of segments.get(segmentOf(a))
+    // Representation invariant:
+    //   1 << firstShift is the size of segment 0, a power of two <= MAX_SEGMENT_SIZE
+    //   segments.get(k) is null or a buffer of exactly sizeOf(k) bytes, and is
+    //     non-null for every segment holding an allocated address
+    // Safety from rep exposure:
+    //   All fields are private; buffers are only exposed to OffHeapGraph through
+    //   newSegment, for its label index, which is not part of any store
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param directory directory for memory-mapped segment files, or null for direct buffers
+     * @param name prefix of the segment file names
+     * @param firstSegmentSize size of segment 0, a power of two <= MAX_SEGMENT_SIZE
+     */
+    SegmentedBuffer(File directory, String name, int firstSegmentSize) {
+        this.directory = directory;
+        this.name = name;
+        this.firstShift = Integer.numberOfTrailingZeros(firstSegmentSize);
+    }
+
+    /**
+     * Allocates a zeroed buffer.
+     *
+     * @param directory directory for a memory-mapped file, or null for a direct buffer
+     * @param fileName name of the file in directory
+     * @param size size of the buffer in bytes
+     * @return the new buffer
+     * @throws UncheckedIOException if the file cannot be created or mapped
+     */
+    static ByteBuffer newSegment(File directory, String fileName, int size) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        File file = new File(directory, fileName);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.setLength(size);
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map segment " + file, e);
+        }
+    }
+
+    /**
+     * Allocates a record.
+     *
+     * @param bytes size of the record, positive and at most MAX_SEGMENT_SIZE
+     * @return the address of the first byte of the record
+     */
+    long allocate(int bytes) {
+        while (offsetOf(top) + (long) bytes > sizeOf(segmentOf(top))) {
+            // skip the rest of a segment too small for the record
+            top = startOf(segmentOf(top) + 1);
+        }
+        int segment = segmentOf(top);
+        while (segments.size() <= segment) {
+            segments.add(null);
+        }
+        if (segments.get(segment) == null) {
+            segments.set(segment, newSegment(directory, name + "-" + segment, sizeOf(segment)));
+        }
+        long address = top;
+        top += bytes;
+        return address;
+    }
+
+    /**
+     * Gets the number of bytes of the segments allocated so far.
+     *
+     * @return the total size of all non-null segments
+     */
+    long allocatedBytes() {
+        long total = 0;
+        for (ByteBuffer segment : segments) {
+            total += segment == null ? 0 : segment.capacity();
+        }
+        return total;
+    }
+
+    byte getByte(long address) {
+        return segments.get(segmentOf(address)).get(offsetOf(address));
+    }
+
+    void putByte(long address, byte value) {
+        segments.get(segmentOf(address)).put(offsetOf(address), value);
+    }
+
+    int getInt(long address) {
+        return segments.get(segmentOf(address)).getInt(offsetOf(address));
+    }
+
+    void putInt(long address, int value) {
+        segments.get(segmentOf(address)).putInt(offsetOf(address), value);
+    }
+
+    long getLong(long address) {
+        return segments.get(segmentOf(address)).getLong(offsetOf(address));
+    }
+
+    void putLong(long address, long value) {
+        segments.get(segmentOf(address)).putLong(offsetOf(address), value);
+    }
+
+    /**
+     * Gets the segment holding an address.
+     *
+     * @param address a nonnegative address
+     * @return the index of the segment containing it
+     */
+    private int segmentOf(long address) {
+        if (address < 2L * MAX_SEGMENT_SIZE) {
+            long quotient = address >>> firstShift;
+            return quotient == 0 ? 0 : 64 - Long.numberOfLeadingZeros(quotient);
+        }
+        return segmentOf(MAX_SEGMENT_SIZE) + (int) (address >>> 30) - 1;
+    }
+
+    /**
+     * Gets the address of the first byte of a segment.
+     *
+     * @param segment a segment index
+     * @return its start address
+     */
+    private long startOf(int segment) {
+        int cap = segmentOf(MAX_SEGMENT_SIZE);
+        if (segment <= cap) {
+            return segment == 0 ? 0 : 1L << (firstShift + segment - 1);
+        }
+        return (long) (segment - cap + 1) << 30;
+    }
+
+    /**
+     * Gets the size of a segment.
+     *
+     * @param segment a segment index
+     * @return its size in bytes
+     */
+    private int sizeOf(int segment) {
+        return segment == 0 ? 1 << firstShift
+                : (int) Math.min(MAX_SEGMENT_SIZE, 1L << (firstShift + segment - 1));
+    }
+
+    /**
+     * Gets the offset of an address within its segment.
+     *
+     * @param address a nonnegative address
+     * @return the offset from the start of segmentOf(address)
+     */
+    private int offsetOf(long address) {
+        return (int) (address - startOf(segmentOf(address)));
+    }
+}
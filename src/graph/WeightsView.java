@@ -0,0 +1,90 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * An unmodifiable, live view of the edge weights stored in a graph's rep.
+ * Every call looks up the backing map afresh, so the view follows the graph
+ * even when the backing map is replaced, and reading it copies nothing.
+ * This class is internal to the reps of ConcreteVerticesGraph and
+ * ConcreteEdgesGraph.
+ *
+ * @param <V> type of the values of the backing map, from which weights are read
+ */
+class WeightsView<V> extends AbstractMap<String, Integer> {
+
+    private final Supplier<Map<String, V>> backing;
+    private final ToIntFunction<V> weight;
+
+    // Abstraction function:
+    //   Represents the map from each key k of backing.get() to
+    //   weight.applyAsInt(backing.get().get(k))
+    // Representation invariant:
+    //   backing and weight are non-null, and backing never supplies null
+    // Safety from rep exposure:
+    //   All fields are private and final; the backing map is never returned,
+    //   and the view rejects every mutation
+
+    /**
+     * Constructs a view.
+     *
+     * @param backing supplies the current backing map, or an empty map
+     * @param weight reads the weight from a value of the backing map
+     */
+    WeightsView(Supplier<Map<String, V>> backing, ToIntFunction<V> weight) {
+        this.backing = backing;
+        this.weight = weight;
+    }
+
+    @Override
+    public int size() {
+        return backing.get().size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return backing.get().containsKey(key);
+    }
+
+    @Override
+    public Integer get(Object key) {
+        V value = backing.get().get(key);
+        return value == null ? null : weight.applyAsInt(value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Integer>>() {
+            @Override
+            public int size() {
+                return backing.get().size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator() {
+                Iterator<Map.Entry<String, V>> entries =
+                        Collections.unmodifiableMap(backing.get()).entrySet().iterator();
+                return new Iterator<Map.Entry<String, Integer>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Integer> next() {
+                        Map.Entry<String, V> entry = entries.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(
+                                entry.getKey(), weight.applyAsInt(entry.getValue()));
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package poet;
+
+/**
+ * The bounds of an approximate affinity graph, built by
+ * {@link GraphPoet#approximate(java.io.File, long, int)} from a corpus whose
+ * adjacencies were first estimated in a count-min sketch.
+ *
+ * <p>The graph has an edge for each adjacency occurring at least minWeight()
+ * times in the corpus, with its exact count as weight, and no other edge. The
+ * sketch only decides which adjacencies are counted exactly, so it bounds the
+ * memory of the read, not the weights: with probability at least
+ * 1 - sketchFailureProbability(), an adjacency is a candidate only if it
+ * occurs at least minWeight() - sketchError() times.
+ *
+ * <p>Approximation is immutable.
+ */
+public final class Approximation {
+
+    private final int minWeight;
+    private final long adjacencies;
+    private final long keptAdjacencies;
+    private final int edges;
+    private final int candidates;
+    private final long sketchError;
+    private final double sketchFailureProbability;
+
+    // Abstraction function:
+    //   Represents the read of a corpus of adjacencies adjacencies, of which
+    //   keptAdjacencies occurrences of edges distinct adjacencies occurring at
+    //   least minWeight times were kept, out of candidates counted exactly,
+    //   against a sketch whose estimates exceed their count by more than
+    //   sketchError with probability at most sketchFailureProbability
+    // Representation invariant:
+    //   minWeight > 0
+    //   0 <= keptAdjacencies <= adjacencies
+    //   0 <= edges <= candidates, and edges * minWeight <= keptAdjacencies
+    //   sketchError >= 0, 0 < sketchFailureProbability < 1
+    // Safety from rep exposure:
+    //   All fields are private, final and immutable
+
+    /**
+     * Makes the bounds of an approximate affinity graph.
+     *
+     * @param minWeight least number of occurrences of an edge, positive
+     * @param adjacencies number of adjacencies of the corpus, counting every occurrence
+     * @param keptAdjacencies number of occurrences of the adjacencies kept as edges
+     * @param edges number of adjacencies kept as edges
+     * @param candidates number of distinct adjacencies counted exactly
+     * @param sketch the sketch the adjacencies of the corpus were added to
+     */
+    Approximation(int minWeight, long adjacencies, long keptAdjacencies, int edges, int candidates,
+            CountMinSketch sketch) {
+        this.minWeight = minWeight;
+        this.adjacencies = adjacencies;
+        this.keptAdjacencies = keptAdjacencies;
+        this.edges = edges;
+        this.candidates = candidates;
+        this.sketchError = sketch.errorBound();
+        this.sketchFailureProbability = sketch.failureProbability();
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the Approximation.
+     */
+    private void checkRep() {
+        assert minWeight > 0;
+        assert 0 <= keptAdjacencies && keptAdjacencies <= adjacencies;
+        assert 0 <= edges && edges <= candidates && (long) edges * minWeight <= keptAdjacencies;
+        assert sketchError >= 0 && sketchFailureProbability > 0 && sketchFailureProbability < 1;
+    }
+
+    /**
+     * @return the least number of times an adjacency occurs for it to be an edge
+     */
+    public int minWeight() {
+        return minWeight;
+    }
+
+    /**
+     * @return the number of adjacencies of the corpus, counting every occurrence
+     */
+    public long adjacencies() {
+        return adjacencies;
+    }
+
+    /**
+     * @return the number of occurrences of adjacencies that are not counted by
+     *         any edge, each of an adjacency occurring fewer than minWeight() times
+     */
+    public long droppedAdjacencies() {
+        return adjacencies - keptAdjacencies;
+    }
+
+    /**
+     * @return the number of edges of the graph as read from the corpus
+     */
+    public int edges() {
+        return edges;
+    }
+
+    /**
+     * @return the number of distinct adjacencies whose estimate reached
+     *         minWeight(), which were counted exactly
+     */
+    public int candidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the bound on how much the sketch overestimates the count of an
+     *         adjacency, which holds with probability at least
+     *         1 - sketchFailureProbability() for each adjacency
+     */
+    public long sketchError() {
+        return sketchError;
+    }
+
+    /**
+     * @return the probability that the sketch overestimates the count of an
+     *         adjacency by more than sketchError()
+     */
+    public double sketchFailureProbability() {
+        return sketchFailureProbability;
+    }
+
+    /**
+     * @return a description of these bounds
+     */
+    @Override
+    public String toString() {
+        return "Approximation keeping " + edges + " edges of weight at least " + minWeight + " out of "
+                + candidates + " candidates, dropping " + droppedAdjacencies() + " of " + adjacencies
+                + " adjacencies; sketch error at most " + sketchError + " with probability "
+                + (1 - sketchFailureProbability) + ".";
+    }
+}
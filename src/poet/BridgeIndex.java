@@ -0,0 +1,206 @@
+package poet;
+
+import java.util.Arrays;
+
+import graph.IndexedGraph;
+
+/**
+ * A precomputed table of the best bridge word of pairs of words, within a
+ * memory bound.
+ *
+ * <p>The bridge of (w1, w2) is the target b of w1 with the heaviest edge
+ * w1 -> b, ties broken as {@link IndexedGraph#heaviestTarget(int, int)} ranks
+ * them, such that b -> w2 is an edge. The index materializes every pair
+ * (w1, w2) with a bridge, for the source words w1 that occur most often in
+ * the corpus, the most likely to occur in poem inputs, until the memory
+ * bound is reached. A covered source then answers every bridge lookup with
+ * one hash probe; other sources must be searched on demand.
+ */
+class BridgeIndex {
+
+    /** Estimated bytes per materialized pair: a long key and an int bridge, at load factor 1/2. */
+    static final int BYTES_PER_PAIR = 2 * (Long.BYTES + Integer.BYTES);
+
+    private static final int NO_WORD = -1;
+    private static final long EMPTY = -1;
+
+    private final boolean[] covered;
+    private final long[] keys;
+    private final int[] bridges;
+    private final int mask;
+    private final int size;
+
+    // Abstraction function:
+    //   Represents the map from each pair (s, t) with covered[s] that has a bridge
+    //   to the id of that bridge; pair (s, t) is stored at key (s << 32 | t),
+    //   with bridges[i] the bridge of keys[i]
+    // Representation invariant:
+    //   keys.length == bridges.length == mask + 1, a power of two
+    //   keys holds size distinct keys, and EMPTY elsewhere; each key is in the
+    //     probe sequence from its hash with no EMPTY slot before it
+    //   size <= keys.length / 2
+    // Safety from rep exposure:
+    //   All fields are private and final, and never returned
+
+    /**
+     * Builds the index of a graph.
+     *
+     * @param graph the graph; its ids are the ids of the index
+     * @param maxBytes bound on the memory taken by materialized pairs, nonnegative;
+     *        0 to cover no source. While the index is built, pairs are also
+     *        collected in arrays half that size.
+     */
+    BridgeIndex(IndexedGraph<String> graph, long maxBytes) {
+        int n = graph.size();
+        covered = new boolean[n];
+        long maxPairs = Math.min(maxBytes / BYTES_PER_PAIR, 1 << 28);
+
+        long[] pairKeys = new long[16];
+        int[] pairBridges = new int[16];
+        int pairs = 0;
+        if (maxPairs > 0) {
+            int[] seen = new int[n];
+            int[] found = new int[16];
+            int[] foundBridges = new int[16];
+            for (int source : hottestFirst(graph)) {
+                int count = 0;
+                int stamp = source + 1;
+                for (int rank = 0; rank < graph.outDegree(source); rank++) {
+                    int bridge = graph.heaviestTarget(source, rank);
+                    for (int i = 0; i < graph.outDegree(bridge); i++) {
+                        int target = graph.target(bridge, i);
+                        if (seen[target] != stamp) {
+                            // the first bridge reaching target is the heaviest
+                            seen[target] = stamp;
+                            if (count == found.length) {
+                                found = Arrays.copyOf(found, 2 * count);
+                                foundBridges = Arrays.copyOf(foundBridges, 2 * count);
+                            }
+                            found[count] = target;
+                            foundBridges[count] = bridge;
+                            count++;
+                        }
+                    }
+                }
+                if (pairs + count > maxPairs) {
+                    break;
+                }
+                if (pairs + count > pairKeys.length) {
+                    int length = (int) Math.min(maxPairs, Math.max(pairs + count, 2L * pairKeys.length));
+                    pairKeys = Arrays.copyOf(pairKeys, length);
+                    pairBridges = Arrays.copyOf(pairBridges, length);
+                }
+                for (int i = 0; i < count; i++) {
+                    pairKeys[pairs] = key(source, found[i]);
+                    pairBridges[pairs] = foundBridges[i];
+                    pairs++;
+                }
+                covered[source] = true;
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, pairs) * 4 - 1);
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        bridges = new int[capacity];
+        mask = capacity - 1;
+        size = pairs;
+        for (int i = 0; i < pairs; i++) {
+            int slot = slot(pairKeys[i]);
+            keys[slot] = pairKeys[i];
+            bridges[slot] = pairBridges[i];
+        }
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the BridgeIndex.
+     */
+    private void checkRep() {
+        assert keys.length == mask + 1 && bridges.length == keys.length;
+        assert Integer.bitCount(keys.length) == 1;
+        assert size <= keys.length / 2;
+    }
+
+    /**
+     * Orders the vertices of a graph by how often they occur as the first
+     * word of an adjacency, which is the total weight of their out-edges.
+     *
+     * @param graph the graph
+     * @return the ids of graph, by descending total out-weight, ties by id
+     */
+    private static int[] hottestFirst(IndexedGraph<String> graph) {
+        int n = graph.size();
+        long[] order = new long[n];
+        for (int id = 0; id < n; id++) {
+            long weight = 0;
+            for (int rank = 0; rank < graph.outDegree(id); rank++) {
+                weight += graph.heaviestWeight(id, rank);
+            }
+            // ascending order of (-weight, id), packed in one long
+            order[id] = -Math.min(weight, Integer.MAX_VALUE) << 32 | id;
+        }
+        Arrays.sort(order);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = (int) order[i];
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the key of a pair.
+     *
+     * @param source id of the first word
+     * @param target id of the second word
+     * @return the key of (source, target)
+     */
+    private static long key(int source, int target) {
+        return (long) source << 32 | target;
+    }
+
+    /**
+     * Finds the slot of a key: the slot holding it, or the empty slot where it
+     * would be inserted.
+     *
+     * @param key a key
+     * @return index of the slot
+     */
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ hash >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Tests whether the bridges from a word are materialized.
+     *
+     * @param source id of a word
+     * @return true iff bridge(source, target) answers for every target
+     */
+    boolean covers(int source) {
+        return covered[source];
+    }
+
+    /**
+     * Gets the bridge of a pair of words.
+     *
+     * @param source id of a word that this index covers
+     * @param target id of a word
+     * @return id of the bridge from source to target, or -1 if there is none
+     */
+    int bridge(int source, int target) {
+        int slot = slot(key(source, target));
+        return keys[slot] == EMPTY ? NO_WORD : bridges[slot];
+    }
+
+    /**
+     * @return the number of pairs materialized
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,262 @@
+package poet;
+
+import graph.IndexedGraph;
+
+/**
+ * An on-demand search for the best bridge word of a pair of words, which
+ * intersects the targets of the first word with the sources of the second,
+ * choosing how by their degrees.
+ *
+ * <p>The bridge of (w1, w2) is the target b of w1 with the heaviest edge
+ * w1 -> b, ties broken by ascending id as
+ * {@link IndexedGraph#heaviestTarget(int, int)} ranks them, such that
+ * b -> w2 is an edge. The heaviest targets of w1 usually lead to w2, so
+ * they are tried first:
+ * <ul><li> if w2 is a hub, a word with many sources, its sources are kept as
+ *          a bitmap, and the targets of w1 are tested against it by descending
+ *          weight until one is found;
+ *     <li> otherwise the targets of w1 are tested by descending weight, each by
+ *          a binary search of the shorter of its targets and the sources of
+ *          w2, for as many targets as w2 has sources. If none is found, and
+ *          w2 has far fewer sources than w1 has targets, each source of w2 is
+ *          looked up among the targets of w1, keeping the heaviest; else both
+ *          lists, ordered by id, are merged. </ul>
+ * <p>Hub bitmaps take one bit per word each, and a word is a hub only if that
+ * takes no more than the 4 bytes per source its sources already take in the
+ * graph.
+ */
+class BridgeSearch {
+
+    /** Least number of sources of a hub, whatever the size of the graph. */
+    static final int MIN_HUB_DEGREE = 64;
+
+    /** How many times longer than the other list one list must be to be probed rather than merged. */
+    private static final int PROBE_RATIO = 8;
+
+    private static final int NO_WORD = -1;
+
+    private final IndexedGraph<String> graph;
+    private final long[][] hubSources;
+
+    // Abstraction function:
+    //   Represents the bridge search in graph, where each vertex t with
+    //   hubSources[t] != null is a hub, whose sources are the ids s with bit
+    //   (s % 64) of hubSources[t][s / 64] set
+    // Representation invariant:
+    //   hubSources.length == graph.size()
+    //   each non-null hubSources[t] has length ceil(graph.size() / 64), and has
+    //     exactly the bits of the sources of t set
+    // Safety from rep exposure:
+    //   All fields are private and final, and never returned; graph is
+    //   read-only
+    // Thread safety argument:
+    //   The rep is never modified after construction, and is published through
+    //   final fields; searches only read it.
+
+    /**
+     * Prepares the bridge search of a graph, making the words with at least
+     * max(MIN_HUB_DEGREE, size / 32) sources hubs.
+     *
+     * @param graph the graph; its ids are the ids of the search
+     */
+    BridgeSearch(IndexedGraph<String> graph) {
+        this(graph, Math.max(MIN_HUB_DEGREE, (graph.size() + 31) / 32));
+    }
+
+    /**
+     * Prepares the bridge search of a graph.
+     *
+     * @param graph the graph; its ids are the ids of the search
+     * @param hubDegree the least number of sources of a hub, positive
+     */
+    BridgeSearch(IndexedGraph<String> graph, int hubDegree) {
+        this.graph = graph;
+        int n = graph.size();
+        hubSources = new long[n][];
+        for (int target = 0; target < n; target++) {
+            int inDegree = graph.inDegree(target);
+            if (inDegree >= hubDegree) {
+                long[] bits = new long[(n + 63) / 64];
+                for (int i = 0; i < inDegree; i++) {
+                    int source = graph.source(target, i);
+                    bits[source >>> 6] |= 1L << source;
+                }
+                hubSources[target] = bits;
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the BridgeSearch, as far as it
+     * can be checked without reading every bitmap.
+     */
+    private void checkRep() {
+        assert hubSources.length == graph.size();
+        for (long[] bits : hubSources) {
+            assert bits == null || bits.length == (graph.size() + 63) / 64;
+        }
+    }
+
+    /**
+     * Tests whether a word is a hub, whose sources are kept as a bitmap.
+     *
+     * @param target id of a word
+     * @return true iff target is a hub
+     */
+    boolean isHub(int target) {
+        return hubSources[target] != null;
+    }
+
+    /**
+     * Finds the bridge of a pair of words.
+     *
+     * @param source id of the first word
+     * @param target id of the second word
+     * @return the result of the search: its low 32 bits are the id of the
+     *         bridge, or -1 if there is none, and its high 32 bits are the
+     *         number of entries of adjacency lists examined to find it
+     */
+    long search(int source, int target) {
+        int outDegree = graph.outDegree(source);
+        int inDegree = graph.inDegree(target);
+        if (outDegree == 0 || inDegree == 0) {
+            return result(NO_WORD, 0);
+        }
+        long[] bits = hubSources[target];
+        if (bits != null) {
+            for (int rank = 0; rank < outDegree; rank++) {
+                int bridge = graph.heaviestTarget(source, rank);
+                if ((bits[bridge >>> 6] & 1L << bridge) != 0) {
+                    return result(bridge, rank + 1);
+                }
+            }
+            return result(NO_WORD, outDegree);
+        }
+        // targets are ranked by descending weight, so the first one leading to
+        // target wins; the heaviest are tried for as long as probing the
+        // sources of target would take
+        int budget = Math.min(outDegree, inDegree);
+        for (int rank = 0; rank < budget; rank++) {
+            int bridge = graph.heaviestTarget(source, rank);
+            if (hasSource(target, inDegree, bridge)) {
+                return result(bridge, rank + 1);
+            }
+        }
+        if (budget == outDegree) {
+            return result(NO_WORD, outDegree);
+        }
+        if ((long) inDegree * PROBE_RATIO < outDegree) {
+            int best = NO_WORD;
+            int bestWeight = 0;
+            for (int i = 0; i < inDegree; i++) {
+                // sources are by ascending id, so only a heavier bridge beats the best
+                int bridge = graph.source(target, i);
+                int weight = graph.weight(source, bridge);
+                if (weight > bestWeight) {
+                    best = bridge;
+                    bestWeight = weight;
+                }
+            }
+            return result(best, budget + inDegree);
+        }
+        return merge(source, target, outDegree, inDegree, budget);
+    }
+
+    /**
+     * Tests whether a word is a source of another, searching the shorter of
+     * the sources of the one and the targets of the other.
+     *
+     * @param target id of a word that is not a hub
+     * @param inDegree number of sources of target
+     * @param source id of a word
+     * @return true iff source -> target is an edge
+     */
+    private boolean hasSource(int target, int inDegree, int source) {
+        if (graph.outDegree(source) <= inDegree) {
+            return graph.weight(source, target) > 0;
+        }
+        int low = 0;
+        int high = inDegree - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = graph.source(target, middle);
+            if (id < source) {
+                low = middle + 1;
+            } else if (id > source) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the bridge of a pair of words by merging the targets of the first
+     * with the sources of the second.
+     *
+     * @param source id of the first word
+     * @param target id of the second word
+     * @param outDegree number of targets of source
+     * @param inDegree number of sources of target
+     * @param examined number of entries already examined
+     * @return the result of the search, as search() returns it
+     */
+    private long merge(int source, int target, int outDegree, int inDegree, int examined) {
+        int best = NO_WORD;
+        int bestWeight = 0;
+        int i = 0;
+        int j = 0;
+        while (i < outDegree && j < inDegree) {
+            int bridge = graph.target(source, i);
+            int other = graph.source(target, j);
+            if (bridge < other) {
+                i++;
+            } else if (bridge > other) {
+                j++;
+            } else {
+                // ids ascend, so only a heavier bridge beats the best
+                int weight = graph.weight(source, bridge);
+                if (weight > bestWeight) {
+                    best = bridge;
+                    bestWeight = weight;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result(best, examined + i + j);
+    }
+
+    /**
+     * Packs the result of a search.
+     *
+     * @param bridge id of the bridge, or -1
+     * @param examined number of adjacency entries examined
+     * @return the result, as search() returns it
+     */
+    private static long result(int bridge, int examined) {
+        return (long) examined << 32 | (bridge & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the bridge found by a search.
+     *
+     * @param result a result returned by search()
+     * @return id of the bridge, or -1 if there is none
+     */
+    static int bridge(long result) {
+        return (int) result;
+    }
+
+    /**
+     * Gets the work done by a search.
+     *
+     * @param result a result returned by search()
+     * @return the number of adjacency entries examined
+     */
+    static int examined(long result) {
+        return (int) (result >>> 32);
+    }
+}
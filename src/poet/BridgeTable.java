@@ -0,0 +1,550 @@
+package poet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import graph.FrozenGraph;
+import graph.Graph;
+import graph.IndexedGraph;
+
+/**
+ * The best bridge words of every pair of words of an affinity graph: for each
+ * (w1, w2) joined by a two-edge path w1 -> b -> w2, the top k bridges b.
+ *
+ * <p>Computing the table is a sparse matrix product A.A of the graph's
+ * adjacency matrix over a (max, score) semiring. {@link #compute} runs it on a
+ * fork-join pool, partitioned by source rows: each row is accumulated
+ * Gustavson-style in a dense primitive accumulator owned by the worker
+ * thread, so rows share nothing and the work scales with the number of
+ * cores. Work stealing balances rows of very different cost, such as those
+ * of hub words.
+ *
+ * <p>A table can be written to a bridge table file and opened again by
+ * memory-mapping it, and a poet loaded with a table whose bridges are
+ * scored by {@link Score#FIRST_EDGE} answers every pair with one binary
+ * search (see {@link GraphPoet#load(File, File)}). A file holds, big-endian,
+ * a header of eight ints:
+ * <pre>
+ *     magic ("BRDG"), version, vertex count n, k, score ordinal,
+ *     graph fingerprint, pair count p (as a long)
+ * </pre>
+ * <p>followed by:
+ * <pre>
+ *     int[n+1] offsets of the pairs of each source word
+ *     int[p]   second word of each pair, ascending within a source word
+ *     int[p*k] top k bridges of each pair, best first, -1 past the last
+ * </pre>
+ * <p>Words are the ids of the graph the table was computed from, and the
+ * fingerprint checks, when the file is opened, that it is used with that
+ * graph. Files are limited to 2 GiB.
+ */
+public class BridgeTable {
+
+    /** How bridges are ranked. */
+    public enum Score {
+        /**
+         * By the weight of the first edge w1 -> b, ties broken by the rank of b
+         * among the targets of w1, as GraphPoet chooses its bridge words.
+         */
+        FIRST_EDGE,
+        /**
+         * By the product of the weights of w1 -> b and b -> w2, ties broken by
+         * the rank of b among the targets of w1: the (max, x) semiring.
+         */
+        PRODUCT
+    }
+
+    /** "BRDG" in ASCII. */
+    private static final int MAGIC = 0x42524447;
+    /** Version of the format written by {@link #write(File)}. */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+    private static final int NO_WORD = -1;
+    private static final int FINGERPRINT_LABELS = 64;
+    private static final int ROWS_PER_WORKER = 16;
+
+    private final IndexedGraph<String> graph;
+    private final int k;
+    private final Score score;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer bridges;
+
+    // Abstraction function:
+    //   Represents the table in which pair (s, targets[i]), for each i in
+    //   offsets[s] .. offsets[s+1]-1, has the bridges bridges[i*k .. i*k+k-1]
+    //   (ending at the first -1), ids and labels being those of graph
+    // Representation invariant:
+    //   k >= 1; offsets has graph.size() + 1 elements, ascending from 0 to
+    //     targets.limit(); bridges has k * targets.limit() elements
+    //   targets is strictly ascending within each source's range
+    //   the first bridge of every pair is not -1
+    // Safety from rep exposure:
+    //   All fields are private and final; the buffers are never returned, and
+    //   are read-only when mapped from a file. graph is shared with the caller
+    //   by design, and never modified.
+
+    /**
+     * Constructs a table.
+     *
+     * @param graph the graph whose ids the table uses
+     * @param k number of bridges per pair
+     * @param score how bridges were ranked
+     * @param offsets offsets of the pairs of each source
+     * @param targets second word of each pair
+     * @param bridges bridges of each pair
+     */
+    private BridgeTable(IndexedGraph<String> graph, int k, Score score,
+            IntBuffer offsets, IntBuffer targets, IntBuffer bridges) {
+        this.graph = graph;
+        this.k = k;
+        this.score = score;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.bridges = bridges;
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the BridgeTable, as far as it
+     * can be checked without reading the whole table.
+     */
+    private void checkRep() {
+        assert k >= 1;
+        assert offsets.limit() == graph.size() + 1;
+        assert offsets.get(0) == 0 && offsets.get(graph.size()) == targets.limit();
+        assert (long) bridges.limit() == (long) k * targets.limit();
+    }
+
+    /**
+     * Computes the top bridge of every pair of words of a graph, by the rule
+     * GraphPoet uses, on the common fork-join pool.
+     *
+     * @param graph the graph; a FrozenGraph or MappedGraph is used as is,
+     *        other graphs are frozen first
+     * @return the table of the top bridges of graph
+     */
+    public static BridgeTable compute(Graph<String> graph) {
+        return compute(graph, 1, Score.FIRST_EDGE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the top k bridges of every pair of words of a graph.
+     *
+     * @param graph the graph; a FrozenGraph or MappedGraph is used as is,
+     *        other graphs are frozen first
+     * @param k number of bridges to keep per pair, positive
+     * @param score how to rank bridges
+     * @param pool the pool to compute rows on
+     * @return the table of the top k bridges of graph
+     * @throws IllegalArgumentException if the table would have 2^31 or more pairs
+     */
+    public static BridgeTable compute(Graph<String> graph, int k, Score score, ForkJoinPool pool) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        IndexedGraph<String> indexed = graph instanceof IndexedGraph
+                ? (IndexedGraph<String>) graph : new FrozenGraph<>(graph);
+        int n = indexed.size();
+        int[][] rowTargets = new int[n][];
+        int[][] rowBridges = new int[n][];
+        ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(() -> new Accumulator(n, k));
+        int grain = Math.max(1, n / (pool.getParallelism() * ROWS_PER_WORKER));
+        pool.invoke(new Rows(indexed, score, accumulators, rowTargets, rowBridges, 0, n, grain));
+
+        int[] offsets = new int[n + 1];
+        long pairs = 0;
+        for (int source = 0; source < n; source++) {
+            pairs += rowTargets[source].length;
+            if (pairs * k > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many pairs for a bridge table: " + pairs);
+            }
+            offsets[source + 1] = (int) pairs;
+        }
+        int[] targets = new int[(int) pairs];
+        int[] bridges = new int[(int) pairs * k];
+        for (int source = 0; source < n; source++) {
+            System.arraycopy(rowTargets[source], 0, targets, offsets[source], rowTargets[source].length);
+            System.arraycopy(rowBridges[source], 0, bridges, offsets[source] * k, rowBridges[source].length);
+            rowTargets[source] = null;
+            rowBridges[source] = null;
+        }
+        return new BridgeTable(indexed, k, score,
+                IntBuffer.wrap(offsets), IntBuffer.wrap(targets), IntBuffer.wrap(bridges));
+    }
+
+    /**
+     * A dense accumulator of the bridges of one row, reused for every row a
+     * worker computes.
+     */
+    private static final class Accumulator {
+
+        private final int k;
+        private final int[] counts;
+        private final int[] bridges;
+        private final long[] scores;
+        private final int[] touched;
+        private int touchedCount = 0;
+
+        // Abstraction function:
+        //   Represents the bridges found so far for the current row: target t,
+        //   for each t in touched[0 .. touchedCount-1], has bridges
+        //   bridges[t*k .. t*k+counts[t]-1] with scores scores[t*k ..], best first
+        // Representation invariant:
+        //   counts[t] > 0 iff t is in touched[0 .. touchedCount-1]; counts[t] <= k
+        // Safety from rep exposure:
+        //   All fields are private and final, and never returned; an accumulator
+        //   is confined to one thread
+
+        /**
+         * Constructs an empty accumulator.
+         *
+         * @param n number of vertices of the graph
+         * @param k number of bridges per pair
+         */
+        Accumulator(int n, int k) {
+            this.k = k;
+            counts = new int[n];
+            bridges = new int[n * k];
+            scores = new long[n * k];
+            touched = new int[n];
+        }
+
+        /**
+         * Offers a bridge to a target. Bridges must be offered in the order of
+         * their rank among the targets of the row's source, so that an equal
+         * score keeps the bridge offered first.
+         *
+         * @param target id of the target
+         * @param bridge id of the bridge
+         * @param score score of the bridge
+         */
+        void offer(int target, int bridge, long score) {
+            int count = counts[target];
+            if (count == 0) {
+                touched[touchedCount++] = target;
+            }
+            int base = target * k;
+            int i = count;
+            if (count == k) {
+                if (score <= scores[base + k - 1]) {
+                    return;
+                }
+                i = k - 1;
+            } else {
+                counts[target] = count + 1;
+            }
+            // insert, keeping the bridges sorted by descending score
+            for (; i > 0 && scores[base + i - 1] < score; i--) {
+                scores[base + i] = scores[base + i - 1];
+                bridges[base + i] = bridges[base + i - 1];
+            }
+            scores[base + i] = score;
+            bridges[base + i] = bridge;
+        }
+
+        /**
+         * Takes the row accumulated, and clears the accumulator.
+         *
+         * @param rowTargets where to store the targets of the row, ascending
+         * @param rowBridges where to store the bridges of the row, k per target
+         * @param source index in rowTargets and rowBridges to store them at
+         */
+        void drain(int[][] rowTargets, int[][] rowBridges, int source) {
+            int[] targets = Arrays.copyOf(touched, touchedCount);
+            Arrays.sort(targets);
+            int[] row = new int[targets.length * k];
+            Arrays.fill(row, NO_WORD);
+            for (int i = 0; i < targets.length; i++) {
+                int target = targets[i];
+                System.arraycopy(bridges, target * k, row, i * k, counts[target]);
+                counts[target] = 0;
+            }
+            touchedCount = 0;
+            rowTargets[source] = targets;
+            rowBridges[source] = row;
+        }
+    }
+
+    /**
+     * Computes a range of rows, splitting it among workers.
+     */
+    private static final class Rows extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IndexedGraph<String> graph;
+        private final Score score;
+        private final ThreadLocal<Accumulator> accumulators;
+        private final int[][] rowTargets;
+        private final int[][] rowBridges;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        // Abstraction function:
+        //   Represents the computation of the rows from .. to-1 of the table of
+        //   graph, into rowTargets and rowBridges
+        // Representation invariant:
+        //   0 <= from <= to <= graph.size(); grain >= 1
+        // Safety from rep exposure:
+        //   The arrays are shared with compute() by design; each task writes
+        //   only the rows of its own range.
+
+        /**
+         * Constructs the computation of a range of rows.
+         *
+         * @param graph the graph
+         * @param score how to rank bridges
+         * @param accumulators the accumulator of each worker thread
+         * @param rowTargets where to store the targets of each row
+         * @param rowBridges where to store the bridges of each row
+         * @param from first row of the range
+         * @param to end of the range, exclusive
+         * @param grain number of rows below which a range is not split
+         */
+        Rows(IndexedGraph<String> graph, Score score, ThreadLocal<Accumulator> accumulators,
+                int[][] rowTargets, int[][] rowBridges, int from, int to, int grain) {
+            this.graph = graph;
+            this.score = score;
+            this.accumulators = accumulators;
+            this.rowTargets = rowTargets;
+            this.rowBridges = rowBridges;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Rows(graph, score, accumulators, rowTargets, rowBridges, from, middle, grain),
+                        new Rows(graph, score, accumulators, rowTargets, rowBridges, middle, to, grain));
+                return;
+            }
+            Accumulator accumulator = accumulators.get();
+            for (int source = from; source < to; source++) {
+                for (int rank = 0; rank < graph.outDegree(source); rank++) {
+                    int bridge = graph.heaviestTarget(source, rank);
+                    long first = graph.heaviestWeight(source, rank);
+                    for (int next = 0; next < graph.outDegree(bridge); next++) {
+                        int target = graph.heaviestTarget(bridge, next);
+                        long value = score == Score.FIRST_EDGE
+                                ? first : first * graph.heaviestWeight(bridge, next);
+                        accumulator.offer(target, bridge, value);
+                    }
+                }
+                accumulator.drain(rowTargets, rowBridges, source);
+            }
+        }
+    }
+
+    /**
+     * Computes a fingerprint of a graph's vertices, from its size and a sample
+     * of its labels.
+     *
+     * @param graph the graph
+     * @return a hash of the size of graph and of up to 64 of its labels, by id
+     */
+    private static int fingerprint(IndexedGraph<String> graph) {
+        int n = graph.size();
+        int hash = n;
+        int step = Math.max(1, n / FINGERPRINT_LABELS);
+        for (int id = 0; id < n; id += step) {
+            hash = 31 * hash + graph.label(id).hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Writes this table as a bridge table file.
+     *
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the file would be 2 GiB or more
+     */
+    public void write(File file) throws IOException {
+        long length = HEADER_BYTES + Integer.BYTES * (offsets.limit() + (long) targets.limit() + bridges.limit());
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Table too large for a bridge table file: " + length + " bytes");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(graph.size());
+            out.writeInt(k);
+            out.writeInt(score.ordinal());
+            out.writeInt(fingerprint(graph));
+            out.writeLong(targets.limit());
+            for (IntBuffer section : new IntBuffer[] { offsets, targets, bridges }) {
+                for (int i = 0; i < section.limit(); i++) {
+                    out.writeInt(section.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a bridge table file written by {@link #write(File)}, by mapping it
+     * into memory.
+     *
+     * @param file the file
+     * @param graph the graph the table was computed from, with the same ids
+     * @return the table in file
+     * @throws IOException if the file cannot be read, is not a bridge table
+     *         file of version VERSION, or was not computed from graph
+     */
+    public static BridgeTable open(File file, IndexedGraph<String> graph) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a bridge table file: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a bridge table file: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported bridge table file version " + buffer.getInt(4) + ": " + file);
+        }
+        int n = buffer.getInt(8);
+        int k = buffer.getInt(12);
+        int ordinal = buffer.getInt(16);
+        long pairs = buffer.getLong(24);
+        if (n < 0 || k <= 0 || ordinal < 0 || ordinal >= Score.values().length || pairs < 0) {
+            throw new IOException("Corrupt bridge table file header: " + file);
+        }
+        if (n != graph.size() || buffer.getInt(20) != fingerprint(graph)) {
+            throw new IOException("Bridge table file was computed from another graph: " + file);
+        }
+        long expected = HEADER_BYTES + Integer.BYTES * (n + 1L + pairs + pairs * k);
+        if (buffer.capacity() != expected) {
+            throw new IOException("Bridge table file is " + buffer.capacity() + " bytes, expected "
+                    + expected + ": " + file);
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_BYTES);
+        IntBuffer ints = body.slice().asIntBuffer();
+        IntBuffer offsets = slice(ints, 0, n + 1);
+        IntBuffer targets = slice(ints, n + 1, (int) pairs);
+        IntBuffer bridges = slice(ints, n + 1 + (int) pairs, (int) (pairs * k));
+        return new BridgeTable(graph, k, Score.values()[ordinal], offsets, targets, bridges);
+    }
+
+    /**
+     * Takes a section of a buffer.
+     *
+     * @param ints the buffer
+     * @param from index of the first int of the section
+     * @param length number of ints in the section
+     * @return a buffer sharing the ints from .. from+length-1 of ints
+     */
+    private static IntBuffer slice(IntBuffer ints, int from, int length) {
+        IntBuffer duplicate = ints.duplicate();
+        duplicate.position(from);
+        duplicate.limit(from + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * @return the graph whose pairs this table holds
+     */
+    public IndexedGraph<String> graph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of bridges kept per pair
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * @return how the bridges of this table are ranked
+     */
+    public Score score() {
+        return score;
+    }
+
+    /**
+     * @return the number of pairs of words with at least one bridge
+     */
+    public long pairs() {
+        return targets.limit();
+    }
+
+    /**
+     * Gets a bridge of a pair of words, by id.
+     *
+     * @param source id of the first word in graph()
+     * @param target id of the second word in graph()
+     * @param rank rank of the bridge, in 0 .. k()-1; 0 is the best
+     * @return id of the rank-th best bridge from source to target, or -1 if
+     *         there are not that many
+     */
+    public int bridge(int source, int target, int rank) {
+        int low = offsets.get(source);
+        int high = offsets.get(source + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = targets.get(middle);
+            if (found < target) {
+                low = middle + 1;
+            } else if (found > target) {
+                high = middle - 1;
+            } else {
+                return bridges.get(middle * k + rank);
+            }
+        }
+        return NO_WORD;
+    }
+
+    /**
+     * Gets the bridges of a pair of words.
+     *
+     * @param first the first word
+     * @param second the second word
+     * @return the labels of the best bridges from first to second, best
+     *         first; empty if there are none, or either word is not in graph()
+     */
+    public List<String> bridges(String first, String second) {
+        List<String> labels = new ArrayList<>();
+        int source = graph.id(first);
+        int target = graph.id(second);
+        if (source == NO_WORD || target == NO_WORD) {
+            return labels;
+        }
+        for (int rank = 0; rank < k; rank++) {
+            int bridge = bridge(source, target, rank);
+            if (bridge == NO_WORD) {
+                break;
+            }
+            labels.add(graph.label(bridge));
+        }
+        return labels;
+    }
+
+    @Override
+    public String toString() {
+        return "BridgeTable{vertices=" + graph.size() + ", pairs=" + pairs() + ", k=" + k + ", score=" + score + '}';
+    }
+}
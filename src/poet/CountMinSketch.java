@@ -0,0 +1,157 @@
+package poet;
+
+/**
+ * A count-min sketch of the counts of long keys, in a fixed amount of memory.
+ *
+ * <p>The sketch has depth rows of width int counters. A key is hashed to one
+ * counter per row, and its estimate is the least of them, which is never
+ * below its count. Counts are added by conservative update: only the
+ * counters below the key's new estimate are raised to it, which keeps
+ * estimates tighter than adding to every counter and keeps the same bound.
+ * With probability at least 1 - e^-depth, an estimate exceeds the count of
+ * its key by at most e / width times the total of all counts added.
+ * Counters saturate at Integer.MAX_VALUE.
+ */
+class CountMinSketch {
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final int depth;
+    private final int width;
+    private final int[] counters;
+    private long total = 0;
+
+    // Abstraction function:
+    //   Represents the estimates of the counts of keys added so far, whose total
+    //   is total: the estimate of key k is the least of counters[row * width +
+    //   index(k, row)] over the rows 0 .. depth-1
+    // Representation invariant:
+    //   depth >= 1, width >= 1, counters.length == depth * width
+    //   all counters and total are nonnegative
+    // Safety from rep exposure:
+    //   All fields are private, and counters is never returned
+
+    /**
+     * Makes an empty sketch.
+     *
+     * @param depth number of rows, positive
+     * @param width number of counters per row, positive; depth * width must fit an int
+     */
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad sketch dimensions: " + depth + " x " + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+        checkRep();
+    }
+
+    /**
+     * Makes an empty sketch of a given depth that is as wide as a memory budget allows.
+     *
+     * @param depth number of rows, positive
+     * @param maxBytes bound on the memory of the counters, at least 4 * depth
+     * @return a sketch of depth rows, whose counters take at most maxBytes
+     */
+    static CountMinSketch withBytes(int depth, long maxBytes) {
+        if (depth <= 0 || maxBytes < Integer.BYTES * (long) depth) {
+            throw new IllegalArgumentException("Sketch of depth " + depth + " does not fit in " + maxBytes + " bytes");
+        }
+        return new CountMinSketch(depth, (int) Math.min(Integer.MAX_VALUE / depth, maxBytes / Integer.BYTES / depth));
+    }
+
+    /**
+     * Checks the representation invariant of the CountMinSketch.
+     */
+    private void checkRep() {
+        assert depth >= 1 && width >= 1;
+        assert counters.length == depth * width;
+        assert total >= 0;
+    }
+
+    /**
+     * Finds the counter of a key in a row.
+     *
+     * @param key a key
+     * @param row a row in 0 .. depth-1
+     * @return index of the counter of key in counters
+     */
+    private int index(long key, int row) {
+        // the SplitMix64 finalizer, seeded differently for each row
+        long z = key + (row + 1) * GOLDEN;
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return row * width + (int) ((z >>> 32) * width >>> 32);
+    }
+
+    /**
+     * Adds to the count of a key.
+     *
+     * @param key the key
+     * @param count amount to add, positive
+     */
+    void add(long key, int count) {
+        long estimate = (long) estimate(key) + count;
+        int raised = (int) Math.min(Integer.MAX_VALUE, estimate);
+        for (int row = 0; row < depth; row++) {
+            int i = index(key, row);
+            if (counters[i] < raised) {
+                counters[i] = raised;
+            }
+        }
+        total += count;
+    }
+
+    /**
+     * Estimates the count of a key.
+     *
+     * @param key the key
+     * @return an estimate no less than the total count added to key
+     */
+    int estimate(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[index(key, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * @return the number of rows of this sketch
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * @return the number of counters per row of this sketch
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * @return the total of all counts added to this sketch
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @return the bound on how much an estimate exceeds its count, with
+     *         probability at least 1 - failureProbability(): e / width times
+     *         the total added, rounded up
+     */
+    long errorBound() {
+        return (long) Math.ceil(Math.E * total / width);
+    }
+
+    /**
+     * @return the probability that an estimate exceeds errorBound(): e^-depth
+     */
+    double failureProbability() {
+        return Math.exp(-depth);
+    }
+}
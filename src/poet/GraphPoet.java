@@ -4,14 +4,26 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
-import graph.Graph;
 import graph.ConcreteVerticesGraph;
+import graph.FrozenGraph;
+import graph.GraphLoader;
+import graph.IndexedGraph;
+import graph.MappedGraph;
+import graph.MergeableGraph;
 
 /**
  * A graph-based poetry generator.
@@ -49,6 +61,15 @@ import graph.ConcreteVerticesGraph;
  * <p>the output poem would be:
  * <pre>    Test of the system.    </pre>
  * 
+ * <p>More text can be added to a poet with {@link #addCorpus(File)} and
+ * {@link #addText(Reader)}: each document added is read as the corpus is, on
+ * its own, so that no adjacency joins the last word of one document to the
+ * first word of the next.
+ * 
+ * <p>A corpus with more distinct adjacencies than fit in memory can be read
+ * by {@link #approximate(File, long, int)}, into a graph of only its frequent
+ * adjacencies.
+ * 
  * <p>PS2 instructions: this is a required ADT class, and you MUST NOT weaken
  * the required specifications. However, you MAY strengthen the specifications
  * and you MAY add additional methods.
@@ -57,17 +78,54 @@ import graph.ConcreteVerticesGraph;
  */
 public class GraphPoet {
 
-    private final Graph<String> graph = new ConcreteVerticesGraph();
+    private static final int NO_WORD = -1;
+    private static final int BATCH_LINES = 4096;
+    private static final long MIN_REFREEZE_ADJACENCIES = 1 << 16;
+    private static final int SKETCH_DEPTH = 5;
+
+    /** Default bound on the memory of the bridge index of a poet, in bytes. */
+    public static final long DEFAULT_INDEX_BYTES = 64L << 20;
+
+    private final long indexBytes;
+    private final Approximation approximation;
+    private final Set<String> changedSources = new HashSet<>();
+    private final Set<String> changedTargets = new HashSet<>();
+    private final Map<String, Integer> newWords = new HashMap<>();
+    private MergeableGraph<String> graph;
+    private IndexedGraph<String> frozen;
+    private BridgeIndex bridges;
+    private BridgeSearch search;
+    private BridgeTable table;
+    private long frozenEdges;
+    private long newAdjacencies = 0;
 
 	 // Abstraction function:
 	 // Represents a GraphPoet that generates poems based on word affinity graphs derived from a corpus.
 	 // The graph contains vertices representing words and edges representing adjacency counts.
 	 // The poem generation attempts to insert bridge words between adjacent input words.
 	 // If there are no valid bridge words, no insertion occurs.
+	 // frozen is a read-only snapshot of graph taken once the corpus is loaded, used to answer poems.
+	 // A poet loaded from a graph file has no graph; frozen is then the whole affinity graph.
+	 // bridges holds the precomputed bridge words of the pairs of ids of frozen it covers.
+	 // search finds the bridge words of other pairs of ids of frozen on demand.
+	 // table, if not null, holds the bridge word of every pair of ids of frozen.
+	 // Text added since frozen was taken is in graph only: changedSources and changedTargets
+	 // are the words whose edges from and to them changed since, newWords maps each word
+	 // added since to its position among them, and newAdjacencies counts the adjacencies
+	 // added since. frozenEdges is the number of edges of frozen, or -1 if not counted yet.
+	 // approximation, if not null, bounds the graph read from the corpus, which has only
+	 // the adjacencies occurring at least approximation.minWeight() times.
 	
 	 // Representation invariant:
 	 // - The graph should contain vertices representing case-insensitive words as non-empty strings of non-space non-newline characters.
 	 // - Edges in the graph represent the adjacency count between words in the corpus.
+	 // - graph is null, or frozen has the same vertices and edges as graph.
+	 // - bridges is an index of frozen, and search a search of frozen.
+	 // - table is null, or a table of frozen scored by FIRST_EDGE.
+	 // - graph, if not null, has the vertices of frozen followed by the keys of newWords,
+	 //   in order of insertion, and differs from frozen only in the edges from
+	 //   changedSources and to changedTargets.
+	 // - graph is not null if newWords or changedSources is not empty.
 	
 	 // Safety from rep exposure:
 	 // - The graph instance is private and only accessed through appropriate methods in the GraphPoet class.
@@ -80,56 +138,561 @@ public class GraphPoet {
      * @throws IOException if the corpus file cannot be found or read
      */
     public GraphPoet(File corpus) throws IOException {
-    	readCorpus(corpus);
+        this(corpus, DEFAULT_INDEX_BYTES);
+    }
+
+    /**
+     * Create a new poet with the graph from corpus (as described above), and
+     * precompute the bridge words between the pairs of words that follow its
+     * most frequent words, so that poems with those words take one lookup per
+     * pair of input words. Other pairs are searched when a poem needs them.
+     *
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param indexBytes bound on the memory used by precomputed bridge words,
+     *        nonnegative; 0 to search every pair on demand
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, long indexBytes) throws IOException {
+        this(corpus, indexBytes, null);
+    }
+
+    /**
+     * Create a new poet with the graph from corpus (as described above),
+     * reading the corpus in parallel, and precompute the bridge words of its
+     * most frequent words as {@link #GraphPoet(File, long)} does. When the
+     * platform's default charset is UTF-8, the corpus is split into chunks at
+     * whitespace, each chunk's adjacencies are counted by a worker of pool,
+     * and the counts are merged into the graph; the graph is the same as the
+     * one read on a single thread. In other charsets, the corpus is read on
+     * the calling thread.
+     *
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param indexBytes bound on the memory used by precomputed bridge words,
+     *        nonnegative; 0 to search every pair on demand
+     * @param pool the pool to read the corpus on, or null to read it on the calling thread
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, long indexBytes, ForkJoinPool pool) throws IOException {
+        if (indexBytes < 0) {
+            throw new IllegalArgumentException("Index bytes must be nonnegative: " + indexBytes);
+        }
+        this.indexBytes = indexBytes;
+        approximation = null;
+    	graph = new ConcreteVerticesGraph(true);
+    	readCorpus(corpus, pool);
+    	freeze();
+    }
+
+    /**
+     * Create a new poet with an approximate graph from corpus, as
+     * {@link #approximate(File, long, int)} describes.
+     *
+     * @param corpus UTF-8 text file from which to derive the poet's affinity graph
+     * @param sketchBytes bound on the memory of the sketch of adjacencies
+     * @param minWeight least number of occurrences of an edge, positive
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    private GraphPoet(File corpus, long sketchBytes, int minWeight) throws IOException {
+        if (minWeight <= 0) {
+            throw new IllegalArgumentException("Min weight must be positive: " + minWeight);
+        }
+        indexBytes = DEFAULT_INDEX_BYTES;
+        graph = new ConcreteVerticesGraph(true);
+        approximation = readApproximateCorpus(corpus, CountMinSketch.withBytes(SKETCH_DEPTH, sketchBytes), minWeight);
+        freeze();
+    }
+
+    /**
+     * Create a new poet answering from an affinity graph that has already been
+     * built. Without a bridge table, its bridges are searched on demand, so
+     * that it is ready at once.
+     *
+     * @param affinities the affinity graph; the poet keeps it and does not modify it
+     * @param table table of the bridges of affinities scored by FIRST_EDGE, or null
+     */
+    private GraphPoet(IndexedGraph<String> affinities, BridgeTable table) {
+        indexBytes = 0;
+        approximation = null;
+        graph = null;
+        frozen = affinities;
+        bridges = new BridgeIndex(affinities, 0);
+        search = new BridgeSearch(affinities);
+        this.table = table;
+        frozenEdges = -1;
+    }
+
+    /**
+     * Create a new poet with an approximate graph from a corpus whose distinct
+     * adjacencies are too many to count in memory: the graph has only the
+     * adjacencies that occur at least minWeight times, with their exact counts
+     * as weights, and only the words of those adjacencies.
+     *
+     * <p>The corpus is read twice, as UTF-8 whatever the default charset. The
+     * first read adds each adjacency to a count-min sketch taking at most
+     * sketchBytes, whose estimates of the counts of adjacencies are never too
+     * low. The second read counts exactly only the adjacencies whose estimate
+     * is at least minWeight, and keeps those that occur at least minWeight
+     * times. Memory thus grows with the distinct words of the corpus, which
+     * grow far slower than its length, and with the candidate adjacencies,
+     * which are fewer than the number of adjacencies divided by minWeight,
+     * plus those the sketch overestimates; not with its distinct adjacencies.
+     * {@link #approximation()} reports how much was dropped, and the error
+     * bound of the sketch.
+     *
+     * <p>A poem inserts the same bridge as the exact poet of the corpus would
+     * between every pair of words whose exact bridge b, from w1 to w2, has
+     * edges w1 -> b and b -> w2 that both occur at least minWeight times.
+     * Text added later with {@link #addText(Reader)} is counted exactly.
+     *
+     * @param corpus UTF-8 text file from which to derive the poet's affinity graph
+     * @param sketchBytes bound on the memory of the sketch of adjacencies, at
+     *        least 20 bytes; the wider the sketch, the fewer adjacencies occurring
+     *        fewer than minWeight times are counted in the second read
+     * @param minWeight least number of times an adjacency occurs for it to be an edge, positive
+     * @return a poet with the approximate affinity graph of corpus
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public static GraphPoet approximate(File corpus, long sketchBytes, int minWeight) throws IOException {
+        return new GraphPoet(corpus, sketchBytes, minWeight);
+    }
+
+    /**
+     * Load a poet saved by {@link #save(File)}. The affinity graph is served
+     * straight from the memory-mapped file, so loading does not depend on the
+     * size of the corpus; the file must not be modified while the poet is in use.
+     *
+     * @param graphFile graph file written by save
+     * @return a poet generating the same poems as the one saved
+     * @throws IOException if the file cannot be found or read, or is not a graph file
+     */
+    public static GraphPoet load(File graphFile) throws IOException {
+        return new GraphPoet(MappedGraph.open(graphFile), null);
+    }
+
+    /**
+     * Load a poet saved by {@link #save(File)}, with a table of the bridge
+     * words of all its pairs of words, so that every bridge is found with one
+     * binary search. The table is computed and written from the saved graph:
+     * <pre>    BridgeTable.compute(MappedGraph.open(graphFile)).write(bridgeFile);</pre>
+     * <p>Both files are memory-mapped, and must not be modified while the poet is in use.
+     *
+     * @param graphFile graph file written by save
+     * @param bridgeFile bridge table file computed from the graph in graphFile,
+     *        with bridges scored by {@link BridgeTable.Score#FIRST_EDGE}
+     * @return a poet generating the same poems as the one saved
+     * @throws IOException if a file cannot be found or read, is not of the
+     *         right kind, or the table was not computed from the graph, or
+     *         with that score
+     */
+    public static GraphPoet load(File graphFile, File bridgeFile) throws IOException {
+        MappedGraph affinities = MappedGraph.open(graphFile);
+        BridgeTable table = BridgeTable.open(bridgeFile, affinities);
+        if (table.score() != BridgeTable.Score.FIRST_EDGE) {
+            throw new IOException("Bridge table is scored by " + table.score() + ", not "
+                    + BridgeTable.Score.FIRST_EDGE + ": " + bridgeFile);
+        }
+        return new GraphPoet(affinities, table);
+    }
+
+    /**
+     * Save this poet's affinity graph as a graph file, to be loaded by {@link #load(File)}.
+     *
+     * @param graphFile the file to write, replaced atomically if it exists; it
+     *        may be the file this poet was loaded from, which it keeps reading
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File graphFile) throws IOException {
+        if (isStale()) {
+            freeze();
+        }
+        MappedGraph.write(frozen, graphFile);
+    }
+
+    /**
+     * Add the text of a corpus file to this poet's affinity graph, as a
+     * document of its own: its adjacencies are counted as the constructor
+     * counts them, and added to the weights of the graph, but its first word
+     * does not follow the last word of any text added before it.
+     *
+     * <p>Adding costs time proportional to the text added, not to the text
+     * already read: the graph checks only the words and edges the text
+     * touches, and poems find the bridges of the words whose adjacencies
+     * changed in the updated graph, and the bridges of the other words as
+     * before, until enough text has been added to refreeze the graph.
+     * Refreezing costs time proportional to the graph, but only once as many
+     * adjacencies have been added as the graph had edges, so that it adds a
+     * constant amortized time per adjacency. A poet
+     * loaded from a graph file copies its graph once, the first time text is
+     * added to it, and then loses its bridge table.
+     *
+     * @param corpus text file to add, read as the constructor reads a corpus
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public void addCorpus(File corpus) throws IOException {
+        prepareToAdd();
+        readCorpus(corpus, null);
+        finishAdding();
+    }
+
+    /**
+     * Add text to this poet's affinity graph, as a document of its own, as
+     * {@link #addCorpus(File)} does. The reader is read to its end, and not closed.
+     *
+     * @param text the text to add
+     * @throws IOException if the text cannot be read
+     */
+    public void addText(Reader text) throws IOException {
+        prepareToAdd();
+        readLines(new BufferedReader(text), null);
+        finishAdding();
+    }
+
+    /**
+     * Add text to this poet's affinity graph, as a document of its own, as
+     * {@link #addCorpus(File)} does.
+     *
+     * @param text the text to add
+     */
+    public void addText(CharSequence text) {
+        try {
+            addText(new StringReader(text.toString()));
+        } catch (IOException e) {
+            throw new AssertionError("StringReader cannot fail", e);
+        }
+    }
+
+    /**
+     * Make sure this poet has a graph to add text to, copying it from a
+     * loaded graph file if needed.
+     */
+    private void prepareToAdd() {
+        if (graph != null) {
+            return;
+        }
+        graph = new ConcreteVerticesGraph(frozen.size(), true);
+        GraphLoader loader = new GraphLoader(graph);
+        for (int id = 0; id < frozen.size(); id++) {
+            loader.addVertex(frozen.label(id));
+        }
+        for (int source = 0; source < frozen.size(); source++) {
+            for (int i = 0; i < frozen.outDegree(source); i++) {
+                int target = frozen.target(source, i);
+                loader.increment(frozen.label(source), frozen.label(target), frozen.weight(source, target));
+            }
+        }
+        loader.finish();
+    }
+
+    /**
+     * Refreeze the graph once the adjacencies added since it was last frozen
+     * are as many as its edges then, so that freezing costs a constant time
+     * per adjacency added.
+     */
+    private void finishAdding() {
+        if (frozenEdges < 0) {
+            frozenEdges = countEdges(frozen);
+        }
+        if (newAdjacencies >= Math.max(MIN_REFREEZE_ADJACENCIES, frozenEdges)) {
+            freeze();
+        }
+    }
+
+    /**
+     * Take a snapshot of the graph to answer poems from, and index its bridges.
+     * Each freeze is recorded as a Flight Recorder event (see {@link PoetEvents}).
+     */
+    private void freeze() {
+        Object freezeEvent = PoetEvents.FREEZE.begin();
+        frozen = new FrozenGraph<>(graph);
+        bridges = new BridgeIndex(frozen, indexBytes);
+        search = new BridgeSearch(frozen);
+        table = null;
+        frozenEdges = countEdges(frozen);
+        changedSources.clear();
+        changedTargets.clear();
+        newWords.clear();
+        newAdjacencies = 0;
+        if (freezeEvent != null) {
+            PoetEvents.FREEZE.commit(freezeEvent, frozen.size(), bridges.size());
+        }
+    }
+
+    /**
+     * Check whether text has been added since the graph was last frozen.
+     *
+     * @return true iff the graph has words or adjacencies that frozen has not
+     */
+    private boolean isStale() {
+        return newAdjacencies > 0 || !newWords.isEmpty();
+    }
+
+    /**
+     * Count the edges of a graph.
+     *
+     * @param graph the graph
+     * @return the number of edges of graph
+     */
+    private static long countEdges(IndexedGraph<String> graph) {
+        long edges = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            edges += graph.outDegree(id);
+        }
+        return edges;
     }
     
     /**
      * Read the corpus file and populate the graph based on word adjacencies.
+     * The corpus is read in the platform's default charset; when that is
+     * UTF-8, the file is memory-mapped and scanned as bytes (see
+     * {@link MappedCorpus}), which builds the same graph several times faster,
+     * and is read in parallel if a pool is given.
+     *
+     * @param corpus text file containing the corpus
+     * @param pool the pool to read a UTF-8 corpus on, or null to read it on the calling thread
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    private void readCorpus(File corpus, ForkJoinPool pool) throws IOException {
+        if (Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+            readMappedCorpus(corpus, pool);
+        } else {
+            readCorpusLines(corpus);
+        }
+    }
+
+    /**
+     * Read a UTF-8 corpus file by scanning its bytes, count its adjacencies,
+     * then populate the graph with one insertion per vertex and per edge.
+     * Each window of the file scanned, and the insertion, are recorded as
+     * Flight Recorder events (see {@link PoetEvents}).
+     *
+     * @param corpus UTF-8 text file containing the corpus
+     * @param pool the pool to read chunks of the corpus on, or null to read it on the calling thread
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    private void readMappedCorpus(File corpus, ForkJoinPool pool) throws IOException {
+        Object readEvent = PoetEvents.CORPUS_READ.begin();
+        MappedCorpus words = pool == null
+                ? new MappedCorpus(corpus, MappedCorpus.DEFAULT_WINDOW_BYTES)
+                : new MappedCorpus(corpus, MappedCorpus.DEFAULT_WINDOW_BYTES, MappedCorpus.DEFAULT_CHUNK_BYTES, pool);
+
+        Object insertEvent = PoetEvents.INSERT_BATCH.begin();
+        GraphLoader loader = loader();
+        // words and adjacencies are in order of first occurrence, as readCorpusLines inserts them
+        for (int id = 0; id < words.wordCount(); id++) {
+            addWord(loader, words.word(id));
+        }
+        for (int i = 0; i < words.pairCount(); i++) {
+            addAdjacency(loader, words.word(words.pairSource(i)), words.word(words.pairTarget(i)), words.pairWeight(i));
+        }
+        loader.finish();
+        if (insertEvent != null) {
+            PoetEvents.INSERT_BATCH.commit(insertEvent, words.wordCount(), words.pairCount());
+        }
+        if (readEvent != null) {
+            PoetEvents.CORPUS_READ.commit(readEvent, corpus.getPath(), words.lines(), words.tokens());
+        }
+    }
+
+    /**
+     * Read a UTF-8 corpus file twice against a sketch of its adjacencies, then
+     * populate the graph with its adjacencies occurring at least minWeight
+     * times, and their words. The read is recorded as a Flight Recorder event,
+     * as are each window of the file scanned and the insertion (see
+     * {@link PoetEvents}).
+     *
+     * @param corpus UTF-8 text file containing the corpus
+     * @param sketch an empty sketch to add the adjacencies of the corpus to
+     * @param minWeight least number of occurrences of an edge, positive
+     * @return the bounds of the graph read
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    private Approximation readApproximateCorpus(File corpus, CountMinSketch sketch, int minWeight) throws IOException {
+        Object readEvent = PoetEvents.CORPUS_READ.begin();
+        // the first read only fills the sketch; its words are read again, with the same ids
+        new MappedCorpus(corpus, MappedCorpus.DEFAULT_WINDOW_BYTES, sketch, 0);
+        MappedCorpus words = new MappedCorpus(corpus, MappedCorpus.DEFAULT_WINDOW_BYTES, sketch, minWeight);
+
+        Object insertEvent = PoetEvents.INSERT_BATCH.begin();
+        boolean[] kept = new boolean[words.wordCount()];
+        int edges = 0;
+        long keptAdjacencies = 0;
+        for (int i = 0; i < words.pairCount(); i++) {
+            if (words.pairWeight(i) >= minWeight) {
+                kept[words.pairSource(i)] = true;
+                kept[words.pairTarget(i)] = true;
+                edges++;
+                keptAdjacencies += words.pairWeight(i);
+            }
+        }
+        GraphLoader loader = new GraphLoader(graph);
+        int vertices = 0;
+        for (int id = 0; id < words.wordCount(); id++) {
+            if (kept[id]) {
+                addWord(loader, words.word(id));
+                vertices++;
+            }
+        }
+        for (int i = 0; i < words.pairCount(); i++) {
+            if (words.pairWeight(i) >= minWeight) {
+                addAdjacency(loader, words.word(words.pairSource(i)), words.word(words.pairTarget(i)), words.pairWeight(i));
+            }
+        }
+        loader.finish();
+        if (insertEvent != null) {
+            PoetEvents.INSERT_BATCH.commit(insertEvent, vertices, edges);
+        }
+        if (readEvent != null) {
+            PoetEvents.CORPUS_READ.commit(readEvent, corpus.getPath(), words.lines(), words.tokens());
+        }
+        return new Approximation(minWeight, sketch.total(), keptAdjacencies, edges, words.pairCount(), sketch);
+    }
+
+    /**
+     * Read the corpus file line by line in the platform's default charset,
+     * and populate the graph based on word adjacencies.
      *
      * @param corpus text file containing the corpus
      * @throws IOException if the corpus file cannot be found or read
      */
-    private void readCorpus(File corpus) throws IOException {
+    private void readCorpusLines(File corpus) throws IOException {
         try (BufferedReader reader = new BufferedReader(new FileReader(corpus))) {
-            String line;
-            String prevWord = null;
-
-            while ((line = reader.readLine()) != null) {
-                List<String> words = Arrays.stream(line.split("\\s+"))
-                        .filter(word -> !word.isEmpty())
-                        .map(String::toLowerCase)
-                        .collect(Collectors.toList());
-
-                for (String word : words) {
-                    if (!graph.vertices().contains(word)) {
-                        graph.add(word);
-                    }
-
-                    if (prevWord != null) {
-                        int weight = graph.targets(prevWord).getOrDefault(word, 0);
-                        graph.set(prevWord, word, weight + 1);
-                    }
-
-                    prevWord = word;
+            readLines(reader, corpus.getPath());
+        }
+    }
+
+    /**
+     * Read text line by line, and populate the graph based on word
+     * adjacencies. The text is read and inserted in batches of lines, each
+     * recorded as a Flight Recorder event (see {@link PoetEvents}).
+     *
+     * @param reader reader of the text, read to its end
+     * @param name name of the file being read, or null if the text is not a file
+     * @throws IOException if the text cannot be read
+     */
+    private void readLines(BufferedReader reader, String name) throws IOException {
+        Object readEvent = PoetEvents.CORPUS_READ.begin();
+        long lineCount = 0;
+        long wordCount = 0;
+        GraphLoader loader = loader();
+        List<String> batch = new ArrayList<>();
+        String prevWord = null;
+
+        while (true) {
+            Object batchEvent = PoetEvents.READ_BATCH.begin();
+            batch.clear();
+            int lines = readBatch(reader, batch);
+            if (lines == 0) {
+                break;
+            }
+            if (batchEvent != null) {
+                PoetEvents.READ_BATCH.commit(batchEvent, lines, batch.size());
+            }
+            lineCount += lines;
+            wordCount += batch.size();
+
+            Object insertEvent = PoetEvents.INSERT_BATCH.begin();
+            int edges = 0;
+            for (String word : batch) {
+                addWord(loader, word);
+
+                if (prevWord != null) {
+                    addAdjacency(loader, prevWord, word, 1);
+                    edges++;
                 }
+
+                prevWord = word;
             }
+            if (insertEvent != null) {
+                PoetEvents.INSERT_BATCH.commit(insertEvent, batch.size(), edges);
+            }
+        }
+        loader.finish();
+        if (readEvent != null) {
+            PoetEvents.CORPUS_READ.commit(readEvent, name, lineCount, wordCount);
+        }
+    }
+
+    /**
+     * Start loading text into the graph. The corpus a poet is created from is
+     * loaded with the graph's checks deferred, and checked once at the end;
+     * text added later is usually far smaller than the graph, so its mutations
+     * are checked one by one, each in constant time, instead.
+     *
+     * @return a loader into graph
+     */
+    private GraphLoader loader() {
+        return new GraphLoader(graph, frozen == null);
+    }
+
+    /**
+     * Add a word of the text being read to the graph.
+     *
+     * @param loader loader of the text into the graph
+     * @param word the word, lowercase
+     */
+    private void addWord(GraphLoader loader, String word) {
+        loader.addVertex(word);
+        if (frozen != null && frozen.id(word) == NO_WORD && !newWords.containsKey(word)) {
+            newWords.put(word, newWords.size());
         }
     }
 
+    /**
+     * Add to the count of an adjacency of the text being read.
+     *
+     * @param loader loader of the text into the graph
+     * @param source a word of the text
+     * @param target the word following it
+     * @param count number of times target follows source, positive
+     */
+    private void addAdjacency(GraphLoader loader, String source, String target, int count) {
+        loader.increment(source, target, count);
+        if (frozen != null) {
+            changedSources.add(source);
+            changedTargets.add(target);
+            newAdjacencies += count;
+        }
+    }
+
+    /**
+     * Read a batch of lines of the corpus and split them into words.
+     *
+     * @param reader reader of the corpus
+     * @param words list to append the lowercase words of the lines to, in order
+     * @return the number of lines read, at most BATCH_LINES; 0 at the end of the corpus
+     * @throws IOException if the corpus cannot be read
+     */
+    private static int readBatch(BufferedReader reader, List<String> words) throws IOException {
+        int lines = 0;
+        String line;
+        while (lines < BATCH_LINES && (line = reader.readLine()) != null) {
+            lines++;
+            for (String word : line.split("\\s+")) {
+                if (!word.isEmpty()) {
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+        return lines;
+    }
+
     /**
      * Verifies that the representation invariant holds true for the current state of the GraphPoet.
      * @throws AssertionError if the representation invariant is violated.
      */
     private void checkRep() {
-        Set<String> vertices = graph.vertices();
+        Set<String> vertices = frozen.vertices();
         for (String vertex : vertices) {
             // Validate that each vertex is a non-empty string of non-space non-newline characters
             assert vertex != null && !vertex.trim().isEmpty() && !vertex.contains(" ") && !vertex.contains("\n") :
                     "Invalid vertex representation: " + vertex;
         }
+        assert graph != null || !isStale() : "Text added without a graph";
+        assert frozen.size() + newWords.size() == (graph == null ? frozen.size() : graph.vertices().size())
+                : "Words added since freezing are not counted";
         // Check for the adjacency count between words in the corpus
         for (String source : vertices) {
-            Map<String, Integer> edges = graph.targets(source);
+            Map<String, Integer> edges = frozen.targets(source);
             for (String target : edges.keySet()) {
                 int weight = edges.get(target);
                 assert weight >= 0 : "Negative weight between " + source + " and " + target;
@@ -144,59 +707,132 @@ public class GraphPoet {
      * @return poem (as described above)
      */
     public String poem(String input) {
+        Object poemEvent = PoetEvents.POEM.begin();
         List<String> inputWords = Arrays.stream(input.split("\\s+"))
                 .filter(word -> !word.isEmpty())
                 .map(String::toLowerCase)
                 .collect(Collectors.toList());
 
         StringBuilder poemBuilder = new StringBuilder();
+        int bridgeCount = 0;
 
         for (int i = 0; i < inputWords.size() - 1; i++) {
             String source = inputWords.get(i);
             String target = inputWords.get(i + 1);
+            poemBuilder.append(source).append(" ");
 
-            if (!graph.vertices().contains(source) || !graph.vertices().contains(target)) {
-                poemBuilder.append(source).append(" ");
+            // the bridges of words whose adjacencies changed since the graph was frozen are found in graph
+            boolean changed = changedSources.contains(source) || changedTargets.contains(target);
+            int sourceId = frozen.id(source);
+            int targetId = frozen.id(target);
+            if (!changed && (sourceId == NO_WORD || targetId == NO_WORD)) {
                 continue;
             }
 
-            List<String> bridgeWords = findBridgeWords(source, target);
-            if (!bridgeWords.isEmpty()) {
-                poemBuilder.append(source).append(" ");
-                poemBuilder.append(bridgeWords.get(0)).append(" ");
+            Object searchEvent = PoetEvents.BRIDGE_SEARCH.begin();
+            String bridge;
+            int candidates = 0;
+            if (changed) {
+                Map<String, Integer> targets = graph.targets(source);
+                Map<String, Integer> sources = graph.sources(target);
+                candidates = Math.min(targets.size(), sources.size());
+                bridge = changedBridge(targets, sources);
             } else {
-                poemBuilder.append(source).append(" ");
+                int bridgeId;
+                if (table != null) {
+                    bridgeId = table.bridge(sourceId, targetId, 0);
+                } else if (bridges.covers(sourceId)) {
+                    bridgeId = bridges.bridge(sourceId, targetId);
+                } else {
+                    long result = search.search(sourceId, targetId);
+                    bridgeId = BridgeSearch.bridge(result);
+                    candidates = BridgeSearch.examined(result);
+                }
+                bridge = bridgeId == NO_WORD ? null : frozen.label(bridgeId);
+            }
+            if (searchEvent != null) {
+                PoetEvents.BRIDGE_SEARCH.commit(searchEvent, source, target, candidates, bridge);
+            }
+            if (bridge != null) {
+                poemBuilder.append(bridge).append(" ");
+                bridgeCount++;
             }
         }
 
         poemBuilder.append(inputWords.get(inputWords.size() - 1));
+        if (poemEvent != null) {
+            PoetEvents.POEM.commit(poemEvent, inputWords.size(), bridgeCount);
+        }
         return poemBuilder.toString();
     }
 
     /**
-     * Find bridge words between source and target in the graph.
+     * Find a bridge in the graph, by the rule BridgeSearch applies to frozen:
+     * the target of the first word with the heaviest edge to it, ties broken
+     * by order of insertion, which is also the order of ids once frozen.
      *
-     * @param source source word
-     * @param target target word
-     * @return list of bridge words
+     * @param targets the targets of the first word in graph
+     * @param sources the sources of the second word in graph
+     * @return the bridge, or null if there is none
      */
-    private List<String> findBridgeWords(String source, String target) {
-        List<String> bridgeWords = graph.targets(source).keySet().stream()
-                .filter(bridge -> graph.targets(bridge).containsKey(target))
-                .collect(Collectors.toList());
+    private String changedBridge(Map<String, Integer> targets, Map<String, Integer> sources) {
+        String best = null;
+        int bestWeight = 0;
+        int bestOrder = 0;
+        for (String bridge : (sources.size() < targets.size() ? sources : targets).keySet()) {
+            if (!targets.containsKey(bridge) || !sources.containsKey(bridge)) {
+                continue;
+            }
+            int weight = targets.get(bridge);
+            int order = order(bridge);
+            if (weight > bestWeight || weight == bestWeight && order < bestOrder) {
+                best = bridge;
+                bestWeight = weight;
+                bestOrder = order;
+            }
+        }
+        return best;
+    }
 
-        bridgeWords.sort((b1, b2) -> graph.targets(source).get(b2) - graph.targets(source).get(b1));
-        return bridgeWords;
+    /**
+     * Get the position of a word in the order of insertion into the graph.
+     *
+     * @param word a vertex of graph
+     * @return its id in frozen, or the size of frozen plus its position among the new words
+     */
+    private int order(String word) {
+        int id = frozen.id(word);
+        return id != NO_WORD ? id : frozen.size() + newWords.get(word);
     }
-    
+
+    /**
+     * Get the bounds of this poet's approximate affinity graph.
+     *
+     * @return the bounds of the graph read from the corpus, if this poet was
+     *         created by {@link #approximate(File, long, int)}; or null if its
+     *         graph is exact, or if it was loaded from a graph file
+     */
+    public Approximation approximation() {
+        return approximation;
+    }
+
     /**
      * Provides a string representation of the current state of the GraphPoet.
      * @return a string representing the GraphPoet.
      */
     @Override
     public String toString() {
-        int vertexCount = graph.vertices().size();
-        int edgeCount = graph.vertices().stream().mapToInt(vertex -> graph.targets(vertex).size()).sum();
+        int vertexCount;
+        long edgeCount = 0;
+        if (isStale()) {
+            vertexCount = graph.vertices().size();
+            for (String source : graph.vertices()) {
+                edgeCount += graph.targets(source).size();
+            }
+        } else {
+            vertexCount = frozen.size();
+            edgeCount = countEdges(frozen);
+        }
         return "GraphPoet with a word affinity graph containing " + vertexCount + " vertices and " + edgeCount + " edges.";
     }
 }
\ No newline at end of file
@@ -0,0 +1,672 @@
+package poet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The words and adjacencies of a UTF-8 corpus, read by scanning the bytes of
+ * the memory-mapped file.
+ *
+ * <p>Words are split and lowercased exactly as GraphPoet splits each line with
+ * {@code split("\\s+")} and lowercases each word with {@code toLowerCase()}:
+ * words are the maximal runs of bytes other than the ASCII whitespace of
+ * {@code \s} (space, tab, newline, vertical tab, form feed, carriage return),
+ * which never occur inside a UTF-8 multi-byte sequence. While a word is
+ * scanned, its ASCII capitals are folded to lowercase into a reusable buffer,
+ * and the folded bytes are looked up in a byte-keyed dictionary of the
+ * spellings seen so far. Only a new spelling is decoded and lowercased into a
+ * String, so each distinct spelling costs one String and the other
+ * occurrences none. Capital I and J are not folded in the default locale's
+ * language when it is Turkish, Azerbaijani or Lithuanian, whose lowercase
+ * rules for them differ; no other ASCII capital changes how the rest of a word
+ * lowercases.
+ *
+ * <p>Adjacency counts are accumulated by pair of word ids, so that the graph
+ * can then be loaded with one insertion per vertex and per distinct edge. A
+ * large corpus can be read in parallel, in chunks whose counts are merged.
+ * A corpus with too many distinct adjacencies to count can be read twice
+ * against a {@link CountMinSketch} of them, counting only the frequent ones.
+ */
+class MappedCorpus {
+
+    /** Bytes of the file mapped at a time, and read per READ_BATCH event. */
+    static final int DEFAULT_WINDOW_BYTES = 1 << 26;
+
+    /** Bytes of a corpus below which a parallel read does not split it further. */
+    static final long DEFAULT_CHUNK_BYTES = 1 << 20;
+
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final long EMPTY = -1;
+    private static final boolean FOLD_I_AND_J = !Arrays.asList("tr", "az", "lt")
+            .contains(Locale.getDefault().getLanguage());
+
+    // dictionary of spellings: the folded bytes of spelling s are
+    // spellingBytes[spellingStarts[s] .. spellingStarts[s]+spellingLengths[s]-1]
+    private byte[] spellingBytes = new byte[1 << 12];
+    private int spellingBytesUsed = 0;
+    private int[] spellingStarts = new int[1 << 8];
+    private int[] spellingLengths = new int[1 << 8];
+    private int[] spellingHashes = new int[1 << 8];
+    private int[] spellingWords = new int[1 << 8];
+    private int spellingCount = 0;
+    private int[] spellingTable = new int[1 << 9];
+
+    // words, by id in order of first occurrence
+    private final Map<String, Integer> wordIds = new HashMap<>();
+    private String[] words = new String[1 << 8];
+    private int wordCount = 0;
+
+    // adjacencies, in order of first occurrence, indexed by pair key
+    private long[] pairKeys = newKeys(1 << 9);
+    private int[] pairIndexes = new int[1 << 9];
+    private int[] pairSources = new int[1 << 8];
+    private int[] pairTargets = new int[1 << 8];
+    private int[] pairWeights = new int[1 << 8];
+    private int pairCount = 0;
+
+    // adjacencies are counted only if their estimate in sketch is at least
+    // minWeight; or, if minWeight is 0, added to sketch instead
+    private CountMinSketch sketch = null;
+    private int minWeight = 0;
+
+    private byte[] token = new byte[64];
+    private int tokenLength = 0;
+    private int tokenHash = 0;
+    private int firstWord = -1;
+    private int previousWord = -1;
+    private boolean lastWasCarriageReturn = false;
+    private boolean lineOpen = false;
+    private long lineCount = 0;
+    private long tokenCount = 0;
+
+    // Abstraction function:
+    //   Represents the corpus read so far: its words words[0 .. wordCount-1] in
+    //   order of first occurrence, and its adjacencies (pairSources[i],
+    //   pairTargets[i]) occurring pairWeights[i] times, for i in
+    //   0 .. pairCount-1 in order of first occurrence; token[0 .. tokenLength-1]
+    //   are the folded bytes of a word still being scanned, firstWord and
+    //   previousWord the ids of the first and last complete words or -1,
+    //   lineCount and tokenCount the lines and words read so far
+    // Representation invariant:
+    //   wordIds maps words[i] to i, for i in 0 .. wordCount-1
+    //   spellingTable and pairKeys are open-addressing tables of length a power
+    //     of two, at most half full; spellingTable holds spelling ids + 1 and 0
+    //     elsewhere, pairKeys holds (source << 32 | target) keys and EMPTY
+    //     elsewhere, with pairIndexes the index of each pair
+    //   every spelling s folds to a word that lowercases to words[spellingWords[s]]
+    //   if sketch is not null: it is read on a single thread, so that word ids
+    //     follow the corpus alone and a second read keys the sketch as the
+    //     first did; pairCount == 0 if minWeight == 0
+    // Safety from rep exposure:
+    //   All fields are private, and words are returned as immutable Strings
+
+    /**
+     * Reads a corpus.
+     *
+     * @param corpus a UTF-8 text file
+     * @param windowBytes bytes of the file to map at a time, positive
+     * @throws IOException if the file cannot be found or read
+     */
+    MappedCorpus(File corpus, int windowBytes) throws IOException {
+        this(corpus, windowBytes, null, 0);
+    }
+
+    /**
+     * Reads a corpus against a sketch of its adjacencies. Reading it with
+     * minWeight 0 adds each of its adjacencies to the sketch and counts none;
+     * reading it again, with the same sketch and a positive minWeight, counts
+     * exactly the adjacencies whose estimate is at least minWeight, which
+     * include every adjacency occurring at least minWeight times. The words,
+     * and their ids, are the same as with {@link #MappedCorpus(File, int)}.
+     *
+     * @param corpus a UTF-8 text file
+     * @param windowBytes bytes of the file to map at a time, positive
+     * @param sketch sketch of the adjacencies of corpus, keyed by pair of word ids;
+     *        or null to count every adjacency
+     * @param minWeight least estimate of an adjacency counted, nonnegative;
+     *        0 to add adjacencies to sketch instead
+     * @throws IOException if the file cannot be found or read
+     */
+    MappedCorpus(File corpus, int windowBytes, CountMinSketch sketch, int minWeight) throws IOException {
+        checkWindow(windowBytes);
+        if (minWeight < 0) {
+            throw new IllegalArgumentException("Min weight must be nonnegative: " + minWeight);
+        }
+        this.sketch = sketch;
+        this.minWeight = minWeight;
+        try (RandomAccessFile file = new RandomAccessFile(corpus, "r");
+                FileChannel channel = file.getChannel()) {
+            read(channel, 0, channel.size(), windowBytes);
+        }
+        endToken();
+        if (lineOpen) {
+            lineCount++;
+        }
+    }
+
+    /**
+     * Reads a corpus in parallel. The file is split into chunks after
+     * whitespace, so that no word spans two chunks; each chunk is read by a
+     * worker into words and adjacency counts of its own, and the chunks are
+     * then merged in order, joining the last word of each chunk to the first
+     * word of the next. The result is the same as reading the corpus with
+     * {@link #MappedCorpus(File, int)}.
+     *
+     * @param corpus a UTF-8 text file
+     * @param windowBytes bytes of the file to map at a time, positive
+     * @param chunkBytes bytes of the file below which it is not split further, positive
+     * @param pool the pool to read chunks on
+     * @throws IOException if the file cannot be found or read
+     */
+    MappedCorpus(File corpus, int windowBytes, long chunkBytes, ForkJoinPool pool) throws IOException {
+        checkWindow(windowBytes);
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("Chunk bytes must be positive: " + chunkBytes);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(corpus, "r");
+                FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min((long) pool.getParallelism() * CHUNKS_PER_WORKER, size / chunkBytes));
+            long[] bounds = bounds(channel, chunks);
+            List<Future<MappedCorpus>> parts = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                parts.add(pool.submit(() -> {
+                    MappedCorpus part = new MappedCorpus();
+                    part.read(channel, start, end, windowBytes);
+                    part.endToken();
+                    return part;
+                }));
+            }
+            for (int i = 0; i < parts.size(); i++) {
+                merge(join(parts.get(i)));
+                parts.set(i, null);
+            }
+        }
+        if (lineOpen) {
+            lineCount++;
+        }
+    }
+
+    /**
+     * Constructs an empty corpus, to read a chunk into.
+     */
+    private MappedCorpus() {
+    }
+
+    /**
+     * Checks the window of a read.
+     *
+     * @param windowBytes bytes of the file to map at a time
+     * @throws IllegalArgumentException if windowBytes is not positive
+     */
+    private static void checkWindow(int windowBytes) {
+        if (windowBytes <= 0) {
+            throw new IllegalArgumentException("Window bytes must be positive: " + windowBytes);
+        }
+    }
+
+    /**
+     * Reads a range of the corpus, mapping it one window at a time.
+     *
+     * @param channel channel of the corpus file
+     * @param start position of the first byte to read
+     * @param end position after the last byte to read
+     * @param windowBytes bytes of the file to map at a time, positive
+     * @throws IOException if the file cannot be read
+     */
+    private void read(FileChannel channel, long start, long end, int windowBytes) throws IOException {
+        byte[] buffer = new byte[Math.min(BUFFER_BYTES, windowBytes)];
+        for (long position = start; position < end; position += windowBytes) {
+            Object batchEvent = PoetEvents.READ_BATCH.begin();
+            long lines = lineCount;
+            long tokens = tokenCount;
+            int length = (int) Math.min(windowBytes, end - position);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            while (window.hasRemaining()) {
+                int n = Math.min(buffer.length, window.remaining());
+                window.get(buffer, 0, n);
+                scan(buffer, n);
+            }
+            if (batchEvent != null) {
+                PoetEvents.READ_BATCH.commit(batchEvent, (int) (lineCount - lines), (int) (tokenCount - tokens));
+            }
+        }
+    }
+
+    /**
+     * Splits a corpus into chunks.
+     *
+     * @param channel channel of the corpus file
+     * @param chunks number of chunks to aim for, positive
+     * @return the bounds of at most chunks non-empty chunks, ascending from 0
+     *         to the size of the file (just 0 for an empty file); every bound
+     *         but the first and last follows whitespace, and does not split \r\n
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] bounds(FileChannel channel, int chunks) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[chunks + 1];
+        int count = 1;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        for (int i = 1; i < chunks; i++) {
+            long bound = afterWhitespace(channel, Math.max(size / chunks * i, bounds[count - 1] + 1), buffer);
+            if (bound < size) {
+                bounds[count++] = bound;
+            }
+        }
+        if (size > 0) {
+            bounds[count++] = size;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Finds where a chunk of a corpus may end.
+     *
+     * @param channel channel of the corpus file
+     * @param position a position in the file, positive
+     * @param buffer buffer to read the file through
+     * @return the least bound at or after position that follows whitespace
+     *         and is not between \r and \n, or the size of the file if none
+     * @throws IOException if the file cannot be read
+     */
+    private static long afterWhitespace(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        boolean carriageReturn = false;
+        for (long p = position - 1;;) {
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if (n <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (carriageReturn) {
+                    return b == '\n' ? p + i + 1 : p + i;
+                }
+                if (b == '\r') {
+                    carriageReturn = true;
+                } else if (isWhitespace(b)) {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+    }
+
+    /**
+     * Waits for a chunk to be read.
+     *
+     * @param part the read of the chunk
+     * @return the chunk read
+     * @throws IOException if the chunk could not be read
+     */
+    private static MappedCorpus join(Future<MappedCorpus> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading a corpus");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Appends the words and adjacencies of the chunk of the corpus that
+     * follows the chunks read so far.
+     *
+     * @param part the next chunk, read to its end
+     */
+    private void merge(MappedCorpus part) {
+        lineCount += part.lineCount;
+        lineOpen = part.lineOpen;
+        if (part.tokenCount == 0) {
+            return;
+        }
+        int[] ids = new int[part.wordCount];
+        for (int id = 0; id < part.wordCount; id++) {
+            ids[id] = word(part.words[id]);
+        }
+        // the adjacency across the chunk boundary comes before those of the chunk
+        if (previousWord >= 0) {
+            countPair(previousWord, ids[part.firstWord], 1);
+        } else {
+            firstWord = ids[part.firstWord];
+        }
+        for (int i = 0; i < part.pairCount; i++) {
+            countPair(ids[part.pairSources[i]], ids[part.pairTargets[i]], part.pairWeights[i]);
+        }
+        previousWord = ids[part.previousWord];
+        tokenCount += part.tokenCount;
+    }
+
+    /**
+     * Checks whether a byte is whitespace, as {@code \s} matches it.
+     *
+     * @param b a byte of the corpus
+     * @return true iff b is a space, tab, newline, vertical tab, form feed or carriage return
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    /**
+     * Scans bytes of the corpus.
+     *
+     * @param bytes the next bytes of the corpus
+     * @param length number of bytes to scan
+     */
+    private void scan(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (isWhitespace(b)) {
+                if (tokenLength > 0) {
+                    endToken();
+                }
+                // lines end at \n, \r or \r\n, as BufferedReader.readLine() splits them
+                if (b == '\n') {
+                    if (!lastWasCarriageReturn) {
+                        lineCount++;
+                    }
+                    lineOpen = false;
+                } else if (b == '\r') {
+                    lineCount++;
+                    lineOpen = false;
+                } else {
+                    lineOpen = true;
+                }
+                lastWasCarriageReturn = b == '\r';
+                continue;
+            }
+            lastWasCarriageReturn = false;
+            lineOpen = true;
+            if (b >= 'A' && b <= 'Z' && (FOLD_I_AND_J || (b != 'I' && b != 'J'))) {
+                b += 'a' - 'A';
+            }
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, 2 * tokenLength);
+            }
+            token[tokenLength++] = b;
+            tokenHash = 31 * tokenHash + b;
+        }
+    }
+
+    /**
+     * Ends the word being scanned, if any: finds its id and counts its
+     * adjacency with the previous word.
+     */
+    private void endToken() {
+        if (tokenLength == 0) {
+            return;
+        }
+        int spelling = spelling();
+        int word = spellingWords[spelling];
+        tokenCount++;
+        if (previousWord >= 0) {
+            countPair(previousWord, word, 1);
+        } else {
+            firstWord = word;
+        }
+        previousWord = word;
+        tokenLength = 0;
+        tokenHash = 0;
+    }
+
+    /**
+     * Finds the spelling of the word being scanned, adding it and its word if
+     * they are new.
+     *
+     * @return id of the spelling of token[0 .. tokenLength-1]
+     */
+    private int spelling() {
+        int hash = tokenHash * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        int mask = spellingTable.length - 1;
+        int slot = hash & mask;
+        for (int entry; (entry = spellingTable[slot]) != 0; slot = (slot + 1) & mask) {
+            int s = entry - 1;
+            if (spellingHashes[s] == hash && spellingLengths[s] == tokenLength
+                    && equalBytes(spellingBytes, spellingStarts[s], token, tokenLength)) {
+                return s;
+            }
+        }
+
+        int s = spellingCount++;
+        if (s == spellingStarts.length) {
+            spellingStarts = Arrays.copyOf(spellingStarts, 2 * s);
+            spellingLengths = Arrays.copyOf(spellingLengths, 2 * s);
+            spellingHashes = Arrays.copyOf(spellingHashes, 2 * s);
+            spellingWords = Arrays.copyOf(spellingWords, 2 * s);
+        }
+        if (spellingBytesUsed + tokenLength > spellingBytes.length) {
+            spellingBytes = Arrays.copyOf(spellingBytes, Math.max(2 * spellingBytes.length, spellingBytesUsed + tokenLength));
+        }
+        System.arraycopy(token, 0, spellingBytes, spellingBytesUsed, tokenLength);
+        spellingStarts[s] = spellingBytesUsed;
+        spellingLengths[s] = tokenLength;
+        spellingHashes[s] = hash;
+        spellingBytesUsed += tokenLength;
+        spellingWords[s] = word(new String(token, 0, tokenLength, StandardCharsets.UTF_8).toLowerCase());
+        spellingTable[slot] = s + 1;
+        if (2 * spellingCount > spellingTable.length) {
+            spellingTable = new int[2 * spellingTable.length];
+            for (int i = 0; i < spellingCount; i++) {
+                int m = spellingTable.length - 1;
+                int j = spellingHashes[i] & m;
+                while (spellingTable[j] != 0) {
+                    j = (j + 1) & m;
+                }
+                spellingTable[j] = i + 1;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Finds the id of a word, adding it if it is new.
+     *
+     * @param lowercase the word, lowercased
+     * @return its id
+     */
+    private int word(String lowercase) {
+        Integer id = wordIds.get(lowercase);
+        if (id != null) {
+            return id;
+        }
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, 2 * wordCount);
+        }
+        words[wordCount] = lowercase;
+        wordIds.put(lowercase, wordCount);
+        return wordCount++;
+    }
+
+    /**
+     * Counts occurrences of an adjacency, or adds them to the sketch.
+     *
+     * @param source id of the first word
+     * @param target id of the word following it
+     * @param weight number of occurrences, positive
+     */
+    private void countPair(int source, int target, int weight) {
+        long key = (long) source << 32 | target;
+        if (sketch != null) {
+            if (minWeight == 0) {
+                sketch.add(key, weight);
+                return;
+            } else if (sketch.estimate(key) < minWeight) {
+                return;
+            }
+        }
+        int slot = pairSlot(pairKeys, key);
+        if (pairKeys[slot] == key) {
+            pairWeights[pairIndexes[slot]] += weight;
+            return;
+        }
+        int index = pairCount++;
+        if (index == pairSources.length) {
+            pairSources = Arrays.copyOf(pairSources, 2 * index);
+            pairTargets = Arrays.copyOf(pairTargets, 2 * index);
+            pairWeights = Arrays.copyOf(pairWeights, 2 * index);
+        }
+        pairSources[index] = source;
+        pairTargets[index] = target;
+        pairWeights[index] = weight;
+        pairKeys[slot] = key;
+        pairIndexes[slot] = index;
+        if (2 * pairCount > pairKeys.length) {
+            long[] oldKeys = pairKeys;
+            int[] oldIndexes = pairIndexes;
+            pairKeys = newKeys(2 * oldKeys.length);
+            pairIndexes = new int[2 * oldKeys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int j = pairSlot(pairKeys, oldKeys[i]);
+                    pairKeys[j] = oldKeys[i];
+                    pairIndexes[j] = oldIndexes[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of a pair key: the slot holding it, or the empty slot
+     * where it would be inserted.
+     *
+     * @param keys an open-addressing table of pair keys
+     * @param key a pair key
+     * @return index of the slot
+     */
+    private static int pairSlot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ hash >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Compares bytes.
+     *
+     * @param a an array
+     * @param start index of the first byte to compare in a
+     * @param b another array
+     * @param length number of bytes to compare, from index 0 in b
+     * @return true iff a[start .. start+length-1] equals b[0 .. length-1]
+     */
+    private static boolean equalBytes(byte[] a, int start, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[start + i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes an empty pair table.
+     *
+     * @param length length of the table, a power of two
+     * @return a table of EMPTY keys
+     */
+    private static long[] newKeys(int length) {
+        long[] keys = new long[length];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * @return the number of lines of the corpus, counted as BufferedReader.readLine() reads them
+     */
+    long lines() {
+        return lineCount;
+    }
+
+    /**
+     * @return the number of words of the corpus, counting every occurrence
+     */
+    long tokens() {
+        return tokenCount;
+    }
+
+    /**
+     * @return the number of distinct words of the corpus
+     */
+    int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Gets a word.
+     *
+     * @param id an id in 0 .. wordCount()-1
+     * @return the id-th distinct word of the corpus, lowercased
+     */
+    String word(int id) {
+        return words[id];
+    }
+
+    /**
+     * @return the number of distinct adjacencies of the corpus
+     */
+    int pairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Gets the first word of an adjacency.
+     *
+     * @param index an index in 0 .. pairCount()-1
+     * @return id of the first word of the index-th distinct adjacency
+     */
+    int pairSource(int index) {
+        return pairSources[index];
+    }
+
+    /**
+     * Gets the second word of an adjacency.
+     *
+     * @param index an index in 0 .. pairCount()-1
+     * @return id of the second word of the index-th distinct adjacency
+     */
+    int pairTarget(int index) {
+        return pairTargets[index];
+    }
+
+    /**
+     * Gets how often an adjacency occurs.
+     *
+     * @param index an index in 0 .. pairCount()-1
+     * @return the number of times the index-th distinct adjacency occurs
+     */
+    int pairWeight(int index) {
+        return pairWeights[index];
+    }
+}
@@ -0,0 +1,280 @@
+package poet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events emitted by GraphPoet, in the "GraphPoet"
+ * category of a recording.
+ *
+ * <p>The project is built against the Java 8 API, which has no JFR classes,
+ * so event types are defined at run time through {@code jdk.jfr.EventFactory}
+ * and driven through method handles. On a JVM without JFR every event is a
+ * no-op. When a recording does not enable an event type, {@link Type#begin()}
+ * returns null after one check and nothing else is done; when it does, events
+ * shorter than the type's threshold are dropped by JFR at commit. Thresholds
+ * default to those given here, and can be changed in a recording's settings,
+ * e.g. {@code poet.BridgeSearch#threshold=0 ms}.
+ */
+final class PoetEvents {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> EVENT = find("jdk.jfr.Event");
+    private static final Class<?> FACTORY = find("jdk.jfr.EventFactory");
+    private static final Class<?> EVENT_TYPE = find("jdk.jfr.EventType");
+    private static final Class<?> ANNOTATION = find("jdk.jfr.AnnotationElement");
+    private static final Class<?> VALUE = find("jdk.jfr.ValueDescriptor");
+
+    private static final MethodHandle CREATE = method(FACTORY, "create", true, FACTORY, List.class, List.class);
+    private static final MethodHandle NEW_EVENT = method(FACTORY, "newEvent", false, EVENT);
+    private static final MethodHandle GET_EVENT_TYPE = method(FACTORY, "getEventType", false, EVENT_TYPE);
+    private static final MethodHandle IS_ENABLED = method(EVENT_TYPE, "isEnabled", false, boolean.class);
+    private static final MethodHandle BEGIN = method(EVENT, "begin", false, void.class);
+    private static final MethodHandle END = method(EVENT, "end", false, void.class);
+    private static final MethodHandle SHOULD_COMMIT = method(EVENT, "shouldCommit", false, boolean.class);
+    private static final MethodHandle SET = method(EVENT, "set", false, void.class, int.class, Object.class);
+    private static final MethodHandle COMMIT = method(EVENT, "commit", false, void.class);
+    private static final MethodHandle NEW_ANNOTATION = constructor(ANNOTATION, Class.class, Object.class);
+    private static final MethodHandle NEW_VALUE = constructor(VALUE, Class.class, String.class);
+
+    /** Whether this JVM has Flight Recorder, so that events can be recorded. */
+    static final boolean AVAILABLE = CREATE != null && NEW_EVENT != null && GET_EVENT_TYPE != null
+            && IS_ENABLED != null && BEGIN != null && END != null && SHOULD_COMMIT != null && SET != null
+            && COMMIT != null && NEW_ANNOTATION != null && NEW_VALUE != null;
+
+    /** Reading a corpus into the affinity graph, from opening the file to the last edge. */
+    static final Type CORPUS_READ = new Type("poet.CorpusRead", "Corpus Read",
+            "Reading a corpus file and inserting its words into the affinity graph", "0 ms",
+            String.class, "file", long.class, "lines", long.class, "words");
+    /** Reading and tokenizing one batch of corpus lines, or one window of a memory-mapped corpus. */
+    static final Type READ_BATCH = new Type("poet.ReadBatch", "Corpus Read Batch",
+            "Reading a batch of corpus lines, or a window of a memory-mapped corpus, and splitting it into lowercase words", "10 ms",
+            int.class, "lines", int.class, "words");
+    /** Inserting the vertices and edges of one batch of words, or of a whole memory-mapped corpus. */
+    static final Type INSERT_BATCH = new Type("poet.InsertBatch", "Graph Insert Batch",
+            "Inserting a batch of words as vertices, and their adjacencies as edge increments; a memory-mapped corpus inserts each distinct word and adjacency once", "10 ms",
+            int.class, "vertices", int.class, "edges");
+    /** Freezing the affinity graph for poem generation. */
+    static final Type FREEZE = new Type("poet.Freeze", "Graph Freeze",
+            "Building the read-only snapshot of the affinity graph, and its index of bridge words", "0 ms",
+            int.class, "vertices", int.class, "indexedPairs");
+    /** Generating one poem. */
+    static final Type POEM = new Type("poet.Poem", "Poem",
+            "Generating a poem from an input string", "1 ms",
+            int.class, "inputWords", int.class, "bridges");
+    /** Finding the bridge word between one pair of adjacent input words. */
+    static final Type BRIDGE_SEARCH = new Type("poet.BridgeSearch", "Bridge Search",
+            "Finding the bridge word between a pair of adjacent input words; candidates counts the adjacency list entries examined, none for indexed pairs", "1 ms",
+            String.class, "source", String.class, "target", int.class, "candidates", String.class, "bridge");
+    /** Evicting the oldest bucket of a StreamingPoet's window. */
+    static final Type WINDOW_EVICT = new Type("poet.WindowEvict", "Window Evict",
+            "Subtracting the words and adjacencies of the oldest bucket of a streaming window from the affinity graph", "1 ms",
+            int.class, "words", int.class, "removedWords", int.class, "removedEdges");
+
+    /**
+     * Not instantiable.
+     */
+    private PoetEvents() {
+        throw new AssertionError();
+    }
+
+    /**
+     * A type of event.
+     */
+    static final class Type {
+
+        private final Object factory;
+        private final Object eventType;
+
+        // Abstraction function:
+        //   Represents the JFR event type made by factory, described by eventType,
+        //   or an event type that is never enabled if factory is null
+        // Representation invariant:
+        //   factory and eventType are both null, or a jdk.jfr.EventFactory and its
+        //   jdk.jfr.EventType
+        // Safety from rep exposure:
+        //   All fields are private and final, and never returned
+        // Thread safety argument:
+        //   The fields are final and refer to thread-safe JFR objects; each event
+        //   returned by begin() is confined to its caller.
+
+        /**
+         * Defines an event type, if Flight Recorder is available.
+         *
+         * @param name name of the event type in recordings
+         * @param label human-readable name of the event type
+         * @param description description of the event type
+         * @param threshold default duration threshold, such as "10 ms"; shorter
+         *        events are not recorded
+         * @param fields types and names of the event's fields, alternating a
+         *        Class and a String
+         */
+        Type(String name, String label, String description, String threshold, Object... fields) {
+            Object created = null;
+            Object type = null;
+            if (AVAILABLE) {
+                try {
+                    List<Object> annotations = Arrays.asList(
+                            annotation("jdk.jfr.Name", name),
+                            annotation("jdk.jfr.Label", label),
+                            annotation("jdk.jfr.Description", description),
+                            annotation("jdk.jfr.Category", new String[] { "GraphPoet" }),
+                            annotation("jdk.jfr.Threshold", threshold),
+                            annotation("jdk.jfr.StackTrace", false));
+                    List<Object> values = new ArrayList<>();
+                    for (int i = 0; i < fields.length; i += 2) {
+                        values.add((Object) NEW_VALUE.invokeExact((Class<?>) fields[i], (String) fields[i + 1]));
+                    }
+                    created = (Object) CREATE.invokeExact((List<?>) annotations, (List<?>) values);
+                    type = (Object) GET_EVENT_TYPE.invokeExact(created);
+                } catch (Throwable e) {
+                    // Flight Recorder refused the event type: record nothing
+                    created = null;
+                    type = null;
+                }
+            }
+            factory = created;
+            eventType = type;
+        }
+
+        /**
+         * Starts an event if a recording has enabled this type.
+         *
+         * @return the started event, to be passed to commit(), or null if no
+         *         event should be recorded
+         */
+        Object begin() {
+            try {
+                if (eventType == null || !(boolean) IS_ENABLED.invokeExact(eventType)) {
+                    return null;
+                }
+                Object event = (Object) NEW_EVENT.invokeExact(factory);
+                BEGIN.invokeExact(event);
+                return event;
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        /**
+         * Ends an event, and records it if it lasted at least the threshold.
+         *
+         * @param event an event returned by begin(), not null
+         * @param values values of the event's fields, in the order of the type's
+         *        fields, boxed
+         */
+        void commit(Object event, Object... values) {
+            try {
+                END.invokeExact(event);
+                if ((boolean) SHOULD_COMMIT.invokeExact(event)) {
+                    for (int i = 0; i < values.length; i++) {
+                        SET.invokeExact(event, i, values[i]);
+                    }
+                    COMMIT.invokeExact(event);
+                }
+            } catch (Throwable e) {
+                // a failure to record must not fail the poet
+            }
+        }
+    }
+
+    /**
+     * Makes a JFR annotation element.
+     *
+     * @param annotation name of a jdk.jfr annotation type with a value element
+     * @param value the value of the annotation
+     * @return a new jdk.jfr.AnnotationElement
+     * @throws Throwable if the annotation cannot be made
+     */
+    private static Object annotation(String annotation, Object value) throws Throwable {
+        return (Object) NEW_ANNOTATION.invokeExact((Class<?>) Class.forName(annotation), value);
+    }
+
+    /**
+     * Finds a class of the platform.
+     *
+     * @param name fully qualified name of the class
+     * @return the class, or null if there is no such class
+     */
+    private static Class<?> find(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a public method, as a handle that takes and returns Object in
+     * place of JFR types.
+     *
+     * @param owner class of the method, or null
+     * @param name name of the method
+     * @param isStatic whether the method is static
+     * @param returnType return type of the method, or null
+     * @param parameterTypes parameter types of the method
+     * @return a handle on the method, with every JFR type in its type replaced
+     *         by Object, or null if owner or returnType is null or there is no
+     *         such method
+     */
+    private static MethodHandle method(Class<?> owner, String name, boolean isStatic,
+            Class<?> returnType, Class<?>... parameterTypes) {
+        if (owner == null || returnType == null) {
+            return null;
+        }
+        try {
+            MethodType type = MethodType.methodType(returnType, parameterTypes);
+            MethodHandle handle = isStatic
+                    ? LOOKUP.findStatic(owner, name, type)
+                    : LOOKUP.findVirtual(owner, name, type);
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a public constructor, as a handle that returns Object.
+     *
+     * @param owner class to construct, or null
+     * @param parameterTypes parameter types of the constructor
+     * @return a handle on the constructor, returning Object, or null if owner
+     *         is null or there is no such constructor
+     */
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameterTypes) {
+        if (owner == null) {
+            return null;
+        }
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameterTypes));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the JFR types in a method type by Object, so that handles can
+     * be invoked exactly without naming JFR types.
+     *
+     * @param type a method type
+     * @return type with every jdk.jfr class replaced by Object
+     */
+    private static MethodType erase(MethodType type) {
+        MethodType erased = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (type.parameterType(i).getName().startsWith("jdk.jfr.")) {
+                erased = erased.changeParameterType(i, Object.class);
+            }
+        }
+        if (type.returnType().getName().startsWith("jdk.jfr.")) {
+            erased = erased.changeReturnType(Object.class);
+        }
+        return erased;
+    }
+}
@@ -0,0 +1,294 @@
+package poet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import graph.ConcurrentGraph;
+import graph.MergeableGraph;
+
+/**
+ * A graph-based poetry generator fed by a stream of text, whose word affinity
+ * graph counts only the adjacencies of the most recent words of the stream.
+ *
+ * <p>Words, the affinity graph and poems are as in {@link GraphPoet}, except
+ * that the corpus is the stream: the first word of each text accepted follows
+ * the last word of the text accepted before it, and each adjacency is counted
+ * only while both its words are in the window. The window is a ring of
+ * buckets of bucketWords words each. Once the newest bucket is full, the next
+ * word starts a new bucket, and when there are then more buckets than the
+ * ring holds, the oldest bucket is evicted: the adjacencies it counted are
+ * subtracted from the graph in one batch, edges whose weight reaches zero are
+ * removed, as {@code set(source, target, 0)} removes them, and words no longer
+ * in the window are removed. The graph thus counts the last
+ * (buckets - 1) * bucketWords + 1 to buckets * bucketWords words, and its size
+ * is bounded however long the stream runs.
+ *
+ * <p>Among bridge words of equal weight, a poem chooses the least in
+ * {@link String#compareTo(String)} order.
+ *
+ * <p>Text is accepted by one thread at a time. Poems may be generated by any
+ * number of threads, also while text is accepted, without waiting for it: a
+ * poem reflects the graph as it is while the poem is generated.
+ */
+public class StreamingPoet {
+
+    private final MergeableGraph<String> graph = new ConcurrentGraph();
+    private final int bucketWords;
+    private final int bucketCount;
+    private final Deque<Bucket> buckets = new ArrayDeque<>();
+    private final Map<String, Integer> wordCounts = new HashMap<>();
+    private String previousWord = null;
+
+    // Abstraction function:
+    //   Represents a poet whose window holds the words counted by buckets, oldest
+    //   first, with graph counting the adjacencies of the window; previousWord is
+    //   the last word of the stream, or null if no word has been accepted.
+    // Representation invariant:
+    //   1 <= buckets.size() <= bucketCount once a word has been accepted, 0 before
+    //   every bucket but the last holds bucketWords words, the last 1 .. bucketWords
+    //   wordCounts maps each word to its positive number of occurrences in the
+    //     buckets, and its keys are the vertices of graph
+    //   the weight of each edge of graph is the sum of its counts in the buckets, and
+    //     each adjacency is counted in the bucket of its first word
+    // Safety from rep exposure:
+    //   All fields are private, and never returned; poems are fresh Strings
+    // Thread safety argument:
+    //   buckets, wordCounts and previousWord are only accessed while holding the
+    //     lock of this poet, by accept().
+    //   graph is a thread-safe ConcurrentGraph; poem() only reads it, without the lock.
+
+    /**
+     * Create a poet with an empty window.
+     *
+     * @param windowWords number of recent words the window holds when its
+     *        buckets are full, positive
+     * @param buckets number of buckets the window is evicted in, in 1 .. windowWords;
+     *        each holds windowWords / buckets words, rounded up
+     */
+    public StreamingPoet(int windowWords, int buckets) {
+        if (windowWords <= 0) {
+            throw new IllegalArgumentException("Window words must be positive: " + windowWords);
+        }
+        if (buckets <= 0 || buckets > windowWords) {
+            throw new IllegalArgumentException("Buckets must be in 1 .. " + windowWords + ": " + buckets);
+        }
+        this.bucketWords = (windowWords + buckets - 1) / buckets;
+        this.bucketCount = buckets;
+        checkRep();
+    }
+
+    /**
+     * Checks the representation invariant of the StreamingPoet, as far as it
+     * can be checked without reading the graph.
+     */
+    private void checkRep() {
+        assert buckets.size() <= bucketCount;
+        assert (previousWord == null) == buckets.isEmpty();
+        assert buckets.isEmpty() || buckets.peekLast().size >= 1 && buckets.peekLast().size <= bucketWords;
+    }
+
+    /**
+     * Accept the next text of the stream.
+     *
+     * @param text text following the text accepted so far
+     */
+    public synchronized void accept(CharSequence text) {
+        for (String word : text.toString().split("\\s+")) {
+            if (!word.isEmpty()) {
+                acceptWord(word.toLowerCase());
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Accept the next text of the stream, line by line, until the end of a reader.
+     * Each line is in the window as soon as it is read. The reader is not closed.
+     *
+     * @param text reader of text following the text accepted so far
+     * @throws IOException if the text cannot be read
+     */
+    public synchronized void accept(Reader text) throws IOException {
+        BufferedReader reader = new BufferedReader(text);
+        for (String line; (line = reader.readLine()) != null;) {
+            accept(line);
+        }
+    }
+
+    /**
+     * Add a word to the window, evicting the oldest bucket if it is full.
+     * Requires the lock of this poet.
+     *
+     * @param word the next word of the stream, lowercase
+     */
+    private void acceptWord(String word) {
+        Bucket bucket = buckets.peekLast();
+        if (previousWord != null) {
+            // counted in the bucket of its first word, so that it expires no later than either word
+            bucket.adjacencies.merge(previousWord + ' ' + word, 1, Integer::sum);
+            graph.increment(previousWord, word, 1);
+        }
+        // counted before evicting, so that an expired occurrence does not remove it
+        if (wordCounts.merge(word, 1, Integer::sum) == 1) {
+            graph.add(word);
+        }
+        if (bucket == null || bucket.size == bucketWords) {
+            bucket = new Bucket();
+            buckets.addLast(bucket);
+            if (buckets.size() > bucketCount) {
+                evict(buckets.removeFirst());
+            }
+        }
+        bucket.size++;
+        bucket.words.merge(word, 1, Integer::sum);
+        previousWord = word;
+    }
+
+    /**
+     * Subtract the words and adjacencies of an expired bucket from the window.
+     * Evictions are recorded as Flight Recorder events (see {@link PoetEvents}).
+     * Requires the lock of this poet.
+     *
+     * @param bucket the oldest bucket, no longer in buckets
+     */
+    private void evict(Bucket bucket) {
+        Object evictEvent = PoetEvents.WINDOW_EVICT.begin();
+        int removedEdges = 0;
+        for (Map.Entry<String, Integer> adjacency : bucket.adjacencies.entrySet()) {
+            String key = adjacency.getKey();
+            int space = key.indexOf(' ');
+            // a zero weight removes the edge
+            if (graph.increment(key.substring(0, space), key.substring(space + 1), -adjacency.getValue()) == 0) {
+                removedEdges++;
+            }
+        }
+        int removedWords = 0;
+        for (Map.Entry<String, Integer> word : bucket.words.entrySet()) {
+            int count = wordCounts.get(word.getKey()) - word.getValue();
+            if (count == 0) {
+                // its adjacencies were all counted in this bucket or older ones, so it has no edges left
+                wordCounts.remove(word.getKey());
+                graph.remove(word.getKey());
+                removedWords++;
+            } else {
+                wordCounts.put(word.getKey(), count);
+            }
+        }
+        if (evictEvent != null) {
+            PoetEvents.WINDOW_EVICT.commit(evictEvent, bucket.size, removedWords, removedEdges);
+        }
+    }
+
+    /**
+     * Generate a poem from the words in the window.
+     *
+     * @param input string from which to create the poem
+     * @return poem (as described in {@link GraphPoet#poem(String)})
+     */
+    public String poem(String input) {
+        Object poemEvent = PoetEvents.POEM.begin();
+        List<String> inputWords = Arrays.stream(input.split("\\s+"))
+                .filter(word -> !word.isEmpty())
+                .map(String::toLowerCase)
+                .collect(Collectors.toList());
+
+        StringBuilder poemBuilder = new StringBuilder();
+        int bridgeCount = 0;
+
+        for (int i = 0; i < inputWords.size() - 1; i++) {
+            String source = inputWords.get(i);
+            String target = inputWords.get(i + 1);
+            poemBuilder.append(source).append(" ");
+
+            Object searchEvent = PoetEvents.BRIDGE_SEARCH.begin();
+            Map<String, Integer> targets = graph.targets(source);
+            Map<String, Integer> sources = graph.sources(target);
+            String bridge = bridge(targets, sources);
+            if (searchEvent != null) {
+                PoetEvents.BRIDGE_SEARCH.commit(searchEvent, source, target,
+                        Math.min(targets.size(), sources.size()), bridge);
+            }
+            if (bridge != null) {
+                poemBuilder.append(bridge).append(" ");
+                bridgeCount++;
+            }
+        }
+
+        poemBuilder.append(inputWords.get(inputWords.size() - 1));
+        if (poemEvent != null) {
+            PoetEvents.POEM.commit(poemEvent, inputWords.size(), bridgeCount);
+        }
+        return poemBuilder.toString();
+    }
+
+    /**
+     * Find the bridge between two words, looking up the shorter of their
+     * adjacency lists in the other.
+     *
+     * @param targets the targets of the first word
+     * @param sources the sources of the second word
+     * @return the target of the first word with the heaviest edge to it that
+     *         is a source of the second, least first among equal weights; or
+     *         null if there is none
+     */
+    private static String bridge(Map<String, Integer> targets, Map<String, Integer> sources) {
+        String best = null;
+        int bestWeight = 0;
+        for (String bridge : (sources.size() < targets.size() ? sources : targets).keySet()) {
+            Integer weight = targets.get(bridge);
+            if (weight == null || !sources.containsKey(bridge)) {
+                continue;
+            }
+            if (weight > bestWeight || weight == bestWeight && bridge.compareTo(best) < 0) {
+                best = bridge;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Provides a string representation of the current state of the StreamingPoet.
+     * @return a string representing the StreamingPoet.
+     */
+    @Override
+    public synchronized String toString() {
+        int edgeCount = 0;
+        for (String source : wordCounts.keySet()) {
+            edgeCount += graph.targets(source).size();
+        }
+        int words = 0;
+        for (Bucket bucket : buckets) {
+            words += bucket.size;
+        }
+        return "StreamingPoet with a word affinity graph containing " + wordCounts.size() + " vertices and "
+                + edgeCount + " edges over the last " + words + " words.";
+    }
+
+    /**
+     * The words of the stream counted in one bucket of the window.
+     */
+    private static final class Bucket {
+
+        private final Map<String, Integer> words = new HashMap<>();
+        private final Map<String, Integer> adjacencies = new HashMap<>();
+        private int size = 0;
+
+        // Abstraction function:
+        //   Represents size consecutive words of the stream, in which each key of words
+        //   occurs as many times as it maps to, and each key "s t" of adjacencies
+        //   counts how many of them are a word s followed by a word t
+        // Representation invariant:
+        //   size is the sum of the values of words; all values are positive
+        // Safety from rep exposure:
+        //   A bucket is confined to its StreamingPoet
+    }
+}
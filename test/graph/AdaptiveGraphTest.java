@@ -0,0 +1,156 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for AdaptiveGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against AdaptiveGraph, as well as tests for its changes of representation.
+ */
+public class AdaptiveGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for AdaptiveGraph
+    // - initial representation from hints: sparse, dense, bad hints
+    // - density rising past 1/4 with at least MIN_MATRIX_VERTICES vertices,
+    //   then falling below 1/16 by adding vertices or removing edges
+    // - vertex count crossing MIN_MATRIX_VERTICES and MAX_MATRIX_VERTICES back
+    //   and forth: the matrix is kept; falling below half the least: it is left
+    // - reads: fewer than, then more than the number of vertices since the
+    //   last mutation, with and without snapshots allowed; a mutation after
+    //   a snapshot
+    // - edges survive every change of representation
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new AdaptiveGraph<>();
+    }
+
+    /**
+     * Gets the name of the current representation of a graph.
+     *
+     * @param graph an AdaptiveGraph
+     * @return the class name of its representation
+     */
+    private static String representation(AdaptiveGraph<?> graph) {
+        String description = graph.toString();
+        return description.substring(description.indexOf('{') + 1, description.indexOf('{', description.indexOf('{') + 1));
+    }
+
+    @Test
+    public void testHints() {
+        assertEquals("IntGraph", representation(new AdaptiveGraph<String>(100_000, 500_000, 0.5)));
+        assertEquals("MatrixGraph", representation(new AdaptiveGraph<String>(100, 5_000, 0.5)));
+        assertEquals("IntGraph", representation(new AdaptiveGraph<String>(10, 100, 0.5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadHints() {
+        new AdaptiveGraph<String>(10, 10, 1.5);
+    }
+
+    @Test
+    public void testMigration() {
+        AdaptiveGraph<Integer> graph = new AdaptiveGraph<>();
+        int n = AdaptiveGraph.MIN_MATRIX_VERTICES;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                graph.set(i, j, i + j + 1);
+            }
+        }
+        assertEquals("MatrixGraph", representation(graph));
+        assertEquals(Integer.valueOf(8), graph.targets(3).get(4));
+
+        // n * n edges among 4n vertices is a density of 1/16: still dense
+        for (int i = n; i < 4 * n; i++) {
+            graph.add(i);
+        }
+        assertEquals("MatrixGraph", representation(graph));
+        graph.set(0, 0, 0);
+        assertEquals("IntGraph", representation(graph));
+
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int j = 1; j < n; j++) {
+            expected.put(j, j + 1);
+        }
+        assertEquals(expected, graph.targets(0));
+        assertEquals(4 * n, graph.vertices().size());
+        assertTrue(graph.remove(1));
+        assertFalse(graph.targets(0).containsKey(1));
+    }
+
+    @Test
+    public void testSizeBoundsHysteresis() {
+        AdaptiveGraph<Integer> graph = new AdaptiveGraph<>();
+        int min = AdaptiveGraph.MIN_MATRIX_VERTICES;
+        for (int i = 0; i < min; i++) {
+            for (int j = 0; j < min; j++) {
+                graph.set(i, j, 1);
+            }
+        }
+        assertEquals("MatrixGraph", representation(graph));
+        for (int k = 0; k < 10; k++) {
+            assertTrue(graph.remove(min - 1));
+            assertEquals("MatrixGraph", representation(graph));
+            assertTrue(graph.add(min - 1));
+            assertEquals("MatrixGraph", representation(graph));
+        }
+        for (int i = min - 1; i >= min / 2; i--) {
+            graph.remove(i);
+        }
+        assertEquals(min / 2, graph.vertices().size());
+        assertEquals("MatrixGraph", representation(graph));
+        graph.remove(min / 2 - 1);
+        assertEquals("IntGraph", representation(graph));
+
+        // every vertex has edges to and from the first 130, for a density of about 1/8
+        AdaptiveGraph<Integer> large = new AdaptiveGraph<>();
+        int max = AdaptiveGraph.MAX_MATRIX_VERTICES;
+        for (int i = 0; i < max; i++) {
+            large.add(i);
+            for (int j = 0; j < 130 && j <= i; j++) {
+                large.set(i, j, 1);
+                large.set(j, i, 1);
+            }
+        }
+        assertEquals("MatrixGraph", representation(large));
+        for (int k = 0; k < 10; k++) {
+            assertTrue(large.add(max));
+            assertEquals("MatrixGraph", representation(large));
+            assertTrue(large.remove(max));
+            assertEquals("MatrixGraph", representation(large));
+        }
+        assertEquals(Integer.valueOf(1), large.targets(max - 1).get(129));
+    }
+
+    @Test
+    public void testSnapshots() {
+        AdaptiveGraph<String> graph = new AdaptiveGraph<>();
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 2);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Collections.singletonMap("b", 1), graph.targets("a"));
+        }
+        assertFalse(graph.toString().contains("snapshot"));
+        assertEquals(Collections.singletonMap("b", 2), graph.sources("c"));
+        assertTrue(graph.toString().contains("snapshot"));
+        assertEquals(Collections.singletonMap("b", 1), graph.targets("a"));
+
+        graph.set("a", "b", 5);
+        assertFalse(graph.toString().contains("snapshot"));
+        assertEquals(Collections.singletonMap("b", 5), graph.targets("a"));
+
+        AdaptiveGraph<String> writeHeavy = new AdaptiveGraph<>(0, 0, 0.1);
+        writeHeavy.add("a");
+        for (int i = 0; i < 10; i++) {
+            writeHeavy.targets("a");
+        }
+        assertFalse(writeHeavy.toString().contains("snapshot"));
+    }
+}
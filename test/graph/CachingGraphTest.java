@@ -0,0 +1,157 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for CachingGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against CachingGraph, as well as tests for its cache.
+ */
+public class CachingGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for CachingGraph
+    // - reads: first read (miss), repeated read (hit, same map), sources and
+    //   targets of a vertex cached independently; returned maps unmodifiable
+    // - invalidation: set() changes one edge: its source's targets and its
+    //   target's sources only; set() to the same weight invalidates nothing;
+    //   merge(); remove() of a vertex with sources and targets
+    // - eviction: capacity 1, small, larger than the vertices read; frequently
+    //   read vertices survive a scan of many others
+    // - bad capacity
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new CachingGraph<>(new IntGraph<>(), 4);
+    }
+
+    /**
+     * Makes a cached path graph a -> b -> c.
+     *
+     * @return the graph
+     */
+    private static CachingGraph<String> path() {
+        CachingGraph<String> graph = new CachingGraph<>(new IntGraph<>(), 16);
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 2);
+        return graph;
+    }
+
+    @Test
+    public void testRepeatedReadsHit() {
+        CachingGraph<String> graph = path();
+        Map<String, Integer> targets = graph.targets("b");
+        assertEquals(Collections.singletonMap("c", 2), targets);
+        assertSame(targets, graph.targets("b"));
+        assertSame(targets, graph.targets("b"));
+        assertEquals(Collections.singletonMap("a", 1), graph.sources("b"));
+        CachingGraph.Stats stats = graph.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(0.5, stats.hitRate(), 1e-9);
+        assertEquals(1, stats.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapsUnmodifiable() {
+        path().targets("a").put("c", 1);
+    }
+
+    @Test
+    public void testSetInvalidatesOnlyAffectedMaps() {
+        CachingGraph<String> graph = path();
+        Map<String, Integer> targetsOfA = graph.targets("a");
+        Map<String, Integer> sourcesOfA = graph.sources("a");
+        Map<String, Integer> targetsOfB = graph.targets("b");
+        Map<String, Integer> sourcesOfB = graph.sources("b");
+        Map<String, Integer> sourcesOfC = graph.sources("c");
+
+        assertEquals(1, graph.set("a", "b", 5));
+        assertEquals(Collections.singletonMap("b", 5), graph.targets("a"));
+        assertEquals(Collections.singletonMap("a", 5), graph.sources("b"));
+        assertSame(sourcesOfA, graph.sources("a"));
+        assertSame(targetsOfB, graph.targets("b"));
+        assertSame(sourcesOfC, graph.sources("c"));
+        assertNotSame(targetsOfA, graph.targets("a"));
+        assertNotSame(sourcesOfB, graph.sources("b"));
+        assertEquals(2, graph.stats().invalidations());
+
+        graph.set("b", "c", 2);
+        assertSame(sourcesOfC, graph.sources("c"));
+        assertEquals(2, graph.stats().invalidations());
+    }
+
+    @Test
+    public void testMergeInvalidates() {
+        CachingGraph<String> graph = path();
+        assertEquals(Collections.singletonMap("c", 2), graph.targets("b"));
+        assertEquals(Collections.singletonMap("b", 2), graph.sources("c"));
+        graph.increment("b", "c", 3);
+        assertEquals(Collections.singletonMap("c", 5), graph.targets("b"));
+        assertEquals(Collections.singletonMap("b", 5), graph.sources("c"));
+    }
+
+    @Test
+    public void testRemoveInvalidatesNeighbours() {
+        CachingGraph<String> graph = path();
+        assertEquals(1, graph.targets("a").size());
+        assertEquals(1, graph.sources("c").size());
+        assertEquals(1, graph.targets("b").size());
+        assertTrue(graph.remove("b"));
+        assertEquals(Collections.emptyMap(), graph.targets("a"));
+        assertEquals(Collections.emptyMap(), graph.sources("c"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+        assertFalse(graph.remove("b"));
+    }
+
+    @Test
+    public void testCapacityBound() {
+        CachingGraph<String> graph = new CachingGraph<>(new IntGraph<>(), 10);
+        for (int i = 0; i < 100; i++) {
+            graph.set("v" + i, "v" + (i + 1), i + 1);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Collections.singletonMap("v" + (i + 1), i + 1), graph.targets("v" + i));
+            assertTrue(graph.stats().size() <= 10);
+        }
+        assertEquals(90, graph.stats().evictions());
+
+        CachingGraph<String> single = new CachingGraph<>(new IntGraph<>(), 1);
+        single.set("a", "b", 1);
+        assertEquals(1, single.targets("a").size());
+        assertEquals(0, single.targets("b").size());
+        assertEquals(1, single.stats().size());
+        assertEquals(1, single.targets("a").size());
+    }
+
+    @Test
+    public void testFrequentVerticesSurviveScan() {
+        CachingGraph<String> graph = new CachingGraph<>(new IntGraph<>(), 200);
+        for (int i = 0; i < 1000; i++) {
+            graph.set("v" + i, "v" + (i + 1), 1);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int hot = 0; hot < 20; hot++) {
+                graph.targets("v" + hot);
+            }
+        }
+        for (int i = 20; i < 1000; i++) {
+            graph.targets("v" + i);
+        }
+        long misses = graph.stats().misses();
+        for (int hot = 0; hot < 20; hot++) {
+            graph.targets("v" + hot);
+        }
+        assertEquals(misses, graph.stats().misses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new CachingGraph<>(new IntGraph<>(), 0);
+    }
+}
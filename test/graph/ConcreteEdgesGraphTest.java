@@ -5,26 +5,39 @@ package graph;
 
 import static org.junit.Assert.*;
 
+import java.util.Collections;
+
 import org.junit.Test;
 
 /**
  * Tests for ConcreteEdgesGraph.
  * 
- * This class runs the GraphInstanceTest tests against ConcreteEdgesGraph, as
- * well as tests for that particular implementation.
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against ConcreteEdgesGraph, as well as tests for that particular
+ * implementation.
  * 
  * Tests against the Graph spec should be in GraphInstanceTest.
  */
-public class ConcreteEdgesGraphTest extends GraphInstanceTest {
+public class ConcreteEdgesGraphTest extends MergeableGraphInstanceTest {
 
     /*
      * Provide a ConcreteEdgesGraph for tests in GraphInstanceTest.
      */
     @Override
-    public Graph<String> emptyInstance() {
+    public MergeableGraph<String> emptyInstance() {
         return new ConcreteEdgesGraph();
     }
 
+    @Override
+    public Graph<String> liveViewInstance() {
+        return new ConcreteEdgesGraph(true);
+    }
+
+    @Override
+    public long checkedElements(Graph<String> graph) {
+        return ((ConcreteEdgesGraph) graph).checkedElements;
+    }
+
     /*
      * Testing ConcreteEdgesGraph...
      */
@@ -46,6 +59,36 @@ public class ConcreteEdgesGraphTest extends GraphInstanceTest {
         assertEquals("(A -> B, weight: 3)\n(B -> A, weight: 2)\n", graph.toString());
     }
 
+    // Testing strategy for ConcreteEdgesGraph edge indexes
+    // - Update an edge's weight: toString keeps insertion order
+    // - Remove a vertex with incoming, outgoing and self-loop edges
+    // - Set a zero weight on a missing edge: no edge is created
+    // - Many vertices and a chain of edges, one mutation at a time without
+    //   deferring checks: each mutation must not cost time proportional to the graph
+
+    @Test
+    public void testConcreteEdgesGraphIndexes() {
+        Graph<String> graph = emptyInstance();
+        graph.add("A");
+        graph.add("B");
+        graph.add("C");
+        graph.set("A", "B", 1);
+        graph.set("B", "B", 2);
+        graph.set("B", "C", 3);
+        graph.set("C", "A", 4);
+        assertEquals(1, graph.set("A", "B", 5));
+        assertEquals(0, graph.set("A", "C", 0));
+
+        assertEquals("(A -> B, weight: 5)\n(B -> B, weight: 2)\n"
+                + "(B -> C, weight: 3)\n(C -> A, weight: 4)\n", graph.toString());
+
+        assertTrue(graph.remove("B"));
+        assertEquals(Collections.emptyMap(), graph.targets("A"));
+        assertEquals(Collections.emptyMap(), graph.sources("C"));
+        assertEquals(Collections.singletonMap("C", 4), graph.sources("A"));
+        assertEquals("(C -> A, weight: 4)\n", graph.toString());
+    }
+
     /*
      * Testing Edge...
      */
@@ -75,4 +118,4 @@ public class ConcreteEdgesGraphTest extends GraphInstanceTest {
         Edge edge = new Edge("A", "B", 3);
         assertEquals("(A -> B, weight: 3)", edge.toString());
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ package graph;
 
 import static org.junit.Assert.*;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,6 +32,12 @@ import org.junit.Test;
  * - Test getting sources and targets:
  *   - Set various edges between vertices and check the sources and targets.
  *   - Check sources and targets for vertices without edges.
+ *   - Remove a vertex with incoming, outgoing and self-loop edges and check
+ *     that its neighbours no longer refer to it.
+ * 
+ * - Test scaling:
+ *   - Add many vertices and a chain of edges one mutation at a time, without
+ *     deferring checks: each mutation must not cost time proportional to the graph.
  */
 
 /**
@@ -45,15 +52,26 @@ import org.junit.Test;
  * 
  * - Test retrieving edges:
  *   - Add multiple edges and check if the retrieved edges match.
+ *   - Add and remove incoming edges and check the retrieved sources.
  */
 
-public class ConcreteVerticesGraphTest extends GraphInstanceTest {
+public class ConcreteVerticesGraphTest extends MergeableGraphInstanceTest {
 
     @Override
-    public Graph<String> emptyInstance() {
+    public MergeableGraph<String> emptyInstance() {
         return new ConcreteVerticesGraph();
     }
 
+    @Override
+    public Graph<String> liveViewInstance() {
+        return new ConcreteVerticesGraph(true);
+    }
+
+    @Override
+    public long checkedElements(Graph<String> graph) {
+        return ((ConcreteVerticesGraph) graph).checkedElements;
+    }
+
     /**
      * Tests various graph operations in the ConcreteVerticesGraph implementation.
      * Verifies the functionalities of adding vertices, setting edges, removing vertices,
@@ -101,6 +119,28 @@ public class ConcreteVerticesGraphTest extends GraphInstanceTest {
         assertEquals(0, graph.targets("C").size());
     }
 
+    /**
+     * Tests that removing a vertex removes the edges to and from it
+     * from the incoming and outgoing edges of its neighbours.
+     */
+    @Test
+    public void testRemoveVertexWithNeighbours() {
+        Graph<String> graph = emptyInstance();
+        graph.add("A");
+        graph.add("B");
+        graph.add("C");
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("B", "B", 3);
+        graph.set("C", "A", 4);
+
+        assertTrue(graph.remove("B"));
+        assertEquals(Collections.emptyMap(), graph.targets("A"));
+        assertEquals(Collections.emptyMap(), graph.sources("C"));
+        assertEquals(Collections.emptyMap(), graph.sources("B"));
+        assertEquals(4, (int) graph.sources("A").get("C"));
+    }
+
     /**
      * Tests various operations on the Vertex class.
      * Verifies functionalities of adding edges, retrieving edges, and removing edges.
@@ -124,5 +164,10 @@ public class ConcreteVerticesGraphTest extends GraphInstanceTest {
 
         vertex.removeEdge("Z");
         assertEquals(0, vertex.getEdges().size());
+
+        vertex.addSource("W", 4);
+        assertEquals(4, (int) vertex.getSources().get("W"));
+        vertex.removeSource("W");
+        assertEquals(0, vertex.getSources().size());
     }
 }
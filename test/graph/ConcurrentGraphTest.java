@@ -0,0 +1,226 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for ConcurrentGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against ConcurrentGraph, as well as multi-threaded stress tests of the
+ * same operations.
+ */
+public class ConcurrentGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for ConcurrentGraph
+    // - add(): many threads adding the same vertices, exactly one add of each succeeds
+    // - set(): threads writing disjoint sources, and threads writing the same edges
+    //   (previous weights returned form a consistent history)
+    // - increment(): threads incrementing the same edges, no increment is lost;
+    //   racing set(..., 0) so that edges are removed and recreated
+    // - remove(): racing set() on edges to and from the removed vertices
+    // - afterwards, targets() and sources() agree and no edge touches a missing vertex
+
+    private static final int THREADS = 8;
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new ConcurrentGraph();
+    }
+
+    /**
+     * Runs a task on THREADS threads at once and waits for all of them.
+     *
+     * @param task the task, given the index of its thread
+     * @return the results of the task on each thread
+     * @throws Exception if any thread threw
+     */
+    private static <T> List<T> runConcurrently(ThreadTask<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                futures.add(executor.submit((Callable<T>) () -> {
+                    start.await();
+                    return task.run(thread);
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A task run by one thread of runConcurrently.
+     */
+    private interface ThreadTask<T> {
+        T run(int thread) throws Exception;
+    }
+
+    /**
+     * Asserts that targets() and sources() describe the same edges, between
+     * vertices of the graph.
+     *
+     * @param graph a graph with no mutations in progress
+     */
+    private static void assertConsistent(Graph<String> graph) {
+        int forward = 0;
+        int backward = 0;
+        for (String source : graph.vertices()) {
+            for (Map.Entry<String, Integer> edge : graph.targets(source).entrySet()) {
+                assertTrue(graph.vertices().contains(edge.getKey()));
+                assertEquals(edge.getValue(), graph.sources(edge.getKey()).get(source));
+                forward++;
+            }
+            backward += graph.sources(source).size();
+        }
+        assertEquals(forward, backward);
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        Graph<String> graph = emptyInstance();
+        List<Integer> added = runConcurrently(thread -> {
+            int count = 0;
+            for (int i = 0; i < 1000; i++) {
+                if (graph.add("v" + i)) {
+                    count++;
+                }
+            }
+            return count;
+        });
+        assertEquals(1000, added.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(1000, graph.vertices().size());
+    }
+
+    @Test
+    public void testConcurrentSetDisjointSources() throws Exception {
+        Graph<String> graph = emptyInstance();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 500; i++) {
+                graph.set("s" + thread, "t" + i, i + 1);
+            }
+            for (int i = 0; i < 500; i += 2) {
+                graph.set("s" + thread, "t" + i, 0);
+            }
+            return null;
+        });
+        for (int thread = 0; thread < THREADS; thread++) {
+            Map<String, Integer> targets = graph.targets("s" + thread);
+            assertEquals(250, targets.size());
+            assertEquals(Integer.valueOf(2), targets.get("t1"));
+        }
+        assertEquals(THREADS, graph.sources("t1").size());
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testConcurrentSetSameEdge() throws Exception {
+        Graph<String> graph = emptyInstance();
+        AtomicInteger zeros = new AtomicInteger();
+        // each thread writes its own distinct weights; set() must report the weight
+        // it replaced, so every weight written except the final one is returned exactly once
+        List<List<Integer>> returned = runConcurrently(thread -> {
+            List<Integer> previous = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                int before = graph.set("a", "b", thread * 10000 + i + 1);
+                if (before == 0) {
+                    zeros.incrementAndGet();
+                } else {
+                    previous.add(before);
+                }
+            }
+            return previous;
+        });
+        assertEquals(1, zeros.get());
+        List<Integer> all = new ArrayList<>();
+        returned.forEach(all::addAll);
+        all.add(graph.targets("a").get("b"));
+        assertEquals(THREADS * 2000, all.size());
+        assertEquals(all.size(), all.stream().distinct().count());
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testConcurrentIncrement() throws Exception {
+        MergeableGraph<String> graph = emptyInstance();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 10000; i++) {
+                graph.increment("w" + (i % 10), "w" + ((i + thread) % 10), 1);
+            }
+            return null;
+        });
+        int total = 0;
+        for (String source : graph.vertices()) {
+            for (int weight : graph.targets(source).values()) {
+                total += weight;
+            }
+        }
+        assertEquals(THREADS * 10000, total);
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testConcurrentIncrementAndClear() throws Exception {
+        MergeableGraph<String> graph = emptyInstance();
+        List<Integer> cleared = runConcurrently(thread -> {
+            int sum = 0;
+            for (int i = 0; i < 10000; i++) {
+                if (thread == 0 && i % 10 == 0) {
+                    sum += graph.set("a", "b", 0);
+                } else {
+                    graph.increment("a", "b", 1);
+                }
+            }
+            return sum;
+        });
+        int remaining = graph.targets("a").getOrDefault("b", 0);
+        assertEquals(THREADS * 10000 - 1000, cleared.get(0) + remaining);
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testConcurrentSetAndRemove() throws Exception {
+        Graph<String> graph = emptyInstance();
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 5000; i++) {
+                String source = "v" + random.nextInt(20);
+                String target = "v" + random.nextInt(20);
+                switch (random.nextInt(4)) {
+                case 0:
+                    graph.remove(source);
+                    break;
+                case 1:
+                    graph.set(source, target, 0);
+                    break;
+                default:
+                    graph.set(source, target, random.nextInt(5) + 1);
+                }
+            }
+            return null;
+        });
+        assertConsistent(graph);
+    }
+}
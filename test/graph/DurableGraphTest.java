@@ -0,0 +1,238 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for DurableGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against DurableGraph, as well as tests for its recovery.
+ */
+public class DurableGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for DurableGraph
+    // - recover from: nothing, log only, checkpoint only, checkpoint and log
+    // - shutdown: close(), sync() without close (a crash after syncing)
+    // - merges creating edges between vertices the wrapped graph did not have
+    // - log tail: intact, torn record, corrupt record
+    // - checkpoints: explicit, triggered by log size
+    // - mutations: add, set, merge, remove, including no-op mutations
+
+    private final List<File> directories = new ArrayList<>();
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        try {
+            return new DurableGraph(new ConcreteVerticesGraph(), newDirectory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a temporary directory, deleted after the test.
+     *
+     * @return a new empty directory
+     * @throws IOException if the directory cannot be created
+     */
+    private File newDirectory() throws IOException {
+        File directory = Files.createTempDirectory("durable").toFile();
+        directories.add(directory);
+        return directory;
+    }
+
+    @After
+    public void deleteDirectories() {
+        for (File directory : directories) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Applies a fixed sequence of mutations.
+     *
+     * @param graph the graph to mutate
+     */
+    private static void mutate(Graph<String> graph) {
+        for (String vertex : new String[] { "lonely", "a", "b", "c", "d" }) {
+            graph.add(vertex);
+        }
+        graph.set("a", "b", 3);
+        graph.set("b", "c", 1);
+        graph.set("c", "a", 2);
+        graph.set("a", "b", 5);
+        graph.set("b", "c", 0);
+        graph.remove("c");
+        graph.set("d", "a", 4);
+        ((MergeableGraph<String>) graph).increment("d", "a", 2);
+    }
+
+    /**
+     * Asserts that two graphs have the same vertices and edges.
+     *
+     * @param expected the expected graph
+     * @param actual the graph to check
+     */
+    private static void assertSameGraph(Graph<String> expected, Graph<String> actual) {
+        assertEquals(expected.vertices(), actual.vertices());
+        for (String vertex : expected.vertices()) {
+            assertEquals(expected.targets(vertex), actual.targets(vertex));
+            assertEquals(expected.sources(vertex), actual.sources(vertex));
+        }
+    }
+
+    @Test
+    public void testRecoverFromLog() throws IOException {
+        File directory = newDirectory();
+        try (DurableGraph graph = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            mutate(graph);
+        }
+        MergeableGraph<String> expected = new ConcreteEdgesGraph();
+        mutate(expected);
+        try (DurableGraph recovered = new DurableGraph(new ConcreteEdgesGraph(), directory)) {
+            assertSameGraph(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testRecoverAfterSyncWithoutClose() throws IOException {
+        File directory = newDirectory();
+        DurableGraph graph = new DurableGraph(new ConcreteVerticesGraph(), directory, 1000, 60_000, 1 << 20);
+        mutate(graph);
+        graph.sync();
+        graph.add("e");
+        // not synced, so it may or may not survive; everything before it must
+        try (DurableGraph recovered = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            MergeableGraph<String> expected = new ConcreteVerticesGraph();
+            mutate(expected);
+            recovered.remove("e");
+            assertSameGraph(expected, recovered);
+        }
+        graph.close();
+    }
+
+    @Test
+    public void testRecoverMergesOntoMissingVertices() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            File directory = newDirectory();
+            MergeableGraph<String> wrapped = i == 0 ? new ConcreteVerticesGraph() : new ConcreteEdgesGraph();
+            DurableGraph graph = new DurableGraph(wrapped, directory, 1000, 60_000, 1 << 20);
+            graph.increment("x", "y", 2);
+            graph.increment("y", "y", 1);
+            graph.increment("z", "x", 0);
+            graph.increment("x", "y", -2);
+            graph.sync();
+            // a crash after syncing: the graph is recovered without closing this one
+            MergeableGraph<String> recoveredInto = i == 0 ? new ConcreteVerticesGraph() : new ConcreteEdgesGraph();
+            try (DurableGraph recovered = new DurableGraph(recoveredInto, directory)) {
+                assertEquals(new HashSet<>(Arrays.asList("x", "y")), recovered.vertices());
+                assertEquals(Collections.emptyMap(), recovered.targets("x"));
+                assertEquals(Collections.singletonMap("y", 1), recovered.sources("y"));
+            }
+            graph.close();
+        }
+    }
+
+    @Test
+    public void testTornAndCorruptTail() throws IOException {
+        File directory = newDirectory();
+        try (DurableGraph graph = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            mutate(graph);
+        }
+        File log = new File(directory, DurableGraph.LOG_FILE);
+        long length = log.length();
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            // a record header claiming more bytes than follow
+            raf.seek(length);
+            raf.writeInt(100);
+            raf.writeInt(0);
+            raf.write(new byte[10]);
+        }
+        MergeableGraph<String> expected = new ConcreteVerticesGraph();
+        mutate(expected);
+        try (DurableGraph recovered = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            assertSameGraph(expected, recovered);
+            recovered.add("x");
+            recovered.add("y");
+            recovered.set("x", "y", 1);
+        }
+        expected.add("x");
+        expected.add("y");
+        expected.set("x", "y", 1);
+        try (DurableGraph recovered = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            assertSameGraph(expected, recovered);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            // flip the last byte of the last record, the weight of set(x, y, 1)
+            raf.seek(raf.length() - 1);
+            raf.write(2);
+        }
+        expected.set("x", "y", 0);
+        try (DurableGraph recovered = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            assertSameGraph(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        File directory = newDirectory();
+        File log = new File(directory, DurableGraph.LOG_FILE);
+        try (DurableGraph graph = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            mutate(graph);
+            graph.checkpoint();
+            assertEquals(0, log.length());
+            assertTrue(new File(directory, DurableGraph.CHECKPOINT_FILE).exists());
+            graph.set("a", "lonely", 7);
+        }
+        MergeableGraph<String> expected = new ConcreteVerticesGraph();
+        mutate(expected);
+        expected.set("a", "lonely", 7);
+        try (DurableGraph recovered = new DurableGraph(new ConcreteVerticesGraph(), directory)) {
+            assertSameGraph(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testCheckpointWhenLogIsFull() throws IOException {
+        File directory = newDirectory();
+        Map<String, Integer> expected = new HashMap<>();
+        try (DurableGraph graph = new DurableGraph(new IntGraph<>(), directory, 16, 1000, 1024)) {
+            for (int i = 0; i < 500; i++) {
+                graph.increment("hub", "v" + (i % 50), 1);
+                expected.merge("v" + (i % 50), 1, Integer::sum);
+            }
+            assertTrue(new File(directory, DurableGraph.LOG_FILE).length() < 1024);
+        }
+        try (DurableGraph recovered = new DurableGraph(new IntGraph<>(), directory)) {
+            assertEquals(expected, recovered.targets("hub"));
+            assertEquals(Collections.singletonMap("hub", 10), recovered.sources("v0"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws IOException {
+        DurableGraph graph = new DurableGraph(new ConcreteVerticesGraph(), newDirectory());
+        graph.close();
+        graph.add("a");
+    }
+}
@@ -0,0 +1,111 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for FrozenGraph.
+ */
+public class FrozenGraphTest {
+
+    // Testing strategy for FrozenGraph
+    // - freeze an empty graph and a graph with self-loops, isolated vertices
+    //   and vertices of in/out degree 0, 1, many
+    // - vertices(), sources(), targets() agree with the original graph
+    // - changing the original graph after freezing does not change the snapshot
+    // - weight(), degrees, heaviestTarget() ranks by weight with ties by id,
+    //   target() and source() ascend by id
+    // - add(), set(), remove() and modifying returned collections throw
+
+    /**
+     * Builds the graph frozen by most tests.
+     *
+     * @return a graph with a self-loop, an isolated vertex and a hub
+     */
+    private static Graph<String> sampleGraph() {
+        Graph<String> graph = new ConcreteEdgesGraph();
+        for (String vertex : Arrays.asList("hub", "a", "b", "c", "lonely")) {
+            graph.add(vertex);
+        }
+        graph.set("hub", "a", 2);
+        graph.set("hub", "b", 5);
+        graph.set("hub", "c", 2);
+        graph.set("a", "c", 1);
+        graph.set("c", "c", 7);
+        return graph;
+    }
+
+    @Test
+    public void testEmpty() {
+        FrozenGraph<String> frozen = new FrozenGraph<>(new ConcreteVerticesGraph());
+        assertEquals(Collections.emptySet(), frozen.vertices());
+        assertEquals(0, frozen.size());
+        assertEquals(-1, frozen.id("a"));
+        assertEquals(Collections.emptyMap(), frozen.targets("a"));
+    }
+
+    @Test
+    public void testSameGraph() {
+        Graph<String> graph = sampleGraph();
+        FrozenGraph<String> frozen = new FrozenGraph<>(graph);
+        assertEquals(graph.vertices(), frozen.vertices());
+        for (String vertex : graph.vertices()) {
+            assertEquals(graph.targets(vertex), frozen.targets(vertex));
+            assertEquals(graph.sources(vertex), frozen.sources(vertex));
+        }
+
+        graph.set("hub", "lonely", 9);
+        graph.remove("a");
+        assertEquals(new HashSet<>(Arrays.asList("hub", "a", "b", "c", "lonely")), frozen.vertices());
+        assertFalse(frozen.targets("hub").containsKey("lonely"));
+        assertEquals(Integer.valueOf(2), frozen.targets("hub").get("a"));
+    }
+
+    @Test
+    public void testIdQueries() {
+        FrozenGraph<String> frozen = new FrozenGraph<>(sampleGraph());
+        int hub = frozen.id("hub");
+        int a = frozen.id("a");
+        int b = frozen.id("b");
+        int c = frozen.id("c");
+        assertEquals("hub", frozen.label(hub));
+        assertEquals(5, frozen.weight(hub, b));
+        assertEquals(0, frozen.weight(b, hub));
+        assertEquals(7, frozen.weight(c, c));
+        assertEquals(3, frozen.outDegree(hub));
+        assertEquals(3, frozen.inDegree(c));
+
+        assertEquals(b, frozen.heaviestTarget(hub, 0));
+        assertEquals(5, frozen.heaviestWeight(hub, 0));
+        assertEquals(Math.min(a, c), frozen.heaviestTarget(hub, 1));
+        assertEquals(Math.max(a, c), frozen.heaviestTarget(hub, 2));
+        assertEquals(2, frozen.heaviestWeight(hub, 2));
+
+        for (int i = 1; i < frozen.outDegree(hub); i++) {
+            assertTrue(frozen.target(hub, i - 1) < frozen.target(hub, i));
+        }
+        for (int i = 1; i < frozen.inDegree(c); i++) {
+            assertTrue(frozen.source(c, i - 1) < frozen.source(c, i));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetUnsupported() {
+        new FrozenGraph<>(sampleGraph()).set("a", "b", 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveUnsupported() {
+        new FrozenGraph<>(sampleGraph()).remove("a");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTargetsUnmodifiable() {
+        new FrozenGraph<>(sampleGraph()).targets("hub").remove("a");
+    }
+}
@@ -1,7 +1,9 @@
 package graph;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,6 +20,11 @@ public abstract class GraphInstanceTest {
 	 * - `testSetEdge()`: Tests setting edges between vertices and updating edge weights
 	 * - `testRemoveEdge()`: Tests the removal of edges between vertices
 	 * - `testSourcesAndTargets()`: Tests retrieval of sources and targets for specific vertices
+	 * - `testLiveViews()`: for graphs with a live view mode, views reflect later changes to the
+	 *   graph, including removing and re-adding a vertex, and reject changes; and observers of
+	 *   emptyInstance() return copies that later changes do not affect
+	 * - `testMutationChecksScale()`: Tests that a mutation checks as much of a large graph as of a
+	 *   small one, for graphs whose checks count what they examine
 	 * - `emptyInstance()`: Abstract method to be overridden by implementation-specific test classes
 	 * - This method provides a new empty graph instance of the particular implementation for testing
 	 */
@@ -101,6 +108,117 @@ public abstract class GraphInstanceTest {
         assertEquals(3, (int) targets.get("C"));
     }
 
+    /**
+     * Tests that add, set and remove check only the vertices and edges they
+     * touch, whatever the size of the graph, by comparing the number of elements
+     * their checks examine in a small and a large graph.
+     */
+    @Test
+    public void testMutationChecksScale() {
+        long[] checked = new long[2];
+        int[] sizes = { 10, 10000 };
+        for (int i = 0; i < sizes.length; i++) {
+            Graph<String> graph = emptyInstance();
+            if (checkedElements(graph) < 0) {
+                return;
+            }
+            graph.add("hub");
+            for (int v = 0; v < sizes[i]; v++) {
+                graph.add("v" + v);
+                graph.set("hub", "v" + v, 1);
+            }
+            long before = checkedElements(graph);
+            graph.add("x");
+            graph.set("hub", "x", 2);
+            graph.set("hub", "x", 3);
+            graph.set("x", "v0", 1);
+            graph.set("x", "v0", 0);
+            graph.set("x", "v1", 1);
+            assertTrue(graph.remove("x"));
+            checked[i] = checkedElements(graph) - before;
+        }
+        assertTrue(checked[0] > 0);
+        assertEquals(checked[0], checked[1]);
+    }
+
+    /**
+     * Tests that in live view mode the observers reflect later changes to the
+     * graph and reject changes, and that otherwise they return independent copies.
+     */
+    @Test
+    public void testLiveViews() {
+        Graph<String> graph = liveViewInstance();
+        if (graph == null) {
+            return;
+        }
+        Set<String> vertices = graph.vertices();
+        Map<String, Integer> targets = graph.targets("A");
+        Map<String, Integer> sources = graph.sources("B");
+        assertTrue(vertices.isEmpty());
+
+        graph.add("A");
+        graph.add("B");
+        graph.set("A", "B", 2);
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), vertices);
+        assertEquals(Collections.singletonMap("B", 2), targets);
+        assertEquals(Collections.singletonMap("A", 2), sources);
+
+        graph.remove("A");
+        graph.add("A");
+        graph.set("A", "B", 5);
+        assertEquals(Collections.singletonMap("B", 5), targets);
+        assertEquals(5, (int) sources.get("A"));
+
+        try {
+            targets.put("C", 1);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            vertices.remove("A");
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Graph<String> copying = emptyInstance();
+        copying.add("A");
+        copying.add("B");
+        copying.set("A", "B", 2);
+        Set<String> vertexCopy = copying.vertices();
+        Map<String, Integer> targetsCopy = copying.targets("A");
+        Map<String, Integer> sourcesCopy = copying.sources("B");
+        copying.add("C");
+        copying.set("A", "B", 5);
+        copying.set("C", "B", 1);
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), vertexCopy);
+        assertEquals(Collections.singletonMap("B", 2), targetsCopy);
+        assertEquals(Collections.singletonMap("A", 2), sourcesCopy);
+    }
+
+    /**
+     * Overridden by test classes of graphs with a live view mode.
+     *
+     * @return a new empty graph of the particular implementation being tested,
+     *         whose observers return live views, or null if it has no such mode
+     */
+    public Graph<String> liveViewInstance() {
+        return null;
+    }
+
+    /**
+     * Overridden by test classes of graphs whose representation checks count
+     * the vertices and edges they examine.
+     *
+     * @param graph a graph made by emptyInstance()
+     * @return the number of vertices and edges the checks of graph have examined
+     *         so far, or -1 if its checks do not count them
+     */
+    public long checkedElements(Graph<String> graph) {
+        return -1;
+    }
+
     /**
      * Overridden by implementation-specific test classes.
      * 
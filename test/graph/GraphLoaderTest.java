@@ -0,0 +1,195 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for GraphLoader.
+ */
+public class GraphLoaderTest {
+
+    // Testing strategy for GraphLoader
+    // - graph: ConcreteVerticesGraph, ConcreteEdgesGraph (bulk loadable),
+    //   IntGraph (not bulk loadable)
+    // - add(), addAll(): new edge, repeated edge (last weight wins), zero weight
+    // - increment(): repeated edge accumulates; graph that cannot merge, to a
+    //   new, zero and negative weight
+    // - expected numbers of vertices and edges: graph with edges already, with
+    //   copies or live views, not bulk loadable; negative
+    // - read(): blank and comment lines, missing weight, too few fields,
+    //   bad weight, negative weight
+    // - finish(): returns the graph, loader unusable afterwards
+    // - checks deferred or not: same graph
+
+    @Test
+    public void testAddAndFinish() {
+        for (Graph<String> graph : Arrays.<Graph<String>>asList(
+                new ConcreteVerticesGraph(4, false), new ConcreteEdgesGraph(4, 4, false), new IntGraph<>())) {
+            GraphLoader loader = new GraphLoader(graph);
+            loader.add("a", "b", 1);
+            loader.addAll(new String[] { "a", "b", "c" }, new String[] { "b", "c", "d" }, new int[] { 3, 2, 0 });
+            assertSame(graph, loader.finish());
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), graph.vertices());
+            assertEquals(Collections.singletonMap("b", 3), graph.targets("a"));
+            assertEquals(Collections.singletonMap("b", 2), graph.sources("c"));
+            assertEquals(Collections.emptyMap(), graph.targets("c"));
+        }
+    }
+
+    @Test
+    public void testWithoutDeferringChecks() {
+        for (MergeableGraph<String> graph : Arrays.<MergeableGraph<String>>asList(
+                new ConcreteVerticesGraph(), new ConcreteEdgesGraph())) {
+            new GraphLoader(graph).add("a", "b", 1);
+            GraphLoader loader = new GraphLoader(graph, false);
+            loader.increment("a", "b", 2);
+            loader.add("b", "c", 4);
+            assertSame(graph, loader.finish());
+            assertEquals(Collections.singletonMap("b", 3), graph.targets("a"));
+            assertEquals(Collections.singletonMap("c", 4), graph.targets("b"));
+        }
+    }
+
+    @Test
+    public void testIncrement() {
+        GraphLoader loader = new GraphLoader(new ConcreteVerticesGraph());
+        loader.addVertex("lonely");
+        loader.increment("a", "b", 1);
+        loader.increment("a", "b", 2);
+        Graph<String> graph = loader.finish();
+        assertEquals(3, (int) graph.targets("a").get("b"));
+        assertTrue(graph.vertices().contains("lonely"));
+    }
+
+    @Test
+    public void testIncrementWithoutMerge() {
+        Graph<String> graph = graphOnly(new ConcreteVerticesGraph());
+        GraphLoader loader = new GraphLoader(graph);
+        loader.increment("a", "b", 1);
+        loader.increment("a", "b", 2);
+        loader.increment("c", "d", 0);
+        loader.increment("b", "a", 1);
+        loader.increment("b", "a", -1);
+        try {
+            loader.increment("a", "b", -4);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(graph, loader.finish());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(Collections.singletonMap("b", 3), graph.targets("a"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+    }
+
+    @Test
+    public void testExpectedSizes() {
+        List<Graph<String>> graphs = Arrays.asList(new ConcreteVerticesGraph(), new ConcreteEdgesGraph(),
+                new IntGraph<>(), new ConcreteVerticesGraph(true), new ConcreteEdgesGraph(true));
+        for (int g = 0; g < graphs.size(); g++) {
+            Graph<String> graph = graphs.get(g);
+            boolean liveViews = g >= 3;
+            new GraphLoader(graph).add("a", "b", 2);
+            Set<String> vertices = graph.vertices();
+            GraphLoader loader = new GraphLoader(graph, 1000, 2000);
+            assertEquals(Collections.singletonMap("b", 2), graph.targets("a"));
+            for (int i = 0; i < 1000; i++) {
+                loader.add("v" + i, "a", i + 1);
+                loader.addAll(new String[] { "v" + i }, new String[] { "b" }, new int[] { 1 });
+            }
+            assertSame(graph, loader.finish());
+            assertEquals(1002, graph.vertices().size());
+            assertEquals(1000, graph.sources("a").size());
+            assertEquals(1001, graph.sources("b").size());
+            assertEquals(500, (int) graph.targets("v499").get("a"));
+            // views returned before the load stay live, and copies stay as they were
+            assertEquals(liveViews ? 1002 : 2, vertices.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeExpectedSize() {
+        new GraphLoader(new ConcreteEdgesGraph(), 1, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddAllMismatchedLengths() {
+        new GraphLoader(new IntGraph<>()).addAll(new String[] { "a" }, new String[] { "b" }, new int[0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFinishTwice() {
+        GraphLoader loader = new GraphLoader(new ConcreteEdgesGraph());
+        loader.finish();
+        loader.finish();
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        GraphLoader loader = new GraphLoader(new ConcreteEdgesGraph());
+        loader.read(new StringReader("# an edge list\n\na b 4\n  b\tc  \nc a 2\n"));
+        Graph<String> graph = loader.finish();
+        assertEquals(4, (int) graph.targets("a").get("b"));
+        assertEquals(1, (int) graph.targets("b").get("c"));
+        assertEquals(2, (int) graph.sources("a").get("c"));
+    }
+
+    @Test
+    public void testReadMalformed() {
+        for (String edgeList : Arrays.asList("a\n", "a b c d\n", "a b x\n", "a b -1\n")) {
+            try {
+                new GraphLoader(new ConcreteVerticesGraph()).read(new StringReader("x y\n" + edgeList));
+                fail("expected IOException for " + edgeList);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Line 2"));
+            }
+        }
+    }
+
+    /**
+     * @return a graph backed by graph that is only a Graph, not a MergeableGraph
+     */
+    private static Graph<String> graphOnly(Graph<String> graph) {
+        return new Graph<String>() {
+            @Override
+            public boolean add(String vertex) {
+                return graph.add(vertex);
+            }
+
+            @Override
+            public int set(String source, String target, int weight) {
+                return graph.set(source, target, weight);
+            }
+
+            @Override
+            public boolean remove(String vertex) {
+                return graph.remove(vertex);
+            }
+
+            @Override
+            public Set<String> vertices() {
+                return graph.vertices();
+            }
+
+            @Override
+            public Map<String, Integer> sources(String target) {
+                return graph.sources(target);
+            }
+
+            @Override
+            public Map<String, Integer> targets(String source) {
+                return graph.targets(source);
+            }
+        };
+    }
+}
@@ -21,6 +21,7 @@ public class GraphStaticTest {
     //   empty()
     //     no inputs, only output is empty graph
     //     observe with vertices()
+    //     vertex labels: String, Integer
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
@@ -33,6 +34,12 @@ public class GraphStaticTest {
                 Collections.emptySet(), Graph.empty().vertices());
     }
     
-    // TODO test other vertex label types in Problem 3.2
+    @Test
+    public void testEmptyOtherLabelTypes() {
+        Graph<Integer> graph = Graph.empty();
+        assertEquals(0, graph.set(1, 2, 3));
+        assertEquals(Collections.singletonMap(2, 3), graph.targets(1));
+        assertEquals(Collections.singletonMap(1, 3), graph.sources(2));
+    }
     
 }
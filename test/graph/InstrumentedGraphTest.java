@@ -0,0 +1,159 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import graph.InstrumentedGraph.Operation;
+import graph.InstrumentedGraph.Stats;
+
+/**
+ * Tests for InstrumentedGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against InstrumentedGraph, as well as tests for the metrics it records.
+ */
+public class InstrumentedGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for InstrumentedGraph
+    // - calls: each operation, on one thread and on several threads
+    // - threads that terminate: their metrics are kept, folded together, as
+    //   more threads register and snapshots are taken
+    // - results: empty and non-empty returned collections; mutators return none
+    // - estimated bytes: grow with result size; zero for mutators
+    // - latencies: sample interval 1 (every call timed) and 16 (one in 16);
+    //   bad sample intervals
+    // - export: every operation and metric appears
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new InstrumentedGraph<>(new IntGraph<>());
+    }
+
+    @Test
+    public void testCallsAndResults() {
+        InstrumentedGraph<String> graph = new InstrumentedGraph<>(new IntGraph<>(), 1);
+        graph.add("a");
+        graph.set("a", "b", 1);
+        graph.set("a", "c", 2);
+        graph.increment("a", "c", 3);
+        assertEquals(2, graph.targets("a").size());
+        assertEquals(0, graph.targets("b").size());
+        assertEquals(1, graph.sources("c").size());
+        graph.remove("c");
+        assertEquals(2, graph.vertices().size());
+
+        Map<Operation, Stats> stats = graph.snapshot();
+        assertEquals(Operation.values().length, stats.size());
+        assertEquals(1, stats.get(Operation.ADD).calls());
+        assertEquals(2, stats.get(Operation.SET).calls());
+        assertEquals(1, stats.get(Operation.MERGE).calls());
+        assertEquals(1, stats.get(Operation.REMOVE).calls());
+        assertEquals(2, stats.get(Operation.TARGETS).calls());
+        assertEquals(2, stats.get(Operation.TARGETS).results());
+        assertEquals(1, stats.get(Operation.SOURCES).results());
+        assertEquals(2, stats.get(Operation.VERTICES).results());
+        assertEquals(0, stats.get(Operation.SET).results());
+        assertEquals(0, stats.get(Operation.SET).estimatedBytes());
+        assertTrue(stats.get(Operation.TARGETS).estimatedBytes() > stats.get(Operation.SOURCES).estimatedBytes());
+    }
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        InstrumentedGraph<String> graph = new InstrumentedGraph<>(new IntGraph<>());
+        graph.add("a");
+        Stats before = graph.snapshot().get(Operation.ADD);
+        graph.add("b");
+        assertEquals(1, before.calls());
+        assertEquals(2, graph.snapshot().get(Operation.ADD).calls());
+    }
+
+    @Test
+    public void testLatencies() {
+        InstrumentedGraph<String> every = new InstrumentedGraph<>(new IntGraph<>(), 1);
+        InstrumentedGraph<String> sampled = new InstrumentedGraph<>(new IntGraph<>(), 16);
+        for (int i = 0; i < 160; i++) {
+            every.add("v" + i);
+            sampled.add("v" + i);
+        }
+        Stats stats = every.snapshot().get(Operation.ADD);
+        assertEquals(160, stats.timedCalls());
+        assertTrue(stats.latencyNanos(50) <= stats.latencyNanos(99));
+        assertTrue(stats.latencyNanos(99) <= stats.maxLatencyNanos());
+        assertTrue(stats.maxLatencyNanos() > 0);
+        assertEquals(10, sampled.snapshot().get(Operation.ADD).timedCalls());
+        assertEquals(0, sampled.snapshot().get(Operation.TARGETS).latencyNanos(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSampleInterval() {
+        new InstrumentedGraph<>(new IntGraph<String>(), 3);
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        InstrumentedGraph<String> graph = new InstrumentedGraph<>(new ConcurrentGraph());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    graph.increment("t" + thread, "v" + i % 10, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, graph.snapshot().get(Operation.MERGE).calls());
+        assertEquals(Integer.valueOf(100), graph.targets("t2").get("v3"));
+    }
+
+    @Test
+    public void testTerminatedThreadsRetired() throws InterruptedException {
+        InstrumentedGraph<String> graph = new InstrumentedGraph<>(new ConcurrentGraph(), 1);
+        graph.add("main");
+        for (int t = 0; t < 100; t++) {
+            final int thread = t;
+            Thread caller = new Thread(() -> {
+                graph.add("t" + thread);
+                graph.increment("t" + thread, "main", 2);
+            });
+            caller.start();
+            caller.join();
+            // the main thread's recorder, and at most the one thread that has
+            // terminated since the last registration
+            assertTrue(graph.threadRecorders() <= 2);
+        }
+        Map<Operation, Stats> snapshot = graph.snapshot();
+        assertEquals(1, graph.threadRecorders());
+        assertEquals(101, snapshot.get(Operation.ADD).calls());
+        assertEquals(101, snapshot.get(Operation.ADD).timedCalls());
+        assertEquals(100, snapshot.get(Operation.MERGE).calls());
+        assertEquals(100, graph.sources("main").size());
+
+        graph.add("again");
+        assertEquals(102, graph.snapshot().get(Operation.ADD).calls());
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        InstrumentedGraph<String> graph = new InstrumentedGraph<>(new IntGraph<>(), 1);
+        graph.set("a", "b", 1);
+        graph.targets("a");
+        StringBuilder out = new StringBuilder();
+        graph.export(out);
+        String text = out.toString();
+        assertTrue(text.contains("graph_calls_total{operation=\"targets\"} 1\n"));
+        assertTrue(text.contains("graph_results_total{operation=\"targets\"} 1\n"));
+        assertTrue(text.contains("graph_latency_seconds{operation=\"set\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("graph_latency_seconds_count{operation=\"add\"} 0\n"));
+        for (Operation operation : Operation.values()) {
+            assertTrue(text.contains("graph_result_bytes_total{operation=\"" + operation.methodName() + "\"}"));
+        }
+    }
+}
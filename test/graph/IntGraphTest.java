@@ -0,0 +1,141 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for IntGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against IntGraph, as well as tests for its int-id operations.
+ */
+public class IntGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for IntGraph
+    // - id(), label(): present vertex, absent label, removed and re-added vertex
+    // - ids of removed vertices: taken by other labels, most recently freed
+    //   first; no edge survives; churn of distinct labels keeps idBound()
+    // - set(int, int, int): add, update, remove edge; self-loop; invalid id
+    // - targets(int), sources(int), degrees: vertex with 0, 1, many edges
+    // - many edges from one vertex, forcing tables to grow, then removing
+    //   most of them, checking against a HashMap model
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new IntGraph<>();
+    }
+
+    @Test
+    public void testIdsAndLabels() {
+        IntGraph<String> graph = new IntGraph<>();
+        graph.add("A");
+        graph.add("B");
+        int a = graph.id("A");
+        int b = graph.id("B");
+        assertNotEquals(a, b);
+        assertEquals("A", graph.label(a));
+        assertEquals(-1, graph.id("C"));
+
+        assertTrue(graph.remove("A"));
+        assertEquals(-1, graph.id("A"));
+        graph.add("A");
+        assertEquals(a, graph.id("A"));
+    }
+
+    @Test
+    public void testIdsRecycled() {
+        IntGraph<String> graph = new IntGraph<>();
+        graph.set("A", "B", 1);
+        graph.set("B", "A", 2);
+        graph.set("C", "C", 3);
+        int a = graph.id("A");
+        int c = graph.id("C");
+        assertTrue(graph.remove("A"));
+        assertTrue(graph.remove("C"));
+        graph.add("D");
+        graph.add("E");
+        assertEquals(c, graph.id("D"));
+        assertEquals(a, graph.id("E"));
+        assertEquals(-1, graph.id("A"));
+        assertEquals(Collections.emptyMap(), graph.targets("D"));
+        assertEquals(Collections.emptyMap(), graph.sources("D"));
+        assertEquals(Collections.emptyMap(), graph.targets("E"));
+        assertEquals(Collections.emptyMap(), graph.targets("B"));
+        assertEquals(0, graph.inDegree(a));
+    }
+
+    @Test
+    public void testChurnKeepsIdBound() {
+        IntGraph<String> graph = new IntGraph<>();
+        graph.add("hub");
+        for (int i = 0; i < 100000; i++) {
+            graph.set("hub", "v" + i, i + 1);
+            graph.set("v" + i, "v" + i, 1);
+            if (i >= 10) {
+                assertTrue(graph.remove("v" + (i - 10)));
+            }
+        }
+        assertTrue(graph.idBound() <= 16);
+        assertEquals(11, graph.vertices().size());
+        assertEquals(10, graph.outDegree(graph.id("hub")));
+        assertEquals(100000, (int) graph.targets("hub").get("v99999"));
+    }
+
+    @Test
+    public void testIntIdEdges() {
+        IntGraph<String> graph = new IntGraph<>();
+        graph.add("A");
+        graph.add("B");
+        int a = graph.id("A");
+        int b = graph.id("B");
+
+        assertEquals(0, graph.set(a, b, 2));
+        assertEquals(0, graph.set(a, a, 1));
+        assertEquals(2, graph.set(a, b, 5));
+        assertEquals(5, graph.weight(a, b));
+        assertEquals(2, graph.outDegree(a));
+        assertEquals(1, graph.inDegree(b));
+
+        int[] targets = graph.targets(a);
+        Arrays.sort(targets);
+        int[] expected = { Math.min(a, b), Math.max(a, b) };
+        assertArrayEquals(expected, targets);
+        assertArrayEquals(new int[] { a }, graph.sources(b));
+        assertEquals(Collections.singletonMap("A", 5), graph.sources("B"));
+
+        assertEquals(5, graph.set(a, b, 0));
+        assertEquals(0, graph.weight(a, b));
+        assertEquals(0, graph.sources(b).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidId() {
+        new IntGraph<>().set(0, 1, 1);
+    }
+
+    @Test
+    public void testManyEdges() {
+        IntGraph<String> graph = new IntGraph<>(1);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            graph.set("hub", "v" + i, i + 1);
+            expected.put("v" + i, i + 1);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            assertEquals(i + 1, graph.set("hub", "v" + i, 0));
+            expected.remove("v" + i);
+        }
+        assertEquals(expected, graph.targets("hub"));
+        assertEquals(1001, graph.vertices().size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((int) expected.getOrDefault("v" + i, 0),
+                    graph.weight(graph.id("hub"), graph.id("v" + i)));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    // Testing strategy for LatencyHistogram
+    // - bucket(): values below SUB_BUCKETS, at powers of two, between them,
+    //   beyond MAX_EXPONENT bits; highestValue() is the largest value of its bucket
+    // - record(): no values, one value, many values, negative values
+    // - valueAtPercentile(): 0, 50, 100, out of range; relative error bound
+    // - add(): empty and non-empty histograms
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 1 << 16; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+        }
+        assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(1L << LatencyHistogram.MAX_EXPONENT));
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentile(50));
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.mean(), 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(10_001, histogram.count());
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(0, histogram.valueAtPercentile(0));
+        assertEquals(10_000_000, histogram.valueAtPercentile(100));
+        long median = histogram.valueAtPercentile(50);
+        assertTrue(median >= 5_000_000 && median <= 5_000_000 * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+        assertEquals(5_000_000, histogram.mean(), 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadPercentile() {
+        new LatencyHistogram().valueAtPercentile(101);
+    }
+
+    @Test
+    public void testAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000);
+        b.record(20);
+        a.add(b);
+        a.add(new LatencyHistogram());
+        assertEquals(3, a.count());
+        assertEquals(1000, a.max());
+        assertEquals(20, a.valueAtPercentile(50));
+        assertEquals(2, b.count());
+    }
+}
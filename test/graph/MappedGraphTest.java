@@ -0,0 +1,168 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for MappedGraph.
+ */
+public class MappedGraphTest {
+
+    // Testing strategy for MappedGraph
+    // - write and open an empty graph, a graph with self-loops, isolated
+    //   vertices, colliding label hashes and non-ASCII labels
+    // - written from a mutable graph and from a FrozenGraph: vertices(),
+    //   sources(), targets() agree with the original, ids and weight ranks
+    //   agree with the FrozenGraph
+    // - copyInto() ConcreteVerticesGraph and ConcreteEdgesGraph
+    // - open(): bad magic, unsupported version, truncated file
+    // - add(), set(), remove() throw
+
+    /**
+     * Builds the graph written by most tests.
+     *
+     * @return a graph with a self-loop, an isolated vertex, a hub and labels
+     *         with equal hash codes
+     */
+    private static Graph<String> sampleGraph() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        for (String vertex : Arrays.asList("hub", "Aa", "BB", "\u00e9t\u00e9", "lonely")) {
+            graph.add(vertex);
+        }
+        graph.set("hub", "Aa", 2);
+        graph.set("hub", "BB", 5);
+        graph.set("hub", "\u00e9t\u00e9", 2);
+        graph.set("Aa", "\u00e9t\u00e9", 1);
+        graph.set("\u00e9t\u00e9", "\u00e9t\u00e9", 7);
+        return graph;
+    }
+
+    /**
+     * Writes a graph to a temporary file and opens it.
+     *
+     * @param graph the graph to write
+     * @return the graph read back from the file
+     * @throws IOException if the file cannot be written or read
+     */
+    private static MappedGraph roundTrip(Graph<String> graph) throws IOException {
+        File file = File.createTempFile("graph", ".bin");
+        file.deleteOnExit();
+        MappedGraph.write(graph, file);
+        return MappedGraph.open(file);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        MappedGraph mapped = roundTrip(new ConcreteEdgesGraph());
+        assertEquals(Collections.emptySet(), mapped.vertices());
+        assertEquals(0, mapped.size());
+        assertEquals(-1, mapped.id("a"));
+        assertEquals(Collections.emptyMap(), mapped.targets("a"));
+    }
+
+    @Test
+    public void testSameGraph() throws IOException {
+        Graph<String> graph = sampleGraph();
+        MappedGraph mapped = roundTrip(graph);
+        assertEquals(graph.vertices(), mapped.vertices());
+        for (String vertex : graph.vertices()) {
+            assertEquals(graph.targets(vertex), mapped.targets(vertex));
+            assertEquals(graph.sources(vertex), mapped.sources(vertex));
+        }
+    }
+
+    @Test
+    public void testSameIdsAsFrozen() throws IOException {
+        FrozenGraph<String> frozen = new FrozenGraph<>(sampleGraph());
+        MappedGraph mapped = roundTrip(frozen);
+        assertEquals(frozen.size(), mapped.size());
+        for (int id = 0; id < frozen.size(); id++) {
+            assertEquals(frozen.label(id), mapped.label(id));
+            assertEquals(id, mapped.id(frozen.label(id)));
+            assertEquals(frozen.outDegree(id), mapped.outDegree(id));
+            assertEquals(frozen.inDegree(id), mapped.inDegree(id));
+            for (int rank = 0; rank < frozen.outDegree(id); rank++) {
+                assertEquals(frozen.heaviestTarget(id, rank), mapped.heaviestTarget(id, rank));
+                assertEquals(frozen.heaviestWeight(id, rank), mapped.heaviestWeight(id, rank));
+                assertEquals(frozen.target(id, rank), mapped.target(id, rank));
+            }
+            for (int i = 0; i < frozen.inDegree(id); i++) {
+                assertEquals(frozen.source(id, i), mapped.source(id, i));
+            }
+            for (int target = 0; target < frozen.size(); target++) {
+                assertEquals(frozen.weight(id, target), mapped.weight(id, target));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyInto() throws IOException {
+        Graph<String> graph = sampleGraph();
+        MappedGraph mapped = roundTrip(graph);
+        for (Graph<String> copy : Arrays.<Graph<String>>asList(
+                mapped.copyInto(new ConcreteVerticesGraph()), mapped.copyInto(new ConcreteEdgesGraph()))) {
+            assertEquals(graph.vertices(), copy.vertices());
+            for (String vertex : graph.vertices()) {
+                assertEquals(graph.targets(vertex), copy.targets(vertex));
+            }
+            copy.set("lonely", "hub", 3);
+            assertEquals(Collections.singletonMap("hub", 3), copy.targets("lonely"));
+        }
+    }
+
+    @Test
+    public void testBadFiles() throws IOException {
+        File file = File.createTempFile("graph", ".bin");
+        file.deleteOnExit();
+        MappedGraph.write(sampleGraph(), file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(MappedGraph.VERSION + 1);
+        }
+        assertOpenFails(file, "version");
+
+        MappedGraph.write(sampleGraph(), file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertOpenFails(file, "expected");
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.writeBytes("hello world, not a graph");
+        }
+        assertOpenFails(file, "Not a graph file");
+    }
+
+    /**
+     * Asserts that opening a file fails.
+     *
+     * @param file the file to open
+     * @param message text expected in the exception message
+     */
+    private static void assertOpenFails(File file, String message) {
+        try {
+            MappedGraph.open(file);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetUnsupported() throws IOException {
+        roundTrip(sampleGraph()).set("Aa", "BB", 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveUnsupported() throws IOException {
+        roundTrip(sampleGraph()).remove("Aa");
+    }
+}
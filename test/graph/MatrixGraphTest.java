@@ -0,0 +1,92 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for MatrixGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against MatrixGraph, as well as tests for its growth and non-String labels.
+ */
+public class MatrixGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for MatrixGraph
+    // - matrix growth: starting capacity 0, 1, many; grown past capacity
+    //   with edges already set, checked against a HashMap model
+    // - remove then re-add a vertex: no edges survive
+    // - remove then add another vertex, which takes the freed id: no edges
+    //   survive; churn of more distinct labels than MAX_VERTICES
+    // - labels of a type other than String
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new MatrixGraph<>();
+    }
+
+    @Test
+    public void testGrowth() {
+        MatrixGraph<String> graph = new MatrixGraph<>(0);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            graph.set("hub", "v" + i, i + 1);
+            expected.put("v" + i, i + 1);
+        }
+        assertEquals(expected, graph.targets("hub"));
+        assertEquals(101, graph.vertices().size());
+        assertEquals(Collections.singletonMap("hub", 8), graph.sources("v7"));
+    }
+
+    @Test
+    public void testRemoveAndReAdd() {
+        MatrixGraph<String> graph = new MatrixGraph<>();
+        graph.set("a", "b", 1);
+        graph.set("b", "a", 2);
+        assertTrue(graph.remove("a"));
+        assertTrue(graph.add("a"));
+        assertEquals(Collections.emptyMap(), graph.targets("a"));
+        assertEquals(Collections.emptyMap(), graph.sources("a"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+    }
+
+    @Test
+    public void testRemoveAndAddOther() {
+        MatrixGraph<String> graph = new MatrixGraph<>(2);
+        graph.set("a", "b", 1);
+        graph.set("b", "a", 2);
+        assertTrue(graph.remove("a"));
+        assertTrue(graph.add("c"));
+        assertEquals(Collections.emptyMap(), graph.targets("c"));
+        assertEquals(Collections.emptyMap(), graph.sources("c"));
+        assertEquals(Collections.emptyMap(), graph.targets("b"));
+        assertEquals(Collections.emptyMap(), graph.sources("b"));
+    }
+
+    @Test
+    public void testChurnPastMaxVertices() {
+        MatrixGraph<String> graph = new MatrixGraph<>();
+        for (int i = 0; i < MatrixGraph.MAX_VERTICES + 100; i++) {
+            graph.set("hub", "v" + i, i + 1);
+            if (i >= 10) {
+                assertTrue(graph.remove("v" + (i - 10)));
+            }
+        }
+        assertEquals(11, graph.vertices().size());
+        assertEquals(10, graph.targets("hub").size());
+        assertEquals(MatrixGraph.MAX_VERTICES + 100, (int) graph.sources("v" + (MatrixGraph.MAX_VERTICES + 99)).get("hub"));
+    }
+
+    @Test
+    public void testIntegerLabels() {
+        MatrixGraph<Integer> graph = new MatrixGraph<>();
+        graph.set(1, 2, 3);
+        assertEquals(Collections.singletonMap(2, 3), graph.targets(1));
+        assertEquals(3, graph.increment(2, 1, 3));
+        assertEquals(Collections.singletonMap(2, 3), graph.sources(1));
+    }
+}
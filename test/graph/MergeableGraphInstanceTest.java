@@ -0,0 +1,126 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for instance methods of MergeableGraph, in addition to the Graph
+ * tests of GraphInstanceTest.
+ */
+public abstract class MergeableGraphInstanceTest extends GraphInstanceTest {
+
+	/**
+	 * Testing Strategy for MergeableGraphInstanceTest:
+	 * - `testIncrementNewEdge()`: increment an edge between missing vertices, which are added
+	 * - `testIncrementExistingEdge()`: increment an edge several times, by positive and negative deltas
+	 * - `testMergeRemovesEdge()`: merge to a zero weight removes the edge but not the vertices
+	 * - `testMergeZeroMissingEdge()`: merge to a zero weight with no edge leaves the graph unchanged
+	 * - `testMergeNegativeWeight()`: merge to a negative weight throws and leaves the graph unchanged
+	 * - `testMergeChecksScale()`: merge checks as much of a large graph as of a small one, for
+	 *   graphs whose checks count what they examine
+	 */
+
+    @Test
+    public void testIncrementNewEdge() {
+        MergeableGraph<String> graph = emptyInstance();
+        assertEquals(2, graph.increment("A", "B", 2));
+        assertTrue(graph.vertices().contains("A"));
+        assertTrue(graph.vertices().contains("B"));
+        assertEquals(Collections.singletonMap("B", 2), graph.targets("A"));
+        assertEquals(Collections.singletonMap("A", 2), graph.sources("B"));
+    }
+
+    @Test
+    public void testIncrementExistingEdge() {
+        MergeableGraph<String> graph = emptyInstance();
+        graph.add("A");
+        graph.add("B");
+        graph.set("A", "B", 1);
+        assertEquals(2, graph.increment("A", "B", 1));
+        assertEquals(5, graph.increment("A", "B", 3));
+        assertEquals(4, graph.increment("A", "B", -1));
+        assertEquals(4, (int) graph.targets("A").get("B"));
+        assertEquals(4, (int) graph.sources("B").get("A"));
+        assertEquals(1, graph.increment("A", "A", 1));
+    }
+
+    @Test
+    public void testMergeRemovesEdge() {
+        MergeableGraph<String> graph = emptyInstance();
+        graph.add("A");
+        graph.add("B");
+        graph.set("A", "B", 3);
+        assertEquals(6, graph.merge("A", "B", 2, (weight, value) -> weight * value));
+        assertEquals(0, graph.merge("A", "B", 6, (weight, value) -> weight - value));
+        assertFalse(graph.targets("A").containsKey("B"));
+        assertFalse(graph.sources("B").containsKey("A"));
+        assertEquals(2, graph.vertices().size());
+    }
+
+    @Test
+    public void testMergeZeroMissingEdge() {
+        MergeableGraph<String> graph = emptyInstance();
+        assertEquals(0, graph.merge("A", "B", 0, Integer::sum));
+        assertEquals(Collections.emptySet(), graph.vertices());
+    }
+
+    @Test
+    public void testMergeNegativeWeight() {
+        MergeableGraph<String> graph = emptyInstance();
+        graph.add("A");
+        graph.add("B");
+        graph.set("A", "B", 1);
+        try {
+            graph.increment("A", "B", -2);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            graph.increment("C", "D", -1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1, (int) graph.targets("A").get("B"));
+        assertEquals(2, graph.vertices().size());
+    }
+
+    /**
+     * Tests that merge checks only the vertices and edges it touches, whatever
+     * the size of the graph, as testMutationChecksScale() does for Graph mutations.
+     */
+    @Test
+    public void testMergeChecksScale() {
+        long[] checked = new long[2];
+        int[] sizes = { 10, 10000 };
+        for (int i = 0; i < sizes.length; i++) {
+            MergeableGraph<String> graph = emptyInstance();
+            if (checkedElements(graph) < 0) {
+                return;
+            }
+            for (int v = 0; v < sizes[i]; v++) {
+                graph.increment("hub", "v" + v, 1);
+            }
+            long before = checkedElements(graph);
+            graph.increment("hub", "x", 2);
+            graph.increment("hub", "x", 1);
+            graph.increment("x", "hub", 1);
+            graph.increment("hub", "x", -3);
+            checked[i] = checkedElements(graph) - before;
+        }
+        assertTrue(checked[0] > 0);
+        assertEquals(checked[0], checked[1]);
+    }
+
+    /**
+     * Overridden by implementation-specific test classes.
+     * 
+     * @return a new empty graph of the particular implementation being tested
+     */
+    @Override
+    public abstract MergeableGraph<String> emptyInstance();
+}
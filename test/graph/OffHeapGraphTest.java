@@ -0,0 +1,89 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for OffHeapGraph.
+ *
+ * This class runs the GraphInstanceTest and MergeableGraphInstanceTest tests
+ * against OffHeapGraph, as well as tests for its segment growth and
+ * memory-mapped storage.
+ */
+public class OffHeapGraphTest extends MergeableGraphInstanceTest {
+
+    // Testing strategy for OffHeapGraph
+    // - storage: direct buffers, memory-mapped files
+    // - segments: records fit in the first segment, records spill into
+    //   later segments, a record larger than the current segment
+    // - labels: ASCII, non-ASCII, colliding hash codes, enough labels to
+    //   grow the label index
+    // - many edges from one vertex, forcing tables to grow and be recycled,
+    //   checked against a HashMap model
+
+    @Override
+    public MergeableGraph<String> emptyInstance() {
+        return new OffHeapGraph();
+    }
+
+    @Test
+    public void testSmallSegmentsGrow() {
+        OffHeapGraph graph = new OffHeapGraph(null, 64);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            graph.set("hub", "v" + i, i + 1);
+            expected.put("v" + i, i + 1);
+        }
+        for (int i = 0; i < 2000; i += 3) {
+            assertEquals(i + 1, graph.set("hub", "v" + i, 0));
+            expected.remove("v" + i);
+        }
+        assertEquals(expected, graph.targets("hub"));
+        assertEquals(2001, graph.vertices().size());
+        assertEquals(Collections.singletonMap("hub", 2), graph.sources("v1"));
+        assertEquals(Collections.emptyMap(), graph.sources("v0"));
+    }
+
+    @Test
+    public void testLabels() {
+        OffHeapGraph graph = new OffHeapGraph();
+        // "Aa" and "BB" have the same hash code
+        graph.set("Aa", "BB", 1);
+        graph.set("BB", "\u00e9t\u00e9", 2);
+        assertEquals(Collections.singletonMap("BB", 1), graph.targets("Aa"));
+        assertEquals(Collections.singletonMap("\u00e9t\u00e9", 2), graph.targets("BB"));
+        assertEquals(Collections.singletonMap("BB", 2), graph.sources("\u00e9t\u00e9"));
+        assertTrue(graph.remove("BB"));
+        assertTrue(graph.targets("Aa").isEmpty());
+        assertTrue(graph.add("BB"));
+        assertTrue(graph.vertices().contains("BB"));
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        File directory = Files.createTempDirectory("offheap").toFile();
+        try {
+            OffHeapGraph graph = new OffHeapGraph(directory, 256);
+            for (int i = 0; i < 500; i++) {
+                graph.set("w" + i, "w" + (i + 1), i + 1);
+            }
+            assertEquals(501, graph.vertices().size());
+            assertEquals(Collections.singletonMap("w11", 11), graph.targets("w10"));
+            assertEquals(Collections.singletonMap("w9", 10), graph.sources("w10"));
+            assertTrue(directory.list().length > 0);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
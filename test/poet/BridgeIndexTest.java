@@ -0,0 +1,107 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import graph.ConcreteVerticesGraph;
+import graph.FrozenGraph;
+import graph.IndexedGraph;
+
+/**
+ * Tests for BridgeIndex.
+ */
+public class BridgeIndexTest {
+
+    // Testing strategy for BridgeIndex
+    // - memory bound: 0 (nothing covered), enough for some sources, enough for all
+    // - covered sources are the most frequent ones
+    // - bridge(): pairs with one bridge, several bridges (heaviest wins, ties by
+    //   rank order), no bridge; agrees with a search over ranked targets
+
+    /**
+     * Finds a bridge by searching the targets of source by descending weight.
+     *
+     * @param graph the graph
+     * @param source id of the source
+     * @param target id of the target
+     * @return id of the bridge, or -1 if there is none
+     */
+    private static int search(IndexedGraph<String> graph, int source, int target) {
+        for (int rank = 0; rank < graph.outDegree(source); rank++) {
+            int bridge = graph.heaviestTarget(source, rank);
+            if (graph.weight(bridge, target) > 0) {
+                return bridge;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes a random graph.
+     *
+     * @param vertices number of vertices
+     * @param edges number of edges to set
+     * @param seed random seed
+     * @return a frozen random graph with small weights, so that ties are common
+     */
+    private static IndexedGraph<String> randomGraph(int vertices, int edges, long seed) {
+        Random random = new Random(seed);
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < vertices; i++) {
+            graph.add("w" + i);
+        }
+        for (int i = 0; i < edges; i++) {
+            graph.set("w" + random.nextInt(vertices), "w" + random.nextInt(vertices), 1 + random.nextInt(3));
+        }
+        return new FrozenGraph<>(graph);
+    }
+
+    @Test
+    public void testEmptyBound() {
+        IndexedGraph<String> graph = randomGraph(20, 60, 1);
+        BridgeIndex index = new BridgeIndex(graph, 0);
+        assertEquals(0, index.size());
+        for (int id = 0; id < graph.size(); id++) {
+            assertFalse(index.covers(id));
+        }
+    }
+
+    @Test
+    public void testAgreesWithSearch() {
+        IndexedGraph<String> graph = randomGraph(60, 400, 2);
+        BridgeIndex index = new BridgeIndex(graph, Long.MAX_VALUE);
+        for (int source = 0; source < graph.size(); source++) {
+            assertTrue(index.covers(source));
+            for (int target = 0; target < graph.size(); target++) {
+                assertEquals(search(graph, source, target), index.bridge(source, target));
+            }
+        }
+    }
+
+    @Test
+    public void testBoundCoversHottestSources() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (String word : new String[] { "a", "b", "c", "d" }) {
+            graph.add(word);
+        }
+        graph.set("a", "b", 5);
+        graph.set("a", "c", 5);
+        graph.set("b", "d", 1);
+        graph.set("c", "d", 1);
+        graph.set("d", "a", 1);
+        IndexedGraph<String> frozen = new FrozenGraph<>(graph);
+        int a = frozen.id("a");
+        int d = frozen.id("d");
+
+        // a has the heaviest out-edges, and one two-hop target
+        BridgeIndex index = new BridgeIndex(frozen, BridgeIndex.BYTES_PER_PAIR);
+        assertEquals(1, index.size());
+        assertTrue(index.covers(a));
+        assertFalse(index.covers(d));
+        assertEquals(frozen.id("b"), index.bridge(a, d));
+        assertEquals(-1, index.bridge(a, a));
+    }
+}
@@ -0,0 +1,160 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import graph.ConcreteVerticesGraph;
+import graph.FrozenGraph;
+import graph.IndexedGraph;
+
+/**
+ * Tests for BridgeSearch.
+ */
+public class BridgeSearchTest {
+
+    // Testing strategy for BridgeSearch
+    // - hubs: none, some, every word with a source
+    // - degrees: source with fewer targets than the target has sources, many
+    //   more (probe), about as many (merge); words with no edges
+    // - bridges: one, several (heaviest wins, ties by ascending id), none;
+    //   agrees with a search over ranked targets
+    // - examined: at most twice the entries of both lists
+
+    /**
+     * Finds a bridge by searching the targets of source by descending weight.
+     *
+     * @param graph the graph
+     * @param source id of the source
+     * @param target id of the target
+     * @return id of the bridge, or -1 if there is none
+     */
+    private static int rankedSearch(IndexedGraph<String> graph, int source, int target) {
+        for (int rank = 0; rank < graph.outDegree(source); rank++) {
+            int bridge = graph.heaviestTarget(source, rank);
+            if (graph.weight(bridge, target) > 0) {
+                return bridge;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes a random graph with a few words that have many more edges than
+     * the others, as frequent words do in a corpus.
+     *
+     * @param vertices number of vertices
+     * @param edges number of edges to set
+     * @param seed random seed
+     * @return a frozen random graph with small weights, so that ties are common
+     */
+    private static IndexedGraph<String> skewedGraph(int vertices, int edges, long seed) {
+        Random random = new Random(seed);
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < vertices; i++) {
+            graph.add("w" + i);
+        }
+        for (int i = 0; i < edges; i++) {
+            // half the ends are among the first few words
+            int source = random.nextBoolean() ? random.nextInt(4) : random.nextInt(vertices);
+            int target = random.nextBoolean() ? random.nextInt(4) : random.nextInt(vertices);
+            graph.set("w" + source, "w" + target, 1 + random.nextInt(3));
+        }
+        return new FrozenGraph<>(graph);
+    }
+
+    /**
+     * Asserts that a search finds the bridge of every pair of a graph, with no
+     * more work than twice both adjacency lists.
+     *
+     * @param graph the graph
+     * @param search a search of graph
+     */
+    private static void assertAgreesWithRankedSearch(IndexedGraph<String> graph, BridgeSearch search) {
+        for (int source = 0; source < graph.size(); source++) {
+            for (int target = 0; target < graph.size(); target++) {
+                long result = search.search(source, target);
+                assertEquals("bridge of " + source + ", " + target,
+                        rankedSearch(graph, source, target), BridgeSearch.bridge(result));
+                assertTrue(BridgeSearch.examined(result) >= 0);
+                assertTrue(BridgeSearch.examined(result) <= 2 * (graph.outDegree(source) + graph.inDegree(target)));
+            }
+        }
+    }
+
+    @Test
+    public void testNoHubs() {
+        IndexedGraph<String> graph = skewedGraph(80, 600, 1);
+        BridgeSearch search = new BridgeSearch(graph, Integer.MAX_VALUE);
+        for (int id = 0; id < graph.size(); id++) {
+            assertFalse(search.isHub(id));
+        }
+        assertAgreesWithRankedSearch(graph, search);
+    }
+
+    @Test
+    public void testSomeHubs() {
+        IndexedGraph<String> graph = skewedGraph(80, 600, 2);
+        BridgeSearch search = new BridgeSearch(graph, 20);
+        int hubs = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            assertEquals(graph.inDegree(id) >= 20, search.isHub(id));
+            hubs += search.isHub(id) ? 1 : 0;
+        }
+        assertTrue(hubs > 0 && hubs < graph.size());
+        assertAgreesWithRankedSearch(graph, search);
+    }
+
+    @Test
+    public void testAllHubs() {
+        IndexedGraph<String> graph = skewedGraph(130, 900, 3);
+        assertAgreesWithRankedSearch(graph, new BridgeSearch(graph, 1));
+    }
+
+    @Test
+    public void testDefaultHubs() {
+        IndexedGraph<String> graph = skewedGraph(300, 4000, 4);
+        BridgeSearch search = new BridgeSearch(graph);
+        for (int id = 0; id < graph.size(); id++) {
+            assertEquals(graph.inDegree(id) >= BridgeSearch.MIN_HUB_DEGREE, search.isHub(id));
+        }
+        assertAgreesWithRankedSearch(graph, search);
+    }
+
+    @Test
+    public void testTiesByAscendingId() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (String word : new String[] { "a", "b", "c", "d", "e" }) {
+            graph.add(word);
+        }
+        graph.set("a", "c", 2);
+        graph.set("a", "b", 2);
+        graph.set("a", "d", 1);
+        graph.set("b", "e", 1);
+        graph.set("c", "e", 1);
+        graph.set("d", "e", 5);
+        IndexedGraph<String> frozen = new FrozenGraph<>(graph);
+        int lower = Math.min(frozen.id("b"), frozen.id("c"));
+        for (int hubDegree : new int[] { 1, Integer.MAX_VALUE }) {
+            long result = new BridgeSearch(frozen, hubDegree).search(frozen.id("a"), frozen.id("e"));
+            assertEquals(lower, BridgeSearch.bridge(result));
+        }
+    }
+
+    @Test
+    public void testNoEdges() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        graph.add("alone");
+        graph.add("a");
+        graph.add("b");
+        graph.set("a", "b", 1);
+        IndexedGraph<String> frozen = new FrozenGraph<>(graph);
+        BridgeSearch search = new BridgeSearch(frozen, 1);
+        long result = search.search(frozen.id("alone"), frozen.id("b"));
+        assertEquals(-1, BridgeSearch.bridge(result));
+        assertEquals(0, BridgeSearch.examined(result));
+        assertEquals(-1, BridgeSearch.bridge(search.search(frozen.id("a"), frozen.id("b"))));
+    }
+}
@@ -0,0 +1,224 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import graph.ConcreteVerticesGraph;
+import graph.FrozenGraph;
+import graph.IndexedGraph;
+import graph.MappedGraph;
+import poet.BridgeTable.Score;
+
+/**
+ * Tests for BridgeTable.
+ */
+public class BridgeTableTest {
+
+    // Testing strategy for BridgeTable
+    // - compute(): empty graph, random graphs with ties; k = 1 and k > 1;
+    //   FIRST_EDGE and PRODUCT scores; pools of 1 and several threads give the
+    //   same table; bad k
+    // - bridge(), bridges(): pairs with no bridge, fewer than k, k or more;
+    //   unknown words
+    // - write() and open(): round trip; wrong graph, bad magic, truncated file
+    // - GraphPoet.load with a table: same poems as the poet saved
+
+    /**
+     * Makes a random graph.
+     *
+     * @param vertices number of vertices
+     * @param edges number of edges to set
+     * @param seed random seed
+     * @return a frozen random graph with small weights, so that ties are common
+     */
+    private static IndexedGraph<String> randomGraph(int vertices, int edges, long seed) {
+        Random random = new Random(seed);
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (int i = 0; i < vertices; i++) {
+            graph.add("w" + i);
+        }
+        for (int i = 0; i < edges; i++) {
+            graph.set("w" + random.nextInt(vertices), "w" + random.nextInt(vertices), 1 + random.nextInt(3));
+        }
+        return new FrozenGraph<>(graph);
+    }
+
+    /**
+     * Finds the top bridges of a pair by brute force.
+     *
+     * @param graph the graph
+     * @param source id of the first word
+     * @param target id of the second word
+     * @param k number of bridges
+     * @param score how to rank bridges
+     * @return the ids of the top k bridges, best first, padded with -1
+     */
+    private static int[] topBridges(IndexedGraph<String> graph, int source, int target, int k, Score score) {
+        int degree = graph.outDegree(source);
+        Integer[] ranks = new Integer[degree];
+        long[] scores = new long[degree];
+        for (int rank = 0; rank < degree; rank++) {
+            ranks[rank] = rank;
+            int bridge = graph.heaviestTarget(source, rank);
+            int second = graph.weight(bridge, target);
+            scores[rank] = second == 0 ? 0 : score == Score.FIRST_EDGE
+                    ? graph.heaviestWeight(source, rank) : (long) graph.heaviestWeight(source, rank) * second;
+        }
+        // stable sort: ties keep rank order
+        Arrays.sort(ranks, (a, b) -> Long.compare(scores[b], scores[a]));
+        int[] top = new int[k];
+        Arrays.fill(top, -1);
+        for (int i = 0; i < k && i < degree && scores[ranks[i]] > 0; i++) {
+            top[i] = graph.heaviestTarget(source, ranks[i]);
+        }
+        return top;
+    }
+
+    /**
+     * Checks a table against brute force.
+     *
+     * @param graph the graph
+     * @param table its table
+     */
+    private static void assertAgrees(IndexedGraph<String> graph, BridgeTable table) {
+        long pairs = 0;
+        for (int source = 0; source < graph.size(); source++) {
+            for (int target = 0; target < graph.size(); target++) {
+                int[] expected = topBridges(graph, source, target, table.k(), table.score());
+                for (int rank = 0; rank < table.k(); rank++) {
+                    assertEquals(expected[rank], table.bridge(source, target, rank));
+                }
+                pairs += expected[0] == -1 ? 0 : 1;
+            }
+        }
+        assertEquals(pairs, table.pairs());
+    }
+
+    @Test
+    public void testEmpty() {
+        BridgeTable table = BridgeTable.compute(new ConcreteVerticesGraph());
+        assertEquals(0, table.pairs());
+        assertEquals(Collections.emptyList(), table.bridges("a", "b"));
+    }
+
+    @Test
+    public void testTopBridge() {
+        IndexedGraph<String> graph = randomGraph(50, 300, 1);
+        assertAgrees(graph, BridgeTable.compute(graph));
+    }
+
+    @Test
+    public void testTopKBridges() {
+        IndexedGraph<String> graph = randomGraph(40, 400, 2);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertAgrees(graph, BridgeTable.compute(graph, 3, Score.FIRST_EDGE, pool));
+            assertAgrees(graph, BridgeTable.compute(graph, 3, Score.PRODUCT, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelismDoesNotMatter() throws IOException {
+        IndexedGraph<String> graph = randomGraph(200, 2000, 3);
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(8);
+        try {
+            File a = File.createTempFile("bridges", ".table");
+            File b = File.createTempFile("bridges", ".table");
+            a.deleteOnExit();
+            b.deleteOnExit();
+            BridgeTable.compute(graph, 2, Score.PRODUCT, one).write(a);
+            BridgeTable.compute(graph, 2, Score.PRODUCT, many).write(b);
+            assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+        } finally {
+            one.shutdown();
+            many.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadK() {
+        BridgeTable.compute(new ConcreteVerticesGraph(), 0, Score.FIRST_EDGE, ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void testBridgesByLabel() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        for (String word : new String[] { "a", "b", "c", "d" }) {
+            graph.add(word);
+        }
+        graph.set("a", "b", 1);
+        graph.set("a", "c", 2);
+        graph.set("b", "d", 5);
+        graph.set("c", "d", 1);
+        BridgeTable first = BridgeTable.compute(graph, 2, Score.FIRST_EDGE, ForkJoinPool.commonPool());
+        assertEquals(Arrays.asList("c", "b"), first.bridges("a", "d"));
+        BridgeTable product = BridgeTable.compute(graph, 2, Score.PRODUCT, ForkJoinPool.commonPool());
+        assertEquals(Arrays.asList("b", "c"), product.bridges("a", "d"));
+        assertEquals(Collections.emptyList(), first.bridges("a", "b"));
+        assertEquals(Collections.emptyList(), first.bridges("a", "unknown"));
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        File graphFile = File.createTempFile("poet", ".graph");
+        File bridgeFile = File.createTempFile("bridges", ".table");
+        graphFile.deleteOnExit();
+        bridgeFile.deleteOnExit();
+        MappedGraph.write(randomGraph(60, 500, 4), graphFile);
+        MappedGraph graph = MappedGraph.open(graphFile);
+        BridgeTable.compute(graph, 2, Score.PRODUCT, ForkJoinPool.commonPool()).write(bridgeFile);
+
+        BridgeTable opened = BridgeTable.open(bridgeFile, graph);
+        assertEquals(2, opened.k());
+        assertEquals(Score.PRODUCT, opened.score());
+        assertAgrees(graph, opened);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWithOtherGraph() throws IOException {
+        File bridgeFile = File.createTempFile("bridges", ".table");
+        bridgeFile.deleteOnExit();
+        BridgeTable.compute(randomGraph(30, 100, 5)).write(bridgeFile);
+        BridgeTable.open(bridgeFile, randomGraph(31, 100, 5));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenTruncated() throws IOException {
+        IndexedGraph<String> graph = randomGraph(30, 100, 6);
+        File bridgeFile = File.createTempFile("bridges", ".table");
+        bridgeFile.deleteOnExit();
+        BridgeTable.compute(graph).write(bridgeFile);
+        try (RandomAccessFile file = new RandomAccessFile(bridgeFile, "rw")) {
+            file.setLength(file.length() - 4);
+        }
+        BridgeTable.open(bridgeFile, graph);
+    }
+
+    @Test
+    public void testPoetWithTable() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("test/poet/seven-words.txt"));
+        File graphFile = File.createTempFile("poet", ".graph");
+        File bridgeFile = File.createTempFile("bridges", ".table");
+        graphFile.deleteOnExit();
+        bridgeFile.deleteOnExit();
+        poet.save(graphFile);
+        BridgeTable.compute(MappedGraph.open(graphFile)).write(bridgeFile);
+
+        GraphPoet loaded = GraphPoet.load(graphFile, bridgeFile);
+        String input = "Seek to explore new and exciting synergies!";
+        assertEquals(poet.poem(input), loaded.poem(input));
+    }
+}
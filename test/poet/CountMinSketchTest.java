@@ -0,0 +1,102 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for CountMinSketch.
+ */
+public class CountMinSketchTest {
+
+    // Testing strategy for CountMinSketch
+    // - dimensions: one counter per row, many; from a memory budget
+    // - estimates: keys never added, added once, many times; never below the
+    //   count; within the error bound for skewed keys
+    // - counts: 1, more than 1, saturating
+    // - bad dimensions and budgets
+
+    @Test
+    public void testEmpty() {
+        CountMinSketch sketch = new CountMinSketch(3, 16);
+        assertEquals(0, sketch.estimate(42));
+        assertEquals(0, sketch.total());
+        assertEquals(0, sketch.errorBound());
+    }
+
+    @Test
+    public void testSingleKey() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        sketch.add(7, 1);
+        sketch.add(7, 5);
+        assertEquals(6, sketch.estimate(7));
+        assertEquals(6, sketch.total());
+    }
+
+    @Test
+    public void testOneCounterPerRow() {
+        CountMinSketch sketch = new CountMinSketch(2, 1);
+        sketch.add(1, 3);
+        sketch.add(2, 4);
+        // every key shares the counter of each row
+        assertEquals(7, sketch.estimate(1));
+        assertEquals(7, sketch.estimate(3));
+        assertEquals(20, sketch.errorBound());
+        assertEquals(Math.exp(-2), sketch.failureProbability(), 1e-12);
+    }
+
+    @Test
+    public void testEstimatesWithinBound() {
+        Random random = new Random(5);
+        CountMinSketch sketch = new CountMinSketch(5, 1 << 10);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // skewed keys, as word pairs are
+            long key = (long) (Math.pow(random.nextDouble(), 4) * 20000) << 32 | random.nextInt(3);
+            sketch.add(key, 1);
+            counts.merge(key, 1, Integer::sum);
+        }
+        assertEquals(100000, sketch.total());
+        int over = 0;
+        for (Map.Entry<Long, Integer> count : counts.entrySet()) {
+            int estimate = sketch.estimate(count.getKey());
+            assertTrue(estimate >= count.getValue());
+            if (estimate - count.getValue() > sketch.errorBound()) {
+                over++;
+            }
+        }
+        // each key exceeds the bound with probability at most e^-5
+        assertTrue("over bound: " + over, over <= counts.size() * sketch.failureProbability());
+    }
+
+    @Test
+    public void testSaturates() {
+        CountMinSketch sketch = new CountMinSketch(1, 1);
+        sketch.add(1, Integer.MAX_VALUE);
+        sketch.add(1, 1);
+        assertEquals(Integer.MAX_VALUE, sketch.estimate(1));
+        assertEquals(Integer.MAX_VALUE + 1L, sketch.total());
+    }
+
+    @Test
+    public void testWithBytes() {
+        CountMinSketch sketch = CountMinSketch.withBytes(5, 1 << 20);
+        assertEquals(5, sketch.depth());
+        assertEquals((1 << 20) / 4 / 5, sketch.width());
+        assertEquals(1, CountMinSketch.withBytes(5, 20).width());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooFewBytes() {
+        CountMinSketch.withBytes(5, 19);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWidth() {
+        new CountMinSketch(4, 0);
+    }
+}
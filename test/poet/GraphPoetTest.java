@@ -7,6 +7,10 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -65,4 +69,202 @@ public class GraphPoetTest {
         assertEquals("hello unknown world!", poem3);
     }
 
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("test/poet/seven-words.txt"));
+        File graphFile = File.createTempFile("poet", ".graph");
+        graphFile.deleteOnExit();
+        poet.save(graphFile);
+
+        GraphPoet loaded = GraphPoet.load(graphFile);
+        String input = "Seek to explore new and exciting synergies!";
+        assertEquals(poet.poem(input), loaded.poem(input));
+        assertEquals(poet.toString(), loaded.toString());
+    }
+
+    @Test
+    public void testSaveOverLoadedFile() throws IOException {
+        File graphFile = File.createTempFile("poet", ".graph");
+        graphFile.deleteOnExit();
+        new GraphPoet(new File("test/poet/seven-words.txt")).save(graphFile);
+        String input = "Seek to explore new and exciting synergies!";
+
+        // the loaded poet reads the file it is saved over
+        GraphPoet loaded = GraphPoet.load(graphFile);
+        loaded.addText("explore brave new explore brave new");
+        loaded.save(graphFile);
+        assertEquals("seek to explore brave new life and exciting synergies!", loaded.poem(input));
+        GraphPoet unchanged = GraphPoet.load(graphFile);
+        unchanged.save(graphFile);
+        assertEquals("seek to explore brave new life and exciting synergies!", unchanged.poem(input));
+        assertEquals("seek to explore brave new life and exciting synergies!", GraphPoet.load(graphFile).poem(input));
+    }
+
+    @Test
+    public void testParallelRead() throws IOException {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        File sequential = File.createTempFile("poet", ".graph");
+        sequential.deleteOnExit();
+        new GraphPoet(corpus).save(sequential);
+        File parallel = File.createTempFile("poet", ".graph");
+        parallel.deleteOnExit();
+        GraphPoet poet = new GraphPoet(corpus, GraphPoet.DEFAULT_INDEX_BYTES, new ForkJoinPool(4));
+        poet.save(parallel);
+
+        assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+        assertEquals("test of the system.", poet.poem("Test the system."));
+    }
+
+    @Test
+    public void testAddTextKeepsDocumentsApart() throws IOException {
+        File corpus = File.createTempFile("poet", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(), "a b".getBytes(StandardCharsets.UTF_8));
+        GraphPoet poet = new GraphPoet(corpus);
+        poet.addText("c d");
+        poet.addText(new StringReader("E\nf"));
+        // a -> b, c -> d and e -> f; no edge joins b -> c or d -> e
+        assertEquals("GraphPoet with a word affinity graph containing 6 vertices and 3 edges.", poet.toString());
+        assertEquals("b c", poet.poem("b c"));
+        assertEquals("d e", poet.poem("d e"));
+    }
+
+    @Test
+    public void testAddTextChangesBridges() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("test/poet/seven-words.txt"));
+        String input = "Seek to explore new and exciting synergies!";
+        assertEquals("seek to explore strange new life and exciting synergies!", poet.poem(input));
+
+        // explore -> brave -> new now outweighs explore -> strange -> new
+        poet.addText("explore brave new explore brave new");
+        poet.addText("and vast exciting");
+        assertEquals("seek to explore brave new life and vast exciting synergies!", poet.poem(input));
+
+        File saved = File.createTempFile("poet", ".graph");
+        saved.deleteOnExit();
+        poet.save(saved);
+        GraphPoet loaded = GraphPoet.load(saved);
+        assertEquals(poet.poem(input), loaded.poem(input));
+        assertEquals(poet.toString(), loaded.toString());
+
+        File more = File.createTempFile("poet", ".txt");
+        more.deleteOnExit();
+        Files.write(more.toPath(), "new bold and new bold and".getBytes(StandardCharsets.UTF_8));
+        poet.addCorpus(more);
+        loaded.addCorpus(more);
+        assertEquals("seek to explore brave new bold and vast exciting synergies!", poet.poem(input));
+        assertEquals(poet.poem(input), loaded.poem(input));
+        assertEquals(poet.toString(), loaded.toString());
+    }
+
+    @Test(timeout = 30000)
+    public void testAddTextScalesWithText() throws IOException {
+        File corpus = File.createTempFile("poet", ".txt");
+        corpus.deleteOnExit();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            text.append('w').append(i).append(i % 20 == 19 ? '\n' : ' ');
+        }
+        Files.write(corpus.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        GraphPoet poet = new GraphPoet(corpus);
+        // with a check of the whole graph per document added, this takes minutes
+        for (int i = 0; i < 20000; i++) {
+            poet.addText("alpha beta");
+        }
+        assertEquals("GraphPoet with a word affinity graph containing 200002 vertices and 200000 edges.",
+                poet.toString());
+    }
+
+    @Test
+    public void testApproximateKeepsEveryAdjacency() throws IOException {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        File exact = File.createTempFile("poet", ".graph");
+        exact.deleteOnExit();
+        GraphPoet exactPoet = new GraphPoet(corpus);
+        exactPoet.save(exact);
+        assertNull(exactPoet.approximation());
+        File approximate = File.createTempFile("poet", ".graph");
+        approximate.deleteOnExit();
+        GraphPoet poet = GraphPoet.approximate(corpus, 1 << 10, 1);
+        poet.save(approximate);
+
+        assertArrayEquals(Files.readAllBytes(exact.toPath()), Files.readAllBytes(approximate.toPath()));
+        Approximation approximation = poet.approximation();
+        assertEquals(0, approximation.droppedAdjacencies());
+        assertEquals(approximation.candidates(), approximation.edges());
+        assertEquals(10, approximation.adjacencies());
+    }
+
+    @Test
+    public void testApproximateDropsRareAdjacencies() throws IOException {
+        File corpus = File.createTempFile("poet", ".txt");
+        corpus.deleteOnExit();
+        // a -> x, x -> b and b -> a occur twice; a -> y, y -> b, b -> c and c -> d once
+        Files.write(corpus.toPath(), "a x b a x b\na y b c d".getBytes(StandardCharsets.UTF_8));
+        for (long sketchBytes : new long[] { 20, 1 << 20 }) {
+            GraphPoet poet = GraphPoet.approximate(corpus, sketchBytes, 2);
+            assertEquals("GraphPoet with a word affinity graph containing 3 vertices and 3 edges.", poet.toString());
+            assertEquals("a x b", poet.poem("a b"));
+            assertEquals("b d", poet.poem("b d"));
+
+            Approximation approximation = poet.approximation();
+            assertEquals(2, approximation.minWeight());
+            assertEquals(10, approximation.adjacencies());
+            assertEquals(4, approximation.droppedAdjacencies());
+            assertEquals(3, approximation.edges());
+            assertTrue(approximation.toString(), approximation.candidates() >= 3 && approximation.candidates() <= 7);
+            assertTrue(approximation.sketchFailureProbability() < 0.01);
+        }
+        // one counter per row estimates every adjacency at the total, so all are candidates
+        Approximation narrowest = GraphPoet.approximate(corpus, 20, 2).approximation();
+        assertEquals(7, narrowest.candidates());
+        assertEquals(28, narrowest.sketchError());
+    }
+
+    @Test
+    public void testApproximateThenAddText() throws IOException {
+        File corpus = File.createTempFile("poet", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(), "a x b a x b a y b".getBytes(StandardCharsets.UTF_8));
+        GraphPoet poet = GraphPoet.approximate(corpus, 1 << 10, 2);
+        assertEquals("x z", poet.poem("x z"));
+        // added text is counted exactly, whatever its weights
+        poet.addText("b z");
+        assertEquals("x b z", poet.poem("x z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApproximateZeroMinWeight() throws IOException {
+        GraphPoet.approximate(new File("test/poet/seven-words.txt"), 1 << 10, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApproximateSketchTooSmall() throws IOException {
+        GraphPoet.approximate(new File("test/poet/seven-words.txt"), 19, 1);
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        GraphPoet poet = new GraphPoet(new File("test/poet/seven-words.txt"));
+        String input = "Seek to explore new and exciting synergies!";
+        String expected = poet.poem(input);
+        if (!PoetEvents.AVAILABLE) {
+            return;
+        }
+        assertNull(PoetEvents.BRIDGE_SEARCH.begin());
+
+        // the JFR API is not part of Java 8, so the recording is driven reflectively
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "poet.BridgeSearch");
+        recordingClass.getMethod("start").invoke(recording);
+        try {
+            assertNotNull(PoetEvents.BRIDGE_SEARCH.begin());
+            assertEquals(expected, poet.poem(input));
+            assertEquals(expected, new GraphPoet(new File("test/poet/seven-words.txt")).poem(input));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+    }
+
 }
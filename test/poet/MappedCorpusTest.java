@@ -0,0 +1,253 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for MappedCorpus.
+ */
+public class MappedCorpusTest {
+
+    // Testing strategy for MappedCorpus
+    // - whitespace: spaces, tabs, vertical tabs, form feeds, \n, \r, \r\n,
+    //   runs of them, leading and trailing; non-breaking space is not whitespace
+    // - case: ASCII capitals, non-ASCII capitals (same word in several
+    //   spellings), Greek final sigma, malformed UTF-8
+    // - file: empty, whitespace only, no final newline, words longer than the
+    //   token buffer, more distinct words than the initial tables hold, window of 1 byte, a few bytes, larger than the file
+    // - lines: counted as BufferedReader.readLine() counts them
+    // - parallel read: one chunk, many chunks, chunks of a byte, chunk bounds
+    //   at \r\n, in runs of whitespace, inside long words; words and
+    //   adjacencies that occur first in a later chunk
+    // - sketched read: adjacencies only added to the sketch; counted exactly
+    //   only if their estimate reaches the least weight; words as without one
+    // - agrees with splitting each line with split("\\s+") and toLowerCase()
+
+    /**
+     * Writes a corpus to a temporary file.
+     *
+     * @param bytes contents of the file
+     * @return the file, deleted on exit
+     * @throws IOException if the file cannot be written
+     */
+    private static File corpus(byte[] bytes) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(3);
+
+    /**
+     * Asserts that a corpus is read as GraphPoet reads it line by line, for
+     * several window sizes, on one thread and in parallel chunks.
+     *
+     * @param bytes contents of the corpus
+     * @throws IOException if the corpus cannot be written or read
+     */
+    private static void assertReadsLikeLines(byte[] bytes) throws IOException {
+        File file = corpus(bytes);
+        List<String> lines = new ArrayList<>();
+        // as FileReader reads it when the default charset is UTF-8
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null;) {
+                lines.add(line);
+            }
+        }
+        List<String> words = new ArrayList<>();
+        Map<List<String>, Integer> pairs = new LinkedHashMap<>();
+        String previous = null;
+        for (String line : lines) {
+            for (String word : line.split("\\s+")) {
+                if (!word.isEmpty()) {
+                    word = word.toLowerCase();
+                    if (!words.contains(word)) {
+                        words.add(word);
+                    }
+                    if (previous != null) {
+                        pairs.merge(Arrays.asList(previous, word), 1, Integer::sum);
+                    }
+                    previous = word;
+                }
+            }
+        }
+
+        List<MappedCorpus> reads = new ArrayList<>();
+        // each window is a mapping until collected, so windows of a few bytes
+        // are kept to small corpora to stay well below the process's map limit
+        int scale = Math.max(1, bytes.length / 256);
+        for (int window : new int[] { scale, 3 * scale, 7 * scale, 1 << 20 }) {
+            reads.add(new MappedCorpus(file, window));
+            for (long chunk : new long[] { 1, 5, 1 << 20 }) {
+                reads.add(new MappedCorpus(file, window, chunk, POOL));
+            }
+        }
+        for (MappedCorpus corpus : reads) {
+            List<String> readWords = new ArrayList<>();
+            for (int id = 0; id < corpus.wordCount(); id++) {
+                readWords.add(corpus.word(id));
+            }
+            assertEquals(words, readWords);
+            Map<List<String>, Integer> readPairs = new LinkedHashMap<>();
+            long tokens = corpus.pairCount() == 0 ? corpus.tokens() : 1;
+            for (int i = 0; i < corpus.pairCount(); i++) {
+                readPairs.put(Arrays.asList(corpus.word(corpus.pairSource(i)),
+                        corpus.word(corpus.pairTarget(i))), corpus.pairWeight(i));
+                tokens += corpus.pairWeight(i);
+            }
+            assertEquals(new ArrayList<>(pairs.entrySet()), new ArrayList<>(readPairs.entrySet()));
+            assertEquals(tokens, corpus.tokens());
+        }
+    }
+
+    /**
+     * Asserts that a corpus is read as GraphPoet reads it line by line.
+     *
+     * @param text contents of the corpus, encoded in UTF-8
+     * @throws IOException if the corpus cannot be written or read
+     */
+    private static void assertReadsLikeLines(String text) throws IOException {
+        assertReadsLikeLines(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        MappedCorpus corpus = new MappedCorpus(corpus(new byte[0]), 16);
+        assertEquals(0, corpus.wordCount());
+        assertEquals(0, corpus.pairCount());
+        assertEquals(0, corpus.lines());
+        assertReadsLikeLines(" \t\n\r\n \u000B\f ");
+    }
+
+    @Test
+    public void testWhitespace() throws IOException {
+        assertReadsLikeLines("  To be,\tor\u000Bnot\fto be:\r\nthat is\rthe question\n\n");
+        assertReadsLikeLines("no\u00A0break here\u2028nor there");
+        assertReadsLikeLines("no final newline");
+    }
+
+    @Test
+    public void testCase() throws IOException {
+        assertReadsLikeLines("Hello, HELLO, hello, goodbye! HeLLo, Goodbye!");
+        assertReadsLikeLines("\u00C4pfel \u00E4pfel \u00C4PFEL STRASSE Stra\u00DFe \u0130stanbul ISTANBUL");
+        assertReadsLikeLines("\u039F\u0394\u039F\u03A3 \u03BF\u03B4\u03BF\u03C2 \u039F\u0394\u039F\u03A3");
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        assertReadsLikeLines(new byte[] { 'a', (byte) 0xE2, (byte) 0x82, ' ', 'A', (byte) 0xE2, (byte) 0x82, '\n',
+                (byte) 0xFF, 'b', ' ', 'a', (byte) 0xC3 });
+    }
+
+    @Test
+    public void testRandomCorpus() throws IOException {
+        Random random = new Random(7);
+        String[] vocabulary = { "The", "the", "THE", "of", "\u00C9t\u00E9", "\u00E9t\u00E9", "a", "Zebra",
+                "zebra-crossing", "\u65E5\u672C", "x" };
+        String[] separators = { " ", "  ", "\t", "\n", "\r\n", "\r", " \n " };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append(random.nextInt(4) == 0 ? "W" + random.nextInt(1000) : vocabulary[random.nextInt(vocabulary.length)]);
+            text.append(separators[random.nextInt(separators.length)]);
+        }
+        StringBuilder longWord = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longWord.append((char) ('A' + i % 26));
+        }
+        text.append(longWord).append(' ').append(longWord.toString().toLowerCase());
+        assertReadsLikeLines(text.toString());
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        for (String text : new String[] { "", "a", "a\n", "a\r\nb", "\n\n", "a\rb\r", "a\r\n\r\n", " " }) {
+            long expected = 0;
+            try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+                while (reader.readLine() != null) {
+                    expected++;
+                }
+            }
+            String name = "lines of " + text.replace("\r", "\\r").replace("\n", "\\n");
+            File file = corpus(text.getBytes(StandardCharsets.UTF_8));
+            for (int window : new int[] { 1, 2, 64 }) {
+                assertEquals(name, expected, new MappedCorpus(file, window).lines());
+                assertEquals(name, expected, new MappedCorpus(file, window, 1, POOL).lines());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBoundaries() throws IOException {
+        // every bound falls inside a run of \r\n, spaces or a long word for some chunk size
+        assertReadsLikeLines("a\r\n\r\nb\r\rc\n\rd    e\r\n f LongWordSpanningChunks g\r");
+        assertReadsLikeLines("Start start START\n start");
+    }
+
+    @Test
+    public void testSketchedRead() throws IOException {
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // a few frequent words, and many rare ones
+            text.append(random.nextBoolean() ? "w" + random.nextInt(8) : "r" + random.nextInt(2000));
+            text.append(random.nextInt(10) == 0 ? "\n" : " ");
+        }
+        File file = corpus(text.toString().getBytes(StandardCharsets.UTF_8));
+        MappedCorpus exact = new MappedCorpus(file, 64);
+        Map<List<String>, Integer> pairs = new LinkedHashMap<>();
+        for (int i = 0; i < exact.pairCount(); i++) {
+            pairs.put(Arrays.asList(exact.word(exact.pairSource(i)), exact.word(exact.pairTarget(i))), exact.pairWeight(i));
+        }
+
+        for (int window : new int[] { 16, 1 << 12 }) {
+            CountMinSketch sketch = new CountMinSketch(3, 1 << 12);
+            MappedCorpus sketched = new MappedCorpus(file, window, sketch, 0);
+            assertEquals(0, sketched.pairCount());
+            assertEquals(exact.tokens() - 1, sketch.total());
+            assertEquals(exact.wordCount(), sketched.wordCount());
+
+            MappedCorpus filtered = new MappedCorpus(file, window, sketch, 4);
+            assertEquals(exact.wordCount(), filtered.wordCount());
+            int frequent = 0;
+            for (int i = 0; i < filtered.pairCount(); i++) {
+                List<String> pair = Arrays.asList(filtered.word(filtered.pairSource(i)), filtered.word(filtered.pairTarget(i)));
+                assertEquals(pair.toString(), pairs.get(pair), (Integer) filtered.pairWeight(i));
+                if (filtered.pairWeight(i) >= 4) {
+                    frequent++;
+                }
+            }
+            // every adjacency occurring 4 times or more is counted
+            assertEquals(pairs.values().stream().filter(weight -> weight >= 4).count(), frequent);
+            assertTrue(filtered.pairCount() < exact.pairCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadWindow() throws IOException {
+        new MappedCorpus(corpus(new byte[0]), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadChunk() throws IOException {
+        new MappedCorpus(corpus(new byte[0]), 16, 0, POOL);
+    }
+}
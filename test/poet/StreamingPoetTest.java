@@ -0,0 +1,179 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for StreamingPoet.
+ */
+public class StreamingPoetTest {
+
+    // Testing strategy for StreamingPoet
+    // - window: not yet full, full, sliding past many buckets; one bucket,
+    //   one word per bucket, buckets not dividing the window
+    // - text: words across accepted texts, from a Reader, case, repeated words
+    // - eviction: edges reaching zero removed, edges still counted by newer
+    //   buckets kept, words no longer in the window removed
+    // - poem: bridges appearing and expiring as the window slides, ties
+    // - long streams: graph size bounded; poems while text is accepted
+    // - bad window and bucket counts
+
+    /**
+     * Makes the expected description of a poet.
+     *
+     * @param vertices number of words in the window's graph
+     * @param edges number of edges in the window's graph
+     * @param words number of words in the window
+     * @return the string the poet's toString() returns
+     */
+    private static String description(int vertices, int edges, int words) {
+        return "StreamingPoet with a word affinity graph containing " + vertices + " vertices and "
+                + edges + " edges over the last " + words + " words.";
+    }
+
+    @Test
+    public void testWindowNotFull() {
+        StreamingPoet poet = new StreamingPoet(100, 4);
+        poet.accept("This is a test of the");
+        poet.accept("Mugar Omni Theater sound system.");
+        assertEquals(description(11, 10, 11), poet.toString());
+        assertEquals("test of the system.", poet.poem("Test the system."));
+        assertEquals("the mugar omni", poet.poem("the omni"));
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        StreamingPoet poet = new StreamingPoet(100, 1);
+        poet.accept(new StringReader("a b\nC\r\nd"));
+        assertEquals(description(4, 3, 4), poet.toString());
+        assertEquals("b c d", poet.poem("B D"));
+    }
+
+    @Test
+    public void testBucketsExpire() {
+        // buckets of 2 words, at most 2 buckets
+        StreamingPoet poet = new StreamingPoet(4, 2);
+        poet.accept("a b c d");
+        assertEquals(description(4, 3, 4), poet.toString());
+        assertEquals("a b c", poet.poem("a c"));
+
+        // the bucket "a b" expires, with a -> b and b -> c
+        poet.accept("e");
+        assertEquals(description(3, 2, 3), poet.toString());
+        assertEquals("a c", poet.poem("a c"));
+        assertEquals("c d e", poet.poem("c e"));
+
+        poet.accept("c");
+        assertEquals(description(3, 3, 4), poet.toString());
+        poet.accept("x");
+        // "c d" expired, but c is still in the window, and e -> c still counted
+        assertEquals(description(3, 2, 3), poet.toString());
+        assertEquals("e c x", poet.poem("e x"));
+        assertEquals("d e", poet.poem("d e"));
+    }
+
+    @Test
+    public void testEdgeWeightsDecrease() {
+        // buckets of 3 words, at most 3 buckets
+        StreamingPoet poet = new StreamingPoet(9, 3);
+        // a -> x twice, a -> y once; x -> b and y -> b
+        poet.accept("a x b a x b a y");
+        poet.accept("b");
+        assertEquals("a x b", poet.poem("a b"));
+        // the first "a x b" expires: a -> x and a -> y tie
+        poet.accept("q r s");
+        assertEquals("a x b", poet.poem("a b"));
+        // the second "a x b" expires: only y bridges a and b
+        poet.accept("t u v");
+        assertEquals("a y b", poet.poem("a b"));
+        assertEquals(description(9, 8, 9), poet.toString());
+    }
+
+    @Test
+    public void testTiesBrokenByWordOrder() {
+        StreamingPoet poet = new StreamingPoet(100, 1);
+        poet.accept("a zebra b . a apple b . a mango b");
+        assertEquals("a apple b", poet.poem("a b"));
+    }
+
+    @Test
+    public void testOneWordBuckets() {
+        StreamingPoet poet = new StreamingPoet(3, 3);
+        poet.accept("a b c d a");
+        assertEquals(description(3, 2, 3), poet.toString());
+        assertEquals("c d a", poet.poem("c a"));
+        assertEquals("b d", poet.poem("b d"));
+    }
+
+    @Test
+    public void testBoundedOverLongStream() {
+        Random random = new Random(3);
+        StreamingPoet poet = new StreamingPoet(1000, 10);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 500; j++) {
+                text.append("w").append(i * 100 + random.nextInt(200)).append(' ');
+            }
+            poet.accept(text);
+        }
+        String description = poet.toString();
+        int words = Integer.parseInt(description.replaceAll(".* over the last (\\d+) words.", "$1"));
+        int vertices = Integer.parseInt(description.replaceAll(".* containing (\\d+) vertices.*", "$1"));
+        assertTrue(description, words > 900 && words <= 1000);
+        assertTrue(description, vertices <= words);
+    }
+
+    @Test
+    public void testPoemsWhileAccepting() throws InterruptedException {
+        StreamingPoet poet = new StreamingPoet(200, 4);
+        poet.accept("to seek out new life");
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        String poem = poet.poem("seek new life");
+                        assertTrue(poem, poem.startsWith("seek ") && poem.endsWith(" life"));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < 2000; i++) {
+            poet.accept(i % 2 == 0 ? "seek out new life" : "seek strange new life");
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        for (int i = 0; i < 60; i++) {
+            poet.accept("seek strange new life");
+        }
+        assertEquals("seek strange new life", poet.poem("seek new life"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWindow() {
+        new StreamingPoet(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyBuckets() {
+        new StreamingPoet(4, 5);
+    }
+}